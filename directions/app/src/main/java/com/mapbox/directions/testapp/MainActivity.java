@@ -9,8 +9,11 @@ import android.widget.Toast;
 
 import com.mapbox.directions.DirectionsCriteria;
 import com.mapbox.directions.MapboxDirections;
+import com.mapbox.directions.navigation.RouteProgress;
+import com.mapbox.directions.navigation.RouteTracker;
 import com.mapbox.directions.service.models.DirectionsResponse;
 import com.mapbox.directions.service.models.DirectionsRoute;
+import com.mapbox.directions.service.models.RouteGeometry;
 import com.mapbox.directions.service.models.Waypoint;
 import com.mapbox.mapboxsdk.annotations.MarkerOptions;
 import com.mapbox.mapboxsdk.annotations.PolylineOptions;
@@ -18,8 +21,6 @@ import com.mapbox.mapboxsdk.constants.Style;
 import com.mapbox.mapboxsdk.geometry.LatLng;
 import com.mapbox.mapboxsdk.views.MapView;
 
-import java.util.List;
-
 import retrofit.Callback;
 import retrofit.Response;
 import retrofit.Retrofit;
@@ -30,8 +31,11 @@ public class MainActivity extends AppCompatActivity {
 
     private final static String MAPBOX_ACCESS_TOKEN = "";
 
+    private final static int MAX_DRAW_ZOOM = 18;
+
     private MapView mapView = null;
     private DirectionsRoute currentRoute = null;
+    private RouteTracker routeTracker = null;
 
     @Override
     protected void onCreate(Bundle savedInstanceState) {
@@ -62,7 +66,7 @@ public class MainActivity extends AppCompatActivity {
             @Override
             public void onMapClick(@NonNull LatLng point) {
                 Waypoint target = new Waypoint(point.getLongitude(), point.getLatitude());
-                checkOffRoute(target, 0.1);
+                checkOffRoute(target);
             }
         });
 
@@ -101,6 +105,9 @@ public class MainActivity extends AppCompatActivity {
 
                 // Draw the route on the map
                 drawRoute(currentRoute);
+
+                // Follow map clicks as if they were location updates
+                routeTracker = new RouteTracker(currentRoute);
             }
 
             @Override
@@ -112,13 +119,15 @@ public class MainActivity extends AppCompatActivity {
     }
 
     private void drawRoute(DirectionsRoute route) {
-        // Convert List<Waypoint> into LatLng[]
-        List<Waypoint> waypoints = route.getGeometry().getWaypoints();
-        LatLng[] point = new LatLng[waypoints.size()];
-        for (int i = 0; i < waypoints.size(); i++) {
+        // The route is drawn once, so keep the vertices visible up to street level
+        RouteGeometry geometry = route.getGeometry().simplifyForZoom(MAX_DRAW_ZOOM);
+
+        // Convert coordinates into LatLng[]
+        LatLng[] point = new LatLng[geometry.size()];
+        for (int i = 0; i < geometry.size(); i++) {
             point[i] = new LatLng(
-                    waypoints.get(i).getLatitude(),
-                    waypoints.get(i).getLongitude());
+                    geometry.getLatitude(i),
+                    geometry.getLongitude(i));
         }
 
         // Draw Points on MapView
@@ -128,12 +137,21 @@ public class MainActivity extends AppCompatActivity {
                 .width(5));
     }
 
-    private void checkOffRoute(Waypoint target, double tolerance) {
+    private void checkOffRoute(Waypoint target) {
+        if (routeTracker == null) {
+            return;
+        }
+
+        RouteProgress progress = routeTracker.update(target);
+        if (progress == null) {
+            return;
+        }
 
-        if (currentRoute.isOffRoute(target, currentRoute.getGeometry().getWaypoints(), tolerance)) {
+        if (progress.isOffRoute()) {
             showMessage("You are off-route.");
         } else {
-            showMessage("You are not off-route.");
+            showMessage(String.format("You are not off-route, %d meters along the route.",
+                    (int) progress.getDistanceTraveled()));
         }
     }
 
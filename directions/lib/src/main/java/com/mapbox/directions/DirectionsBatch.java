@@ -0,0 +1,485 @@
+package com.mapbox.directions;
+
+import com.mapbox.directions.service.DirectionsTransport;
+import com.mapbox.directions.service.models.DirectionsResponse;
+import com.mapbox.directions.service.models.Waypoint;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+import retrofit.Callback;
+import retrofit.Response;
+import retrofit.Retrofit;
+
+/**
+ * Runs many directions requests, e.g. one per origin/destination pair, with a bound on how many
+ * are in flight at once and, optionally, on how many are started per second against each host.
+ * Requests are started in the order they were added and results are reported to a
+ * {@link Listener} as they complete, followed by a {@link Summary} with aggregated timings.
+ * <p>
+ * No thread is held per outstanding request: requests are enqueued on their transport's
+ * dispatcher and the next one is started from the completion callback. A single scheduler thread
+ * is only created when a rate limit is set, to start requests that had to wait for a token.
+ */
+public class DirectionsBatch {
+
+    public final static int DEFAULT_MAX_CONCURRENCY = 8;
+
+    private final List<MapboxDirections> _requests;
+    private final int _maxConcurrency;
+    private final double _maxRequestsPerSecond;
+
+    private final Map<String, TokenBucket> _buckets = new HashMap<>();
+    private final long[] _latenciesNs;
+    private final CountDownLatch _done = new CountDownLatch(1);
+
+    private Listener _listener;
+    private ScheduledExecutorService _scheduler;
+    private boolean _started;
+    private boolean _canceled;
+    private boolean _dispatching;
+    private boolean _dispatchScheduled;
+    private int _next;
+    private int _inFlight;
+    private int _succeeded;
+    private int _failed;
+    private long _startNs;
+    private Summary _summary;
+
+    private DirectionsBatch(Builder builder) {
+        _requests = builder._requests;
+        _maxConcurrency = builder._maxConcurrency;
+        _maxRequestsPerSecond = builder._maxRequestsPerSecond;
+        _latenciesNs = new long[_requests.size()];
+    }
+
+    /**
+     * Starts running the batch. Results are reported on the Retrofit callback executor of each
+     * request's transport (the main thread on Android). The summary is reported from the last
+     * completion, or from {@link #cancel()} if nothing was in flight.
+     * @param listener receives each result as it completes, then the summary.
+     */
+    public void start(Listener listener) {
+        synchronized (this) {
+            if (_started) {
+                throw new IllegalStateException("A DirectionsBatch can only be started once.");
+            }
+            _started = true;
+            _listener = listener;
+            _startNs = System.nanoTime();
+        }
+
+        next();
+    }
+
+    /**
+     * Stops starting new requests and cancels the ones in flight, which are reported as failures.
+     * Requests that were never started are counted as skipped in the summary.
+     */
+    public void cancel() {
+        List<MapboxDirections> inFlight;
+        synchronized (this) {
+            if (_canceled) {
+                return;
+            }
+            _canceled = true;
+            inFlight = new ArrayList<>(_requests.subList(0, _next));
+        }
+
+        for (MapboxDirections request : inFlight) {
+            request.cancel();
+        }
+        maybeFinish();
+    }
+
+    /**
+     * Blocks until every request has completed or the batch was canceled. Must not be called from
+     * the thread results are delivered on.
+     * @return {@link Summary} object.
+     * @throws InterruptedException if interrupted while waiting.
+     */
+    public Summary await() throws InterruptedException {
+        _done.await();
+        return _summary;
+    }
+
+    /**
+     * Number of requests in the batch.
+     * @return integer count.
+     */
+    public int size() {
+        return _requests.size();
+    }
+
+    /*
+     * Dispatching
+     */
+
+    private void dispatch() {
+        // Completions delivered synchronously would otherwise recurse back in here, the running
+        // loop picks up the freed slot instead
+        synchronized (this) {
+            if (_dispatching) {
+                return;
+            }
+            _dispatching = true;
+        }
+
+        while (true) {
+            final int index;
+            final MapboxDirections request;
+            synchronized (this) {
+                if (_canceled || _next >= _requests.size() || _inFlight >= _maxConcurrency) {
+                    _dispatching = false;
+                    return;
+                }
+
+                request = _requests.get(_next);
+                long waitNs = acquire(request);
+                if (waitNs > 0) {
+                    scheduleDispatch(waitNs);
+                    _dispatching = false;
+                    return;
+                }
+
+                index = _next++;
+                _inFlight++;
+            }
+
+            final long startNs = System.nanoTime();
+            try {
+                request.enqueue(new Callback<DirectionsResponse>() {
+                    @Override
+                    public void onResponse(Response<DirectionsResponse> response, Retrofit retrofit) {
+                        long elapsedNs = complete(index, startNs, response.isSuccess());
+                        _listener.onResponse(index, response, TimeUnit.NANOSECONDS.toMillis(elapsedNs));
+                        next();
+                    }
+
+                    @Override
+                    public void onFailure(Throwable t) {
+                        long elapsedNs = complete(index, startNs, false);
+                        _listener.onFailure(index, t, TimeUnit.NANOSECONDS.toMillis(elapsedNs));
+                        next();
+                    }
+                });
+            } catch (RuntimeException e) {
+                // A request that can't even be started (e.g. already executed) counts as failed,
+                // and the loop moves on to the next one
+                long elapsedNs = complete(index, startNs, false);
+                _listener.onFailure(index, e, TimeUnit.NANOSECONDS.toMillis(elapsedNs));
+            }
+        }
+    }
+
+    private synchronized long complete(int index, long startNs, boolean success) {
+        long elapsedNs = System.nanoTime() - startNs;
+        _latenciesNs[index] = elapsedNs;
+        _inFlight--;
+        if (success) {
+            _succeeded++;
+        } else {
+            _failed++;
+        }
+        return elapsedNs;
+    }
+
+    private void next() {
+        dispatch();
+        maybeFinish();
+    }
+
+    private void maybeFinish() {
+        synchronized (this) {
+            boolean drained = _inFlight == 0 && (_canceled || _next >= _requests.size());
+            if (!_started || !drained || _summary != null) {
+                return;
+            }
+        }
+        finish();
+    }
+
+    private void finish() {
+        Summary summary;
+        synchronized (this) {
+            if (_summary != null) {
+                return;
+            }
+            long wallNs = System.nanoTime() - _startNs;
+            _summary = new Summary(_requests.size(), _succeeded, _failed, wallNs,
+                    Arrays.copyOf(_latenciesNs, _next));
+            summary = _summary;
+            if (_scheduler != null) {
+                _scheduler.shutdown();
+            }
+        }
+
+        _listener.onComplete(summary);
+        _done.countDown();
+    }
+
+    /*
+     * Rate limiting. Each host gets a token bucket refilled at the configured rate, holding at most
+     * one token so requests are evenly spaced rather than sent in bursts.
+     */
+
+    // Returns 0 if the request may start now, or how long to wait for a token
+    private long acquire(MapboxDirections request) {
+        if (_maxRequestsPerSecond <= 0) {
+            return 0;
+        }
+
+        String host = hostOf(request.getTransport());
+        TokenBucket bucket = _buckets.get(host);
+        if (bucket == null) {
+            bucket = new TokenBucket((long) (TimeUnit.SECONDS.toNanos(1) / _maxRequestsPerSecond));
+            _buckets.put(host, bucket);
+        }
+        return bucket.take(System.nanoTime());
+    }
+
+    private void scheduleDispatch(long delayNs) {
+        if (_dispatchScheduled) {
+            return;
+        }
+        _dispatchScheduled = true;
+
+        if (_scheduler == null) {
+            _scheduler = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+                @Override
+                public Thread newThread(Runnable runnable) {
+                    Thread thread = new Thread(runnable, "DirectionsBatch");
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+        }
+        _scheduler.schedule(new Runnable() {
+            @Override
+            public void run() {
+                synchronized (DirectionsBatch.this) {
+                    _dispatchScheduled = false;
+                }
+                next();
+            }
+        }, delayNs, TimeUnit.NANOSECONDS);
+    }
+
+    private static String hostOf(DirectionsTransport transport) {
+        return transport.getRetrofit().baseUrl().url().host();
+    }
+
+    private static class TokenBucket {
+
+        private final long intervalNs;
+        private long nextFreeNs = Long.MIN_VALUE;
+
+        TokenBucket(long intervalNs) {
+            this.intervalNs = intervalNs;
+        }
+
+        long take(long nowNs) {
+            if (nextFreeNs == Long.MIN_VALUE || nowNs - nextFreeNs >= 0) {
+                nextFreeNs = nowNs + intervalNs;
+                return 0;
+            }
+            return nextFreeNs - nowNs;
+        }
+    }
+
+    /*
+     * Results
+     */
+
+    public interface Listener {
+
+        /**
+         * A request completed with an HTTP response, successful or not.
+         * @param index position of the request in the batch.
+         * @param response the Retrofit {@link Response}.
+         * @param elapsedMs time from the request being started to its response being parsed.
+         */
+        void onResponse(int index, Response<DirectionsResponse> response, long elapsedMs);
+
+        /**
+         * A request failed without a response, or was canceled.
+         * @param index position of the request in the batch.
+         * @param t the failure.
+         * @param elapsedMs time from the request being started to the failure.
+         */
+        void onFailure(int index, Throwable t, long elapsedMs);
+
+        /**
+         * Every started request has completed.
+         * @param summary aggregated counts and timings.
+         */
+        void onComplete(Summary summary);
+    }
+
+    /**
+     * Aggregated outcome of a batch. Latencies are measured per request, from the moment it's
+     * started (after any rate limiting wait) to its completion.
+     */
+    public static class Summary {
+
+        private final int requestCount;
+        private final int succeededCount;
+        private final int failedCount;
+        private final long wallTimeNs;
+        private final long[] sortedLatenciesNs;
+
+        Summary(int requestCount, int succeededCount, int failedCount, long wallTimeNs, long[] latenciesNs) {
+            this.requestCount = requestCount;
+            this.succeededCount = succeededCount;
+            this.failedCount = failedCount;
+            this.wallTimeNs = wallTimeNs;
+            this.sortedLatenciesNs = latenciesNs;
+            Arrays.sort(this.sortedLatenciesNs);
+        }
+
+        public int getRequestCount() {
+            return requestCount;
+        }
+
+        public int getSucceededCount() {
+            return succeededCount;
+        }
+
+        public int getFailedCount() {
+            return failedCount;
+        }
+
+        /*
+         * Requests never started because the batch was canceled
+         */
+
+        public int getSkippedCount() {
+            return requestCount - succeededCount - failedCount;
+        }
+
+        public long getWallTimeMs() {
+            return TimeUnit.NANOSECONDS.toMillis(wallTimeNs);
+        }
+
+        /**
+         * Completed requests per second over the whole batch.
+         * @return double throughput.
+         */
+        public double getThroughput() {
+            if (wallTimeNs == 0) {
+                return 0;
+            }
+            return (succeededCount + failedCount) * (double) TimeUnit.SECONDS.toNanos(1) / wallTimeNs;
+        }
+
+        public double getMeanLatencyMs() {
+            if (sortedLatenciesNs.length == 0) {
+                return 0;
+            }
+            double total = 0;
+            for (long latency : sortedLatenciesNs) {
+                total += latency;
+            }
+            return total / sortedLatenciesNs.length / TimeUnit.MILLISECONDS.toNanos(1);
+        }
+
+        /**
+         * Per request latency at the given percentile, nearest-rank.
+         * @param percentile between 0 and 100, e.g. 95.
+         * @return double latency in milliseconds, 0 if nothing completed.
+         */
+        public double getLatencyPercentileMs(double percentile) {
+            if (sortedLatenciesNs.length == 0) {
+                return 0;
+            }
+            int rank = (int) Math.ceil(percentile / 100 * sortedLatenciesNs.length);
+            int index = Math.min(Math.max(rank - 1, 0), sortedLatenciesNs.length - 1);
+            return sortedLatenciesNs[index] / (double) TimeUnit.MILLISECONDS.toNanos(1);
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%d requests (%d ok, %d failed, %d skipped) in %d ms, %.1f req/s, "
+                            + "latency mean %.1f ms, p50 %.1f ms, p95 %.1f ms",
+                    requestCount, succeededCount, failedCount, getSkippedCount(), getWallTimeMs(),
+                    getThroughput(), getMeanLatencyMs(), getLatencyPercentileMs(50),
+                    getLatencyPercentileMs(95));
+        }
+    }
+
+    /*
+     * Builder
+     */
+
+    public static class Builder {
+
+        private final List<MapboxDirections> _requests = new ArrayList<>();
+        private MapboxDirections.Builder _template;
+        private int _maxConcurrency = DEFAULT_MAX_CONCURRENCY;
+        private double _maxRequestsPerSecond;
+
+        public Builder addRequest(MapboxDirections request) {
+            _requests.add(request);
+            return this;
+        }
+
+        public Builder addRequest(MapboxDirections.Builder builder) {
+            _requests.add(builder.build());
+            return this;
+        }
+
+        /*
+         * Origin/destination pairs are requested with every other option (access token, profile,
+         * transport, ...) taken from the template, which has to be set first. The template itself
+         * is left untouched.
+         */
+
+        public Builder setTemplate(MapboxDirections.Builder template) {
+            _template = template;
+            return this;
+        }
+
+        public Builder addPair(Waypoint origin, Waypoint destination) {
+            if (_template == null) {
+                throw new RuntimeException("Set a template before adding origin/destination pairs.");
+            }
+            _requests.add(_template.copy().setWaypoints(null).setOrigin(origin).setDestination(destination).build());
+            return this;
+        }
+
+        /*
+         * Requests in flight at once across the batch. The transport's own dispatcher limits
+         * (see DirectionsTransport.Builder.setMaxRequestsPerHost()) still apply on top.
+         */
+
+        public Builder setMaxConcurrency(int maxConcurrency) {
+            _maxConcurrency = maxConcurrency;
+            return this;
+        }
+
+        /*
+         * Requests started per second against each host, 0 (the default) for no limit.
+         */
+
+        public Builder setMaxRequestsPerSecond(double maxRequestsPerSecond) {
+            _maxRequestsPerSecond = maxRequestsPerSecond;
+            return this;
+        }
+
+        public DirectionsBatch build() {
+            if (_maxConcurrency < 1) {
+                throw new RuntimeException("A DirectionsBatch needs a concurrency of at least one.");
+            }
+            return new DirectionsBatch(this);
+        }
+
+    }
+}
@@ -1,5 +1,6 @@
 package com.mapbox.directions;
 
+import android.support.annotation.IntDef;
 import android.support.annotation.StringDef;
 
 import java.lang.annotation.Retention;
@@ -45,4 +46,66 @@ public class DirectionsCriteria {
     public static final String GEOMETRY_POLYLINE = "polyline";
     public static final String GEOMETRY_FALSE = "false";
 
+    /*
+     * ManeuverType "typedef", the codes of StepManeuver.getType() values
+     */
+
+    @IntDef({MANEUVER_UNKNOWN, MANEUVER_CONTINUE, MANEUVER_BEAR_RIGHT, MANEUVER_TURN_RIGHT,
+            MANEUVER_SHARP_RIGHT, MANEUVER_U_TURN, MANEUVER_SHARP_LEFT, MANEUVER_TURN_LEFT,
+            MANEUVER_BEAR_LEFT, MANEUVER_WAYPOINT, MANEUVER_DEPART, MANEUVER_ENTER_ROUNDABOUT,
+            MANEUVER_ARRIVE})
+    @Retention(RetentionPolicy.SOURCE)
+    public @interface ManeuverType {}
+
+    public static final int MANEUVER_UNKNOWN = 0;
+    public static final int MANEUVER_CONTINUE = 1;
+    public static final int MANEUVER_BEAR_RIGHT = 2;
+    public static final int MANEUVER_TURN_RIGHT = 3;
+    public static final int MANEUVER_SHARP_RIGHT = 4;
+    public static final int MANEUVER_U_TURN = 5;
+    public static final int MANEUVER_SHARP_LEFT = 6;
+    public static final int MANEUVER_TURN_LEFT = 7;
+    public static final int MANEUVER_BEAR_LEFT = 8;
+    public static final int MANEUVER_WAYPOINT = 9;
+    public static final int MANEUVER_DEPART = 10;
+    public static final int MANEUVER_ENTER_ROUNDABOUT = 11;
+    public static final int MANEUVER_ARRIVE = 12;
+
+    /*
+     * StepDirection "typedef", the codes of RouteStep.getDirection() values
+     */
+
+    @IntDef({DIRECTION_UNKNOWN, DIRECTION_N, DIRECTION_NE, DIRECTION_E, DIRECTION_SE,
+            DIRECTION_S, DIRECTION_SW, DIRECTION_W, DIRECTION_NW})
+    @Retention(RetentionPolicy.SOURCE)
+    public @interface StepDirection {}
+
+    public static final int DIRECTION_UNKNOWN = 0;
+    public static final int DIRECTION_N = 1;
+    public static final int DIRECTION_NE = 2;
+    public static final int DIRECTION_E = 3;
+    public static final int DIRECTION_SE = 4;
+    public static final int DIRECTION_S = 5;
+    public static final int DIRECTION_SW = 6;
+    public static final int DIRECTION_W = 7;
+    public static final int DIRECTION_NW = 8;
+
+    /*
+     * ManeuverMode "typedef", the codes of StepManeuver.getMode() values
+     */
+
+    @IntDef({MODE_UNKNOWN, MODE_DRIVING, MODE_WALKING, MODE_CYCLING, MODE_FERRY,
+            MODE_MOVABLE_BRIDGE, MODE_TRAIN, MODE_UNACCESSIBLE})
+    @Retention(RetentionPolicy.SOURCE)
+    public @interface ManeuverMode {}
+
+    public static final int MODE_UNKNOWN = 0;
+    public static final int MODE_DRIVING = 1;
+    public static final int MODE_WALKING = 2;
+    public static final int MODE_CYCLING = 3;
+    public static final int MODE_FERRY = 4;
+    public static final int MODE_MOVABLE_BRIDGE = 5;
+    public static final int MODE_TRAIN = 6;
+    public static final int MODE_UNACCESSIBLE = 7;
+
 }
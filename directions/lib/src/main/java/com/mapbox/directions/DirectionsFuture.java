@@ -0,0 +1,149 @@
+package com.mapbox.directions;
+
+import com.mapbox.directions.service.models.DirectionsResponse;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import retrofit.Call;
+import retrofit.Callback;
+import retrofit.Response;
+import retrofit.Retrofit;
+
+/**
+ * The pending result of {@link MapboxDirections#calculateAsync()}. The request runs on the
+ * transport's dispatcher like {@link MapboxDirections#enqueue(Callback)}, so no thread is held
+ * while it's outstanding. Canceling the future cancels the underlying {@link Call}.
+ * <p>
+ * Like {@link MapboxDirections#execute()}, the result is the Retrofit {@link Response}, which may
+ * be an HTTP error. Failures without a response are thrown from {@link #get()} wrapped in an
+ * {@link ExecutionException}. Listeners can be added to chain work without blocking.
+ */
+public class DirectionsFuture implements Future<Response<DirectionsResponse>> {
+
+    private final Call<DirectionsResponse> call;
+    private final CountDownLatch latch = new CountDownLatch(1);
+    private final List<Runnable> listeners = new ArrayList<>();
+
+    private boolean done;
+    private boolean canceled;
+    private Response<DirectionsResponse> response;
+    private Throwable failure;
+
+    DirectionsFuture(Call<DirectionsResponse> call) {
+        this.call = call;
+    }
+
+    void start() {
+        call.enqueue(new Callback<DirectionsResponse>() {
+            @Override
+            public void onResponse(Response<DirectionsResponse> response, Retrofit retrofit) {
+                complete(response, null, false);
+            }
+
+            @Override
+            public void onFailure(Throwable t) {
+                complete(null, t, false);
+            }
+        });
+    }
+
+    private void complete(Response<DirectionsResponse> response, Throwable failure, boolean canceled) {
+        List<Runnable> toRun;
+        synchronized (this) {
+            if (done) {
+                return;
+            }
+            done = true;
+            this.response = response;
+            this.failure = failure;
+            this.canceled = canceled;
+            toRun = new ArrayList<>(listeners);
+            listeners.clear();
+        }
+
+        latch.countDown();
+        for (Runnable listener : toRun) {
+            listener.run();
+        }
+    }
+
+    /**
+     * Runs the given listener once the future is done (completed, failed or canceled), right away
+     * if it already is.
+     * @param listener the work to run, typically calling {@link #get()} which won't block.
+     * @param executor where to run it.
+     */
+    public void addListener(final Runnable listener, final Executor executor) {
+        Runnable task = new Runnable() {
+            @Override
+            public void run() {
+                executor.execute(listener);
+            }
+        };
+
+        synchronized (this) {
+            if (!done) {
+                listeners.add(task);
+                return;
+            }
+        }
+        task.run();
+    }
+
+    @Override
+    public boolean cancel(boolean mayInterruptIfRunning) {
+        synchronized (this) {
+            if (done) {
+                return false;
+            }
+        }
+
+        // Complete first, the call may report its own cancellation synchronously
+        complete(null, null, true);
+        call.cancel();
+        return isCancelled();
+    }
+
+    @Override
+    public synchronized boolean isCancelled() {
+        return canceled;
+    }
+
+    @Override
+    public synchronized boolean isDone() {
+        return done;
+    }
+
+    @Override
+    public Response<DirectionsResponse> get() throws InterruptedException, ExecutionException {
+        latch.await();
+        return result();
+    }
+
+    @Override
+    public Response<DirectionsResponse> get(long timeout, TimeUnit unit)
+            throws InterruptedException, ExecutionException, TimeoutException {
+        if (!latch.await(timeout, unit)) {
+            throw new TimeoutException();
+        }
+        return result();
+    }
+
+    private synchronized Response<DirectionsResponse> result() throws ExecutionException {
+        if (canceled) {
+            throw new CancellationException();
+        }
+        if (failure != null) {
+            throw new ExecutionException(failure);
+        }
+        return response;
+    }
+}
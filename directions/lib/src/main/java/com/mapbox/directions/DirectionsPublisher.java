@@ -0,0 +1,297 @@
+package com.mapbox.directions;
+
+import android.util.Log;
+
+import com.mapbox.directions.service.models.DirectionsResponse;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import retrofit.Callback;
+import retrofit.Response;
+import retrofit.Retrofit;
+
+/**
+ * A stream of directions responses with backpressure, following the Reactive Streams protocol
+ * (Publisher, Subscriber, Subscription). The interfaces are declared here so nothing beyond the
+ * existing dependencies is needed; adapting them to RxJava or java.util.concurrent.Flow is a thin
+ * wrapper.
+ * <p>
+ * Requests only start once the subscriber has asked for their results with
+ * {@link Subscription#request(long)}, and never more than the configured concurrency at once, so
+ * a slow consumer holds back the network instead of buffering responses. Responses are emitted in
+ * the order they complete. No thread is held per outstanding request and signals to the
+ * subscriber are never concurrent.
+ * <p>
+ * Each response is the Retrofit {@link Response}, which may be an HTTP error. A failure without a
+ * response ends the stream with {@link Subscriber#onError(Throwable)} and cancels the requests in
+ * flight, as does canceling the subscription. A publisher can only be subscribed to once.
+ */
+public class DirectionsPublisher {
+
+    public final static int DEFAULT_MAX_CONCURRENCY = 4;
+
+    private final static String LOG_TAG = "DirectionsPublisher";
+
+    private final List<MapboxDirections> _requests;
+    private final int _maxConcurrency;
+    private final AtomicInteger _subscribed = new AtomicInteger();
+
+    private DirectionsPublisher(Builder builder) {
+        _requests = builder._requests;
+        _maxConcurrency = builder._maxConcurrency;
+    }
+
+    public void subscribe(Subscriber subscriber) {
+        if (!_subscribed.compareAndSet(0, 1)) {
+            subscriber.onSubscribe(new Subscription() {
+                @Override
+                public void request(long n) {
+                }
+
+                @Override
+                public void cancel() {
+                }
+            });
+            subscriber.onError(new IllegalStateException("A DirectionsPublisher can only be subscribed to once."));
+            return;
+        }
+
+        DirectionsSubscription subscription = new DirectionsSubscription(subscriber);
+        subscriber.onSubscribe(subscription);
+        subscription.drain();
+    }
+
+    public interface Subscriber {
+
+        void onSubscribe(Subscription subscription);
+
+        void onNext(Response<DirectionsResponse> response);
+
+        void onError(Throwable t);
+
+        void onComplete();
+    }
+
+    public interface Subscription {
+
+        /**
+         * Asks for up to n more responses. Long.MAX_VALUE means no limit.
+         * @param n strictly positive number of responses.
+         */
+        void request(long n);
+
+        /**
+         * Stops the stream and cancels the requests in flight. No further signals are sent.
+         */
+        void cancel();
+    }
+
+    /*
+     * All state changes go through drain(), which only ever runs on one thread at a time. Other
+     * threads (completions, request(), cancel()) record what happened and bump the work counter;
+     * whoever is draining loops until the counter settles.
+     */
+
+    private class DirectionsSubscription implements Subscription {
+
+        private final Subscriber subscriber;
+        private final AtomicInteger work = new AtomicInteger();
+        private final ConcurrentLinkedQueue<Object> completed = new ConcurrentLinkedQueue<>();
+        private final List<MapboxDirections> inFlight = new ArrayList<>();
+
+        // Only touched while draining, or guarded by this
+        private long demand;
+        private int next;
+        private int outstanding;
+        private volatile boolean canceled;
+        private boolean terminated;
+        private Throwable invalidRequest;
+
+        DirectionsSubscription(Subscriber subscriber) {
+            this.subscriber = subscriber;
+        }
+
+        @Override
+        public void request(long n) {
+            synchronized (this) {
+                if (n <= 0) {
+                    invalidRequest = new IllegalArgumentException("Requested " + n + " responses, must be positive.");
+                } else {
+                    demand = demand + n < 0 ? Long.MAX_VALUE : demand + n;
+                }
+            }
+            drain();
+        }
+
+        @Override
+        public void cancel() {
+            canceled = true;
+            drain();
+        }
+
+        void drain() {
+            if (work.getAndIncrement() != 0) {
+                return;
+            }
+
+            int missed = 1;
+            do {
+                drainOnce();
+                missed = work.addAndGet(-missed);
+            } while (missed != 0);
+        }
+
+        @SuppressWarnings("unchecked")
+        private void drainOnce() {
+            if (terminated) {
+                completed.clear();
+                return;
+            }
+            if (canceled) {
+                terminate(null, false);
+                return;
+            }
+
+            Throwable error;
+            synchronized (this) {
+                error = invalidRequest;
+            }
+            if (error != null) {
+                terminate(error, true);
+                return;
+            }
+
+            // Emit whatever has completed, demand was reserved when each request was started
+            Object result;
+            while ((result = completed.poll()) != null) {
+                if (result instanceof Throwable) {
+                    terminate((Throwable) result, true);
+                    return;
+                }
+
+                synchronized (this) {
+                    outstanding--;
+                    if (demand != Long.MAX_VALUE) {
+                        demand--;
+                    }
+                }
+                try {
+                    subscriber.onNext((Response<DirectionsResponse>) result);
+                } catch (RuntimeException e) {
+                    // onNext() must not throw, the subscription is then considered canceled
+                    Log.w(LOG_TAG, "Subscriber threw from onNext(), canceling.", e);
+                    terminate(null, false);
+                    return;
+                }
+                if (canceled) {
+                    terminate(null, false);
+                    return;
+                }
+            }
+
+            if (next == _requests.size() && outstanding == 0) {
+                terminated = true;
+                subscriber.onComplete();
+                return;
+            }
+
+            // Start as many requests as both the demand and the concurrency limit allow
+            while (true) {
+                final MapboxDirections request;
+                synchronized (this) {
+                    if (next == _requests.size() || outstanding >= _maxConcurrency || outstanding >= demand) {
+                        return;
+                    }
+                    request = _requests.get(next++);
+                    outstanding++;
+                    inFlight.add(request);
+                }
+
+                try {
+                    request.enqueue(new Callback<DirectionsResponse>() {
+                        @Override
+                        public void onResponse(Response<DirectionsResponse> response, Retrofit retrofit) {
+                            finished(request, response);
+                        }
+
+                        @Override
+                        public void onFailure(Throwable t) {
+                            finished(request, t);
+                        }
+                    });
+                } catch (RuntimeException e) {
+                    // A request that can't even be started (e.g. already executed) fails the stream
+                    // like any failure without a response
+                    synchronized (this) {
+                        outstanding--;
+                        inFlight.remove(request);
+                    }
+                    terminate(e, true);
+                    return;
+                }
+            }
+        }
+
+        private void finished(MapboxDirections request, Object result) {
+            synchronized (this) {
+                inFlight.remove(request);
+            }
+            completed.offer(result);
+            drain();
+        }
+
+        private void terminate(Throwable error, boolean signal) {
+            terminated = true;
+            completed.clear();
+
+            List<MapboxDirections> toCancel;
+            synchronized (this) {
+                toCancel = new ArrayList<>(inFlight);
+                inFlight.clear();
+            }
+            for (MapboxDirections request : toCancel) {
+                request.cancel();
+            }
+
+            if (signal) {
+                subscriber.onError(error);
+            }
+        }
+    }
+
+    /*
+     * Builder
+     */
+
+    public static class Builder {
+
+        private final List<MapboxDirections> _requests = new ArrayList<>();
+        private int _maxConcurrency = DEFAULT_MAX_CONCURRENCY;
+
+        public Builder addRequest(MapboxDirections request) {
+            _requests.add(request);
+            return this;
+        }
+
+        public Builder addRequest(MapboxDirections.Builder builder) {
+            _requests.add(builder.build());
+            return this;
+        }
+
+        public Builder setMaxConcurrency(int maxConcurrency) {
+            _maxConcurrency = maxConcurrency;
+            return this;
+        }
+
+        public DirectionsPublisher build() {
+            if (_maxConcurrency < 1) {
+                throw new RuntimeException("A DirectionsPublisher needs a concurrency of at least one.");
+            }
+            return new DirectionsPublisher(this);
+        }
+
+    }
+}
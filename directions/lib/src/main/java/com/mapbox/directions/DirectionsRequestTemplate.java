@@ -0,0 +1,120 @@
+package com.mapbox.directions;
+
+import com.mapbox.directions.geometry.CoordinateFormatter;
+import com.mapbox.directions.service.DirectionsConverterFactory;
+import com.mapbox.directions.service.DirectionsTransport;
+import com.mapbox.directions.service.PrebuiltCall;
+import com.mapbox.directions.service.models.DirectionsResponse;
+import com.mapbox.directions.service.models.Waypoint;
+import com.squareup.okhttp.HttpUrl;
+import com.squareup.okhttp.Request;
+import com.squareup.okhttp.ResponseBody;
+
+import java.util.Arrays;
+import java.util.List;
+
+import retrofit.Call;
+import retrofit.Converter;
+
+/**
+ * Makes requests that differ only in their waypoints. Everything else set on the
+ * {@link MapboxDirections.Builder} it was built from (profile, access token, options, precision,
+ * transport and deadline) is validated and encoded once, so a new request only formats its
+ * waypoints into a per-thread buffer between the fixed start and end of the URL. The request is
+ * then sent as is, without going through the Retrofit proxy.
+ * <p>
+ * Requests behave like those built by the builder: they are cached, coalesced, retried and
+ * measured according to the transport. A template is immutable and can be shared between threads.
+ */
+public class DirectionsRequestTemplate {
+
+    // Matches the @GET path of DirectionsService
+    private final static String PATH = "/v4/directions/";
+    private final static String EXTENSION = ".json?";
+
+    private final MapboxDirections.Builder _builder;
+    private final DirectionsTransport _transport;
+    private final int _coordinatePrecision;
+    private final String _urlPrefix;
+    private final String _urlSuffix;
+    private final Converter<ResponseBody, DirectionsResponse> _converter;
+
+    private final ThreadLocal<StringBuilder> _buffer = new ThreadLocal<StringBuilder>() {
+        @Override
+        protected StringBuilder initialValue() {
+            return new StringBuilder(_urlPrefix.length() + _urlSuffix.length()
+                    + CoordinateFormatter.capacityFor(2, _coordinatePrecision));
+        }
+    };
+
+    // The builder is an already validated copy, see MapboxDirections.Builder.buildTemplate()
+    DirectionsRequestTemplate(MapboxDirections.Builder builder) {
+        _builder = builder;
+        _transport = builder.getTransport();
+        _coordinatePrecision = builder.getCoordinatePrecision();
+
+        HttpUrl baseUrl = HttpUrl.parse(_transport.getBaseUrl());
+        if (baseUrl == null) {
+            throw new RuntimeException("Invalid base URL " + _transport.getBaseUrl() + ".");
+        }
+        _urlPrefix = baseUrl.resolve(PATH + MapboxDirections.Builder.encode(builder.getProfile()) + "/").toString();
+        _urlSuffix = EXTENSION + builder.getEncodedQuery();
+        _converter = DirectionsConverterFactory.create(_transport.getParser()).responseConverter();
+    }
+
+    /**
+     * Creates a request to route through the given waypoints.
+     * @param waypoints the {@link Waypoint}s, in order.
+     * @return {@link MapboxDirections} object, ready to be executed or enqueued.
+     */
+    public MapboxDirections newRequest(List<Waypoint> waypoints) {
+        return new MapboxDirections(_builder, this, waypoints, formatWaypoints(waypoints));
+    }
+
+    /**
+     * Creates a request from an origin to a destination.
+     * @param origin where the route starts.
+     * @param destination where the route ends.
+     * @return {@link MapboxDirections} object, ready to be executed or enqueued.
+     */
+    public MapboxDirections newRequest(Waypoint origin, Waypoint destination) {
+        return newRequest(Arrays.asList(origin, destination));
+    }
+
+    /**
+     * The transport requests made from this template go through.
+     * @return {@link DirectionsTransport} object.
+     */
+    public DirectionsTransport getTransport() {
+        return _transport;
+    }
+
+    // Same output as MapboxDirections.Builder.getWaypointsFormatted()
+    String formatWaypoints(List<Waypoint> waypoints) {
+        if (waypoints == null || waypoints.size() == 0) {
+            return "";
+        }
+
+        StringBuilder buffer = buffer();
+        CoordinateFormatter.append(buffer, waypoints, _coordinatePrecision);
+        return buffer.toString();
+    }
+
+    // The network call for already formatted waypoints, conditional when given an ETag
+    Call<DirectionsResponse> newCall(String waypoints, String etag) {
+        StringBuilder url = buffer();
+        url.append(_urlPrefix).append(waypoints).append(_urlSuffix);
+
+        Request.Builder request = new Request.Builder().url(url.toString());
+        if (etag != null) {
+            request.header("If-None-Match", etag);
+        }
+        return new PrebuiltCall(_transport.getClient(), request.build(), _converter, _transport.getRetrofit());
+    }
+
+    private StringBuilder buffer() {
+        StringBuilder buffer = _buffer.get();
+        buffer.setLength(0);
+        return buffer;
+    }
+}
@@ -1,50 +1,120 @@
 package com.mapbox.directions;
 
 import android.text.TextUtils;
-import android.util.Log;
 
+import com.mapbox.directions.cache.CachingCall;
+import com.mapbox.directions.geometry.CoordinateFormatter;
 import com.mapbox.directions.service.DirectionsService;
+import com.mapbox.directions.service.DirectionsTransport;
+import com.mapbox.directions.service.RetryPolicy;
 import com.mapbox.directions.service.models.DirectionsResponse;
 import com.mapbox.directions.service.models.Waypoint;
-import com.squareup.okhttp.Interceptor;
-import com.squareup.okhttp.OkHttpClient;
-import com.squareup.okhttp.Request;
+import com.mapbox.directions.storage.RouteStoreCall;
 
 import java.io.IOException;
-import java.util.ArrayList;
+import java.io.UnsupportedEncodingException;
+import java.net.URLEncoder;
+import java.nio.charset.Charset;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.util.Arrays;
 import java.util.List;
+import java.util.concurrent.TimeUnit;
 
 import retrofit.Call;
 import retrofit.Callback;
-import retrofit.GsonConverterFactory;
 import retrofit.Response;
-import retrofit.Retrofit;
 
 /**
  * Created by antonio on 11/6/15.
  */
 public class MapboxDirections {
 
-    private final static String LOG_TAG = "MapboxDirections";
-
-    private final static String BASE_URL = "https://api.mapbox.com";
-
     // 0.1 miles
     public final static double OFF_ROUTE_THRESHOLD = 0.1;
 
+    private final DirectionsTransport _transport;
+    private final DirectionsRequestTemplate _template;
+    private final String _requestKey;
     private Call<DirectionsResponse> _call;
 
     public MapboxDirections(Builder builder) {
-        DirectionsService service = getService();
-        _call = service.calculate(
-                builder._profile,
-                builder.getWaypointsFormatted(),
-                builder._accessToken,
-                builder._alternatives,
-                builder._instructions,
-                builder._geometry,
-                builder._steps);
+        this(builder, null, builder.getWaypoints(), builder.getWaypointsFormatted());
+    }
+
+    // Requests made from a template share its builder and skip the Retrofit proxy
+    MapboxDirections(Builder builder, DirectionsRequestTemplate template, List<Waypoint> waypointList,
+                     final String waypoints) {
+        _transport = builder._transport != null ? builder._transport : DirectionsTransport.getDefault();
+        _template = template;
+        _requestKey = builder.getRequestKey(waypoints);
+
+        _call = networkCall(builder, waypoints, null);
+
+        // Identical requests share one network call, and the cache is checked before joining it
+        if (_transport.getCoalescer() != null) {
+            _call = _transport.getCoalescer().coalesce(_call, _requestKey);
+        }
+        if (_transport.getRouteStore() != null) {
+            _call = new RouteStoreCall(_call, _transport.getRouteStore(), builder.getRouteStoreKey(),
+                    waypointList, _transport.getRetrofit(),
+                    _transport.getClient().getDispatcher().getExecutorService(),
+                    _transport.getMetricsListener(), builder._profile, builder._geometry);
+        }
+        if (_transport.getCache() != null) {
+            // Expired responses are revalidated straight against the network
+            final Builder snapshot = template != null ? builder : builder.copy();
+            CachingCall.Revalidator revalidator = new CachingCall.Revalidator() {
+                @Override
+                public Call<DirectionsResponse> revalidate(String etag) {
+                    return networkCall(snapshot, waypoints, etag);
+                }
+            };
+            _call = new CachingCall(_call, _transport.getCache(), _requestKey, _transport.getRetrofit(),
+                    _transport.getClient().getDispatcher().getExecutorService(),
+                    _transport.getMetricsListener(), builder._profile, builder._geometry, revalidator);
+        }
+    }
+
+    // The API call itself, conditional when given an ETag
+    private Call<DirectionsResponse> networkCall(Builder builder, String waypoints, String etag) {
+        Call<DirectionsResponse> call;
+        if (_template != null) {
+            call = _template.newCall(waypoints, etag);
+        } else {
+            call = getService().calculate(
+                    builder._profile,
+                    waypoints,
+                    builder._accessToken,
+                    builder._alternatives,
+                    builder._instructions,
+                    builder._geometry,
+                    builder._steps,
+                    etag);
+        }
+
+        // Retries happen below coalescing, so callers sharing a call also share its retries
+        RetryPolicy retryPolicy = _transport.getRetryPolicy();
+        if (retryPolicy == null && builder._deadlineMs > 0) {
+            retryPolicy = RetryPolicy.noRetries();
+        }
+        if (retryPolicy != null) {
+            call = retryPolicy.wrap(call, _transport.getRetrofit(), builder._deadlineMs,
+                    _transport.getMetricsListener(), builder._profile, builder._geometry);
+        }
+        return call;
+    }
+
+    /**
+     * Identifies the request: profile, waypoints (as sent, i.e. rounded), alternatives,
+     * instructions, geometry, steps and a hash of the access token. Two requests with the same key
+     * get the same response, which is what the response cache and request coalescing rely on. The
+     * token is part of it so a response is never shared with a token that wasn't allowed to fetch
+     * it, and a rejected token's error isn't handed to other callers.
+     * @return string key.
+     */
+    public String getRequestKey() {
+        return _requestKey;
     }
 
     /*
@@ -63,30 +133,27 @@ public class MapboxDirections {
         _call.cancel();
     }
 
+    /**
+     * Starts the request without blocking or a callback, see {@link DirectionsFuture}. Like
+     * {@link #enqueue(Callback)}, it can only be called once per request.
+     * @return {@link DirectionsFuture} object.
+     */
+    public DirectionsFuture calculateAsync() {
+        DirectionsFuture future = new DirectionsFuture(_call);
+        future.start();
+        return future;
+    }
+
     public Call<DirectionsResponse> clone() {
         return _call.clone();
     }
 
     DirectionsService getService() {
-        // Log the URL for debugging purposes
-        OkHttpClient client = new OkHttpClient();
-        client.interceptors().add(new Interceptor() {
-            @Override
-            public com.squareup.okhttp.Response intercept(Interceptor.Chain chain) throws IOException {
-                Request request = chain.request();
-                Log.d(LOG_TAG, String.format("Mapbox URL: %s", request.url()));
-                com.squareup.okhttp.Response response = chain.proceed(request);
-                return response;
-            }
-        });
-
-        Retrofit retrofit = new Retrofit.Builder()
-                .client(client)
-                .baseUrl(BASE_URL)
-                .addConverterFactory(GsonConverterFactory.create())
-                .build();
-        DirectionsService service = retrofit.create(DirectionsService.class);
-        return service;
+        return _transport.getService();
+    }
+
+    DirectionsTransport getTransport() {
+        return _transport;
     }
 
     /*
@@ -96,6 +163,7 @@ public class MapboxDirections {
     public static class Builder {
 
         private String _accessToken;
+        private String _accessTokenHash;
         private String _profile;
         private List<Waypoint> _waypoints;
         private Waypoint _origin;
@@ -104,9 +172,13 @@ public class MapboxDirections {
         private String _instructions;
         private String _geometry;
         private boolean _steps;
+        private int _coordinatePrecision = CoordinateFormatter.DEFAULT_PRECISION;
+        private long _deadlineMs;
+        private DirectionsTransport _transport;
 
         public Builder setAccessToken(String accessToken) {
             _accessToken = accessToken;
+            _accessTokenHash = null;
             return this;
         }
 
@@ -138,27 +210,27 @@ public class MapboxDirections {
         }
 
         public String getWaypointsFormatted() {
-            String waypointsFormatted = "";
-
-            // Set origin and destination
-            if (_origin != null && _destination != null) {
-                _waypoints = new ArrayList<>(Arrays.asList(_origin, _destination));
-            }
+            List<Waypoint> waypoints = getWaypoints();
 
             // Empty list
-            if (_waypoints == null || _waypoints.size() == 0) {
-                return waypointsFormatted;
+            if (waypoints == null || waypoints.size() == 0) {
+                return "";
             }
 
-            // Convert to {lon},{lat} coordinate pairs
-            List<String> pieces = new ArrayList<>();
-            for (Waypoint waypoint: _waypoints) {
-                pieces.add(String.format("%f,%f", waypoint.getLongitude(), waypoint.getLatitude()));
-            }
+            // The waypoints parameter should be a semicolon-separated list of {lon},{lat} pairs
+            StringBuilder waypointsFormatted = new StringBuilder(
+                    CoordinateFormatter.capacityFor(waypoints.size(), _coordinatePrecision));
+            CoordinateFormatter.append(waypointsFormatted, waypoints, _coordinatePrecision);
+            return waypointsFormatted.toString();
+        }
 
-            // The waypoints parameter should be a semicolon-separated list of locations to visit
-            waypointsFormatted = TextUtils.join(";", pieces);
-            return waypointsFormatted;
+        /*
+         * Number of decimal places waypoints are sent with, 6 (about 10 cm) by default.
+         */
+
+        public Builder setCoordinatePrecision(int coordinatePrecision) {
+            _coordinatePrecision = coordinatePrecision;
+            return this;
         }
 
         public Builder setAlternatives(boolean alternatives) {
@@ -181,6 +253,127 @@ public class MapboxDirections {
             return this;
         }
 
+        /*
+         * Upper bound on the whole call, retries included, after which it fails with an
+         * InterruptedIOException. No deadline by default, only OkHttp's own timeouts apply.
+         */
+
+        public Builder setDeadline(long timeout, TimeUnit unit) {
+            _deadlineMs = unit.toMillis(timeout);
+            return this;
+        }
+
+        /*
+         * By default every request shares DirectionsTransport.getDefault(), so connections and
+         * the Retrofit proxy are reused across builders. Pass a transport here to route a request
+         * through a differently tuned client instead.
+         */
+
+        public Builder setTransport(DirectionsTransport transport) {
+            _transport = transport;
+            return this;
+        }
+
+        // Snapshot of the options: per-pair requests in DirectionsBatch, the revalidation call
+        // and buildTemplate(), none of which may see later changes to this builder
+        Builder copy() {
+            Builder copy = new Builder();
+            copy._accessToken = _accessToken;
+            copy._accessTokenHash = _accessTokenHash;
+            copy._profile = _profile;
+            copy._waypoints = _waypoints;
+            copy._origin = _origin;
+            copy._destination = _destination;
+            copy._alternatives = _alternatives;
+            copy._instructions = _instructions;
+            copy._geometry = _geometry;
+            copy._steps = _steps;
+            copy._coordinatePrecision = _coordinatePrecision;
+            copy._deadlineMs = _deadlineMs;
+            copy._transport = _transport;
+            return copy;
+        }
+
+        // Origin and destination when both are set, the waypoints otherwise
+        List<Waypoint> getWaypoints() {
+            if (_origin != null && _destination != null) {
+                return Arrays.asList(_origin, _destination);
+            }
+            return _waypoints;
+        }
+
+        String getRequestKey(String waypointsFormatted) {
+            return _profile + "/" + waypointsFormatted + getOptionsQuery() + "&token=" + getAccessTokenHash();
+        }
+
+        // Only the hash goes into keys, as they're kept in memory and logged
+        private String getAccessTokenHash() {
+            String hash = _accessTokenHash;
+            if (hash == null) {
+                hash = hashAccessToken(_accessToken);
+                _accessTokenHash = hash;
+            }
+            return hash;
+        }
+
+        private static String hashAccessToken(String accessToken) {
+            try {
+                byte[] digest = MessageDigest.getInstance("SHA-256").digest(
+                        String.valueOf(accessToken).getBytes(Charset.forName("UTF-8")));
+                StringBuilder hash = new StringBuilder(16);
+                for (int i = 0; i < 8; i++) {
+                    hash.append(Character.forDigit((digest[i] >> 4) & 0xf, 16));
+                    hash.append(Character.forDigit(digest[i] & 0xf, 16));
+                }
+                return hash.toString();
+            } catch (NoSuchAlgorithmException e) {
+                throw new RuntimeException(e);
+            }
+        }
+
+        // Everything but the waypoints, as a RouteStore matches those by distance
+        String getRouteStoreKey() {
+            return _profile + getOptionsQuery();
+        }
+
+        String getProfile() {
+            return _profile;
+        }
+
+        int getCoordinatePrecision() {
+            return _coordinatePrecision;
+        }
+
+        DirectionsTransport getTransport() {
+            return _transport;
+        }
+
+        // The query DirectionsService.calculate() sends, null options are left out as Retrofit does
+        String getEncodedQuery() {
+            StringBuilder query = new StringBuilder("access_token=").append(encode(_accessToken))
+                    .append("&alternatives=").append(_alternatives);
+            if (_instructions != null) {
+                query.append("&instructions=").append(encode(_instructions));
+            }
+            if (_geometry != null) {
+                query.append("&geometry=").append(encode(_geometry));
+            }
+            return query.append("&steps=").append(_steps).toString();
+        }
+
+        static String encode(String value) {
+            try {
+                return URLEncoder.encode(value, "UTF-8");
+            } catch (UnsupportedEncodingException e) {
+                throw new RuntimeException(e);
+            }
+        }
+
+        private String getOptionsQuery() {
+            return "?alternatives=" + _alternatives + "&instructions=" + _instructions
+                    + "&geometry=" + _geometry + "&steps=" + _steps;
+        }
+
         // Checks if the given token is valid
         private void validateAccessToken(String accessToken) {
             if (TextUtils.isEmpty(accessToken) || (!accessToken.startsWith("pk.") && !accessToken.startsWith("sk."))) {
@@ -188,10 +381,35 @@ public class MapboxDirections {
             }
         }
 
-        public MapboxDirections build() {
+        private void validate() {
             validateAccessToken(_accessToken);
+            if (_coordinatePrecision < 0 || _coordinatePrecision > CoordinateFormatter.MAX_PRECISION) {
+                throw new RuntimeException("Coordinate precision must be between 0 and "
+                        + CoordinateFormatter.MAX_PRECISION + ".");
+            }
+        }
+
+        public MapboxDirections build() {
+            validate();
             return new MapboxDirections(this);
         }
 
+        /*
+         * For many requests that only differ in their waypoints: everything else set here is
+         * validated and encoded once, see DirectionsRequestTemplate. The waypoints set here are
+         * ignored, and later changes to this builder don't affect the template.
+         */
+
+        public DirectionsRequestTemplate buildTemplate() {
+            validate();
+            Builder snapshot = copy();
+            snapshot._waypoints = null;
+            snapshot._origin = null;
+            snapshot._destination = null;
+            snapshot._transport = _transport != null ? _transport : DirectionsTransport.getDefault();
+            snapshot.getAccessTokenHash();
+            return new DirectionsRequestTemplate(snapshot);
+        }
+
     }
 }
@@ -0,0 +1,338 @@
+package com.mapbox.directions.cache;
+
+import com.mapbox.directions.metrics.CallMetrics;
+import com.mapbox.directions.metrics.MetricsListener;
+import com.mapbox.directions.service.models.DirectionsResponse;
+import com.squareup.okhttp.CacheControl;
+import com.squareup.okhttp.Headers;
+
+import java.io.IOException;
+import java.net.HttpURLConnection;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+
+import retrofit.Call;
+import retrofit.Callback;
+import retrofit.Response;
+import retrofit.Retrofit;
+
+/**
+ * A {@link Call} answered from a {@link DirectionsCache} when possible. Misses go to the wrapped
+ * call and successful responses are stored for the next request with the same key, for as long
+ * as their Cache-Control header allows.
+ * <p>
+ * Given a {@link Revalidator}, expired entries stored with an ETag aren't downloaded again:
+ * a conditional request is made instead and, if the server answers 304 Not Modified, the cached
+ * response is returned and kept for another time-to-live, with no body transferred or parsed.
+ */
+public class CachingCall implements Call<DirectionsResponse> {
+
+    /**
+     * Makes the conditional network call revalidating a cached response.
+     */
+    public interface Revalidator {
+
+        /**
+         * @param etag the ETag the cached response was stored with.
+         * @return a new call sending it as If-None-Match.
+         */
+        Call<DirectionsResponse> revalidate(String etag);
+    }
+
+    private final Call<DirectionsResponse> delegate;
+    private final DirectionsCache cache;
+    private final String key;
+    private final Retrofit retrofit;
+    private final Executor backgroundExecutor;
+    private final MetricsListener metricsListener;
+    private final String profile;
+    private final String geometry;
+    private final Revalidator revalidator;
+
+    private volatile boolean canceled;
+    private volatile Call<DirectionsResponse> revalidation;
+    private boolean executed;
+    private Callback<DirectionsResponse> callback;
+    private boolean delivered;
+
+    /**
+     * @param delegate the network call.
+     * @param cache the {@link DirectionsCache} to read and fill.
+     * @param key the normalised request.
+     * @param retrofit the {@link Retrofit} instance handed to callbacks; its callback executor is
+     *                 used to deliver cache hits.
+     * @param backgroundExecutor where disk lookups run for asynchronous calls.
+     */
+    public CachingCall(Call<DirectionsResponse> delegate, DirectionsCache cache, String key,
+                       Retrofit retrofit, Executor backgroundExecutor) {
+        this(delegate, cache, key, retrofit, backgroundExecutor, null, null, null);
+    }
+
+    /**
+     * Same as above, also reporting cache hits. Misses are reported by the network layer.
+     * @param metricsListener where hits are reported, may be null.
+     * @param profile the requested profile, used to tag hits.
+     * @param geometry the requested geometry type, used to tag hits.
+     */
+    public CachingCall(Call<DirectionsResponse> delegate, DirectionsCache cache, String key,
+                       Retrofit retrofit, Executor backgroundExecutor,
+                       MetricsListener metricsListener, String profile, String geometry) {
+        this(delegate, cache, key, retrofit, backgroundExecutor, metricsListener, profile, geometry, null);
+    }
+
+    /**
+     * Same as above, also revalidating expired entries.
+     * @param revalidator makes conditional calls for expired entries that have an ETag, may be
+     *                    null to always go to the wrapped call.
+     */
+    public CachingCall(Call<DirectionsResponse> delegate, DirectionsCache cache, String key,
+                       Retrofit retrofit, Executor backgroundExecutor,
+                       MetricsListener metricsListener, String profile, String geometry,
+                       Revalidator revalidator) {
+        this.delegate = delegate;
+        this.cache = cache;
+        this.key = key;
+        this.retrofit = retrofit;
+        this.backgroundExecutor = backgroundExecutor;
+        this.metricsListener = metricsListener;
+        this.profile = profile;
+        this.geometry = geometry;
+        this.revalidator = revalidator;
+    }
+
+    @Override
+    public Response<DirectionsResponse> execute() throws IOException {
+        synchronized (this) {
+            if (executed) {
+                throw new IllegalStateException("Already executed.");
+            }
+            executed = true;
+        }
+
+        DirectionsResponse cached = lookUp();
+        if (cached != null) {
+            return Response.success(cached);
+        }
+
+        DirectionsCache.Entry stale = lookUpStale();
+        if (stale != null) {
+            Call<DirectionsResponse> call = revalidator.revalidate(stale.getETag());
+            revalidation = call;
+            if (canceled) {
+                call.cancel();
+            }
+            Response<DirectionsResponse> response = call.execute();
+            storeRevalidated(response, stale);
+            return current(response, stale);
+        }
+
+        // Canceled during the lookup, the network call is never made
+        if (canceled) {
+            throw new IOException("Canceled");
+        }
+        Response<DirectionsResponse> response = delegate.execute();
+        store(response);
+        return response;
+    }
+
+    @Override
+    public void enqueue(final Callback<DirectionsResponse> callback) {
+        synchronized (this) {
+            if (executed) {
+                throw new IllegalStateException("Already executed.");
+            }
+            executed = true;
+            this.callback = callback;
+        }
+
+        // Memory hits are answered right away, anything else may touch the disk
+        DirectionsResponse cached = cache.peek(key);
+        if (cached != null || !cache.hasDiskTier()) {
+            lookUpAndEnqueue(callback);
+            return;
+        }
+
+        backgroundExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                lookUpAndEnqueue(callback);
+            }
+        });
+    }
+
+    private void lookUpAndEnqueue(final Callback<DirectionsResponse> callback) {
+        final DirectionsResponse cached = lookUp();
+        final DirectionsCache.Entry stale = cached == null ? lookUpStale() : null;
+        if (stale != null) {
+            Call<DirectionsResponse> call = revalidator.revalidate(stale.getETag());
+            revalidation = call;
+            // Canceled during the lookup, cancel() already reported it
+            if (!canceled) {
+                call.enqueue(new Callback<DirectionsResponse>() {
+                    @Override
+                    public void onResponse(final Response<DirectionsResponse> response, Retrofit retrofit) {
+                        if (claimDelivery()) {
+                            callback.onResponse(current(response, stale), retrofit);
+                        }
+                        // Refreshing the entry may rewrite its file, same as storing a response
+                        backgroundExecutor.execute(new Runnable() {
+                            @Override
+                            public void run() {
+                                storeRevalidated(response, stale);
+                            }
+                        });
+                    }
+
+                    @Override
+                    public void onFailure(Throwable t) {
+                        if (claimDelivery()) {
+                            callback.onFailure(t);
+                        }
+                    }
+                });
+            }
+            return;
+        }
+
+        if (cached == null) {
+            if (!canceled) {
+                delegate.enqueue(new Callback<DirectionsResponse>() {
+                    @Override
+                    public void onResponse(final Response<DirectionsResponse> response, Retrofit retrofit) {
+                        if (claimDelivery()) {
+                            callback.onResponse(response, retrofit);
+                        }
+                        // Writing may serialise the response and touch the disk, keep it off the
+                        // callback thread
+                        backgroundExecutor.execute(new Runnable() {
+                            @Override
+                            public void run() {
+                                store(response);
+                            }
+                        });
+                    }
+
+                    @Override
+                    public void onFailure(Throwable t) {
+                        if (claimDelivery()) {
+                            callback.onFailure(t);
+                        }
+                    }
+                });
+            }
+            return;
+        }
+
+        deliver(new Runnable() {
+            @Override
+            public void run() {
+                if (claimDelivery()) {
+                    callback.onResponse(Response.success(cached), retrofit);
+                }
+            }
+        });
+    }
+
+    // Only one of the response and the cancellation is reported
+    private synchronized boolean claimDelivery() {
+        if (delivered) {
+            return false;
+        }
+        delivered = true;
+        return true;
+    }
+
+    private DirectionsResponse lookUp() {
+        long start = System.nanoTime();
+        DirectionsResponse cached = cache.get(key);
+        if (cached != null && metricsListener != null) {
+            metricsListener.onCall(CallMetrics.cacheHit(profile, geometry, System.nanoTime() - start));
+        }
+        return cached;
+    }
+
+    private DirectionsCache.Entry lookUpStale() {
+        return revalidator == null ? null : cache.getForRevalidation(key);
+    }
+
+    // A 304 carries no body, the cached response is still current
+    private static Response<DirectionsResponse> current(Response<DirectionsResponse> response,
+                                                        DirectionsCache.Entry stale) {
+        if (response.code() != HttpURLConnection.HTTP_NOT_MODIFIED) {
+            return response;
+        }
+        return Response.success(stale.getResponse());
+    }
+
+    private void storeRevalidated(Response<DirectionsResponse> response, DirectionsCache.Entry stale) {
+        if (response.code() != HttpURLConnection.HTTP_NOT_MODIFIED) {
+            store(response);
+        } else {
+            store(stale.getResponse(), response.headers(), stale.getETag());
+        }
+    }
+
+    private void deliver(Runnable runnable) {
+        Executor callbackExecutor = retrofit.callbackExecutor();
+        if (callbackExecutor != null) {
+            callbackExecutor.execute(runnable);
+        } else {
+            runnable.run();
+        }
+    }
+
+    private void store(Response<DirectionsResponse> response) {
+        if (response.isSuccess() && response.body() != null) {
+            store(response.body(), response.headers(), null);
+        }
+    }
+
+    private void store(DirectionsResponse body, Headers headers, String previousETag) {
+        CacheControl cacheControl = CacheControl.parse(headers);
+        if (cacheControl.noStore()) {
+            cache.remove(key);
+            return;
+        }
+
+        String etag = headers.get("ETag");
+        long maxAgeMs = -1;
+        if (cacheControl.noCache()) {
+            maxAgeMs = 0;
+        } else if (cacheControl.maxAgeSeconds() >= 0) {
+            maxAgeMs = TimeUnit.SECONDS.toMillis(cacheControl.maxAgeSeconds());
+        }
+        cache.put(key, body, etag != null ? etag : previousETag, maxAgeMs);
+    }
+
+    @Override
+    public void cancel() {
+        canceled = true;
+        delegate.cancel();
+        Call<DirectionsResponse> call = revalidation;
+        if (call != null) {
+            call.cancel();
+        }
+
+        // A hit may already be queued or a disk lookup still pending, the caller hears of the
+        // cancellation whatever stage the call was at
+        boolean deliver;
+        synchronized (this) {
+            deliver = callback != null && claimDelivery();
+        }
+        if (deliver) {
+            deliver(new Runnable() {
+                @Override
+                public void run() {
+                    callback.onFailure(new IOException("Canceled"));
+                }
+            });
+        }
+    }
+
+    @Override
+    @SuppressWarnings("CloneDoesntCallSuperClone")
+    public Call<DirectionsResponse> clone() {
+        return new CachingCall(delegate.clone(), cache, key, retrofit, backgroundExecutor,
+                metricsListener, profile, geometry, revalidator);
+    }
+}
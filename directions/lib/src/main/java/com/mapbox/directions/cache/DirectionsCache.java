@@ -0,0 +1,565 @@
+package com.mapbox.directions.cache;
+
+import android.util.Log;
+
+import com.google.gson.Gson;
+import com.mapbox.directions.service.DirectionsResponseParser;
+import com.mapbox.directions.service.models.DirectionsResponse;
+import com.mapbox.directions.service.models.DirectionsRoute;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedWriter;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.RandomAccessFile;
+import java.io.Writer;
+import java.nio.charset.Charset;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * An opt-in cache of {@link DirectionsResponse}s keyed on the normalised request (see
+ * {@code MapboxDirections.getRequestKey()}). Useful when the same origin/destination/profile
+ * combinations are requested over and over.
+ * <p>
+ * Entries live in a memory tier with least-recently-used eviction and, optionally, in a disk tier
+ * bounded in bytes. Both honour the same time-to-live, shortened when the server asks for it. All
+ * methods are thread-safe. Cached responses are shared between callers and should be treated as
+ * read-only.
+ * <p>
+ * Expired entries stored with an ETag are kept rather than dropped, until evicted like any other:
+ * {@link #get(String)} no longer returns them, but {@link #getForRevalidation(String)} does, so a
+ * conditional request can confirm they're still current without downloading them again.
+ */
+public class DirectionsCache {
+
+    private final static String LOG_TAG = "DirectionsCache";
+
+    private final static Charset UTF_8 = Charset.forName("UTF-8");
+
+    public final static int DEFAULT_MAX_ENTRIES = 64;
+    public final static long DEFAULT_TTL_MS = TimeUnit.MINUTES.toMillis(10);
+    public final static long DEFAULT_MAX_DISK_BYTES = 10 * 1024 * 1024;
+
+    private final int _maxEntries;
+    private final long _ttlMs;
+    private final File _directory;
+    private final long _maxDiskBytes;
+    private final Gson _gson = new Gson();
+    // Reads back what Gson wrote, faster and with repeated strings shared
+    private final DirectionsResponseParser _parser = new DirectionsResponseParser.Builder().build();
+
+    private final LinkedHashMap<String, Entry> _memory;
+    private final Object _diskLock = new Object();
+
+    private final AtomicLong _hitCount = new AtomicLong();
+    private final AtomicLong _missCount = new AtomicLong();
+    private final AtomicLong _evictionCount = new AtomicLong();
+
+    private DirectionsCache(Builder builder) {
+        _maxEntries = builder._maxEntries;
+        _ttlMs = builder._ttlMs;
+        _directory = builder._directory;
+        _maxDiskBytes = builder._maxDiskBytes;
+
+        // Access ordered, so iteration starts at the least recently used entry
+        _memory = new LinkedHashMap<>(16, 0.75f, true);
+
+        if (_directory != null && !_directory.isDirectory() && !_directory.mkdirs()) {
+            throw new RuntimeException("Unable to create the directions cache directory " + _directory + ".");
+        }
+    }
+
+    /**
+     * Looks a response up in memory and, failing that, on disk.
+     * @param key the normalised request.
+     * @return the cached {@link DirectionsResponse}, or null if there's no fresh entry.
+     */
+    public DirectionsResponse get(String key) {
+        DirectionsResponse response = getFromMemory(key);
+        if (response == null && _directory != null) {
+            Entry entry = getFromDisk(key, false);
+            response = entry == null ? null : entry.response;
+        }
+
+        if (response == null) {
+            _missCount.incrementAndGet();
+        } else {
+            _hitCount.incrementAndGet();
+        }
+        return response;
+    }
+
+    /**
+     * Looks a response up in memory only. Never does I/O so it's safe to call from the main thread.
+     * Hits are not counted until {@link #get(String)} is called.
+     * @param key the normalised request.
+     * @return the cached {@link DirectionsResponse}, or null.
+     */
+    public DirectionsResponse peek(String key) {
+        return getFromMemory(key);
+    }
+
+    /**
+     * Looks up an entry that can be revalidated, fresh or expired. Hits and misses aren't counted,
+     * this is meant to follow a miss from {@link #get(String)}.
+     * @param key the normalised request.
+     * @return the cached {@link Entry}, or null if there's none or it was stored without an ETag.
+     */
+    public Entry getForRevalidation(String key) {
+        Entry entry;
+        synchronized (_memory) {
+            entry = _memory.get(key);
+        }
+        if ((entry == null || entry.etag == null) && _directory != null) {
+            entry = getFromDisk(key, true);
+        }
+        return entry == null || entry.etag == null ? null : entry;
+    }
+
+    /**
+     * Whether lookups may need to go to disk.
+     * @return true if a disk tier was configured.
+     */
+    public boolean hasDiskTier() {
+        return _directory != null;
+    }
+
+    /**
+     * Stores a response in every tier.
+     * @param key the normalised request.
+     * @param response the {@link DirectionsResponse} to keep.
+     */
+    public void put(String key, DirectionsResponse response) {
+        put(key, response, null, -1);
+    }
+
+    /**
+     * Stores a response in every tier, along with what the server said about caching it.
+     * @param key the normalised request.
+     * @param response the {@link DirectionsResponse} to keep.
+     * @param etag the ETag header it came with, may be null.
+     * @param maxAgeMs how long the server allows it to be reused, or -1 if it didn't say. The
+     *                 configured time-to-live still applies when shorter.
+     */
+    public void put(String key, DirectionsResponse response, String etag, long maxAgeMs) {
+        long ttlMs = maxAgeMs < 0 ? _ttlMs : Math.min(maxAgeMs, _ttlMs);
+        Entry entry = new Entry(response, System.currentTimeMillis() + ttlMs, etag);
+        Entry previous;
+        synchronized (_memory) {
+            previous = _memory.put(key, entry);
+            trimMemory();
+        }
+
+        if (_directory != null) {
+            // A revalidated response only needs a new expiry time, not a full rewrite
+            boolean unchanged = previous != null && previous.response == response
+                    && etag != null && etag.equals(previous.etag);
+            if (!unchanged || !refreshOnDisk(key, entry.expiresAt)) {
+                putOnDisk(key, entry);
+            }
+        }
+    }
+
+    /**
+     * Drops a single entry from every tier.
+     * @param key the normalised request.
+     */
+    public void remove(String key) {
+        synchronized (_memory) {
+            _memory.remove(key);
+        }
+
+        if (_directory != null) {
+            synchronized (_diskLock) {
+                File file = fileFor(key);
+                if (file.exists() && !file.delete()) {
+                    Log.w(LOG_TAG, "Unable to delete " + file + ".");
+                }
+            }
+        }
+    }
+
+    /**
+     * Drops every entry from every tier. Counters are left as they are.
+     */
+    public void clear() {
+        synchronized (_memory) {
+            _memory.clear();
+        }
+
+        if (_directory != null) {
+            synchronized (_diskLock) {
+                File[] files = _directory.listFiles();
+                if (files != null) {
+                    for (File file : files) {
+                        if (!file.delete()) {
+                            Log.w(LOG_TAG, "Unable to delete " + file + ".");
+                        }
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Number of entries currently held in memory.
+     * @return integer entry count.
+     */
+    public int size() {
+        synchronized (_memory) {
+            return _memory.size();
+        }
+    }
+
+    /**
+     * Lookups answered from either tier.
+     * @return long hit count.
+     */
+    public long getHitCount() {
+        return _hitCount.get();
+    }
+
+    /**
+     * Lookups that had to go to the network.
+     * @return long miss count.
+     */
+    public long getMissCount() {
+        return _missCount.get();
+    }
+
+    /**
+     * Entries dropped to respect the memory or disk bounds. Expired entries are not counted.
+     * @return long eviction count.
+     */
+    public long getEvictionCount() {
+        return _evictionCount.get();
+    }
+
+    /*
+     * Memory tier
+     */
+
+    private DirectionsResponse getFromMemory(String key) {
+        synchronized (_memory) {
+            Entry entry = _memory.get(key);
+            if (entry == null) {
+                return null;
+            }
+            if (entry.expiresAt <= System.currentTimeMillis()) {
+                // Kept for revalidation if it has an ETag
+                if (entry.etag == null) {
+                    _memory.remove(key);
+                }
+                return null;
+            }
+            return entry.response;
+        }
+    }
+
+    private void trimMemory() {
+        Iterator<Entry> iterator = _memory.values().iterator();
+        while (_memory.size() > _maxEntries && iterator.hasNext()) {
+            iterator.next();
+            iterator.remove();
+            _evictionCount.incrementAndGet();
+        }
+    }
+
+    /*
+     * Disk tier. Each entry is a file named after a hash of the key, holding the expiry time and
+     * the ETag, if any, on the first line and the response as JSON after it. The file
+     * modification time is used for least-recently-used eviction.
+     */
+
+    private Entry getFromDisk(String key, boolean includeExpired) {
+        long expiresAt = 0;
+        String etag = null;
+        byte[] json = null;
+        File file;
+
+        // Only the file access needs the lock, the response is parsed once it's released
+        synchronized (_diskLock) {
+            file = fileFor(key);
+            if (!file.exists()) {
+                return null;
+            }
+
+            boolean keep = false;
+            try {
+                DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+                try {
+                    String header = readHeader(in);
+                    int space = header.indexOf(' ');
+                    expiresAt = Long.parseLong(space < 0 ? header : header.substring(0, space));
+                    etag = space < 0 ? null : header.substring(space + 1);
+                    boolean fresh = expiresAt > System.currentTimeMillis();
+                    if (fresh || (includeExpired && etag != null)) {
+                        json = new byte[(int) file.length() - header.getBytes(UTF_8).length - 1];
+                        in.readFully(json);
+                    }
+                    // Kept for revalidation if it has an ETag
+                    keep = fresh || etag != null;
+                } finally {
+                    in.close();
+                }
+            } catch (IOException | RuntimeException e) {
+                Log.w(LOG_TAG, "Unable to read cached response " + file + ".", e);
+                json = null;
+            }
+
+            if (!keep) {
+                if (!file.delete()) {
+                    Log.w(LOG_TAG, "Unable to delete " + file + ".");
+                }
+                return null;
+            }
+            if (json == null) {
+                return null;
+            }
+
+            file.setLastModified(System.currentTimeMillis());
+        }
+
+        Entry entry;
+        try {
+            entry = new Entry(readResponse(json), expiresAt, etag);
+        } catch (IOException | RuntimeException e) {
+            Log.w(LOG_TAG, "Unable to read cached response " + file + ".", e);
+            remove(key);
+            return null;
+        }
+
+        // Promote to memory so the next lookup is cheap
+        synchronized (_memory) {
+            _memory.put(key, entry);
+            trimMemory();
+        }
+        return entry;
+    }
+
+    private void putOnDisk(String key, Entry entry) {
+        DirectionsResponse response = entry.response;
+
+        // Lazy routes only hold their raw data until accessed, make sure everything gets written
+        for (DirectionsRoute route : response.getRoutes()) {
+            route.getGeometry();
+            route.getSteps();
+        }
+
+        synchronized (_diskLock) {
+            File file = fileFor(key);
+            File temp = new File(_directory, file.getName() + ".tmp");
+            try {
+                Writer writer = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(temp), UTF_8));
+                try {
+                    writer.write(Long.toString(entry.expiresAt));
+                    if (entry.etag != null) {
+                        writer.write(' ');
+                        writer.write(entry.etag);
+                    }
+                    writer.write('\n');
+                    writeResponse(response, writer);
+                } finally {
+                    writer.close();
+                }
+                if (!temp.renameTo(file)) {
+                    throw new IOException("Unable to rename " + temp + ".");
+                }
+            } catch (IOException e) {
+                Log.w(LOG_TAG, "Unable to cache response on disk.", e);
+                temp.delete();
+                return;
+            }
+
+            trimDisk();
+        }
+    }
+
+    // Overwrites the expiry time in place, as long as it has as many digits as the old one
+    private boolean refreshOnDisk(String key, long expiresAt) {
+        byte[] digits = Long.toString(expiresAt).getBytes(UTF_8);
+        synchronized (_diskLock) {
+            File file = fileFor(key);
+            if (!file.exists()) {
+                return false;
+            }
+
+            try {
+                RandomAccessFile access = new RandomAccessFile(file, "rw");
+                try {
+                    byte[] header = new byte[digits.length + 1];
+                    access.readFully(header);
+                    for (int i = 0; i < digits.length; i++) {
+                        if (!Character.isDigit(header[i])) {
+                            return false;
+                        }
+                    }
+                    if (header[digits.length] != ' ' && header[digits.length] != '\n') {
+                        return false;
+                    }
+                    access.seek(0);
+                    access.write(digits);
+                } finally {
+                    access.close();
+                }
+            } catch (IOException e) {
+                Log.w(LOG_TAG, "Unable to refresh cached response " + file + ".", e);
+                return false;
+            }
+
+            file.setLastModified(System.currentTimeMillis());
+            return true;
+        }
+    }
+
+    private void trimDisk() {
+        File[] files = _directory.listFiles();
+        if (files == null) {
+            return;
+        }
+
+        long total = 0;
+        for (File file : files) {
+            total += file.length();
+        }
+        if (total <= _maxDiskBytes) {
+            return;
+        }
+
+        Arrays.sort(files, new Comparator<File>() {
+            @Override
+            public int compare(File lhs, File rhs) {
+                long l = lhs.lastModified();
+                long r = rhs.lastModified();
+                return l < r ? -1 : (l == r ? 0 : 1);
+            }
+        });
+        for (int i = 0; i < files.length && total > _maxDiskBytes; i++) {
+            long length = files[i].length();
+            if (files[i].delete()) {
+                total -= length;
+                _evictionCount.incrementAndGet();
+            }
+        }
+    }
+
+    // The first line, up to but excluding the newline
+    private static String readHeader(DataInputStream in) throws IOException {
+        ByteArrayOutputStream header = new ByteArrayOutputStream(32);
+        for (int b = in.read(); b != '\n'; b = in.read()) {
+            if (b < 0) {
+                throw new EOFException("Missing header.");
+            }
+            header.write(b);
+        }
+        return header.toString("UTF-8");
+    }
+
+    private DirectionsResponse readResponse(byte[] json) throws IOException {
+        return _parser.parse(json);
+    }
+
+    private void writeResponse(DirectionsResponse response, Writer writer) throws IOException {
+        _gson.toJson(response, writer);
+    }
+
+    private File fileFor(String key) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-1").digest(key.getBytes(UTF_8));
+            StringBuilder name = new StringBuilder(digest.length * 2);
+            for (byte b : digest) {
+                name.append(Character.forDigit((b >> 4) & 0xf, 16));
+                name.append(Character.forDigit(b & 0xf, 16));
+            }
+            return new File(_directory, name.toString());
+        } catch (NoSuchAlgorithmException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * A cached response and what's needed to revalidate it.
+     */
+    public static class Entry {
+
+        private final DirectionsResponse response;
+        private final long expiresAt;
+        private final String etag;
+
+        private Entry(DirectionsResponse response, long expiresAt, String etag) {
+            this.response = response;
+            this.expiresAt = expiresAt;
+            this.etag = etag;
+        }
+
+        public DirectionsResponse getResponse() {
+            return response;
+        }
+
+        /*
+         * Time the entry stops being served without revalidation, in milliseconds since the epoch
+         */
+
+        public long getExpiresAt() {
+            return expiresAt;
+        }
+
+        public String getETag() {
+            return etag;
+        }
+    }
+
+    /*
+     * Builder
+     */
+
+    public static class Builder {
+
+        private int _maxEntries = DEFAULT_MAX_ENTRIES;
+        private long _ttlMs = DEFAULT_TTL_MS;
+        private File _directory;
+        private long _maxDiskBytes = DEFAULT_MAX_DISK_BYTES;
+
+        public Builder setMaxEntries(int maxEntries) {
+            _maxEntries = maxEntries;
+            return this;
+        }
+
+        public Builder setTtl(long ttl, TimeUnit unit) {
+            _ttlMs = unit.toMillis(ttl);
+            return this;
+        }
+
+        /*
+         * The disk tier is off unless a directory is given. Use a directory dedicated to this
+         * cache, e.g. new File(context.getCacheDir(), "directions"), as it's cleared and trimmed.
+         */
+
+        public Builder setDiskCache(File directory, long maxBytes) {
+            _directory = directory;
+            _maxDiskBytes = maxBytes;
+            return this;
+        }
+
+        public DirectionsCache build() {
+            if (_maxEntries < 1) {
+                throw new RuntimeException("A DirectionsCache needs room for at least one entry.");
+            }
+            return new DirectionsCache(this);
+        }
+
+    }
+}
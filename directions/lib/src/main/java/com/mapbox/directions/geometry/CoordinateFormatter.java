@@ -0,0 +1,110 @@
+package com.mapbox.directions.geometry;
+
+import com.mapbox.directions.service.models.Waypoint;
+
+import java.util.List;
+
+/**
+ * Writes coordinates in the {lon},{lat};{lon},{lat} form the Directions API expects in its URL
+ * path. Output always uses '.' as the decimal separator whatever the default locale, and is
+ * appended straight to a caller supplied {@link StringBuilder}, without String.format() or any
+ * intermediate String per coordinate.
+ */
+public class CoordinateFormatter {
+
+    public final static int DEFAULT_PRECISION = 6;
+
+    // Keeps |coordinate| * 10^precision well within a long
+    public final static int MAX_PRECISION = 9;
+
+    private final static long[] POWERS_OF_TEN = new long[MAX_PRECISION + 1];
+
+    static {
+        long power = 1;
+        for (int i = 0; i <= MAX_PRECISION; i++) {
+            POWERS_OF_TEN[i] = power;
+            power *= 10;
+        }
+    }
+
+    private CoordinateFormatter() {
+    }
+
+    /**
+     * Appends a number with exactly {@code precision} decimal places, rounding half away from
+     * zero. Values that round to zero are written without a sign.
+     * @param out where to write.
+     * @param value the number, e.g. a longitude.
+     * @param precision number of decimal places, between 0 and {@link #MAX_PRECISION}.
+     * @return the given {@link StringBuilder}.
+     * @throws IllegalArgumentException if the value isn't finite or the precision is out of range.
+     */
+    public static StringBuilder append(StringBuilder out, double value, int precision) {
+        if (precision < 0 || precision > MAX_PRECISION) {
+            throw new IllegalArgumentException("Coordinate precision must be between 0 and " + MAX_PRECISION + ".");
+        }
+        if (Double.isNaN(value) || Double.isInfinite(value)) {
+            throw new IllegalArgumentException("Invalid coordinate " + value + ".");
+        }
+
+        long factor = POWERS_OF_TEN[precision];
+        long scaled = Math.round(Math.abs(value) * factor);
+        if (value < 0 && scaled != 0) {
+            out.append('-');
+        }
+        out.append(scaled / factor);
+
+        if (precision > 0) {
+            out.append('.');
+            long fraction = scaled % factor;
+            // Leading zeros of the fractional part
+            for (long digit = factor / 10; digit > 1 && fraction < digit; digit /= 10) {
+                out.append('0');
+            }
+            out.append(fraction);
+        }
+        return out;
+    }
+
+    /**
+     * Appends a single {lon},{lat} pair.
+     * @param out where to write.
+     * @param waypoint the {@link Waypoint} to write.
+     * @param precision number of decimal places.
+     * @return the given {@link StringBuilder}.
+     */
+    public static StringBuilder append(StringBuilder out, Waypoint waypoint, int precision) {
+        append(out, waypoint.getLongitude(), precision);
+        out.append(',');
+        return append(out, waypoint.getLatitude(), precision);
+    }
+
+    /**
+     * Appends semicolon-separated {lon},{lat} pairs.
+     * @param out where to write.
+     * @param waypoints the {@link Waypoint}s to write, in order.
+     * @param precision number of decimal places.
+     * @return the given {@link StringBuilder}.
+     */
+    public static StringBuilder append(StringBuilder out, List<Waypoint> waypoints, int precision) {
+        for (int i = 0; i < waypoints.size(); i++) {
+            if (i > 0) {
+                out.append(';');
+            }
+            append(out, waypoints.get(i), precision);
+        }
+        return out;
+    }
+
+    /**
+     * Upper bound of the characters needed to write the given number of waypoints, useful to size
+     * a {@link StringBuilder} so it never grows.
+     * @param count number of waypoints.
+     * @param precision number of decimal places.
+     * @return integer number of characters.
+     */
+    public static int capacityFor(int count, int precision) {
+        // "-180." + digits, twice, plus the comma and semicolon
+        return count * (2 * (5 + precision) + 2);
+    }
+}
@@ -0,0 +1,275 @@
+package com.mapbox.directions.geometry;
+
+/**
+ * Spherical geometry shared by the rest of the library, in meters and degrees on a sphere of
+ * {@link #EARTH_RADIUS_METERS} (the mean Earth radius, so within 0.5% of the ellipsoid).
+ * <p>
+ * Single calls take plain longitude/latitude values. Code measuring many distances along the
+ * same polyline should convert it once with {@link #toVectors(double[])} or
+ * {@link #cumulativeDistances(double[])}: unit vectors need no trigonometry at all afterwards,
+ * and the segment functions working on them never allocate.
+ * <p>
+ * {@link #fastDistance(double, double, double, double)} trades accuracy for speed with an
+ * equirectangular approximation, see its bound before using it.
+ */
+public final class GeoMath {
+
+    public final static double EARTH_RADIUS_METERS = 6371008.8;
+    public final static double METERS_PER_DEGREE = EARTH_RADIUS_METERS * Math.PI / 180;
+    public final static double METERS_PER_MILE = 1609.344;
+
+    private final static double RADIANS_PER_DEGREE = Math.PI / 180;
+
+    private GeoMath() {
+    }
+
+    /*
+     * Point to point
+     */
+
+    /**
+     * Great circle distance (haversine).
+     * @return double with unit meters.
+     */
+    public static double distance(double lon1, double lat1, double lon2, double lat2) {
+        double sinLat = Math.sin((lat2 - lat1) * RADIANS_PER_DEGREE / 2);
+        double sinLon = Math.sin((lon2 - lon1) * RADIANS_PER_DEGREE / 2);
+        double a = sinLat * sinLat
+                + sinLon * sinLon * Math.cos(lat1 * RADIANS_PER_DEGREE) * Math.cos(lat2 * RADIANS_PER_DEGREE);
+        return 2 * EARTH_RADIUS_METERS * Math.asin(Math.min(1, Math.sqrt(a)));
+    }
+
+    /**
+     * Equirectangular approximation of {@link #distance(double, double, double, double)}, with a
+     * single cosine and no other trigonometry. The relative error stays below 0.1% for points up
+     * to 100 km apart between latitudes -70 and 70, and grows with the square of the distance
+     * beyond that, so use it for nearby points only.
+     * @return double with unit meters.
+     */
+    public static double fastDistance(double lon1, double lat1, double lon2, double lat2) {
+        double dLon = lon2 - lon1;
+        if (dLon > 180) {
+            dLon -= 360;
+        } else if (dLon < -180) {
+            dLon += 360;
+        }
+        double x = dLon * Math.cos((lat1 + lat2) * RADIANS_PER_DEGREE / 2);
+        double y = lat2 - lat1;
+        return Math.sqrt(x * x + y * y) * METERS_PER_DEGREE;
+    }
+
+    /**
+     * Initial bearing of the great circle from the first point to the second.
+     * @return double with unit degrees, from 0 (north) clockwise to 360 excluded.
+     */
+    public static double bearing(double lon1, double lat1, double lon2, double lat2) {
+        double phi1 = lat1 * RADIANS_PER_DEGREE;
+        double phi2 = lat2 * RADIANS_PER_DEGREE;
+        double dLon = (lon2 - lon1) * RADIANS_PER_DEGREE;
+        double y = Math.sin(dLon) * Math.cos(phi2);
+        double x = Math.cos(phi1) * Math.sin(phi2) - Math.sin(phi1) * Math.cos(phi2) * Math.cos(dLon);
+        double bearing = Math.toDegrees(Math.atan2(y, x));
+        return bearing < 0 ? bearing + 360 : bearing;
+    }
+
+    /**
+     * The point a fraction of the way along the great circle between two points.
+     * @param fraction 0 for the first point, 1 for the second.
+     * @param out receives the longitude then the latitude, at {@code out[0]} and {@code out[1]}.
+     */
+    public static void interpolate(double lon1, double lat1, double lon2, double lat2, double fraction, double[] out) {
+        double[] vectors = new double[6];
+        toVector(lon1, lat1, vectors, 0);
+        toVector(lon2, lat2, vectors, 3);
+        interpolate(vectors, 0, vectors, 3, fraction, out);
+    }
+
+    /*
+     * Point to great circle
+     */
+
+    /**
+     * Signed distance from a point to the great circle through two others.
+     * @return double with unit meters, positive when the point is left of the direction of travel.
+     */
+    public static double crossTrackDistance(double lon, double lat,
+                                            double lon1, double lat1, double lon2, double lat2) {
+        double[] vectors = new double[9];
+        toVector(lon, lat, vectors, 0);
+        toVector(lon1, lat1, vectors, 3);
+        toVector(lon2, lat2, vectors, 6);
+        return crossTrackDistance(vectors, 0, vectors, 3);
+    }
+
+    /**
+     * Distance from a point to the shortest great circle arc between two others: the cross-track
+     * distance when the point lies abreast of the arc, the distance to the nearest end otherwise.
+     * @return double with unit meters.
+     */
+    public static double distanceToSegment(double lon, double lat,
+                                           double lon1, double lat1, double lon2, double lat2) {
+        double[] vectors = new double[9];
+        toVector(lon, lat, vectors, 0);
+        toVector(lon1, lat1, vectors, 3);
+        toVector(lon2, lat2, vectors, 6);
+        return distanceToSegment(vectors, 0, vectors, 3);
+    }
+
+    /*
+     * Unit vectors. A point is stored as the x, y, z of its position on the unit sphere, which
+     * turns distances and projections into dot and cross products.
+     */
+
+    /**
+     * Converts a point to a unit vector.
+     * @param out receives x, y and z from {@code offset}.
+     */
+    public static void toVector(double lon, double lat, double[] out, int offset) {
+        double phi = lat * RADIANS_PER_DEGREE;
+        double lambda = lon * RADIANS_PER_DEGREE;
+        double cosPhi = Math.cos(phi);
+        out[offset] = cosPhi * Math.cos(lambda);
+        out[offset + 1] = cosPhi * Math.sin(lambda);
+        out[offset + 2] = Math.sin(phi);
+    }
+
+    /**
+     * Converts a polyline to unit vectors, once, for the vector functions below.
+     * @param coordinates interleaved longitude/latitude pairs.
+     * @return x, y and z per vertex, i.e. vertex {@code i} starts at {@code 3 * i}.
+     */
+    public static double[] toVectors(double[] coordinates) {
+        double[] vectors = new double[coordinates.length / 2 * 3];
+        for (int i = 0; i < coordinates.length / 2; i++) {
+            toVector(coordinates[2 * i], coordinates[2 * i + 1], vectors, 3 * i);
+        }
+        return vectors;
+    }
+
+    /**
+     * Great circle distance between two unit vectors, accurate at any distance.
+     * @return double with unit meters.
+     */
+    public static double distance(double[] a, int aOffset, double[] b, int bOffset) {
+        double ax = a[aOffset], ay = a[aOffset + 1], az = a[aOffset + 2];
+        double bx = b[bOffset], by = b[bOffset + 1], bz = b[bOffset + 2];
+        double cx = ay * bz - az * by;
+        double cy = az * bx - ax * bz;
+        double cz = ax * by - ay * bx;
+        return EARTH_RADIUS_METERS * Math.atan2(Math.sqrt(cx * cx + cy * cy + cz * cz), ax * bx + ay * by + az * bz);
+    }
+
+    /**
+     * Signed distance from a point to the great circle through the segment starting at
+     * {@code segment} in {@code vectors}, i.e. through its vertices {@code segment} and
+     * {@code segment + 1} (offsets {@code 3 * segment} and {@code 3 * segment + 3}).
+     * @return double with unit meters, positive left of the direction of travel, 0 for a segment
+     * of zero length.
+     */
+    public static double crossTrackDistance(double[] point, int pointOffset, double[] vectors, int segmentOffset) {
+        double ax = vectors[segmentOffset], ay = vectors[segmentOffset + 1], az = vectors[segmentOffset + 2];
+        double bx = vectors[segmentOffset + 3], by = vectors[segmentOffset + 4], bz = vectors[segmentOffset + 5];
+
+        // Normal to the great circle
+        double nx = ay * bz - az * by;
+        double ny = az * bx - ax * bz;
+        double nz = ax * by - ay * bx;
+        double length = Math.sqrt(nx * nx + ny * ny + nz * nz);
+        if (length == 0) {
+            return 0;
+        }
+
+        double sine = (point[pointOffset] * nx + point[pointOffset + 1] * ny + point[pointOffset + 2] * nz) / length;
+        return EARTH_RADIUS_METERS * Math.asin(Math.max(-1, Math.min(1, sine)));
+    }
+
+    /**
+     * Distance from a point to a segment given as unit vectors, see
+     * {@link #crossTrackDistance(double[], int, double[], int)} for the layout. Constant time and
+     * allocation free.
+     * @return double with unit meters.
+     */
+    public static double distanceToSegment(double[] point, int pointOffset, double[] vectors, int segmentOffset) {
+        double px = point[pointOffset], py = point[pointOffset + 1], pz = point[pointOffset + 2];
+        double ax = vectors[segmentOffset], ay = vectors[segmentOffset + 1], az = vectors[segmentOffset + 2];
+        double bx = vectors[segmentOffset + 3], by = vectors[segmentOffset + 4], bz = vectors[segmentOffset + 5];
+
+        double nx = ay * bz - az * by;
+        double ny = az * bx - ax * bz;
+        double nz = ax * by - ay * bx;
+        double normSquared = nx * nx + ny * ny + nz * nz;
+
+        if (normSquared > 0) {
+            // The point's projection on the great circle lies within the arc when it's on the
+            // inner side of both the plane through a and n and the one through b and n
+            double pn = px * nx + py * ny + pz * nz;
+            double cx = px - pn * nx / normSquared;
+            double cy = py - pn * ny / normSquared;
+            double cz = pz - pn * nz / normSquared;
+            double afterA = (ay * cz - az * cy) * nx + (az * cx - ax * cz) * ny + (ax * cy - ay * cx) * nz;
+            double beforeB = (cy * bz - cz * by) * nx + (cz * bx - cx * bz) * ny + (cx * by - cy * bx) * nz;
+            if (afterA >= 0 && beforeB >= 0) {
+                double sine = pn / Math.sqrt(normSquared);
+                return EARTH_RADIUS_METERS * Math.abs(Math.asin(Math.max(-1, Math.min(1, sine))));
+            }
+        }
+
+        return Math.min(distance(point, pointOffset, vectors, segmentOffset),
+                distance(point, pointOffset, vectors, segmentOffset + 3));
+    }
+
+    /**
+     * The point a fraction of the way between two unit vectors, along the great circle.
+     * @param out receives the longitude then the latitude, at {@code out[0]} and {@code out[1]}.
+     */
+    public static void interpolate(double[] a, int aOffset, double[] b, int bOffset, double fraction, double[] out) {
+        double angle = distance(a, aOffset, b, bOffset) / EARTH_RADIUS_METERS;
+        double wa;
+        double wb;
+        if (angle == 0) {
+            wa = 1 - fraction;
+            wb = fraction;
+        } else {
+            double sine = Math.sin(angle);
+            wa = Math.sin((1 - fraction) * angle) / sine;
+            wb = Math.sin(fraction * angle) / sine;
+        }
+
+        double x = wa * a[aOffset] + wb * b[bOffset];
+        double y = wa * a[aOffset + 1] + wb * b[bOffset + 1];
+        double z = wa * a[aOffset + 2] + wb * b[bOffset + 2];
+        out[0] = Math.toDegrees(Math.atan2(y, x));
+        out[1] = Math.toDegrees(Math.atan2(z, Math.sqrt(x * x + y * y)));
+    }
+
+    /*
+     * Polylines
+     */
+
+    /**
+     * Distance along a polyline from its first vertex to each vertex, computing each vertex's
+     * cosine once rather than once per segment end.
+     * @param coordinates interleaved longitude/latitude pairs.
+     * @return double array with unit meters, one per vertex, starting at 0.
+     */
+    public static double[] cumulativeDistances(double[] coordinates) {
+        int numVertices = coordinates.length / 2;
+        double[] distances = new double[numVertices];
+        if (numVertices == 0) {
+            return distances;
+        }
+
+        double previousCos = Math.cos(coordinates[1] * RADIANS_PER_DEGREE);
+        for (int i = 1; i < numVertices; i++) {
+            double lon1 = coordinates[2 * i - 2], lat1 = coordinates[2 * i - 1];
+            double lon2 = coordinates[2 * i], lat2 = coordinates[2 * i + 1];
+            double cos = Math.cos(lat2 * RADIANS_PER_DEGREE);
+            double sinLat = Math.sin((lat2 - lat1) * RADIANS_PER_DEGREE / 2);
+            double sinLon = Math.sin((lon2 - lon1) * RADIANS_PER_DEGREE / 2);
+            double a = sinLat * sinLat + sinLon * sinLon * previousCos * cos;
+            distances[i] = distances[i - 1] + 2 * EARTH_RADIUS_METERS * Math.asin(Math.min(1, Math.sqrt(a)));
+            previousCos = cos;
+        }
+        return distances;
+    }
+}
@@ -0,0 +1,214 @@
+package com.mapbox.directions.geometry;
+
+/**
+ * Douglas-Peucker simplification of a polyline with the error bound given in meters, done once
+ * for every tolerance. Building runs the algorithm to the end, recording for each vertex the
+ * largest tolerance at which it survives (its importance). Simplifying to any tolerance is then
+ * a single pass keeping the vertices more important than it, and gives exactly what running
+ * Douglas-Peucker with that tolerance would.
+ * <p>
+ * Every vertex of the original line is within the tolerance of the simplified one, so drawing
+ * at one pixel's worth of meters (see {@link #toleranceForZoom(int, double)}) looks the same as
+ * drawing everything. Distances use an equirectangular projection centred on each vertex, which
+ * is accurate to well under 1% at the scale of any useful tolerance.
+ * <p>
+ * Everything is kept in primitive arrays. Instances are safe to share between threads.
+ */
+public class LineSimplifier {
+
+    public final static int MAX_ZOOM = 22;
+
+    private final static double EARTH_CIRCUMFERENCE_METERS = 2 * Math.PI * GeoMath.EARTH_RADIUS_METERS;
+    private final static int TILE_SIZE = 512;
+
+    // Interleaved lon/lat pairs, one per vertex
+    private final double[] coordinates;
+    // Tolerance in meters up to which each vertex is kept, infinite for both ends
+    private final double[] importance;
+    private final double latitude;
+
+    // Simplified coordinates per zoom level, computed when first asked for
+    private final double[][] zoomLevels = new double[MAX_ZOOM + 1][];
+
+    /**
+     * Ranks the vertices of a polyline, in {@code O(n log n)} for typical routes.
+     * @param coordinates interleaved longitude/latitude pairs, i.e. {@code [lon0, lat0, lon1, lat1, ...]}.
+     *                    The array is not copied and must not be modified afterwards.
+     */
+    public LineSimplifier(double[] coordinates) {
+        if (coordinates.length % 2 != 0) {
+            throw new IllegalArgumentException("Coordinates must be given as longitude/latitude pairs.");
+        }
+
+        this.coordinates = coordinates;
+        int numVertices = coordinates.length / 2;
+        importance = new double[numVertices];
+
+        double latitudeSum = 0;
+        for (int i = 0; i < numVertices; i++) {
+            latitudeSum += coordinates[2 * i + 1];
+        }
+        latitude = numVertices > 0 ? latitudeSum / numVertices : 0;
+
+        if (numVertices > 0) {
+            importance[0] = Double.POSITIVE_INFINITY;
+            importance[numVertices - 1] = Double.POSITIVE_INFINITY;
+        }
+        if (numVertices > 2) {
+            rank(numVertices);
+        }
+    }
+
+    /**
+     * Meters covered by one pixel at a zoom level, a sensible tolerance for drawing there.
+     * @param zoom map zoom level, from 0 to {@link #MAX_ZOOM}.
+     * @param latitude where on the map, as pixels shrink away from the equator.
+     * @return double with unit meters.
+     */
+    public static double toleranceForZoom(int zoom, double latitude) {
+        return EARTH_CIRCUMFERENCE_METERS * Math.cos(Math.toRadians(latitude)) / ((double) TILE_SIZE * (1L << zoom));
+    }
+
+    /**
+     * Number of vertices of the original polyline.
+     * @return integer number of vertices.
+     */
+    public int size() {
+        return importance.length;
+    }
+
+    /**
+     * The largest tolerance at which a vertex is still kept.
+     * @param vertex position of the vertex.
+     * @return double with unit meters, infinite for the first and last vertices.
+     */
+    public double getImportance(int vertex) {
+        return importance[vertex];
+    }
+
+    /**
+     * Number of vertices {@link #simplify(double)} keeps for a tolerance, without building the result.
+     * @param toleranceMeters the largest distance allowed between the original and simplified lines.
+     * @return integer number of vertices.
+     */
+    public int count(double toleranceMeters) {
+        int count = 0;
+        for (double value : importance) {
+            if (value > toleranceMeters) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Simplifies the polyline.
+     * @param toleranceMeters the largest distance allowed between the original and simplified lines.
+     * @return interleaved longitude/latitude pairs of the vertices kept, a new array.
+     */
+    public double[] simplify(double toleranceMeters) {
+        double[] simplified = new double[count(toleranceMeters) * 2];
+        int position = 0;
+        for (int i = 0; i < importance.length; i++) {
+            if (importance[i] > toleranceMeters) {
+                simplified[position++] = coordinates[2 * i];
+                simplified[position++] = coordinates[2 * i + 1];
+            }
+        }
+        return simplified;
+    }
+
+    /**
+     * Simplifies the polyline for drawing at a zoom level, to one pixel at the route's average
+     * latitude. Results are kept, so asking again for the same zoom level is free.
+     * @param zoom map zoom level, from 0 to {@link #MAX_ZOOM}.
+     * @return interleaved longitude/latitude pairs, shared and must not be modified.
+     */
+    public double[] simplifyForZoom(int zoom) {
+        if (zoom < 0 || zoom > MAX_ZOOM) {
+            throw new IllegalArgumentException("Zoom must be between 0 and " + MAX_ZOOM + ".");
+        }
+
+        synchronized (zoomLevels) {
+            if (zoomLevels[zoom] == null) {
+                zoomLevels[zoom] = simplify(toleranceForZoom(zoom, latitude));
+            }
+            return zoomLevels[zoom];
+        }
+    }
+
+    /*
+     * Douglas-Peucker without recursion, so long routes can't overflow the stack. A vertex's
+     * importance is its distance to the chord it split, capped by the importance of the vertex
+     * that split the enclosing range, since it can't survive once that one is gone.
+     */
+
+    private void rank(int numVertices) {
+        // Each pop pushes at most two ranges that together are one vertex shorter
+        int[] firsts = new int[numVertices];
+        int[] lasts = new int[numVertices];
+        double[] caps = new double[numVertices];
+        int top = 0;
+
+        // Longitude scale at each vertex, computed once rather than for every chord
+        double[] scales = new double[numVertices];
+        for (int i = 0; i < numVertices; i++) {
+            scales[i] = Math.cos(Math.toRadians(coordinates[2 * i + 1]));
+        }
+
+        firsts[top] = 0;
+        lasts[top] = numVertices - 1;
+        caps[top++] = Double.POSITIVE_INFINITY;
+
+        while (top > 0) {
+            top--;
+            int first = firsts[top];
+            int last = lasts[top];
+            double cap = caps[top];
+
+            int farthest = -1;
+            double farthestDistance = -1;
+            for (int i = first + 1; i < last; i++) {
+                double distance = distanceToChord(i, first, last, scales[i]);
+                if (distance > farthestDistance) {
+                    farthest = i;
+                    farthestDistance = distance;
+                }
+            }
+
+            double rank = Math.min(farthestDistance, cap);
+            importance[farthest] = rank;
+            if (farthest - first > 1) {
+                firsts[top] = first;
+                lasts[top] = farthest;
+                caps[top++] = rank;
+            }
+            if (last - farthest > 1) {
+                firsts[top] = farthest;
+                lasts[top] = last;
+                caps[top++] = rank;
+            }
+        }
+    }
+
+    // Meters from a vertex to the segment joining two others, projected around the vertex
+    private double distanceToChord(int vertex, int first, int last, double scale) {
+        double longitude = coordinates[2 * vertex];
+        double latitude = coordinates[2 * vertex + 1];
+
+        double ax = (coordinates[2 * first] - longitude) * scale;
+        double ay = coordinates[2 * first + 1] - latitude;
+        double bx = (coordinates[2 * last] - longitude) * scale;
+        double by = coordinates[2 * last + 1] - latitude;
+
+        double dx = bx - ax;
+        double dy = by - ay;
+        double lengthSquared = dx * dx + dy * dy;
+        double t = lengthSquared > 0 ? -(ax * dx + ay * dy) / lengthSquared : 0;
+        t = Math.max(0, Math.min(1, t));
+
+        double x = ax + t * dx;
+        double y = ay + t * dy;
+        return Math.sqrt(x * x + y * y) * GeoMath.METERS_PER_DEGREE;
+    }
+}
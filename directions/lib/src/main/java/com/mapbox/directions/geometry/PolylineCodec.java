@@ -0,0 +1,121 @@
+package com.mapbox.directions.geometry;
+
+/**
+ * Encodes and decodes the
+ * <a href="https://developers.google.com/maps/documentation/utilities/polylinealgorithm">encoded polyline</a>
+ * format returned when a route is requested with {@code DirectionsCriteria.GEOMETRY_POLYLINE}.
+ * <p>
+ * Coordinates are exchanged as packed, interleaved longitude/latitude pairs (the layout used by
+ * {@code RouteGeometry}) so decoding produces a single array and nothing else. Note that the
+ * encoded format itself stores latitude first.
+ */
+public class PolylineCodec {
+
+    // Precision used by the original Google format
+    public final static int PRECISION_5 = 5;
+
+    // Precision used by the Mapbox Directions API
+    public final static int PRECISION_6 = 6;
+
+    private PolylineCodec() {
+    }
+
+    /**
+     * Decodes an encoded polyline.
+     * @param encoded the encoded polyline.
+     * @param precision number of decimal places the polyline was encoded with, usually
+     *                  {@link #PRECISION_5} or {@link #PRECISION_6}.
+     * @return interleaved longitude/latitude pairs.
+     * @throws IllegalArgumentException if the string isn't a valid encoded polyline.
+     */
+    public static double[] decode(String encoded, int precision) {
+        int length = encoded.length();
+
+        // Count the values first so the output can be allocated once, at its exact size. Each value
+        // ends on the first character without the continuation bit.
+        int values = 0;
+        for (int i = 0; i < length; i++) {
+            int b = encoded.charAt(i) - 63;
+            if (b < 0 || b > 0x3f) {
+                throw new IllegalArgumentException("Invalid character in encoded polyline at " + i + ".");
+            }
+            if (b < 0x20) {
+                values++;
+            }
+        }
+        if (values % 2 != 0 || (length > 0 && encoded.charAt(length - 1) - 63 >= 0x20)) {
+            throw new IllegalArgumentException("Encoded polyline is truncated.");
+        }
+
+        double[] coordinates = new double[values];
+        double factor = Math.pow(10, precision);
+        long latitude = 0;
+        long longitude = 0;
+        int index = 0;
+
+        for (int out = 0; out < values; out += 2) {
+            long result = 0;
+            int shift = 0;
+            int b;
+            do {
+                b = encoded.charAt(index++) - 63;
+                result |= (long) (b & 0x1f) << shift;
+                shift += 5;
+            } while (b >= 0x20);
+            latitude += (result & 1) != 0 ? ~(result >> 1) : (result >> 1);
+
+            result = 0;
+            shift = 0;
+            do {
+                b = encoded.charAt(index++) - 63;
+                result |= (long) (b & 0x1f) << shift;
+                shift += 5;
+            } while (b >= 0x20);
+            longitude += (result & 1) != 0 ? ~(result >> 1) : (result >> 1);
+
+            coordinates[out] = longitude / factor;
+            coordinates[out + 1] = latitude / factor;
+        }
+
+        return coordinates;
+    }
+
+    /**
+     * Encodes packed coordinates as a polyline, for example to store a route compactly.
+     * @param coordinates interleaved longitude/latitude pairs.
+     * @param precision number of decimal places to keep, usually {@link #PRECISION_5} or
+     *                  {@link #PRECISION_6}.
+     * @return the encoded polyline.
+     */
+    public static String encode(double[] coordinates, int precision) {
+        if (coordinates.length % 2 != 0) {
+            throw new IllegalArgumentException("Coordinates must be given as longitude/latitude pairs.");
+        }
+
+        // Most deltas between consecutive route coordinates fit in 3 or 4 characters
+        StringBuilder builder = new StringBuilder(coordinates.length * 4);
+        double factor = Math.pow(10, precision);
+        long lastLatitude = 0;
+        long lastLongitude = 0;
+
+        for (int i = 0; i < coordinates.length; i += 2) {
+            long longitude = Math.round(coordinates[i] * factor);
+            long latitude = Math.round(coordinates[i + 1] * factor);
+            encodeValue(latitude - lastLatitude, builder);
+            encodeValue(longitude - lastLongitude, builder);
+            lastLatitude = latitude;
+            lastLongitude = longitude;
+        }
+
+        return builder.toString();
+    }
+
+    private static void encodeValue(long value, StringBuilder builder) {
+        value = value < 0 ? ~(value << 1) : value << 1;
+        while (value >= 0x20) {
+            builder.append((char) ((0x20 | (value & 0x1f)) + 63));
+            value >>= 5;
+        }
+        builder.append((char) (value + 63));
+    }
+}
@@ -0,0 +1,605 @@
+package com.mapbox.directions.geometry;
+
+import com.mapbox.directions.service.models.Waypoint;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * A static, packed R-tree over the segments of a polyline, or over separate segments labelled
+ * with the groups they belong to (see {@link #fromSegments(double[], long[])}). Segments are
+ * sorted along a Hilbert curve and grouped bottom-up into nodes of {@link #NODE_SIZE}, so the
+ * whole tree lives in a few primitive arrays. Once built, finding the segment closest to a point takes roughly
+ * {@code O(log n)} instead of a scan over every vertex.
+ * <p>
+ * Distances are measured in meters on a local equirectangular projection centred on the query
+ * point. The same projection is used for bounding boxes and segments, which keeps the search
+ * exact with respect to that metric, and it's accurate to well under 1% for the distances that
+ * matter when tracking a route (up to tens of kilometers). Longitudes are unwrapped where the
+ * polyline crosses the antimeridian, and query points are moved to the same side, so routes
+ * crossing it are supported as long as they span less than half the globe.
+ * <p>
+ * Every node also records the groups found below it, so
+ * {@link #nearestDistances(double, double, double, double[])} measures the distance to each
+ * group in a single search, skipping subtrees of groups already reached.
+ * <p>
+ * Instances are immutable and safe to share between threads.
+ */
+public class SegmentIndex {
+
+    public final static int NODE_SIZE = 16;
+
+    private final static int HILBERT_MAX = (1 << 16) - 1;
+
+    // Interleaved lon/lat pairs, one per vertex
+    private final double[] coordinates;
+    // Doubles between the starts of consecutive segments: 2 for a polyline, 4 for separate segments
+    private final int stride;
+    private final int numSegments;
+
+    // minLon, minLat, maxLon, maxLat per node. Leaves (segments) come first, the root is last
+    private final double[] boxes;
+    // For leaves the segment number, for inner nodes the position of their first child
+    private final int[] indices;
+    // Exclusive end position of each level, from the leaves up
+    private final int[] levelBounds;
+    // Groups below each node, one bit per group. Null for a polyline, which is all group 0
+    private final long[] groups;
+    // Middle of the indexed longitudes, queries are moved within 180 degrees of it
+    private final double centerLongitude;
+
+    /**
+     * Builds an index over a polyline.
+     * @param coordinates interleaved longitude/latitude pairs, i.e. {@code [lon0, lat0, lon1, lat1, ...]}.
+     *                    The array is not copied unless the polyline crosses the antimeridian, and
+     *                    must not be modified afterwards.
+     */
+    public SegmentIndex(double[] coordinates) {
+        if (coordinates.length % 2 != 0) {
+            throw new IllegalArgumentException("Coordinates must be given as longitude/latitude pairs.");
+        }
+
+        this.coordinates = unwrap(coordinates, 2);
+        stride = 2;
+
+        // A single vertex is indexed as a zero length segment so queries still have an answer
+        int numVertices = coordinates.length / 2;
+        numSegments = numVertices == 0 ? 0 : Math.max(1, numVertices - 1);
+
+        levelBounds = levelBounds(numSegments);
+        int numNodes = levelBounds.length == 0 ? 0 : levelBounds[levelBounds.length - 1];
+        boxes = new double[numNodes * 4];
+        indices = new int[numNodes];
+        groups = null;
+        if (numSegments > 0) {
+            buildLeaves(null);
+            buildNodes();
+        }
+        centerLongitude = centerLongitude();
+    }
+
+    private SegmentIndex(double[] segments, long[] segmentGroups) {
+        if (segments.length % 4 != 0 || segments.length / 4 != segmentGroups.length) {
+            throw new IllegalArgumentException("Segments must be given as two longitude/latitude pairs and a group set each.");
+        }
+
+        coordinates = unwrap(segments, 4);
+        stride = 4;
+        numSegments = segmentGroups.length;
+
+        levelBounds = levelBounds(numSegments);
+        int numNodes = levelBounds.length == 0 ? 0 : levelBounds[levelBounds.length - 1];
+        boxes = new double[numNodes * 4];
+        indices = new int[numNodes];
+        groups = new long[numNodes];
+        if (numSegments > 0) {
+            buildLeaves(segmentGroups);
+            buildNodes();
+        }
+        centerLongitude = centerLongitude();
+    }
+
+    // Exclusive end position of each level, i.e. how many nodes each level needs
+    private static int[] levelBounds(int numSegments) {
+        if (numSegments == 0) {
+            return new int[0];
+        }
+
+        int[] bounds = new int[16];
+        int levels = 0;
+        int n = numSegments;
+        int numNodes = n;
+        bounds[levels++] = numNodes;
+        do {
+            n = (n + NODE_SIZE - 1) / NODE_SIZE;
+            numNodes += n;
+            if (levels == bounds.length) bounds = Arrays.copyOf(bounds, levels * 2);
+            bounds[levels++] = numNodes;
+        } while (n != 1);
+        return Arrays.copyOf(bounds, levels);
+    }
+
+    /**
+     * Convenience constructor for callers holding a List of {@link Waypoint}.
+     * @param polyline List of {@link Waypoint} making up the polyline.
+     * @return a new {@link SegmentIndex}.
+     */
+    public static SegmentIndex fromWaypoints(List<Waypoint> polyline) {
+        double[] coordinates = new double[polyline.size() * 2];
+        for (int i = 0; i < polyline.size(); i++) {
+            coordinates[2 * i] = polyline.get(i).getLongitude();
+            coordinates[2 * i + 1] = polyline.get(i).getLatitude();
+        }
+        return new SegmentIndex(coordinates);
+    }
+
+    /**
+     * Builds an index over segments that don't form a polyline, each belonging to one or more of
+     * up to 64 groups, e.g. the distinct segments of several routes.
+     * @param segments four values per segment: {@code [lon1, lat1, lon2, lat2, ...]}, where
+     *                 segment {@code i} starts at {@code 4 * i}. Not copied unless some cross the
+     *                 antimeridian, must not be modified.
+     * @param groups one value per segment, with bit {@code g} set if it belongs to group {@code g}.
+     * @return a new {@link SegmentIndex}.
+     */
+    public static SegmentIndex fromSegments(double[] segments, long[] groups) {
+        return new SegmentIndex(segments, groups);
+    }
+
+    /**
+     * Number of segments in the index. For a polyline, segment {@code i} joins vertex {@code i}
+     * to vertex {@code i + 1}.
+     * @return integer number of segments.
+     */
+    public int size() {
+        return numSegments;
+    }
+
+    /**
+     * Finds the segment closest to a point.
+     * @param longitude longitude of the point.
+     * @param latitude latitude of the point.
+     * @return the segment number, or -1 if the index is empty.
+     */
+    public int nearestSegment(double longitude, double latitude) {
+        int position = search(nearSide(longitude), latitude, Double.POSITIVE_INFINITY, -1L, null);
+        return position < 0 ? -1 : indices[position];
+    }
+
+    /**
+     * Distance from a point to the closest segment of the polyline.
+     * @param longitude longitude of the point.
+     * @param latitude latitude of the point.
+     * @return distance in meters, or {@link Double#POSITIVE_INFINITY} if the index is empty.
+     */
+    public double nearestDistance(double longitude, double latitude) {
+        int segment = nearestSegment(longitude, latitude);
+        return segment < 0 ? Double.POSITIVE_INFINITY : distanceToSegment(segment, longitude, latitude);
+    }
+
+    /**
+     * Whether any segment lies within the given radius of a point. Cheaper than
+     * {@link #nearestDistance(double, double)} since whole subtrees further away than the radius
+     * are never visited.
+     * @param longitude longitude of the point.
+     * @param latitude latitude of the point.
+     * @param radius double with unit meters.
+     * @return true if the polyline passes within radius meters of the point.
+     */
+    public boolean isWithin(double longitude, double latitude, double radius) {
+        return search(nearSide(longitude), latitude, radius, -1L, null) >= 0;
+    }
+
+    /**
+     * Distance from a point to the closest segment of every group, in one search. A polyline
+     * is a single group 0.
+     * @param longitude longitude of the point.
+     * @param latitude latitude of the point.
+     * @param maxDistance double with unit meters. Groups further away aren't measured, which
+     *                    keeps the search short when some group is far from the point.
+     * @param distances receives the distance in meters per group, at the group's bit position,
+     *                  or {@link Double#POSITIVE_INFINITY} if not within maxDistance.
+     */
+    public void nearestDistances(double longitude, double latitude, double maxDistance, double[] distances) {
+        Arrays.fill(distances, Double.POSITIVE_INFINITY);
+        long wanted = 0;
+        if (numSegments > 0) {
+            wanted = groups == null ? 1L : groups[groups.length - 1];
+        }
+        if (distances.length < 64) {
+            wanted &= (1L << distances.length) - 1;
+        }
+        if (wanted != 0) {
+            search(nearSide(longitude), latitude, maxDistance, wanted, distances);
+        }
+    }
+
+    /**
+     * Distance from a point to one segment of the polyline.
+     * @param segment the segment number.
+     * @param longitude longitude of the point.
+     * @param latitude latitude of the point.
+     * @return distance in meters.
+     */
+    public double distanceToSegment(int segment, double longitude, double latitude) {
+        int a = stride * segment;
+        int b = Math.min(a + 2, coordinates.length - 2);
+        double cosLat = Math.cos(Math.toRadians(latitude));
+        return segmentDistance(coordinates[a], coordinates[a + 1], coordinates[b], coordinates[b + 1],
+                nearSide(longitude), latitude, cosLat);
+    }
+
+    /**
+     * Where the point closest to the given location falls along a segment.
+     * @param segment the segment number.
+     * @param longitude longitude of the point.
+     * @param latitude latitude of the point.
+     * @return fraction ranging from 0 (start vertex) to 1 (end vertex).
+     */
+    public double fractionAlongSegment(int segment, double longitude, double latitude) {
+        int a = stride * segment;
+        int b = Math.min(a + 2, coordinates.length - 2);
+        double cosLat = Math.cos(Math.toRadians(latitude));
+        double ax = (coordinates[a] - nearSide(longitude)) * cosLat;
+        double ay = coordinates[a + 1] - latitude;
+        double dx = (coordinates[b] - coordinates[a]) * cosLat;
+        double dy = coordinates[b + 1] - coordinates[a + 1];
+        double lengthSquared = dx * dx + dy * dy;
+        if (lengthSquared == 0) {
+            return 0;
+        }
+
+        double t = -(ax * dx + ay * dy) / lengthSquared;
+        return t < 0 ? 0 : (t > 1 ? 1 : t);
+    }
+
+    /*
+     * Best-first search: nodes are kept in a min-heap keyed on the distance to their bounding
+     * box, leaves on the exact distance to their segment. Box distances never overestimate, so
+     * the first leaf popped is the nearest one, and the first popped from a group is the nearest
+     * of that group. Without group distances to fill in, the search stops at the first leaf and
+     * returns its position; otherwise it goes on until every wanted group is reached, ignoring
+     * nodes with none of the groups still wanted.
+     */
+
+    private int search(double longitude, double latitude, double maxDistance, long wanted, double[] groupDistances) {
+        if (numSegments == 0) {
+            return -1;
+        }
+
+        double cosLat = Math.cos(Math.toRadians(latitude));
+        Heap queue = new Heap();
+        int nodeIndex = boxes.length / 4 - 1;
+
+        while (true) {
+            int start = indices[nodeIndex];
+            int end = Math.min(start + NODE_SIZE, upperBound(start));
+
+            for (int pos = start; pos < end; pos++) {
+                if (groups != null && (groups[pos] & wanted) == 0) {
+                    continue;
+                }
+
+                double distance;
+                if (pos < numSegments) {
+                    int a = stride * indices[pos];
+                    int b = Math.min(a + 2, coordinates.length - 2);
+                    distance = segmentDistance(coordinates[a], coordinates[a + 1],
+                            coordinates[b], coordinates[b + 1], longitude, latitude, cosLat);
+                } else {
+                    distance = boxDistance(pos, longitude, latitude, cosLat);
+                }
+                if (distance <= maxDistance) {
+                    queue.push(pos, distance);
+                }
+            }
+
+            // The closest entry is either a leaf, which is an answer, or the next node to expand
+            int pos = -1;
+            while (pos < 0) {
+                if (queue.isEmpty()) {
+                    return -1;
+                }
+                double distance = queue.peekDistance();
+                pos = queue.pop();
+                long found = groups == null ? 1L : groups[pos] & wanted;
+                if (found == 0) {
+                    // Everything below was reached through other entries meanwhile
+                    pos = -1;
+                } else if (pos < numSegments) {
+                    if (groupDistances == null) {
+                        return pos;
+                    }
+                    wanted &= ~found;
+                    while (found != 0) {
+                        groupDistances[Long.numberOfTrailingZeros(found)] = distance;
+                        found &= found - 1;
+                    }
+                    if (wanted == 0) {
+                        return pos;
+                    }
+                    pos = -1;
+                }
+            }
+            nodeIndex = pos;
+        }
+    }
+
+    // The same longitude, moved by whole turns within 180 degrees of the indexed ones
+    private double nearSide(double longitude) {
+        return longitude + 360 * Math.rint((centerLongitude - longitude) / 360);
+    }
+
+    private int upperBound(int position) {
+        for (int bound : levelBounds) {
+            if (position < bound) return bound;
+        }
+        return levelBounds[levelBounds.length - 1];
+    }
+
+    private double boxDistance(int pos, double longitude, double latitude, double cosLat) {
+        double minLon = boxes[4 * pos];
+        double minLat = boxes[4 * pos + 1];
+        double maxLon = boxes[4 * pos + 2];
+        double maxLat = boxes[4 * pos + 3];
+
+        double dx = longitude < minLon ? minLon - longitude : (longitude > maxLon ? longitude - maxLon : 0);
+        double dy = latitude < minLat ? minLat - latitude : (latitude > maxLat ? latitude - maxLat : 0);
+        dx *= cosLat * GeoMath.METERS_PER_DEGREE;
+        dy *= GeoMath.METERS_PER_DEGREE;
+        return Math.sqrt(dx * dx + dy * dy);
+    }
+
+    /*
+     * Planar point to segment distance, after projecting both endpoints into a local
+     * equirectangular frame centred on the point.
+     */
+
+    private static double segmentDistance(double lon1, double lat1, double lon2, double lat2,
+                                          double longitude, double latitude, double cosLat) {
+        double ax = (lon1 - longitude) * cosLat * GeoMath.METERS_PER_DEGREE;
+        double ay = (lat1 - latitude) * GeoMath.METERS_PER_DEGREE;
+        double bx = (lon2 - longitude) * cosLat * GeoMath.METERS_PER_DEGREE;
+        double by = (lat2 - latitude) * GeoMath.METERS_PER_DEGREE;
+
+        double dx = bx - ax;
+        double dy = by - ay;
+        double lengthSquared = dx * dx + dy * dy;
+
+        double t = 0;
+        if (lengthSquared > 0) {
+            t = -(ax * dx + ay * dy) / lengthSquared;
+            if (t < 0) t = 0;
+            else if (t > 1) t = 1;
+        }
+
+        double x = ax + t * dx;
+        double y = ay + t * dy;
+        return Math.sqrt(x * x + y * y);
+    }
+
+    /*
+     * Build
+     */
+
+    /*
+     * Longitudes made continuous: every vertex within 180 degrees of the previous one, so a
+     * segment crossing the antimeridian goes e.g. from 179 to 181 rather than across the globe.
+     * Separate segments (a stride of 4) are each moved next to the first one, then their end next
+     * to their start. The array is only copied when something has to move.
+     */
+    private static double[] unwrap(double[] coordinates, int stride) {
+        double[] unwrapped = coordinates;
+        for (int i = 2; i < coordinates.length; i += 2) {
+            // For separate segments, starts follow the first start and ends their own start
+            int previous = stride == 4 && i % 4 == 0 ? 0 : i - 2;
+            double longitude = unwrapped[i];
+            double moved = longitude + 360 * Math.rint((unwrapped[previous] - longitude) / 360);
+            if (moved != longitude) {
+                if (unwrapped == coordinates) {
+                    unwrapped = coordinates.clone();
+                }
+                unwrapped[i] = moved;
+            }
+        }
+        return unwrapped;
+    }
+
+    private double centerLongitude() {
+        if (numSegments == 0) {
+            return 0;
+        }
+        int root = boxes.length / 4 - 1;
+        return (boxes[4 * root] + boxes[4 * root + 2]) / 2;
+    }
+
+    private void buildLeaves(long[] segmentGroups) {
+        double minLon = Double.POSITIVE_INFINITY;
+        double minLat = Double.POSITIVE_INFINITY;
+        double maxLon = Double.NEGATIVE_INFINITY;
+        double maxLat = Double.NEGATIVE_INFINITY;
+
+        double[] segmentBoxes = new double[numSegments * 4];
+        for (int i = 0; i < numSegments; i++) {
+            int a = stride * i;
+            int b = Math.min(a + 2, coordinates.length - 2);
+            segmentBoxes[4 * i] = Math.min(coordinates[a], coordinates[b]);
+            segmentBoxes[4 * i + 1] = Math.min(coordinates[a + 1], coordinates[b + 1]);
+            segmentBoxes[4 * i + 2] = Math.max(coordinates[a], coordinates[b]);
+            segmentBoxes[4 * i + 3] = Math.max(coordinates[a + 1], coordinates[b + 1]);
+
+            minLon = Math.min(minLon, segmentBoxes[4 * i]);
+            minLat = Math.min(minLat, segmentBoxes[4 * i + 1]);
+            maxLon = Math.max(maxLon, segmentBoxes[4 * i + 2]);
+            maxLat = Math.max(maxLat, segmentBoxes[4 * i + 3]);
+        }
+
+        // Sort segments by the Hilbert value of their box centre. The value goes in the high bits
+        // and the segment number in the low 31 bits so a plain long sort does the job.
+        double width = maxLon - minLon;
+        double height = maxLat - minLat;
+        long[] keys = new long[numSegments];
+        for (int i = 0; i < numSegments; i++) {
+            double cx = (segmentBoxes[4 * i] + segmentBoxes[4 * i + 2]) / 2;
+            double cy = (segmentBoxes[4 * i + 1] + segmentBoxes[4 * i + 3]) / 2;
+            int x = width > 0 ? (int) Math.floor(HILBERT_MAX * (cx - minLon) / width) : 0;
+            int y = height > 0 ? (int) Math.floor(HILBERT_MAX * (cy - minLat) / height) : 0;
+            keys[i] = ((hilbert(x, y) & 0xffffffffL) << 31) | i;
+        }
+        Arrays.sort(keys);
+
+        for (int pos = 0; pos < numSegments; pos++) {
+            int segment = (int) (keys[pos] & 0x7fffffffL);
+            indices[pos] = segment;
+            System.arraycopy(segmentBoxes, 4 * segment, boxes, 4 * pos, 4);
+            if (segmentGroups != null) {
+                groups[pos] = segmentGroups[segment];
+            }
+        }
+    }
+
+    private void buildNodes() {
+        int pos = 0;
+        int out = numSegments;
+        for (int level = 0; level < levelBounds.length - 1; level++) {
+            int end = levelBounds[level];
+            while (pos < end) {
+                int childEnd = Math.min(pos + NODE_SIZE, end);
+                double minLon = Double.POSITIVE_INFINITY;
+                double minLat = Double.POSITIVE_INFINITY;
+                double maxLon = Double.NEGATIVE_INFINITY;
+                double maxLat = Double.NEGATIVE_INFINITY;
+                long nodeGroups = 0;
+                for (int child = pos; child < childEnd; child++) {
+                    minLon = Math.min(minLon, boxes[4 * child]);
+                    minLat = Math.min(minLat, boxes[4 * child + 1]);
+                    maxLon = Math.max(maxLon, boxes[4 * child + 2]);
+                    maxLat = Math.max(maxLat, boxes[4 * child + 3]);
+                    if (groups != null) {
+                        nodeGroups |= groups[child];
+                    }
+                }
+                boxes[4 * out] = minLon;
+                boxes[4 * out + 1] = minLat;
+                boxes[4 * out + 2] = maxLon;
+                boxes[4 * out + 3] = maxLat;
+                indices[out] = pos;
+                if (groups != null) {
+                    groups[out] = nodeGroups;
+                }
+                out++;
+                pos = childEnd;
+            }
+        }
+    }
+
+    /**
+     * Position along a Hilbert curve of order 16 for the given cell. Based on "Fast Hilbert curve
+     * generation, sorting, and range queries" by rawrunprotected.
+     */
+    private static int hilbert(int x, int y) {
+        int a = x ^ y;
+        int b = 0xFFFF ^ a;
+        int c = 0xFFFF ^ (x | y);
+        int d = x & (y ^ 0xFFFF);
+
+        int A = a | (b >>> 1);
+        int B = (a >>> 1) ^ a;
+        int C = ((c >>> 1) ^ (b & (d >>> 1))) ^ c;
+        int D = ((a & (c >>> 1)) ^ (d >>> 1)) ^ d;
+
+        a = A; b = B; c = C; d = D;
+        A = ((a & (a >>> 2)) ^ (b & (b >>> 2)));
+        B = ((a & (b >>> 2)) ^ (b & ((a ^ b) >>> 2)));
+        C ^= ((a & (c >>> 2)) ^ (b & (d >>> 2)));
+        D ^= ((b & (c >>> 2)) ^ ((a ^ b) & (d >>> 2)));
+
+        a = A; b = B; c = C; d = D;
+        A = ((a & (a >>> 4)) ^ (b & (b >>> 4)));
+        B = ((a & (b >>> 4)) ^ (b & ((a ^ b) >>> 4)));
+        C ^= ((a & (c >>> 4)) ^ (b & (d >>> 4)));
+        D ^= ((b & (c >>> 4)) ^ ((a ^ b) & (d >>> 4)));
+
+        a = A; b = B; c = C; d = D;
+        C ^= ((a & (c >>> 8)) ^ (b & (d >>> 8)));
+        D ^= ((b & (c >>> 8)) ^ ((a ^ b) & (d >>> 8)));
+
+        a = C ^ (C >>> 1);
+        b = D ^ (D >>> 1);
+
+        int i0 = x ^ y;
+        int i1 = b | (0xFFFF ^ (i0 | a));
+
+        i0 = (i0 | (i0 << 8)) & 0x00FF00FF;
+        i0 = (i0 | (i0 << 4)) & 0x0F0F0F0F;
+        i0 = (i0 | (i0 << 2)) & 0x33333333;
+        i0 = (i0 | (i0 << 1)) & 0x55555555;
+
+        i1 = (i1 | (i1 << 8)) & 0x00FF00FF;
+        i1 = (i1 | (i1 << 4)) & 0x0F0F0F0F;
+        i1 = (i1 | (i1 << 2)) & 0x33333333;
+        i1 = (i1 | (i1 << 1)) & 0x55555555;
+
+        return (i1 << 1) | i0;
+    }
+
+    /*
+     * Minimal binary min-heap of (position, distance) pairs backed by primitive arrays
+     */
+
+    private static class Heap {
+
+        private int[] positions = new int[64];
+        private double[] distances = new double[64];
+        private int size = 0;
+
+        boolean isEmpty() {
+            return size == 0;
+        }
+
+        double peekDistance() {
+            return distances[0];
+        }
+
+        void push(int position, double distance) {
+            if (size == positions.length) {
+                positions = Arrays.copyOf(positions, size * 2);
+                distances = Arrays.copyOf(distances, size * 2);
+            }
+
+            int i = size++;
+            while (i > 0) {
+                int parent = (i - 1) >> 1;
+                if (distances[parent] <= distance) break;
+                positions[i] = positions[parent];
+                distances[i] = distances[parent];
+                i = parent;
+            }
+            positions[i] = position;
+            distances[i] = distance;
+        }
+
+        int pop() {
+            int top = positions[0];
+            size--;
+            if (size > 0) {
+                int position = positions[size];
+                double distance = distances[size];
+                int i = 0;
+                int half = size >> 1;
+                while (i < half) {
+                    int child = 2 * i + 1;
+                    int right = child + 1;
+                    if (right < size && distances[right] < distances[child]) child = right;
+                    if (distances[child] >= distance) break;
+                    positions[i] = positions[child];
+                    distances[i] = distances[child];
+                    i = child;
+                }
+                positions[i] = position;
+                distances[i] = distance;
+            }
+            return top;
+        }
+    }
+}
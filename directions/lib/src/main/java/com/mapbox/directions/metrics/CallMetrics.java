@@ -0,0 +1,122 @@
+package com.mapbox.directions.metrics;
+
+/**
+ * Timings and outcome of a single directions call, handed to a {@link MetricsListener}. Calls are
+ * tagged with the profile and geometry type they requested.
+ * <p>
+ * OkHttp 2.x has no connection level events, so DNS, connect and TLS time can't be told apart:
+ * they are all part of {@link #getTimeToHeadersNs()}, together with the time to first byte.
+ * Streaming parsers read the body while parsing, so the time spent waiting for body bytes
+ * ({@link #getBodyNs()}) is measured separately from the time spent parsing them
+ * ({@link #getParseNs()}). Values that don't apply, e.g. parse time for a cache hit, are 0.
+ */
+public class CallMetrics {
+
+    /*
+     * Where the response came from
+     */
+
+    public final static int SOURCE_NETWORK = 0;
+    public final static int SOURCE_CACHE = 1;
+
+    private final String profile;
+    private final String geometry;
+    private final int source;
+    private final int code;
+    private final Throwable error;
+    private final long timeToHeadersNs;
+    private final long bodyNs;
+    private final long parseNs;
+    private final long totalNs;
+    private final long responseBytes;
+
+    CallMetrics(String profile, String geometry, int source, int code, Throwable error,
+                long timeToHeadersNs, long bodyNs, long parseNs, long totalNs, long responseBytes) {
+        this.profile = profile;
+        this.geometry = geometry;
+        this.source = source;
+        this.code = code;
+        this.error = error;
+        this.timeToHeadersNs = timeToHeadersNs;
+        this.bodyNs = bodyNs;
+        this.parseNs = parseNs;
+        this.totalNs = totalNs;
+        this.responseBytes = responseBytes;
+    }
+
+    /**
+     * A cache hit, see {@link com.mapbox.directions.cache.CachingCall}.
+     * @param profile the requested profile.
+     * @param geometry the requested geometry type.
+     * @param lookupNs time taken to look the response up.
+     * @return {@link CallMetrics} object.
+     */
+    public static CallMetrics cacheHit(String profile, String geometry, long lookupNs) {
+        return new CallMetrics(profile, geometry, SOURCE_CACHE, 200, null, 0, 0, 0, lookupNs, 0);
+    }
+
+    public String getProfile() {
+        return profile;
+    }
+
+    public String getGeometry() {
+        return geometry;
+    }
+
+    public int getSource() {
+        return source;
+    }
+
+    /*
+     * HTTP status code, 0 if the call failed without a response
+     */
+
+    public int getCode() {
+        return code;
+    }
+
+    /*
+     * Failure without a response (I/O error, timeout, cancellation, malformed body), or null
+     */
+
+    public Throwable getError() {
+        return error;
+    }
+
+    public boolean isSuccess() {
+        return error == null && code >= 200 && code < 300;
+    }
+
+    /*
+     * A cached response confirmed current by a conditional request, without a body
+     */
+
+    public boolean isNotModified() {
+        return error == null && code == 304;
+    }
+
+    public long getTimeToHeadersNs() {
+        return timeToHeadersNs;
+    }
+
+    public long getBodyNs() {
+        return bodyNs;
+    }
+
+    public long getParseNs() {
+        return parseNs;
+    }
+
+    public long getTotalNs() {
+        return totalNs;
+    }
+
+    /*
+     * Bytes read from the response body, as received (i.e. compressed if the server compressed
+     * it and the client didn't decompress it transparently)
+     */
+
+    public long getResponseBytes() {
+        return responseBytes;
+    }
+}
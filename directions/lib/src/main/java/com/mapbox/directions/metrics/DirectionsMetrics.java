@@ -0,0 +1,217 @@
+package com.mapbox.directions.metrics;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A {@link MetricsListener} keeping counters and {@link Histogram}s per profile and geometry
+ * type. Recording never allocates once a profile/geometry combination has been seen, and reading
+ * can happen at any time from any thread, e.g. from a periodic scrape calling {@link #report()}.
+ */
+public class DirectionsMetrics implements MetricsListener {
+
+    private final ConcurrentHashMap<String, ConcurrentHashMap<String, Stats>> stats = new ConcurrentHashMap<>();
+
+    @Override
+    public void onCall(CallMetrics metrics) {
+        Stats tagged = getOrCreate(metrics.getProfile(), metrics.getGeometry());
+        tagged.calls.incrementAndGet();
+
+        if (metrics.getSource() == CallMetrics.SOURCE_CACHE) {
+            tagged.cacheHits.incrementAndGet();
+            return;
+        }
+
+        if (!metrics.isSuccess() && !metrics.isNotModified()) {
+            tagged.errors.incrementAndGet();
+        }
+        tagged.responseBytes.addAndGet(metrics.getResponseBytes());
+        tagged.total.record(metrics.getTotalNs());
+        tagged.timeToHeaders.record(metrics.getTimeToHeadersNs());
+        if (metrics.isSuccess()) {
+            tagged.body.record(metrics.getBodyNs());
+            tagged.parse.record(metrics.getParseNs());
+        }
+    }
+
+    @Override
+    public void onRetry(String profile, String geometry, boolean hedge) {
+        Stats tagged = getOrCreate(profile, geometry);
+        if (hedge) {
+            tagged.hedges.incrementAndGet();
+        } else {
+            tagged.retries.incrementAndGet();
+        }
+    }
+
+    /**
+     * Aggregates for one profile and geometry type.
+     * @param profile e.g. DirectionsCriteria.PROFILE_DRIVING.
+     * @param geometry e.g. DirectionsCriteria.GEOMETRY_POLYLINE.
+     * @return {@link Stats} object, created empty if nothing was recorded yet.
+     */
+    public Stats getStats(String profile, String geometry) {
+        return getOrCreate(profile, geometry);
+    }
+
+    /**
+     * Everything recorded so far.
+     * @return List of {@link Stats} objects, sorted by profile and geometry.
+     */
+    public List<Stats> getAllStats() {
+        List<Stats> all = new ArrayList<>();
+        for (ConcurrentHashMap<String, Stats> byGeometry : stats.values()) {
+            all.addAll(byGeometry.values());
+        }
+        Collections.sort(all, new Comparator<Stats>() {
+            @Override
+            public int compare(Stats lhs, Stats rhs) {
+                return lhs.getTag().compareTo(rhs.getTag());
+            }
+        });
+        return all;
+    }
+
+    /**
+     * Forgets everything recorded so far.
+     */
+    public void reset() {
+        stats.clear();
+    }
+
+    /**
+     * A human readable summary, one line per profile and geometry type, in milliseconds.
+     * @return String report.
+     */
+    public String report() {
+        StringBuilder report = new StringBuilder();
+        for (Stats tagged : getAllStats()) {
+            report.append(String.format(Locale.US,
+                    "%s calls=%d cache_hits=%d errors=%d retries=%d hedges=%d bytes=%d total_ms{p50=%.1f,p95=%.1f,p99=%.1f,max=%.1f} "
+                            + "headers_ms{p50=%.1f,p95=%.1f} body_ms{p50=%.1f,p95=%.1f} parse_ms{p50=%.1f,p95=%.1f}\n",
+                    tagged.getTag(), tagged.getCallCount(), tagged.getCacheHitCount(), tagged.getErrorCount(),
+                    tagged.getRetryCount(), tagged.getHedgeCount(), tagged.getResponseBytes(),
+                    ms(tagged.total.getPercentile(50)), ms(tagged.total.getPercentile(95)),
+                    ms(tagged.total.getPercentile(99)), ms(tagged.total.getMax()),
+                    ms(tagged.timeToHeaders.getPercentile(50)), ms(tagged.timeToHeaders.getPercentile(95)),
+                    ms(tagged.body.getPercentile(50)), ms(tagged.body.getPercentile(95)),
+                    ms(tagged.parse.getPercentile(50)), ms(tagged.parse.getPercentile(95))));
+        }
+        return report.toString();
+    }
+
+    private static double ms(long ns) {
+        return ns / (double) TimeUnit.MILLISECONDS.toNanos(1);
+    }
+
+    private Stats getOrCreate(String profile, String geometry) {
+        // Nested maps rather than a combined key, so lookups don't allocate
+        String profileKey = profile != null ? profile : "";
+        String geometryKey = geometry != null ? geometry : "";
+
+        ConcurrentHashMap<String, Stats> byGeometry = stats.get(profileKey);
+        if (byGeometry == null) {
+            ConcurrentHashMap<String, Stats> created = new ConcurrentHashMap<>();
+            byGeometry = stats.putIfAbsent(profileKey, created);
+            if (byGeometry == null) {
+                byGeometry = created;
+            }
+        }
+
+        Stats tagged = byGeometry.get(geometryKey);
+        if (tagged == null) {
+            Stats created = new Stats(profile, geometry);
+            tagged = byGeometry.putIfAbsent(geometryKey, created);
+            if (tagged == null) {
+                tagged = created;
+            }
+        }
+        return tagged;
+    }
+
+    /*
+     * Per profile and geometry aggregates. Histograms are in nanoseconds and only cover network
+     * calls; body and parse times only cover successful ones.
+     */
+
+    public static class Stats {
+
+        private final String profile;
+        private final String geometry;
+
+        private final AtomicLong calls = new AtomicLong();
+        private final AtomicLong cacheHits = new AtomicLong();
+        private final AtomicLong errors = new AtomicLong();
+        private final AtomicLong retries = new AtomicLong();
+        private final AtomicLong hedges = new AtomicLong();
+        private final AtomicLong responseBytes = new AtomicLong();
+
+        private final Histogram total = new Histogram();
+        private final Histogram timeToHeaders = new Histogram();
+        private final Histogram body = new Histogram();
+        private final Histogram parse = new Histogram();
+
+        Stats(String profile, String geometry) {
+            this.profile = profile;
+            this.geometry = geometry;
+        }
+
+        public String getProfile() {
+            return profile;
+        }
+
+        public String getGeometry() {
+            return geometry;
+        }
+
+        String getTag() {
+            return profile + "/" + geometry;
+        }
+
+        public long getCallCount() {
+            return calls.get();
+        }
+
+        public long getCacheHitCount() {
+            return cacheHits.get();
+        }
+
+        public long getErrorCount() {
+            return errors.get();
+        }
+
+        public long getRetryCount() {
+            return retries.get();
+        }
+
+        public long getHedgeCount() {
+            return hedges.get();
+        }
+
+        public long getResponseBytes() {
+            return responseBytes.get();
+        }
+
+        public Histogram getTotal() {
+            return total;
+        }
+
+        public Histogram getTimeToHeaders() {
+            return timeToHeaders;
+        }
+
+        public Histogram getBody() {
+            return body;
+        }
+
+        public Histogram getParse() {
+            return parse;
+        }
+    }
+}
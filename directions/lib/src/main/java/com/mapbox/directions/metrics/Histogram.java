@@ -0,0 +1,121 @@
+package com.mapbox.directions.metrics;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A fixed-size, lock-free histogram of non-negative long values (typically nanoseconds or bytes),
+ * in the spirit of HdrHistogram. Values below 128 are counted exactly; above that each power of two
+ * is split into 64 linear sub-buckets, so any recorded value is reported within about 1.6% of
+ * what was recorded. Recording is a couple of bit operations and one atomic increment, with no
+ * allocation, so it's cheap enough for every call.
+ * <p>
+ * Values of 2^41 (about 37 minutes in nanoseconds) and above are clamped into the top bucket.
+ */
+public class Histogram {
+
+    private final static int EXACT_BITS = 7;
+    private final static int EXACT_COUNT = 1 << EXACT_BITS;
+    private final static int SUB_BUCKET_BITS = EXACT_BITS - 1;
+    private final static int SUB_BUCKET_COUNT = 1 << SUB_BUCKET_BITS;
+    private final static int MAX_EXPONENT = 40;
+    private final static int BUCKET_COUNT = EXACT_COUNT + (MAX_EXPONENT - EXACT_BITS + 1) * SUB_BUCKET_COUNT;
+
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKET_COUNT);
+    private final AtomicLong count = new AtomicLong();
+    private final AtomicLong sum = new AtomicLong();
+    private final AtomicLong max = new AtomicLong();
+
+    /**
+     * Counts one value. Negative values are counted as 0.
+     * @param value the value to record.
+     */
+    public void record(long value) {
+        if (value < 0) {
+            value = 0;
+        }
+
+        counts.incrementAndGet(indexOf(value));
+        count.incrementAndGet();
+        sum.addAndGet(value);
+
+        long current;
+        while (value > (current = max.get())) {
+            if (max.compareAndSet(current, value)) {
+                break;
+            }
+        }
+    }
+
+    public long getCount() {
+        return count.get();
+    }
+
+    public long getMax() {
+        return max.get();
+    }
+
+    public double getMean() {
+        long n = count.get();
+        return n == 0 ? 0 : sum.get() / (double) n;
+    }
+
+    /**
+     * Value at the given percentile, nearest-rank. Concurrent recording may make the result
+     * slightly stale but never inconsistent.
+     * @param percentile between 0 and 100, e.g. 99.
+     * @return long value, the middle of the matching bucket, or 0 if nothing was recorded.
+     */
+    public long getPercentile(double percentile) {
+        long n = count.get();
+        if (n == 0) {
+            return 0;
+        }
+
+        long rank = Math.max(1, (long) Math.ceil(percentile / 100 * n));
+        long seen = 0;
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            seen += counts.get(i);
+            if (seen >= rank) {
+                return Math.min((lowerBound(i) + lowerBound(i + 1) - 1) / 2, max.get());
+            }
+        }
+        return max.get();
+    }
+
+    /**
+     * Forgets everything recorded so far, e.g. after each scrape.
+     */
+    public void reset() {
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            counts.set(i, 0);
+        }
+        count.set(0);
+        sum.set(0);
+        max.set(0);
+    }
+
+    private static int indexOf(long value) {
+        if (value < EXACT_COUNT) {
+            return (int) value;
+        }
+
+        int exponent = 63 - Long.numberOfLeadingZeros(value);
+        if (exponent > MAX_EXPONENT) {
+            return BUCKET_COUNT - 1;
+        }
+        // The bits right after the leading one pick the sub-bucket
+        int subBucket = (int) (value >>> (exponent - SUB_BUCKET_BITS)) & (SUB_BUCKET_COUNT - 1);
+        return EXACT_COUNT + (exponent - EXACT_BITS) * SUB_BUCKET_COUNT + subBucket;
+    }
+
+    private static long lowerBound(int index) {
+        if (index < EXACT_COUNT) {
+            return index;
+        }
+
+        int exponent = (index - EXACT_COUNT) / SUB_BUCKET_COUNT + EXACT_BITS;
+        long subBucket = (index - EXACT_COUNT) % SUB_BUCKET_COUNT;
+        return (SUB_BUCKET_COUNT + subBucket) << (exponent - SUB_BUCKET_BITS);
+    }
+}
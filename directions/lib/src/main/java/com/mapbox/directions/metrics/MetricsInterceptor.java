@@ -0,0 +1,205 @@
+package com.mapbox.directions.metrics;
+
+import com.squareup.okhttp.HttpUrl;
+import com.squareup.okhttp.Interceptor;
+import com.squareup.okhttp.MediaType;
+import com.squareup.okhttp.Request;
+import com.squareup.okhttp.Response;
+import com.squareup.okhttp.ResponseBody;
+
+import java.io.IOException;
+import java.util.List;
+
+import okio.Buffer;
+import okio.BufferedSource;
+import okio.ForwardingSource;
+import okio.Okio;
+
+/**
+ * OkHttp interceptor measuring directions calls for a {@link MetricsListener}.
+ * <p>
+ * Retrofit parses a successful body on the thread that ran the interceptors, right after they
+ * return, so the measurements are kept in a thread local {@link Trace} until the converter picks
+ * it up and finishes it with the parse time (see {@link #currentTrace()}). Error responses,
+ * responses without content and failures are reported from here directly, and a body closed
+ * without being parsed (e.g. the call was canceled first) is reported when it's closed.
+ */
+public class MetricsInterceptor implements Interceptor {
+
+    private final static ThreadLocal<Trace> TRACE = new ThreadLocal<>();
+
+    private final MetricsListener listener;
+
+    public MetricsInterceptor(MetricsListener listener) {
+        this.listener = listener;
+    }
+
+    /**
+     * The measurements of the call whose body is about to be parsed on this thread. Ownership
+     * passes to the caller, which must {@link Trace#finish(long, Throwable)} it.
+     * @return {@link Trace} object, or null if the call isn't being measured.
+     */
+    public static Trace currentTrace() {
+        Trace trace = TRACE.get();
+        TRACE.remove();
+        return trace;
+    }
+
+    @Override
+    public Response intercept(Chain chain) throws IOException {
+        Request request = chain.request();
+        HttpUrl url = request.httpUrl();
+        List<String> segments = url.pathSegments();
+        // Path is /v4/directions/{profile}/{waypoints}.json
+        String profile = segments.size() > 2 ? segments.get(2) : null;
+        String geometry = url.queryParameter("geometry");
+
+        Trace trace = new Trace(listener, profile, geometry, System.nanoTime());
+        TRACE.remove();
+
+        Response response;
+        try {
+            response = chain.proceed(request);
+        } catch (IOException | RuntimeException e) {
+            trace.report(0, e, System.nanoTime(), 0);
+            throw e;
+        }
+        trace.headersNs = System.nanoTime();
+        trace.code = response.code();
+
+        if (!response.isSuccessful()) {
+            long length = response.body().contentLength();
+            trace.report(response.code(), null, 0, Math.max(length, 0));
+            return response;
+        }
+        if (response.code() == 204 || response.code() == 205) {
+            // Retrofit doesn't hand these to the converter
+            trace.report(response.code(), null, System.nanoTime(), 0);
+            return response;
+        }
+
+        TRACE.set(trace);
+        return response.newBuilder().body(new TimedBody(response.body(), trace)).build();
+    }
+
+    /**
+     * Measurements of one call in progress.
+     */
+    public static class Trace {
+
+        private final MetricsListener listener;
+        private final String profile;
+        private final String geometry;
+        private final long startNs;
+        private long headersNs;
+        private int code;
+        private long bodyNs;
+        private long bytes;
+        private boolean reported;
+
+        Trace(MetricsListener listener, String profile, String geometry, long startNs) {
+            this.listener = listener;
+            this.profile = profile;
+            this.geometry = geometry;
+            this.startNs = startNs;
+        }
+
+        /**
+         * Reports the call once its body has been parsed.
+         * @param convertNs total time spent in the converter, body reads included.
+         * @param error the parse failure, or null.
+         */
+        public void finish(long convertNs, Throwable error) {
+            if (!markReported()) {
+                return;
+            }
+            long parseNs = Math.max(convertNs - bodyNs, 0);
+            long endNs = System.nanoTime();
+            listener.onCall(new CallMetrics(profile, geometry, CallMetrics.SOURCE_NETWORK, code, error,
+                    headersNs - startNs, bodyNs, parseNs, endNs - startNs, bytes));
+        }
+
+        // The body was closed without going through the converter
+        private void abandon() {
+            if (!markReported()) {
+                return;
+            }
+            listener.onCall(new CallMetrics(profile, geometry, CallMetrics.SOURCE_NETWORK, code,
+                    new IOException("Response body closed before it was parsed."),
+                    headersNs - startNs, bodyNs, 0, System.nanoTime() - startNs, bytes));
+        }
+
+        private void report(int code, Throwable error, long endNs, long bytes) {
+            if (!markReported()) {
+                return;
+            }
+            long headers = headersNs != 0 ? headersNs - startNs : 0;
+            long total = (endNs != 0 ? endNs : headersNs) - startNs;
+            listener.onCall(new CallMetrics(profile, geometry, CallMetrics.SOURCE_NETWORK, code, error,
+                    headers, 0, 0, total, bytes));
+        }
+
+        // Each call is reported once, whichever of the converter and close() gets there first
+        private synchronized boolean markReported() {
+            if (reported) {
+                return false;
+            }
+            reported = true;
+            return true;
+        }
+    }
+
+    // Counts the bytes read from the body and the time spent waiting for them
+    private static class TimedBody extends ResponseBody {
+
+        private final ResponseBody delegate;
+        private final Trace trace;
+        private BufferedSource source;
+
+        TimedBody(ResponseBody delegate, Trace trace) {
+            this.delegate = delegate;
+            this.trace = trace;
+        }
+
+        @Override
+        public MediaType contentType() {
+            return delegate.contentType();
+        }
+
+        @Override
+        public long contentLength() throws IOException {
+            return delegate.contentLength();
+        }
+
+        @Override
+        public BufferedSource source() throws IOException {
+            if (source == null) {
+                source = Okio.buffer(new ForwardingSource(delegate.source()) {
+                    @Override
+                    public long read(Buffer sink, long byteCount) throws IOException {
+                        long start = System.nanoTime();
+                        long read = super.read(sink, byteCount);
+                        trace.bodyNs += System.nanoTime() - start;
+                        if (read > 0) {
+                            trace.bytes += read;
+                        }
+                        return read;
+                    }
+                });
+            }
+            return source;
+        }
+
+        @Override
+        public void close() throws IOException {
+            try {
+                delegate.close();
+            } finally {
+                trace.abandon();
+                if (TRACE.get() == trace) {
+                    TRACE.remove();
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,26 @@
+package com.mapbox.directions.metrics;
+
+/**
+ * Receives instrumentation for every directions call made through a transport it's registered
+ * with, see {@code DirectionsTransport.Builder.setMetricsListener()}. Called on the thread that
+ * completed the call (an OkHttp worker for asynchronous calls), so implementations must be
+ * thread-safe and quick. {@link DirectionsMetrics} is a ready-made aggregating implementation.
+ */
+public interface MetricsListener {
+
+    /**
+     * A call completed, successfully or not.
+     * @param metrics its timings and outcome.
+     */
+    void onCall(CallMetrics metrics);
+
+    /**
+     * A call is being attempted again, see {@code RetryPolicy}. Each attempt is also reported
+     * through {@link #onCall(CallMetrics)} when it completes.
+     * @param profile the requested profile.
+     * @param geometry the requested geometry type.
+     * @param hedge true for a hedge sent while the previous attempt is still in flight, false for
+     *              a retry after a failed attempt.
+     */
+    void onRetry(String profile, String geometry, boolean hedge);
+}
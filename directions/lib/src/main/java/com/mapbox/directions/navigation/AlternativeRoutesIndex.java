@@ -0,0 +1,200 @@
+package com.mapbox.directions.navigation;
+
+import com.mapbox.directions.geometry.SegmentIndex;
+import com.mapbox.directions.service.models.DirectionsRoute;
+import com.mapbox.directions.service.models.Waypoint;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A single {@link SegmentIndex} over all the routes of a response, typically the primary route
+ * and its alternatives, answering which of them a location is following. Alternatives usually
+ * share long stretches of road, so each distinct segment is indexed once together with the set
+ * of routes it belongs to; one query then measures the distance to every route, visiting
+ * segments closest first and leaving out parts of the tree whose routes were already reached.
+ * <p>
+ * Segments are shared when their ends are exactly the same coordinates, in either direction,
+ * which is what the Directions API returns for common stretches. Up to
+ * {@link #MAX_ROUTES} routes are supported. Instances are immutable and safe to share between
+ * threads.
+ */
+public class AlternativeRoutesIndex {
+
+    public final static int MAX_ROUTES = 64;
+
+    private final List<DirectionsRoute> routes;
+    private final SegmentIndex index;
+    // Bit i is set if the segment belongs to route i
+    private final long[] owners;
+    private final int sharedSegmentCount;
+
+    /**
+     * Indexes the given routes, in {@code O(n log n)} for {@code n} vertices in total.
+     * @param routes List of {@link DirectionsRoute}, e.g. {@code response.getRoutes()}. Routes
+     *               without a geometry are never matched.
+     */
+    public AlternativeRoutesIndex(List<DirectionsRoute> routes) {
+        if (routes.size() > MAX_ROUTES) {
+            throw new IllegalArgumentException("At most " + MAX_ROUTES + " routes can be indexed together.");
+        }
+
+        this.routes = routes;
+
+        Map<SegmentKey, Integer> positions = new HashMap<>();
+        double[] segments = new double[64];
+        long[] segmentOwners = new long[16];
+        int count = 0;
+
+        for (int route = 0; route < routes.size(); route++) {
+            if (routes.get(route).getGeometry() == null) {
+                continue;
+            }
+            double[] coordinates = routes.get(route).getGeometry().getPackedCoordinates();
+            int numVertices = coordinates.length / 2;
+            if (numVertices == 0) {
+                continue;
+            }
+
+            // A single vertex becomes a zero length segment, like SegmentIndex does
+            int numSegments = Math.max(1, numVertices - 1);
+            for (int i = 0; i < numSegments; i++) {
+                int a = 2 * i;
+                int b = Math.min(a + 2, coordinates.length - 2);
+                SegmentKey key = new SegmentKey(coordinates[a], coordinates[a + 1], coordinates[b], coordinates[b + 1]);
+                Integer position = positions.get(key);
+                if (position == null) {
+                    if (4 * count == segments.length) {
+                        segments = Arrays.copyOf(segments, segments.length * 2);
+                        segmentOwners = Arrays.copyOf(segmentOwners, segmentOwners.length * 2);
+                    }
+                    segments[4 * count] = coordinates[a];
+                    segments[4 * count + 1] = coordinates[a + 1];
+                    segments[4 * count + 2] = coordinates[b];
+                    segments[4 * count + 3] = coordinates[b + 1];
+                    position = count++;
+                    positions.put(key, position);
+                }
+                segmentOwners[position] |= 1L << route;
+            }
+        }
+
+        int shared = 0;
+        for (int i = 0; i < count; i++) {
+            if (Long.bitCount(segmentOwners[i]) > 1) {
+                shared++;
+            }
+        }
+
+        owners = Arrays.copyOf(segmentOwners, count);
+        index = SegmentIndex.fromSegments(Arrays.copyOf(segments, 4 * count), owners);
+        sharedSegmentCount = shared;
+    }
+
+    /**
+     * Number of routes indexed.
+     * @return integer number of routes.
+     */
+    public int size() {
+        return routes.size();
+    }
+
+    /**
+     * One of the indexed routes.
+     * @param route position of the route, as given to the constructor.
+     * @return {@link DirectionsRoute} object.
+     */
+    public DirectionsRoute getRoute(int route) {
+        return routes.get(route);
+    }
+
+    /**
+     * Number of distinct segments indexed, shared ones counted once.
+     * @return integer number of segments.
+     */
+    public int getSegmentCount() {
+        return owners.length;
+    }
+
+    /**
+     * Number of distinct segments belonging to more than one route.
+     * @return integer number of segments.
+     */
+    public int getSharedSegmentCount() {
+        return sharedSegmentCount;
+    }
+
+    /**
+     * Measures the distance from a location to every route at once.
+     * @param location the current location, typically from the device GPS.
+     * @param distances receives the distance to each route, in meters, at the route's position.
+     *                  Must hold at least {@link #size()} values.
+     * @return position of the closest route, or -1 if no route has a geometry.
+     */
+    public int nearestRoute(Waypoint location, double[] distances) {
+        return nearestRoute(location.getLongitude(), location.getLatitude(), Double.POSITIVE_INFINITY, distances);
+    }
+
+    /**
+     * Measures the distance from a location to every route at once. Routes beyond a maximum
+     * distance aren't measured, which keeps the query cheap when an alternative is far away.
+     * On a tie, e.g. while the routes still share the road, the first route wins, so the
+     * primary route is preferred until the alternatives diverge.
+     * @param longitude longitude of the location.
+     * @param latitude latitude of the location.
+     * @param maxDistance double with unit meters, e.g. the off-route tolerance.
+     * @param distances receives the distance to each route, in meters, at the route's position,
+     *                  or {@link Double#POSITIVE_INFINITY} for routes further than maxDistance.
+     *                  Must hold at least {@link #size()} values.
+     * @return position of the closest route, or -1 if none is within maxDistance.
+     */
+    public int nearestRoute(double longitude, double latitude, double maxDistance, double[] distances) {
+        index.nearestDistances(longitude, latitude, maxDistance, distances);
+
+        int nearest = -1;
+        for (int i = 0; i < routes.size(); i++) {
+            if (distances[i] != Double.POSITIVE_INFINITY && (nearest < 0 || distances[i] < distances[nearest])) {
+                nearest = i;
+            }
+        }
+        return nearest;
+    }
+
+    // Identifies a segment by its ends, whichever way it is travelled
+    private static class SegmentKey {
+
+        final double lon1;
+        final double lat1;
+        final double lon2;
+        final double lat2;
+
+        SegmentKey(double lonA, double latA, double lonB, double latB) {
+            boolean swap = lonA > lonB || (lonA == lonB && latA > latB);
+            lon1 = swap ? lonB : lonA;
+            lat1 = swap ? latB : latA;
+            lon2 = swap ? lonA : lonB;
+            lat2 = swap ? latA : latB;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof SegmentKey)) {
+                return false;
+            }
+            SegmentKey other = (SegmentKey) o;
+            return Double.compare(lon1, other.lon1) == 0 && Double.compare(lat1, other.lat1) == 0
+                    && Double.compare(lon2, other.lon2) == 0 && Double.compare(lat2, other.lat2) == 0;
+        }
+
+        @Override
+        public int hashCode() {
+            long bits = Double.doubleToLongBits(lon1);
+            bits = 31 * bits + Double.doubleToLongBits(lat1);
+            bits = 31 * bits + Double.doubleToLongBits(lon2);
+            bits = 31 * bits + Double.doubleToLongBits(lat2);
+            return (int) (bits ^ (bits >>> 32));
+        }
+    }
+}
@@ -0,0 +1,127 @@
+package com.mapbox.directions.navigation;
+
+import com.mapbox.directions.service.models.RouteStep;
+import com.mapbox.directions.service.models.Waypoint;
+
+/**
+ * Where a location lies relative to a route, as computed by {@link RouteTracker}.
+ */
+public class RouteProgress {
+
+    private boolean offRoute;
+    private Waypoint snappedLocation;
+    private double distanceFromRoute;
+    private double distanceTraveled;
+    private int segmentIndex;
+    private double distanceRemaining;
+    private double durationRemaining;
+    private int stepIndex;
+    private RouteStep step;
+    private RouteStep nextStep;
+    private double distanceToNextManeuver;
+
+    RouteProgress(boolean offRoute, Waypoint snappedLocation, double distanceFromRoute,
+                  int segmentIndex, RouteProgressEngine engine) {
+        this.offRoute = offRoute;
+        this.snappedLocation = snappedLocation;
+        this.distanceFromRoute = distanceFromRoute;
+        this.segmentIndex = segmentIndex;
+        distanceTraveled = engine.getDistanceTraveled();
+        distanceRemaining = engine.getDistanceRemaining();
+        durationRemaining = engine.getDurationRemaining();
+        stepIndex = engine.getStepIndex();
+        step = engine.getStep();
+        nextStep = engine.getNextStep();
+        distanceToNextManeuver = engine.getDistanceToNextManeuver();
+    }
+
+    /**
+     * Whether the location is further from the route than the tracker's tolerance.
+     * @return true if off-route.
+     */
+    public boolean isOffRoute() {
+        return offRoute;
+    }
+
+    /**
+     * The point on the route closest to the location. When off-route this is still the closest
+     * point, which is handy to show how far the user strayed.
+     * @return {@link Waypoint} on the route geometry.
+     */
+    public Waypoint getSnappedLocation() {
+        return snappedLocation;
+    }
+
+    /**
+     * Distance between the location and {@link #getSnappedLocation()}.
+     * @return double with unit meters.
+     */
+    public double getDistanceFromRoute() {
+        return distanceFromRoute;
+    }
+
+    /**
+     * Distance along the route geometry from the origin to {@link #getSnappedLocation()}.
+     * @return double with unit meters.
+     */
+    public double getDistanceTraveled() {
+        return distanceTraveled;
+    }
+
+    /**
+     * Distance along the route geometry from {@link #getSnappedLocation()} to the destination.
+     * @return double with unit meters.
+     */
+    public double getDistanceRemaining() {
+        return distanceRemaining;
+    }
+
+    /**
+     * Expected time to the destination, see {@link RouteProgressEngine#getDurationRemaining()}.
+     * @return double with unit seconds.
+     */
+    public double getDurationRemaining() {
+        return durationRemaining;
+    }
+
+    /**
+     * The geometry segment the location was matched to. Segment {@code i} joins coordinate
+     * {@code i} to coordinate {@code i + 1}.
+     * @return integer segment number.
+     */
+    public int getSegmentIndex() {
+        return segmentIndex;
+    }
+
+    /**
+     * Position of {@link #getStep()} within the route's steps.
+     * @return integer step index, or -1 if the route has no steps.
+     */
+    public int getStepIndex() {
+        return stepIndex;
+    }
+
+    /**
+     * The step being followed, i.e. the last maneuver passed.
+     * @return {@link RouteStep} object, or null if the route has no steps.
+     */
+    public RouteStep getStep() {
+        return step;
+    }
+
+    /**
+     * The step starting at the next maneuver.
+     * @return {@link RouteStep} object, or null on the last step or if the route has no steps.
+     */
+    public RouteStep getNextStep() {
+        return nextStep;
+    }
+
+    /**
+     * Distance along the route geometry to the next maneuver.
+     * @return double with unit meters, or -1 on the last step or if the route has no steps.
+     */
+    public double getDistanceToNextManeuver() {
+        return distanceToNextManeuver;
+    }
+}
@@ -0,0 +1,303 @@
+package com.mapbox.directions.navigation;
+
+import com.mapbox.directions.geometry.GeoMath;
+import com.mapbox.directions.service.models.DirectionsRoute;
+import com.mapbox.directions.service.models.ManeuverPoint;
+import com.mapbox.directions.service.models.RouteStep;
+
+import java.util.List;
+
+/**
+ * Answers "how far, how long and what next" for a position along a {@link DirectionsRoute}.
+ * Everything that depends only on the route is worked out once when the engine is created: the
+ * distance from the origin to every geometry vertex, the vertex each step's maneuver sits on, the
+ * step each segment belongs to and the duration of all steps after each one. Moving to a new
+ * position is then a handful of array reads, with no search and no allocation, however long the
+ * route.
+ * <p>
+ * Distances are measured along the geometry rather than added up from
+ * {@link RouteStep#getDistance()}, which is rounded and doesn't always match the line drawn.
+ * Durations come from the steps, the remainder of the current one prorated by the share of its
+ * geometry still ahead.
+ * <p>
+ * The position is kept between calls, so an engine is not thread-safe. {@link RouteTracker}
+ * keeps one per route and moves it on every update.
+ */
+public class RouteProgressEngine {
+
+    // How much further than the previous step's distance a maneuver is looked for, as a share of
+    // that distance plus a fixed margin. Step distances are rounded and don't follow the geometry
+    // exactly.
+    private final static double MATCH_SLACK_RATIO = 0.1;
+    private final static double MATCH_SLACK_METERS = 50;
+
+    private final DirectionsRoute route;
+    private final List<RouteStep> steps;
+
+    // Meters from the first vertex to each vertex
+    private final double[] cumulativeDistances;
+    // Vertex each step's maneuver was matched to, never decreasing
+    private final int[] stepStartVertices;
+    // Step followed on the segment starting at each vertex, -1 without steps
+    private final int[] vertexSteps;
+    // Meters from the first vertex to each step's maneuver, plus the total length at the end
+    private final double[] stepStartDistances;
+    // Seconds for all steps after each step, plus 0 at the end
+    private final double[] durationsAfter;
+    private final double totalDistance;
+
+    private int segment;
+    private double distanceTraveled;
+    private int stepIndex;
+
+    /**
+     * Prepares a route, in time linear in its number of vertices and steps.
+     * @param route the {@link DirectionsRoute} to follow. Must have a geometry.
+     */
+    public RouteProgressEngine(DirectionsRoute route) {
+        if (route.getGeometry() == null) {
+            throw new IllegalArgumentException("Route progress requires the route geometry.");
+        }
+
+        this.route = route;
+        steps = route.getSteps();
+
+        double[] coordinates = route.getGeometry().getPackedCoordinates();
+        cumulativeDistances = GeoMath.cumulativeDistances(coordinates);
+        int numVertices = cumulativeDistances.length;
+        totalDistance = numVertices == 0 ? 0 : cumulativeDistances[numVertices - 1];
+
+        stepStartVertices = matchSteps(coordinates, cumulativeDistances, steps);
+        int numSteps = stepStartVertices.length;
+
+        vertexSteps = new int[numVertices];
+        int step = numSteps == 0 ? -1 : 0;
+        for (int i = 0; i < numVertices; i++) {
+            while (step + 1 < numSteps && stepStartVertices[step + 1] <= i) {
+                step++;
+            }
+            vertexSteps[i] = step;
+        }
+
+        stepStartDistances = new double[numSteps + 1];
+        durationsAfter = new double[numSteps + 1];
+        stepStartDistances[numSteps] = totalDistance;
+        for (int i = numSteps - 1; i >= 0; i--) {
+            stepStartDistances[i] = numVertices == 0 ? 0 : cumulativeDistances[stepStartVertices[i]];
+            durationsAfter[i] = durationsAfter[i + 1] + steps.get(i).getDuration();
+        }
+
+        setPosition(0, 0);
+    }
+
+    /**
+     * The route this engine was built for.
+     * @return {@link DirectionsRoute} object.
+     */
+    public DirectionsRoute getRoute() {
+        return route;
+    }
+
+    /**
+     * Length of the route geometry.
+     * @return double with unit meters.
+     */
+    public double getTotalDistance() {
+        return totalDistance;
+    }
+
+    /**
+     * Moves to a position on the route, typically one snapped by {@link RouteTracker}.
+     * @param segment the geometry segment, joining coordinate {@code segment} to coordinate
+     *                {@code segment + 1}.
+     * @param fraction how far along the segment, from 0 at its start to 1 at its end.
+     */
+    public void setPosition(int segment, double fraction) {
+        int last = cumulativeDistances.length - 1;
+        if (last < 0) {
+            move(0, 0);
+            return;
+        }
+
+        segment = Math.max(0, Math.min(segment, last));
+        int end = Math.min(segment + 1, last);
+        fraction = Math.max(0, Math.min(1, fraction));
+        move(segment, cumulativeDistances[segment]
+                + fraction * (cumulativeDistances[end] - cumulativeDistances[segment]));
+    }
+
+    /**
+     * Moves to the position a {@link RouteTracker} matched.
+     * @param progress {@link RouteProgress} computed for this engine's route.
+     */
+    public void setPosition(RouteProgress progress) {
+        int segment = Math.max(0, Math.min(progress.getSegmentIndex(), cumulativeDistances.length - 1));
+        move(segment, progress.getDistanceTraveled());
+    }
+
+    private void move(int segment, double distanceTraveled) {
+        this.segment = segment;
+        this.distanceTraveled = distanceTraveled;
+        stepIndex = vertexSteps.length == 0 ? -1 : vertexSteps[segment];
+    }
+
+    /**
+     * The segment of the current position.
+     * @return integer segment number.
+     */
+    public int getSegmentIndex() {
+        return segment;
+    }
+
+    /**
+     * Distance along the geometry from the origin to the current position.
+     * @return double with unit meters.
+     */
+    public double getDistanceTraveled() {
+        return distanceTraveled;
+    }
+
+    /**
+     * Distance along the geometry from the current position to the destination.
+     * @return double with unit meters.
+     */
+    public double getDistanceRemaining() {
+        return totalDistance - distanceTraveled;
+    }
+
+    /**
+     * Expected time to the destination: the share of the current step's duration matching the
+     * share of its geometry still ahead, plus the durations of all later steps. Routes without
+     * steps prorate the route duration instead.
+     * @return double with unit seconds.
+     */
+    public double getDurationRemaining() {
+        if (stepIndex < 0) {
+            return totalDistance > 0 ? route.getDuration() * getDistanceRemaining() / totalDistance : 0;
+        }
+
+        double stepLength = stepStartDistances[stepIndex + 1] - stepStartDistances[stepIndex];
+        double stepDuration = durationsAfter[stepIndex] - durationsAfter[stepIndex + 1];
+        double share = stepLength > 0 ? getStepDistanceRemaining() / stepLength : 0;
+        return durationsAfter[stepIndex + 1] + stepDuration * Math.min(1, share);
+    }
+
+    /**
+     * Distance from the current position to the end of the current step, i.e. to the next
+     * maneuver or, on the last step, to the destination.
+     * @return double with unit meters.
+     */
+    public double getStepDistanceRemaining() {
+        if (stepIndex < 0) {
+            return getDistanceRemaining();
+        }
+        return Math.max(0, stepStartDistances[stepIndex + 1] - distanceTraveled);
+    }
+
+    /**
+     * Distance from the current position to the next maneuver.
+     * @return double with unit meters, or -1 on the last step or if the route has no steps.
+     */
+    public double getDistanceToNextManeuver() {
+        if (getNextStepIndex() < 0) {
+            return -1;
+        }
+        return getStepDistanceRemaining();
+    }
+
+    /**
+     * Position of {@link #getStep()} within the route's steps.
+     * @return integer step index, or -1 if the route has no steps.
+     */
+    public int getStepIndex() {
+        return stepIndex;
+    }
+
+    /**
+     * The step being followed, i.e. the last maneuver passed.
+     * @return {@link RouteStep} object, or null if the route has no steps.
+     */
+    public RouteStep getStep() {
+        return stepIndex < 0 ? null : steps.get(stepIndex);
+    }
+
+    /**
+     * Position of {@link #getNextStep()} within the route's steps.
+     * @return integer step index, or -1 on the last step or if the route has no steps.
+     */
+    public int getNextStepIndex() {
+        return stepIndex < 0 || stepIndex + 1 >= stepStartVertices.length ? -1 : stepIndex + 1;
+    }
+
+    /**
+     * The step starting at the next maneuver.
+     * @return {@link RouteStep} object, or null on the last step or if the route has no steps.
+     */
+    public RouteStep getNextStep() {
+        int next = getNextStepIndex();
+        return next < 0 ? null : steps.get(next);
+    }
+
+    /**
+     * The step followed on a segment, without moving the current position.
+     * @param segment geometry segment number.
+     * @return integer step index, or -1 if the route has no steps.
+     */
+    public int getStepForSegment(int segment) {
+        if (vertexSteps.length == 0) {
+            return -1;
+        }
+        return vertexSteps[Math.max(0, Math.min(segment, vertexSteps.length - 1))];
+    }
+
+    /**
+     * The geometry vertex a step's maneuver was matched to.
+     * @param step integer step index.
+     * @return integer vertex number.
+     */
+    public int getStepStartVertex(int step) {
+        return stepStartVertices[step];
+    }
+
+    /*
+     * Steps are matched once up front: each maneuver location is attached to the closest vertex
+     * between the previous maneuver and the distance of the steps in between further on, plus
+     * some slack. Searching forward only, and not too far, keeps a route that passes the same
+     * place twice from matching an early maneuver to the later pass.
+     */
+
+    private static int[] matchSteps(double[] coordinates, double[] cumulativeDistances, List<RouteStep> steps) {
+        int[] starts = new int[steps == null ? 0 : steps.size()];
+        int numVertices = cumulativeDistances.length;
+        int previous = 0;
+        // Meters of steps since the last maneuver matched
+        double ahead = 0;
+        for (int i = 0; i < starts.length; i++) {
+            if (i > 0) {
+                ahead += Math.max(0, steps.get(i - 1).getDistance());
+            }
+            int vertex = previous;
+            ManeuverPoint point = steps.get(i).getManeuver() == null
+                    ? null : steps.get(i).getManeuver().getLocation();
+            if (point != null && point.getCoordinates().size() >= 2 && numVertices > 0) {
+                double longitude = point.getCoordinates().get(0);
+                double latitude = point.getCoordinates().get(1);
+                double limit = cumulativeDistances[previous] + ahead * (1 + MATCH_SLACK_RATIO) + MATCH_SLACK_METERS;
+
+                double closest = Double.MAX_VALUE;
+                for (int j = previous; j < numVertices && cumulativeDistances[j] <= limit; j++) {
+                    double distance = GeoMath.fastDistance(longitude, latitude,
+                            coordinates[2 * j], coordinates[2 * j + 1]);
+                    if (distance < closest) {
+                        closest = distance;
+                        vertex = j;
+                    }
+                }
+                ahead = 0;
+            }
+            previous = vertex;
+            starts[i] = vertex;
+        }
+        return starts;
+    }
+}
@@ -0,0 +1,157 @@
+package com.mapbox.directions.navigation;
+
+import com.mapbox.directions.MapboxDirections;
+import com.mapbox.directions.geometry.GeoMath;
+import com.mapbox.directions.geometry.SegmentIndex;
+import com.mapbox.directions.service.models.DirectionsRoute;
+import com.mapbox.directions.service.models.Waypoint;
+
+/**
+ * Follows a stream of locations along a {@link DirectionsRoute}. Consecutive fixes are almost
+ * always near the segment matched last time, so each update first looks at a small window of
+ * segments around it and only falls back to a search of the whole route (through the geometry's
+ * {@link SegmentIndex}) when nothing in the window is within tolerance. For continuous navigation
+ * this makes an update cost roughly constant regardless of the route length. Distances and
+ * times remaining then come from a {@link RouteProgressEngine} in constant time.
+ * <p>
+ * A tracker keeps state between calls and is not thread-safe; use one per location stream.
+ */
+public class RouteTracker {
+
+    // 0.1 miles, same as MapboxDirections.OFF_ROUTE_THRESHOLD
+    public final static double DEFAULT_TOLERANCE = MapboxDirections.OFF_ROUTE_THRESHOLD * GeoMath.METERS_PER_MILE;
+
+    // Segments searched ahead of and behind the last match before doing a global search
+    public final static int DEFAULT_WINDOW_AHEAD = 16;
+    public final static int DEFAULT_WINDOW_BEHIND = 4;
+
+    private final DirectionsRoute route;
+    private final SegmentIndex index;
+    private final double[] coordinates;
+    private final RouteProgressEngine engine;
+    private final double tolerance;
+    private final int windowAhead;
+    private final int windowBehind;
+
+    private int lastSegment = -1;
+
+    /**
+     * Creates a tracker with the default tolerance of 0.1 miles.
+     * @param route the {@link DirectionsRoute} to follow. Must have a geometry.
+     */
+    public RouteTracker(DirectionsRoute route) {
+        this(route, DEFAULT_TOLERANCE);
+    }
+
+    /**
+     * Creates a tracker.
+     * @param route the {@link DirectionsRoute} to follow. Must have a geometry.
+     * @param tolerance double with unit meters. Locations further than this from the route are
+     *                  considered off-route.
+     */
+    public RouteTracker(DirectionsRoute route, double tolerance) {
+        this(route, tolerance, DEFAULT_WINDOW_AHEAD, DEFAULT_WINDOW_BEHIND);
+    }
+
+    /**
+     * Creates a tracker with a custom search window.
+     * @param route the {@link DirectionsRoute} to follow. Must have a geometry.
+     * @param tolerance double with unit meters.
+     * @param windowAhead number of segments after the last match to check first.
+     * @param windowBehind number of segments before the last match to check first.
+     */
+    public RouteTracker(DirectionsRoute route, double tolerance, int windowAhead, int windowBehind) {
+        if (route.getGeometry() == null) {
+            throw new IllegalArgumentException("Tracking a route requires its geometry.");
+        }
+
+        this.route = route;
+        this.tolerance = tolerance;
+        this.windowAhead = windowAhead;
+        this.windowBehind = windowBehind;
+
+        index = route.getGeometry().getSegmentIndex();
+
+        coordinates = route.getGeometry().getPackedCoordinates();
+
+        engine = new RouteProgressEngine(route);
+    }
+
+    /**
+     * The route being tracked.
+     * @return {@link DirectionsRoute} object.
+     */
+    public DirectionsRoute getRoute() {
+        return route;
+    }
+
+    /**
+     * The engine moved to the last matched position on each update. Reading from it rather
+     * than from the returned {@link RouteProgress} allocates nothing.
+     * @return {@link RouteProgressEngine} object.
+     */
+    public RouteProgressEngine getProgressEngine() {
+        return engine;
+    }
+
+    /**
+     * Forgets the last match so the next update searches the whole route, for example after the
+     * location provider has been off for a while.
+     */
+    public void reset() {
+        lastSegment = -1;
+    }
+
+    /**
+     * Matches a new location against the route.
+     * @param location the current location, typically from the device GPS.
+     * @return {@link RouteProgress} describing where the location is along the route, or null if
+     * the route geometry is empty.
+     */
+    public RouteProgress update(Waypoint location) {
+        double longitude = location.getLongitude();
+        double latitude = location.getLatitude();
+
+        if (index.size() == 0) {
+            return null;
+        }
+
+        // Cheap local search around the last match first
+        int segment = -1;
+        double distance = Double.POSITIVE_INFINITY;
+        if (lastSegment >= 0) {
+            int from = Math.max(0, lastSegment - windowBehind);
+            int to = Math.min(index.size() - 1, lastSegment + windowAhead);
+            for (int i = from; i <= to; i++) {
+                double d = index.distanceToSegment(i, longitude, latitude);
+                if (d < distance) {
+                    distance = d;
+                    segment = i;
+                }
+            }
+        }
+
+        // Nothing close enough nearby, search the whole route
+        if (distance > tolerance) {
+            int nearest = index.nearestSegment(longitude, latitude);
+            double d = index.distanceToSegment(nearest, longitude, latitude);
+            if (d < distance) {
+                distance = d;
+                segment = nearest;
+            }
+        }
+
+        lastSegment = segment;
+
+        // Snap onto the segment and work out how far along the route that is
+        double fraction = index.fractionAlongSegment(segment, longitude, latitude);
+        int a = 2 * segment;
+        int b = Math.min(a + 2, coordinates.length - 2);
+        Waypoint snapped = new Waypoint(
+                coordinates[a] + fraction * (coordinates[b] - coordinates[a]),
+                coordinates[a + 1] + fraction * (coordinates[b + 1] - coordinates[a + 1]));
+        engine.setPosition(segment, fraction);
+
+        return new RouteProgress(distance > tolerance, snapped, distance, segment, engine);
+    }
+}
@@ -0,0 +1,66 @@
+package com.mapbox.directions.service;
+
+import com.mapbox.directions.metrics.MetricsInterceptor;
+import com.mapbox.directions.service.models.DirectionsResponse;
+import com.squareup.okhttp.ResponseBody;
+
+import java.io.IOException;
+import java.lang.annotation.Annotation;
+import java.lang.reflect.Type;
+
+import retrofit.Converter;
+
+/**
+ * Retrofit converter turning response bodies into {@link DirectionsResponse} with a
+ * {@link DirectionsResponseParser} instead of reflective Gson. Other types are left to the
+ * converters registered after this one.
+ */
+public class DirectionsConverterFactory extends Converter.Factory {
+
+    private final DirectionsResponseParser parser;
+
+    private DirectionsConverterFactory(DirectionsResponseParser parser) {
+        this.parser = parser;
+    }
+
+    public static DirectionsConverterFactory create(DirectionsResponseParser parser) {
+        return new DirectionsConverterFactory(parser);
+    }
+
+    @Override
+    public Converter<ResponseBody, ?> fromResponseBody(Type type, Annotation[] annotations) {
+        if (type != DirectionsResponse.class) {
+            return null;
+        }
+
+        return responseConverter();
+    }
+
+    /**
+     * The converter handed to Retrofit, for calls that don't go through a Retrofit proxy.
+     * @return {@link Converter} parsing a body into a {@link DirectionsResponse} and closing it.
+     */
+    public Converter<ResponseBody, DirectionsResponse> responseConverter() {
+        return new Converter<ResponseBody, DirectionsResponse>() {
+            @Override
+            public DirectionsResponse convert(ResponseBody body) throws IOException {
+                MetricsInterceptor.Trace trace = MetricsInterceptor.currentTrace();
+                long start = System.nanoTime();
+                Throwable error = null;
+                try {
+                    // Lazy parsing keeps the raw bytes around to decode routes later
+                    return parser.isLazy() ? parser.parse(body.bytes()) : parser.parse(body.charStream());
+                } catch (IOException | RuntimeException e) {
+                    error = e;
+                    throw e;
+                } finally {
+                    // Finished before closing, closing an unfinished body reports it as abandoned
+                    if (trace != null) {
+                        trace.finish(System.nanoTime() - start, error);
+                    }
+                    body.close();
+                }
+            }
+        };
+    }
+}
@@ -0,0 +1,564 @@
+package com.mapbox.directions.service;
+
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.mapbox.directions.geometry.PolylineCodec;
+import com.mapbox.directions.service.models.DirectionsFeature;
+import com.mapbox.directions.service.models.DirectionsResponse;
+import com.mapbox.directions.service.models.DirectionsRoute;
+import com.mapbox.directions.service.models.FeatureGeometry;
+import com.mapbox.directions.service.models.FeatureProperties;
+import com.mapbox.directions.service.models.ManeuverPoint;
+import com.mapbox.directions.service.models.RouteGeometry;
+import com.mapbox.directions.service.models.RouteGeometryTypeAdapter;
+import com.mapbox.directions.service.models.RouteStep;
+import com.mapbox.directions.service.models.StepManeuver;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Hand-written streaming parser for {@link DirectionsResponse}. It walks the JSON once with a
+ * {@link JsonReader} and fills the models directly, without the reflection Gson's default adapters
+ * rely on. Route coordinates go straight into packed arrays through
+ * {@link RouteGeometryTypeAdapter}.
+ * <p>
+ * When only the first (recommended) route is going to be used, the parser can be told to skip the
+ * steps and/or geometry of the alternatives, which are then never materialised. Unknown fields are
+ * skipped.
+ * <p>
+ * In lazy mode ({@link Builder#setLazyRoutes(boolean)}) the response is kept as raw bytes and
+ * each route only records where its geometry and steps are. They are decoded the first time
+ * {@link DirectionsRoute#getGeometry()} or {@link DirectionsRoute#getSteps()} is called, so routes
+ * that are never looked at cost little more than a scan over their bytes.
+ * <p>
+ * Strings that repeat across steps and responses (way names, directions, maneuver types and
+ * modes, GeoJSON types) go through a {@link StringInterner}, so responses kept in memory share
+ * them instead of each holding its own copies.
+ * <p>
+ * Instances are immutable and thread-safe.
+ */
+public class DirectionsResponseParser {
+
+    private final static Charset UTF_8 = Charset.forName("UTF-8");
+
+    // Shared by all parsers unless told otherwise, so cached responses share strings too
+    private final static StringInterner SHARED_STRINGS = new StringInterner(StringInterner.DEFAULT_CAPACITY);
+
+    private final RouteGeometryTypeAdapter geometryAdapter;
+    private final boolean skipAlternativeSteps;
+    private final boolean skipAlternativeGeometry;
+    private final boolean lazyRoutes;
+    private final StringInterner stringInterner;
+
+    private DirectionsResponseParser(Builder builder) {
+        geometryAdapter = new RouteGeometryTypeAdapter(builder._polylinePrecision);
+        skipAlternativeSteps = builder._skipAlternativeSteps;
+        skipAlternativeGeometry = builder._skipAlternativeGeometry;
+        lazyRoutes = builder._lazyRoutes;
+        stringInterner = builder._stringInterner;
+    }
+
+    /**
+     * Whether routes are materialised on first access, see {@link Builder#setLazyRoutes(boolean)}.
+     * @return true if lazy.
+     */
+    public boolean isLazy() {
+        return lazyRoutes;
+    }
+
+    /**
+     * Parses a full Directions API response held in memory. This is the only entry point that
+     * honours lazy mode, as it needs the raw bytes to decode routes later.
+     * @param json the UTF-8 encoded response body. Not copied, must not be modified.
+     * @return {@link DirectionsResponse} object.
+     * @throws IOException if the JSON is malformed.
+     */
+    public DirectionsResponse parse(byte[] json) throws IOException {
+        if (lazyRoutes) {
+            return parseLazy(json);
+        }
+        return parse(reader(json, 0, json.length));
+    }
+
+    /**
+     * Parses a full Directions API response.
+     * @param reader the response body.
+     * @return {@link DirectionsResponse} object.
+     * @throws IOException if reading fails or the JSON is malformed.
+     */
+    public DirectionsResponse parse(Reader reader) throws IOException {
+        return parse(new JsonReader(reader));
+    }
+
+    /**
+     * Parses a full Directions API response.
+     * @param in reader positioned at the start of the response object.
+     * @return {@link DirectionsResponse} object.
+     * @throws IOException if reading fails or the JSON is malformed.
+     */
+    public DirectionsResponse parse(JsonReader in) throws IOException {
+        DirectionsResponse response = new DirectionsResponse();
+
+        in.beginObject();
+        while (in.hasNext()) {
+            String name = in.nextName();
+            if (skipNull(in)) {
+                continue;
+            }
+
+            if ("origin".equals(name)) {
+                response.setOrigin(readFeature(in));
+            } else if ("destination".equals(name)) {
+                response.setDestination(readFeature(in));
+            } else if ("waypoints".equals(name)) {
+                List<DirectionsFeature> waypoints = new ArrayList<>();
+                in.beginArray();
+                while (in.hasNext()) {
+                    waypoints.add(readFeature(in));
+                }
+                in.endArray();
+                response.setWaypoints(waypoints);
+            } else if ("routes".equals(name)) {
+                List<DirectionsRoute> routes = new ArrayList<>();
+                in.beginArray();
+                while (in.hasNext()) {
+                    boolean alternative = !routes.isEmpty();
+                    routes.add(readRoute(in, alternative && skipAlternativeSteps,
+                            alternative && skipAlternativeGeometry));
+                }
+                in.endArray();
+                response.setRoutes(routes);
+            } else {
+                in.skipValue();
+            }
+        }
+        in.endObject();
+
+        return response;
+    }
+
+    /**
+     * Parses a single route object.
+     * @param in reader positioned at the start of the route object.
+     * @return {@link DirectionsRoute} object.
+     * @throws IOException if reading fails or the JSON is malformed.
+     */
+    public DirectionsRoute parseRoute(JsonReader in) throws IOException {
+        return readRoute(in, false, false);
+    }
+
+    /**
+     * Parses a route's steps array.
+     * @param in reader positioned at the start of the steps array.
+     * @return List of {@link RouteStep} objects.
+     * @throws IOException if reading fails or the JSON is malformed.
+     */
+    public List<RouteStep> parseSteps(JsonReader in) throws IOException {
+        List<RouteStep> steps = new ArrayList<>();
+        in.beginArray();
+        while (in.hasNext()) {
+            steps.add(readStep(in));
+        }
+        in.endArray();
+        return steps;
+    }
+
+    /**
+     * Parses a route geometry, either GeoJSON or an encoded polyline.
+     * @param in reader positioned at the geometry value.
+     * @return {@link RouteGeometry} object, or null if the route has no geometry.
+     * @throws IOException if reading fails or the JSON is malformed.
+     */
+    public RouteGeometry parseGeometry(JsonReader in) throws IOException {
+        return geometryAdapter.read(in);
+    }
+
+    /*
+     * Lazy mode
+     */
+
+    private DirectionsResponse parseLazy(byte[] json) throws IOException {
+        DirectionsResponse response = new DirectionsResponse();
+        JsonScanner scanner = new JsonScanner(json);
+
+        int[] fields = scanner.objectFields(0);
+        for (int i = 0; i < fields.length; i += 4) {
+            int valueStart = fields[i + 2];
+            int valueEnd = fields[i + 3];
+            if (scanner.isNull(valueStart, valueEnd)) {
+                continue;
+            }
+
+            if (scanner.matches(fields[i], fields[i + 1], "routes")) {
+                List<DirectionsRoute> routes = new ArrayList<>();
+                int[] elements = scanner.arrayElements(valueStart);
+                for (int j = 0; j < elements.length; j += 2) {
+                    boolean alternative = j > 0;
+                    routes.add(readLazyRoute(json, scanner, elements[j], alternative && skipAlternativeSteps,
+                            alternative && skipAlternativeGeometry));
+                }
+                response.setRoutes(routes);
+            } else if (scanner.matches(fields[i], fields[i + 1], "origin")) {
+                response.setOrigin(readFeature(reader(json, valueStart, valueEnd)));
+            } else if (scanner.matches(fields[i], fields[i + 1], "destination")) {
+                response.setDestination(readFeature(reader(json, valueStart, valueEnd)));
+            } else if (scanner.matches(fields[i], fields[i + 1], "waypoints")) {
+                JsonReader in = reader(json, valueStart, valueEnd);
+                List<DirectionsFeature> waypoints = new ArrayList<>();
+                in.beginArray();
+                while (in.hasNext()) {
+                    waypoints.add(readFeature(in));
+                }
+                in.endArray();
+                response.setWaypoints(waypoints);
+            }
+        }
+
+        return response;
+    }
+
+    private DirectionsRoute readLazyRoute(byte[] json, JsonScanner scanner, int start,
+                                          boolean skipSteps, boolean skipGeometry) throws IOException {
+        DirectionsRoute route = new DirectionsRoute();
+        int geometryStart = -1;
+        int geometryEnd = -1;
+        int stepsStart = -1;
+        int stepsEnd = -1;
+
+        int[] fields = scanner.objectFields(start);
+        for (int i = 0; i < fields.length; i += 4) {
+            int valueStart = fields[i + 2];
+            int valueEnd = fields[i + 3];
+            if (scanner.isNull(valueStart, valueEnd)) {
+                continue;
+            }
+
+            if (scanner.matches(fields[i], fields[i + 1], "distance")) {
+                route.setDistance(nextInt(scalarReader(json, valueStart, valueEnd)));
+            } else if (scanner.matches(fields[i], fields[i + 1], "duration")) {
+                route.setDuration(nextInt(scalarReader(json, valueStart, valueEnd)));
+            } else if (scanner.matches(fields[i], fields[i + 1], "summary")) {
+                route.setSummary(scalarReader(json, valueStart, valueEnd).nextString());
+            } else if (scanner.matches(fields[i], fields[i + 1], "geometry") && !skipGeometry) {
+                geometryStart = valueStart;
+                geometryEnd = valueEnd;
+            } else if (scanner.matches(fields[i], fields[i + 1], "steps") && !skipSteps) {
+                stepsStart = valueStart;
+                stepsEnd = valueEnd;
+            }
+        }
+
+        route.setLazyLoader(new LazyRoute(json, geometryStart, geometryEnd, stepsStart, stepsEnd));
+        return route;
+    }
+
+    private class LazyRoute implements DirectionsRoute.LazyLoader {
+
+        private final byte[] json;
+        private final int geometryStart;
+        private final int geometryEnd;
+        private final int stepsStart;
+        private final int stepsEnd;
+
+        LazyRoute(byte[] json, int geometryStart, int geometryEnd, int stepsStart, int stepsEnd) {
+            this.json = json;
+            this.geometryStart = geometryStart;
+            this.geometryEnd = geometryEnd;
+            this.stepsStart = stepsStart;
+            this.stepsEnd = stepsEnd;
+        }
+
+        @Override
+        public RouteGeometry loadGeometry() {
+            if (geometryStart < 0) {
+                return null;
+            }
+
+            try {
+                // Polylines and geometry=false are bare values
+                JsonReader in = json[geometryStart] == '{'
+                        ? reader(json, geometryStart, geometryEnd)
+                        : scalarReader(json, geometryStart, geometryEnd);
+                return parseGeometry(in);
+            } catch (IOException e) {
+                throw new RuntimeException("Unable to decode the route geometry.", e);
+            }
+        }
+
+        @Override
+        public List<RouteStep> loadSteps() {
+            if (stepsStart < 0) {
+                return new ArrayList<>();
+            }
+
+            try {
+                return parseSteps(reader(json, stepsStart, stepsEnd));
+            } catch (IOException e) {
+                throw new RuntimeException("Unable to decode the route steps.", e);
+            }
+        }
+    }
+
+    /*
+     * Models
+     */
+
+    private DirectionsRoute readRoute(JsonReader in, boolean skipSteps, boolean skipGeometry) throws IOException {
+        DirectionsRoute route = new DirectionsRoute();
+
+        in.beginObject();
+        while (in.hasNext()) {
+            String name = in.nextName();
+            if (skipNull(in)) {
+                continue;
+            }
+
+            if ("distance".equals(name)) {
+                route.setDistance(nextInt(in));
+            } else if ("duration".equals(name)) {
+                route.setDuration(nextInt(in));
+            } else if ("summary".equals(name)) {
+                route.setSummary(in.nextString());
+            } else if ("geometry".equals(name) && !skipGeometry) {
+                route.setGeometry(parseGeometry(in));
+            } else if ("steps".equals(name) && !skipSteps) {
+                route.setSteps(parseSteps(in));
+            } else {
+                in.skipValue();
+            }
+        }
+        in.endObject();
+
+        return route;
+    }
+
+    private RouteStep readStep(JsonReader in) throws IOException {
+        RouteStep step = new RouteStep();
+
+        in.beginObject();
+        while (in.hasNext()) {
+            String name = in.nextName();
+            if (skipNull(in)) {
+                continue;
+            }
+
+            if ("distance".equals(name)) {
+                step.setDistance(nextInt(in));
+            } else if ("duration".equals(name)) {
+                step.setDuration(nextInt(in));
+            } else if ("wayName".equals(name)) {
+                step.setWayName(intern(in.nextString()));
+            } else if ("direction".equals(name)) {
+                step.setDirection(intern(in.nextString()));
+            } else if ("heading".equals(name)) {
+                step.setHeading(in.nextDouble());
+            } else if ("maneuver".equals(name)) {
+                step.setManeuver(readManeuver(in));
+            } else {
+                in.skipValue();
+            }
+        }
+        in.endObject();
+
+        return step;
+    }
+
+    private StepManeuver readManeuver(JsonReader in) throws IOException {
+        StepManeuver maneuver = new StepManeuver();
+
+        in.beginObject();
+        while (in.hasNext()) {
+            String name = in.nextName();
+            if (skipNull(in)) {
+                continue;
+            }
+
+            if ("type".equals(name)) {
+                maneuver.setType(intern(in.nextString()));
+            } else if ("location".equals(name)) {
+                ManeuverPoint location = new ManeuverPoint();
+                readPoint(in, location, null);
+                maneuver.setLocation(location);
+            } else if ("instruction".equals(name)) {
+                maneuver.setInstruction(in.nextString());
+            } else if ("mode".equals(name)) {
+                maneuver.setMode(intern(in.nextString()));
+            } else {
+                in.skipValue();
+            }
+        }
+        in.endObject();
+
+        return maneuver;
+    }
+
+    private DirectionsFeature readFeature(JsonReader in) throws IOException {
+        DirectionsFeature feature = new DirectionsFeature();
+
+        in.beginObject();
+        while (in.hasNext()) {
+            String name = in.nextName();
+            if (skipNull(in)) {
+                continue;
+            }
+
+            if ("type".equals(name)) {
+                feature.setType(intern(in.nextString()));
+            } else if ("geometry".equals(name)) {
+                FeatureGeometry geometry = new FeatureGeometry();
+                readPoint(in, null, geometry);
+                feature.setGeometry(geometry);
+            } else if ("properties".equals(name)) {
+                FeatureProperties properties = new FeatureProperties();
+                in.beginObject();
+                while (in.hasNext()) {
+                    String property = in.nextName();
+                    if ("name".equals(property) && !skipNull(in)) {
+                        properties.setName(in.nextString());
+                    } else {
+                        in.skipValue();
+                    }
+                }
+                in.endObject();
+                feature.setProperties(properties);
+            } else {
+                in.skipValue();
+            }
+        }
+        in.endObject();
+
+        return feature;
+    }
+
+    // ManeuverPoint and FeatureGeometry share the same GeoJSON Point shape
+    private void readPoint(JsonReader in, ManeuverPoint maneuverPoint, FeatureGeometry featureGeometry) throws IOException {
+        String type = null;
+        List<Double> coordinates = new ArrayList<>(2);
+
+        in.beginObject();
+        while (in.hasNext()) {
+            String name = in.nextName();
+            if (skipNull(in)) {
+                continue;
+            }
+
+            if ("type".equals(name)) {
+                type = intern(in.nextString());
+            } else if ("coordinates".equals(name)) {
+                in.beginArray();
+                while (in.hasNext()) {
+                    coordinates.add(in.nextDouble());
+                }
+                in.endArray();
+            } else {
+                in.skipValue();
+            }
+        }
+        in.endObject();
+
+        if (maneuverPoint != null) {
+            maneuverPoint.setType(type);
+            maneuverPoint.setCoordinates(coordinates);
+        } else {
+            featureGeometry.setType(type);
+            featureGeometry.setCoordinates(coordinates);
+        }
+    }
+
+    /*
+     * Helpers
+     */
+
+    private String intern(String value) {
+        return stringInterner == null ? value : stringInterner.intern(value);
+    }
+
+    // Null values leave the model default in place, like Gson does
+    private static boolean skipNull(JsonReader in) throws IOException {
+        if (in.peek() == JsonToken.NULL) {
+            in.nextNull();
+            return true;
+        }
+        return false;
+    }
+
+    private static JsonReader reader(byte[] json, int start, int end) {
+        return new JsonReader(new InputStreamReader(new ByteArrayInputStream(json, start, end - start), UTF_8));
+    }
+
+    // JsonReader only accepts a bare number, string or boolean at the top level in lenient mode
+    private static JsonReader scalarReader(byte[] json, int start, int end) {
+        JsonReader reader = reader(json, start, end);
+        reader.setLenient(true);
+        return reader;
+    }
+
+    // Be lenient about integers being sent as doubles
+    private static int nextInt(JsonReader in) throws IOException {
+        return (int) in.nextDouble();
+    }
+
+    /*
+     * Builder
+     */
+
+    public static class Builder {
+
+        private int _polylinePrecision = PolylineCodec.PRECISION_6;
+        private boolean _skipAlternativeSteps;
+        private boolean _skipAlternativeGeometry;
+        private boolean _lazyRoutes;
+        private StringInterner _stringInterner = SHARED_STRINGS;
+
+        public Builder setPolylinePrecision(int polylinePrecision) {
+            _polylinePrecision = polylinePrecision;
+            return this;
+        }
+
+        /*
+         * Alternatives are every route after the first one. Skipped fields are left at their
+         * defaults: an empty steps List and a null geometry.
+         */
+
+        public Builder setSkipAlternativeSteps(boolean skipAlternativeSteps) {
+            _skipAlternativeSteps = skipAlternativeSteps;
+            return this;
+        }
+
+        public Builder setSkipAlternativeGeometry(boolean skipAlternativeGeometry) {
+            _skipAlternativeGeometry = skipAlternativeGeometry;
+            return this;
+        }
+
+        /*
+         * Keep the raw response and decode each route's geometry and steps on first access. Cuts
+         * the time to the first route and the memory used by alternatives that are never shown.
+         */
+
+        public Builder setLazyRoutes(boolean lazyRoutes) {
+            _lazyRoutes = lazyRoutes;
+            return this;
+        }
+
+        /*
+         * Parsers share one table of DEFAULT_CAPACITY strings by default. Pass null to keep every
+         * string as parsed.
+         */
+
+        public Builder setStringInterner(StringInterner stringInterner) {
+            _stringInterner = stringInterner;
+            return this;
+        }
+
+        public DirectionsResponseParser build() {
+            return new DirectionsResponseParser(this);
+        }
+
+    }
+}
@@ -4,6 +4,7 @@ import com.mapbox.directions.service.models.DirectionsResponse;
 
 import retrofit.Call;
 import retrofit.http.GET;
+import retrofit.http.Header;
 import retrofit.http.Path;
 import retrofit.http.Query;
 
@@ -23,4 +24,21 @@ public interface DirectionsService {
             @Query("steps") boolean steps
     );
 
+    /*
+     * Same as above, revalidating a cached response: with the ETag it was served with, the API
+     * answers 304 Not Modified without a body if it hasn't changed. A null ETag sends no header.
+     */
+
+    @GET("/v4/directions/{profile}/{waypoints}.json")
+    Call<DirectionsResponse> calculate(
+            @Path("profile") String profile,
+            @Path("waypoints") String waypoints,
+            @Query("access_token") String accessToken,
+            @Query("alternatives") boolean alternatives,
+            @Query("instructions") String instructions,
+            @Query("geometry") String geometry,
+            @Query("steps") boolean steps,
+            @Header("If-None-Match") String ifNoneMatch
+    );
+
 }
@@ -0,0 +1,398 @@
+package com.mapbox.directions.service;
+
+import android.text.TextUtils;
+import android.util.Log;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.mapbox.directions.cache.DirectionsCache;
+import com.mapbox.directions.geometry.PolylineCodec;
+import com.mapbox.directions.metrics.MetricsInterceptor;
+import com.mapbox.directions.metrics.MetricsListener;
+import com.mapbox.directions.service.models.RouteGeometry;
+import com.mapbox.directions.service.models.RouteGeometryTypeAdapter;
+import com.mapbox.directions.storage.RouteStore;
+import com.squareup.okhttp.ConnectionPool;
+import com.squareup.okhttp.Dispatcher;
+import com.squareup.okhttp.Interceptor;
+import com.squareup.okhttp.OkHttpClient;
+import com.squareup.okhttp.Request;
+
+import java.io.IOException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import retrofit.GsonConverterFactory;
+import retrofit.Retrofit;
+
+/**
+ * The HTTP stack used to talk to the Mapbox Directions API. It bundles a single
+ * {@link OkHttpClient} (and therefore a single connection pool and dispatcher), a {@link Retrofit}
+ * instance and the {@link DirectionsService} proxy created from it. Building these is expensive,
+ * so every {@code MapboxDirections} request shares {@link #getDefault()} unless told otherwise.
+ * <p>
+ * OkHttp asks for gzip and inflates responses as they stream into the parser, as long as nothing
+ * sets Accept-Encoding itself: a custom client or interceptor doing so gets the raw bytes back.
+ */
+public class DirectionsTransport {
+
+    private final static String LOG_TAG = "DirectionsTransport";
+
+    public final static String BASE_URL = "https://api.mapbox.com";
+
+    public final static int DEFAULT_MAX_IDLE_CONNECTIONS = 5;
+    public final static long DEFAULT_KEEP_ALIVE_DURATION_MS = TimeUnit.MINUTES.toMillis(5);
+    public final static int DEFAULT_MAX_REQUESTS = 64;
+    public final static int DEFAULT_MAX_REQUESTS_PER_HOST = 5;
+
+    private static DirectionsTransport _default;
+
+    private final OkHttpClient _client;
+    private final String _baseUrl;
+    private final DirectionsResponseParser _parser;
+    private final Retrofit _retrofit;
+    private final DirectionsService _service;
+    private final DirectionsCache _cache;
+    private final RouteStore _routeStore;
+    private final RequestCoalescer _coalescer;
+    private final MetricsListener _metricsListener;
+    private final RetryPolicy _retryPolicy;
+
+    private DirectionsTransport(Builder builder) {
+        _client = builder.buildClient();
+        _baseUrl = builder._baseUrl;
+        _parser = builder._parser != null ? builder._parser : new DirectionsResponseParser.Builder()
+                .setPolylinePrecision(builder._polylinePrecision)
+                .build();
+
+        // Directions responses are parsed by hand, Gson only handles anything else
+        Gson gson = new GsonBuilder()
+                .registerTypeAdapter(RouteGeometry.class, new RouteGeometryTypeAdapter(builder._polylinePrecision))
+                .create();
+
+        Retrofit.Builder retrofit = new Retrofit.Builder()
+                .client(_client)
+                .baseUrl(builder._baseUrl)
+                .addConverterFactory(DirectionsConverterFactory.create(_parser))
+                .addConverterFactory(GsonConverterFactory.create(gson));
+        if (builder._callbackExecutor != null) {
+            retrofit.callbackExecutor(builder._callbackExecutor);
+        }
+        _retrofit = retrofit.build();
+        _service = _retrofit.create(DirectionsService.class);
+        _cache = builder._cache;
+        _routeStore = builder._routeStore;
+        _coalescer = builder._coalescing ? new RequestCoalescer(_retrofit) : null;
+        _metricsListener = builder._metricsListener;
+        _retryPolicy = builder._retryPolicy;
+    }
+
+    /**
+     * The shared transport used by requests that don't set their own. It's created on first use
+     * with the default pool and dispatcher limits.
+     * @return the process wide {@link DirectionsTransport}.
+     */
+    public static synchronized DirectionsTransport getDefault() {
+        if (_default == null) {
+            _default = new Builder().build();
+        }
+        return _default;
+    }
+
+    /**
+     * Replaces the shared transport, for example with one built around a tuned client. Requests
+     * that were already built keep using the transport they were built with.
+     * @param transport the new default, or null to go back to a lazily created one.
+     */
+    public static synchronized void setDefault(DirectionsTransport transport) {
+        _default = transport;
+    }
+
+    /**
+     * The client all calls made through this transport go through.
+     * @return {@link OkHttpClient} object.
+     */
+    public OkHttpClient getClient() {
+        return _client;
+    }
+
+    /**
+     * The URL of the Directions API calls made through this transport are sent to.
+     * @return string URL, {@link #BASE_URL} unless set otherwise.
+     */
+    public String getBaseUrl() {
+        return _baseUrl;
+    }
+
+    /**
+     * The parser used to turn response bodies into {@link com.mapbox.directions.service.models.DirectionsResponse}.
+     * @return {@link DirectionsResponseParser} object.
+     */
+    public DirectionsResponseParser getParser() {
+        return _parser;
+    }
+
+    /**
+     * The {@link Retrofit} instance the service was created from.
+     * @return {@link Retrofit} object.
+     */
+    public Retrofit getRetrofit() {
+        return _retrofit;
+    }
+
+    /**
+     * The Retrofit proxy for the Directions API, created once per transport.
+     * @return {@link DirectionsService} object.
+     */
+    public DirectionsService getService() {
+        return _service;
+    }
+
+    /**
+     * The response cache requests made through this transport consult, if any.
+     * @return {@link DirectionsCache} object, or null if caching is off.
+     */
+    public DirectionsCache getCache() {
+        return _cache;
+    }
+
+    /**
+     * The offline route store requests made through this transport consult, if any.
+     * @return {@link RouteStore} object, or null if none was set.
+     */
+    public RouteStore getRouteStore() {
+        return _routeStore;
+    }
+
+    /**
+     * Shares in-flight calls between identical requests made through this transport, if enabled.
+     * @return {@link RequestCoalescer} object, or null if coalescing is off.
+     */
+    public RequestCoalescer getCoalescer() {
+        return _coalescer;
+    }
+
+    /**
+     * Where calls made through this transport are reported, if anywhere.
+     * @return {@link MetricsListener} object, or null if instrumentation is off.
+     */
+    public MetricsListener getMetricsListener() {
+        return _metricsListener;
+    }
+
+    /**
+     * How calls made through this transport are retried and hedged, if at all.
+     * @return {@link RetryPolicy} object, or null if calls are only attempted once.
+     */
+    public RetryPolicy getRetryPolicy() {
+        return _retryPolicy;
+    }
+
+    /*
+     * Builder
+     */
+
+    public static class Builder {
+
+        private OkHttpClient _client;
+        private String _baseUrl = BASE_URL;
+        private int _maxIdleConnections = DEFAULT_MAX_IDLE_CONNECTIONS;
+        private long _keepAliveDurationMs = DEFAULT_KEEP_ALIVE_DURATION_MS;
+        private int _maxRequests = DEFAULT_MAX_REQUESTS;
+        private int _maxRequestsPerHost = DEFAULT_MAX_REQUESTS_PER_HOST;
+        private int _polylinePrecision = PolylineCodec.PRECISION_6;
+        private DirectionsResponseParser _parser;
+        private DirectionsCache _cache;
+        private RouteStore _routeStore;
+        private boolean _coalescing;
+        private ExecutorService _executor;
+        private Executor _callbackExecutor;
+        private MetricsListener _metricsListener;
+        private boolean _logging;
+        private RetryPolicy _retryPolicy;
+
+        /*
+         * When a client is given we assume it's already tuned: its connection pool and dispatcher
+         * are used as they are and the limits below are ignored. We work on a clone so adding our
+         * interceptors doesn't leak into the caller's client.
+         */
+
+        public Builder setClient(OkHttpClient client) {
+            _client = client;
+            return this;
+        }
+
+        public Builder setBaseUrl(String baseUrl) {
+            _baseUrl = baseUrl;
+            return this;
+        }
+
+        public Builder setMaxIdleConnections(int maxIdleConnections) {
+            _maxIdleConnections = maxIdleConnections;
+            return this;
+        }
+
+        public Builder setKeepAliveDuration(long duration, TimeUnit unit) {
+            _keepAliveDurationMs = unit.toMillis(duration);
+            return this;
+        }
+
+        public Builder setMaxRequests(int maxRequests) {
+            _maxRequests = maxRequests;
+            return this;
+        }
+
+        public Builder setMaxRequestsPerHost(int maxRequestsPerHost) {
+            _maxRequestsPerHost = maxRequestsPerHost;
+            return this;
+        }
+
+        /*
+         * Where asynchronous calls run, OkHttp's own cached thread pool by default. On JDK 21+ a
+         * virtual thread per task executor (Executors.newVirtualThreadPerTaskExecutor()) lets each
+         * call block cheaply; raise the request limits above to make use of it. Like the limits,
+         * this is ignored when a client is given.
+         */
+
+        public Builder setExecutor(ExecutorService executor) {
+            _executor = executor;
+            return this;
+        }
+
+        /*
+         * Where callbacks are delivered. Defaults to the main thread on Android and to the thread
+         * the call completed on elsewhere.
+         */
+
+        public Builder setCallbackExecutor(Executor callbackExecutor) {
+            _callbackExecutor = callbackExecutor;
+            return this;
+        }
+
+        /*
+         * Precision used to decode route geometries requested as GEOMETRY_POLYLINE. The Directions
+         * API encodes them with 6 decimal places.
+         */
+
+        public Builder setPolylinePrecision(int polylinePrecision) {
+            _polylinePrecision = polylinePrecision;
+            return this;
+        }
+
+        /*
+         * Responses are parsed with a default DirectionsResponseParser. Set one here to change its
+         * options, e.g. to skip the steps of alternative routes. The parser's own polyline precision
+         * is used in that case.
+         */
+
+        public Builder setParser(DirectionsResponseParser parser) {
+            _parser = parser;
+            return this;
+        }
+
+        /*
+         * Caching is opt-in. With a cache set, identical requests (see
+         * MapboxDirections.getRequestKey()) are answered from it until their entry expires.
+         */
+
+        public Builder setCache(DirectionsCache cache) {
+            _cache = cache;
+            return this;
+        }
+
+        /*
+         * With a route store set, requests are answered from a stored response whose waypoints
+         * are within its tolerance of the requested ones, and successful network responses are
+         * added to it. The response cache, when set too, is checked first.
+         */
+
+        public Builder setRouteStore(RouteStore routeStore) {
+            _routeStore = routeStore;
+            return this;
+        }
+
+        /*
+         * Coalescing is opt-in. When on, a request made while an identical one (same
+         * MapboxDirections.getRequestKey()) is still in flight waits for that one's response
+         * instead of going to the network again. With a cache set as well, the cache is checked
+         * first.
+         */
+
+        public Builder setCoalescing(boolean coalescing) {
+            _coalescing = coalescing;
+            return this;
+        }
+
+        /*
+         * Calls are attempted once by default. With a policy set, failed attempts are retried and
+         * slow ones optionally hedged, see RetryPolicy.
+         */
+
+        public Builder setRetryPolicy(RetryPolicy retryPolicy) {
+            _retryPolicy = retryPolicy;
+            return this;
+        }
+
+        /*
+         * Instrumentation is off by default. The listener is told about every call made through
+         * this transport, see DirectionsMetrics for a ready-made one.
+         */
+
+        public Builder setMetricsListener(MetricsListener metricsListener) {
+            _metricsListener = metricsListener;
+            return this;
+        }
+
+        /*
+         * Logs every request URL (access token included) with Log.d(). Off by default as it costs
+         * a string concatenation and a logcat write per request.
+         */
+
+        public Builder setLogging(boolean logging) {
+            _logging = logging;
+            return this;
+        }
+
+        private OkHttpClient buildClient() {
+            OkHttpClient client;
+            if (_client != null) {
+                client = _client.clone();
+            } else {
+                Dispatcher dispatcher = _executor != null ? new Dispatcher(_executor) : new Dispatcher();
+                dispatcher.setMaxRequests(_maxRequests);
+                dispatcher.setMaxRequestsPerHost(_maxRequestsPerHost);
+
+                client = new OkHttpClient();
+                client.setConnectionPool(new ConnectionPool(_maxIdleConnections, _keepAliveDurationMs));
+                client.setDispatcher(dispatcher);
+            }
+
+            if (_metricsListener != null) {
+                client.interceptors().add(new MetricsInterceptor(_metricsListener));
+            }
+
+            // Log the URL for debugging purposes
+            if (_logging) {
+                client.interceptors().add(new Interceptor() {
+                    @Override
+                    public com.squareup.okhttp.Response intercept(Interceptor.Chain chain) throws IOException {
+                        Request request = chain.request();
+                        Log.d(LOG_TAG, "Mapbox URL: " + request.urlString());
+                        return chain.proceed(request);
+                    }
+                });
+            }
+
+            return client;
+        }
+
+        public DirectionsTransport build() {
+            if (TextUtils.isEmpty(_baseUrl)) {
+                throw new RuntimeException("A DirectionsTransport requires a base URL.");
+            }
+            return new DirectionsTransport(this);
+        }
+
+    }
+}
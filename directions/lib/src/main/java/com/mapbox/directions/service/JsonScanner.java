@@ -0,0 +1,175 @@
+package com.mapbox.directions.service;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * Finds the structure of a UTF-8 JSON document without decoding it: where objects, arrays and
+ * their members start and end. Used to remember byte ranges of large values (route geometries and
+ * steps) so they can be decoded later, on demand.
+ */
+final class JsonScanner {
+
+    private final byte[] json;
+
+    JsonScanner(byte[] json) {
+        this.json = json;
+    }
+
+    int skipWhitespace(int pos) {
+        while (pos < json.length) {
+            byte b = json[pos];
+            if (b != ' ' && b != '\n' && b != '\r' && b != '\t') break;
+            pos++;
+        }
+        return pos;
+    }
+
+    /**
+     * Members of the object starting at {@code pos}.
+     * @return for each member the start and end of its name (without quotes) followed by the start
+     * and end of its value, i.e. 4 ints per member.
+     */
+    int[] objectFields(int pos) throws IOException {
+        pos = expect(skipWhitespace(pos), '{');
+        int[] fields = new int[32];
+        int count = 0;
+
+        pos = skipWhitespace(pos);
+        if (pos < json.length && json[pos] == '}') {
+            return Arrays.copyOf(fields, 0);
+        }
+
+        while (true) {
+            pos = skipWhitespace(pos);
+            if (pos >= json.length || json[pos] != '"') throw malformed(pos);
+            int nameEnd = stringEnd(pos);
+            int nameStart = pos + 1;
+            pos = skipWhitespace(expect(skipWhitespace(nameEnd), ':'));
+            int valueEnd = valueEnd(pos);
+
+            if (count + 4 > fields.length) fields = Arrays.copyOf(fields, fields.length * 2);
+            fields[count++] = nameStart;
+            fields[count++] = nameEnd - 1;
+            fields[count++] = pos;
+            fields[count++] = valueEnd;
+
+            pos = skipWhitespace(valueEnd);
+            if (pos < json.length && json[pos] == ',') {
+                pos++;
+            } else {
+                expect(pos, '}');
+                return Arrays.copyOf(fields, count);
+            }
+        }
+    }
+
+    /**
+     * Elements of the array starting at {@code pos}.
+     * @return the start and end of each element, i.e. 2 ints per element.
+     */
+    int[] arrayElements(int pos) throws IOException {
+        pos = expect(skipWhitespace(pos), '[');
+        int[] elements = new int[16];
+        int count = 0;
+
+        pos = skipWhitespace(pos);
+        if (pos < json.length && json[pos] == ']') {
+            return Arrays.copyOf(elements, 0);
+        }
+
+        while (true) {
+            pos = skipWhitespace(pos);
+            int end = valueEnd(pos);
+            if (count + 2 > elements.length) elements = Arrays.copyOf(elements, elements.length * 2);
+            elements[count++] = pos;
+            elements[count++] = end;
+
+            pos = skipWhitespace(end);
+            if (pos < json.length && json[pos] == ',') {
+                pos++;
+            } else {
+                expect(pos, ']');
+                return Arrays.copyOf(elements, count);
+            }
+        }
+    }
+
+    /**
+     * Whether the raw bytes in the range equal an ASCII name. Escaped names never match.
+     */
+    boolean matches(int start, int end, String name) {
+        if (end - start != name.length()) return false;
+        for (int i = 0; i < name.length(); i++) {
+            if (json[start + i] != name.charAt(i)) return false;
+        }
+        return true;
+    }
+
+    boolean isNull(int start, int end) {
+        return matches(start, end, "null");
+    }
+
+    /**
+     * Exclusive end of the value starting at {@code pos}.
+     */
+    int valueEnd(int pos) throws IOException {
+        if (pos >= json.length) throw malformed(pos);
+
+        byte b = json[pos];
+        if (b == '"') {
+            return stringEnd(pos);
+        } else if (b == '{' || b == '[') {
+            int depth = 0;
+            while (pos < json.length) {
+                b = json[pos];
+                if (b == '"') {
+                    pos = stringEnd(pos);
+                    continue;
+                } else if (b == '{' || b == '[') {
+                    depth++;
+                } else if (b == '}' || b == ']') {
+                    depth--;
+                    if (depth == 0) return pos + 1;
+                }
+                pos++;
+            }
+            throw malformed(pos);
+        } else {
+            // Number or literal
+            int start = pos;
+            while (pos < json.length) {
+                b = json[pos];
+                if (b == ',' || b == '}' || b == ']' || b == ' ' || b == '\n' || b == '\r' || b == '\t') break;
+                pos++;
+            }
+            if (pos == start) throw malformed(pos);
+            return pos;
+        }
+    }
+
+    // Exclusive end (past the closing quote) of the string starting at pos
+    private int stringEnd(int pos) throws IOException {
+        pos++;
+        while (pos < json.length) {
+            byte b = json[pos];
+            if (b == '\\') {
+                pos += 2;
+            } else if (b == '"') {
+                return pos + 1;
+            } else {
+                pos++;
+            }
+        }
+        throw malformed(pos);
+    }
+
+    private int expect(int pos, char c) throws IOException {
+        if (pos >= json.length || json[pos] != c) throw malformed(pos);
+        return pos + 1;
+    }
+
+    private static IOException malformed(int pos) {
+        return new IOException("Malformed JSON at offset " + pos + ".");
+    }
+}
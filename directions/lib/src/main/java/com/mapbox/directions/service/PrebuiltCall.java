@@ -0,0 +1,149 @@
+package com.mapbox.directions.service;
+
+import com.mapbox.directions.service.models.DirectionsResponse;
+import com.squareup.okhttp.OkHttpClient;
+import com.squareup.okhttp.Request;
+import com.squareup.okhttp.ResponseBody;
+
+import java.io.IOException;
+import java.util.concurrent.Executor;
+
+import retrofit.Call;
+import retrofit.Callback;
+import retrofit.Converter;
+import retrofit.Response;
+import retrofit.Retrofit;
+
+/**
+ * A {@link Call} sending an OkHttp {@link Request} that was built up front, instead of having
+ * Retrofit build one from the {@link DirectionsService} method arguments. Responses are handled
+ * the way Retrofit does: 2xx bodies are parsed with the given converter, other bodies are
+ * buffered and returned as an error, and callbacks are delivered on the Retrofit callback
+ * executor.
+ */
+public class PrebuiltCall implements Call<DirectionsResponse> {
+
+    private final OkHttpClient client;
+    private final Request request;
+    private final Converter<ResponseBody, DirectionsResponse> converter;
+    private final Retrofit retrofit;
+
+    private boolean executed;
+    private volatile boolean canceled;
+    private volatile com.squareup.okhttp.Call rawCall;
+
+    /**
+     * @param client the client to send the request with.
+     * @param request the complete request.
+     * @param converter parses successful bodies, see {@link DirectionsConverterFactory#responseConverter()}.
+     * @param retrofit the {@link Retrofit} instance handed to callbacks; its callback executor is
+     *                 used to deliver them.
+     */
+    public PrebuiltCall(OkHttpClient client, Request request,
+                        Converter<ResponseBody, DirectionsResponse> converter, Retrofit retrofit) {
+        this.client = client;
+        this.request = request;
+        this.converter = converter;
+        this.retrofit = retrofit;
+    }
+
+    @Override
+    public Response<DirectionsResponse> execute() throws IOException {
+        return parse(start().execute());
+    }
+
+    @Override
+    public void enqueue(final Callback<DirectionsResponse> callback) {
+        start().enqueue(new com.squareup.okhttp.Callback() {
+            @Override
+            public void onFailure(Request request, IOException e) {
+                deliver(callback, null, e);
+            }
+
+            @Override
+            public void onResponse(com.squareup.okhttp.Response rawResponse) {
+                Response<DirectionsResponse> response;
+                try {
+                    response = parse(rawResponse);
+                } catch (IOException | RuntimeException e) {
+                    deliver(callback, null, e);
+                    return;
+                }
+                deliver(callback, response, null);
+            }
+        });
+    }
+
+    private com.squareup.okhttp.Call start() {
+        synchronized (this) {
+            if (executed) {
+                throw new IllegalStateException("Already executed.");
+            }
+            executed = true;
+        }
+
+        com.squareup.okhttp.Call call = client.newCall(request);
+        rawCall = call;
+        if (canceled) {
+            call.cancel();
+        }
+        return call;
+    }
+
+    private Response<DirectionsResponse> parse(com.squareup.okhttp.Response rawResponse) throws IOException {
+        // The body is handed out separately, the raw response only keeps the metadata
+        ResponseBody rawBody = rawResponse.body();
+        rawResponse = rawResponse.newBuilder().body(null).build();
+
+        int code = rawResponse.code();
+        if (code < 200 || code >= 300) {
+            try {
+                ResponseBody errorBody = ResponseBody.create(rawBody.contentType(), rawBody.bytes());
+                return Response.error(errorBody, rawResponse);
+            } finally {
+                rawBody.close();
+            }
+        }
+
+        if (code == 204 || code == 205) {
+            rawBody.close();
+            return Response.success(null, rawResponse);
+        }
+        return Response.success(converter.convert(rawBody), rawResponse);
+    }
+
+    private void deliver(final Callback<DirectionsResponse> callback,
+                         final Response<DirectionsResponse> response, final Throwable failure) {
+        Runnable delivery = new Runnable() {
+            @Override
+            public void run() {
+                if (failure != null) {
+                    callback.onFailure(failure);
+                } else {
+                    callback.onResponse(response, retrofit);
+                }
+            }
+        };
+        Executor executor = retrofit.callbackExecutor();
+        if (executor != null) {
+            executor.execute(delivery);
+        } else {
+            delivery.run();
+        }
+    }
+
+    @Override
+    public void cancel() {
+        canceled = true;
+        com.squareup.okhttp.Call call = rawCall;
+        if (call != null) {
+            call.cancel();
+        }
+    }
+
+    @Override
+    @SuppressWarnings("CloneDoesntCallSuperClone")
+    public Call<DirectionsResponse> clone() {
+        return new PrebuiltCall(client, request, converter, retrofit);
+    }
+}
@@ -0,0 +1,275 @@
+package com.mapbox.directions.service;
+
+import com.mapbox.directions.service.models.DirectionsResponse;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+
+import retrofit.Call;
+import retrofit.Callback;
+import retrofit.Response;
+import retrofit.Retrofit;
+
+/**
+ * Single-flight deduplication of identical requests. While a request for a given key is in
+ * flight, later callers with the same key attach to it instead of going to the network, and all of
+ * them receive the same {@link Response}. Each caller can cancel independently; the shared call is
+ * only canceled once every caller attached to it has canceled.
+ * <p>
+ * Shared responses are delivered to every caller, so their body must be treated as read-only, and
+ * an error body can only be read by one of them.
+ */
+public class RequestCoalescer {
+
+    private final Retrofit retrofit;
+    private final Map<String, Flight> flights = new HashMap<>();
+
+    public RequestCoalescer(Retrofit retrofit) {
+        this.retrofit = retrofit;
+    }
+
+    /**
+     * Wraps a call so that it joins any identical call already in flight.
+     * @param call the network call, only used if no identical call is in flight.
+     * @param key the normalised request.
+     * @return a {@link Call} sharing the network round-trip with identical ones.
+     */
+    public Call<DirectionsResponse> coalesce(Call<DirectionsResponse> call, String key) {
+        return new CoalescingCall(call, key);
+    }
+
+    /**
+     * Number of distinct requests currently in flight.
+     * @return integer count.
+     */
+    public int getInFlightCount() {
+        synchronized (flights) {
+            return flights.size();
+        }
+    }
+
+    /*
+     * Joining and leaving flights
+     */
+
+    // Returns the flight to attach to, a new one using the given call if none is in flight
+    private Flight join(String key, Call<DirectionsResponse> call, Subscriber subscriber) {
+        synchronized (flights) {
+            Flight flight = flights.get(key);
+            if (flight == null) {
+                flight = new Flight(key, call);
+                flights.put(key, flight);
+            }
+            flight.subscribers.add(subscriber);
+            return flight;
+        }
+    }
+
+    private void leave(Flight flight, Subscriber subscriber) {
+        boolean cancelShared = false;
+        synchronized (flights) {
+            if (subscriber.canceled || flight.done) {
+                return;
+            }
+            subscriber.canceled = true;
+
+            boolean everyoneCanceled = true;
+            for (Subscriber s : flight.subscribers) {
+                everyoneCanceled &= s.canceled;
+            }
+            if (everyoneCanceled) {
+                // Nobody is waiting any more, a new identical request should start a new flight
+                flights.remove(flight.key);
+                cancelShared = true;
+            }
+        }
+
+        if (cancelShared) {
+            flight.call.cancel();
+        }
+        subscriber.finish(null, new IOException("Canceled"));
+    }
+
+    private void land(Flight flight, Response<DirectionsResponse> response, Throwable failure) {
+        List<Subscriber> subscribers;
+        synchronized (flights) {
+            if (flights.get(flight.key) == flight) {
+                flights.remove(flight.key);
+            }
+            flight.done = true;
+            subscribers = new ArrayList<>(flight.subscribers);
+        }
+
+        for (Subscriber subscriber : subscribers) {
+            if (!subscriber.canceled) {
+                subscriber.finish(response, failure);
+            }
+        }
+    }
+
+    private void start(final Flight flight) {
+        flight.call.enqueue(new Callback<DirectionsResponse>() {
+            @Override
+            public void onResponse(Response<DirectionsResponse> response, Retrofit retrofit) {
+                land(flight, response, null);
+            }
+
+            @Override
+            public void onFailure(Throwable t) {
+                land(flight, null, t);
+            }
+        });
+    }
+
+    private static class Flight {
+
+        final String key;
+        final Call<DirectionsResponse> call;
+        final List<Subscriber> subscribers = new ArrayList<>();
+        boolean started;
+        boolean done;
+
+        Flight(String key, Call<DirectionsResponse> call) {
+            this.key = key;
+            this.call = call;
+        }
+    }
+
+    /*
+     * A caller waiting on a flight, either through a callback or blocked in execute()
+     */
+
+    private class Subscriber {
+
+        final Callback<DirectionsResponse> callback;
+        final CountDownLatch latch = new CountDownLatch(1);
+        volatile boolean canceled;
+        Response<DirectionsResponse> response;
+        Throwable failure;
+
+        Subscriber(Callback<DirectionsResponse> callback) {
+            this.callback = callback;
+        }
+
+        void finish(final Response<DirectionsResponse> response, final Throwable failure) {
+            this.response = response;
+            this.failure = failure;
+            latch.countDown();
+
+            if (callback == null) {
+                return;
+            }
+
+            Runnable delivery = new Runnable() {
+                @Override
+                public void run() {
+                    if (failure != null) {
+                        callback.onFailure(failure);
+                    } else {
+                        callback.onResponse(response, retrofit);
+                    }
+                }
+            };
+            Executor executor = retrofit.callbackExecutor();
+            if (executor != null) {
+                executor.execute(delivery);
+            } else {
+                delivery.run();
+            }
+        }
+    }
+
+    private class CoalescingCall implements Call<DirectionsResponse> {
+
+        private final Call<DirectionsResponse> delegate;
+        private final String key;
+        private Flight flight;
+        private Subscriber subscriber;
+
+        CoalescingCall(Call<DirectionsResponse> delegate, String key) {
+            this.delegate = delegate;
+            this.key = key;
+        }
+
+        @Override
+        public Response<DirectionsResponse> execute() throws IOException {
+            Subscriber subscriber = attach(null);
+
+            // The first caller runs the request on its own thread, the others wait for it
+            Flight flight = this.flight;
+            boolean lead;
+            synchronized (flights) {
+                lead = !flight.started;
+                flight.started = true;
+            }
+
+            if (lead) {
+                try {
+                    Response<DirectionsResponse> response = flight.call.execute();
+                    land(flight, response, null);
+                } catch (IOException | RuntimeException e) {
+                    land(flight, null, e);
+                }
+            }
+
+            try {
+                subscriber.latch.await();
+            } catch (InterruptedException e) {
+                cancel();
+                throw new InterruptedIOException("Interrupted while waiting for an identical request.");
+            }
+
+            if (subscriber.failure instanceof IOException) {
+                throw (IOException) subscriber.failure;
+            } else if (subscriber.failure instanceof RuntimeException) {
+                throw (RuntimeException) subscriber.failure;
+            } else if (subscriber.failure != null) {
+                throw new IOException(subscriber.failure);
+            }
+            return subscriber.response;
+        }
+
+        @Override
+        public void enqueue(Callback<DirectionsResponse> callback) {
+            attach(callback);
+
+            Flight flight = this.flight;
+            boolean lead;
+            synchronized (flights) {
+                lead = !flight.started;
+                flight.started = true;
+            }
+            if (lead) {
+                start(flight);
+            }
+        }
+
+        private synchronized Subscriber attach(Callback<DirectionsResponse> callback) {
+            if (subscriber != null) {
+                throw new IllegalStateException("Already executed.");
+            }
+            subscriber = new Subscriber(callback);
+            flight = join(key, delegate, subscriber);
+            return subscriber;
+        }
+
+        @Override
+        public synchronized void cancel() {
+            if (flight != null) {
+                leave(flight, subscriber);
+            }
+        }
+
+        @Override
+        @SuppressWarnings("CloneDoesntCallSuperClone")
+        public Call<DirectionsResponse> clone() {
+            return new CoalescingCall(delegate.clone(), key);
+        }
+    }
+}
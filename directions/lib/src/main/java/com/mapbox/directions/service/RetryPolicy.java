@@ -0,0 +1,581 @@
+package com.mapbox.directions.service;
+
+import com.mapbox.directions.metrics.Histogram;
+import com.mapbox.directions.metrics.MetricsListener;
+import com.mapbox.directions.service.models.DirectionsResponse;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import retrofit.Call;
+import retrofit.Callback;
+import retrofit.Response;
+import retrofit.Retrofit;
+
+/**
+ * Retries, hedging and deadlines for directions calls. Directions requests are idempotent GETs,
+ * so they can safely be sent more than once.
+ * <ul>
+ * <li>Failed attempts (I/O errors, HTTP 429 and 5xx) are retried up to a maximum number of
+ * attempts, after an exponential backoff with full jitter. A Retry-After header is honoured.</li>
+ * <li>With hedging on, an asynchronous call that hasn't answered after the observed 95th
+ * percentile latency gets a duplicate request; whichever answers first wins and the other is
+ * canceled.</li>
+ * <li>A deadline bounds the whole call, retries and backoff included. When it passes the attempts
+ * in flight are canceled and the call fails with an {@link InterruptedIOException}.</li>
+ * </ul>
+ * A policy is shared by every call made through a transport and keeps counters of what it did.
+ * Timers run on a single daemon thread created on first use.
+ */
+public class RetryPolicy {
+
+    public final static int DEFAULT_MAX_ATTEMPTS = 3;
+    public final static long DEFAULT_INITIAL_BACKOFF_MS = 100;
+    public final static long DEFAULT_MAX_BACKOFF_MS = TimeUnit.SECONDS.toMillis(2);
+    public final static long DEFAULT_HEDGE_DELAY_MS = TimeUnit.SECONDS.toMillis(1);
+
+    // Latencies needed before the hedge delay follows the observed p95
+    private final static int MIN_HEDGE_SAMPLES = 20;
+
+    private static RetryPolicy _noRetries;
+
+    private final int _maxAttempts;
+    private final long _initialBackoffMs;
+    private final long _maxBackoffMs;
+    private final boolean _hedging;
+    private final long _hedgeDelayMs;
+
+    private final Histogram _latencies = new Histogram();
+    private final Random _random;
+    private ScheduledExecutorService _scheduler;
+
+    private final AtomicLong _attemptCount = new AtomicLong();
+    private final AtomicLong _retryCount = new AtomicLong();
+    private final AtomicLong _hedgeCount = new AtomicLong();
+    private final AtomicLong _hedgeWinCount = new AtomicLong();
+    private final AtomicLong _deadlineExceededCount = new AtomicLong();
+
+    private RetryPolicy(Builder builder) {
+        _maxAttempts = builder._maxAttempts;
+        _initialBackoffMs = builder._initialBackoffMs;
+        _maxBackoffMs = builder._maxBackoffMs;
+        _hedging = builder._hedging;
+        _hedgeDelayMs = builder._hedgeDelayMs;
+        _random = builder._random != null ? builder._random : new Random();
+    }
+
+    /**
+     * A policy that never retries nor hedges, used to enforce deadlines on transports without one.
+     * @return the shared {@link RetryPolicy}.
+     */
+    public static synchronized RetryPolicy noRetries() {
+        if (_noRetries == null) {
+            _noRetries = new Builder().setMaxAttempts(1).build();
+        }
+        return _noRetries;
+    }
+
+    /**
+     * Wraps a call with this policy.
+     * @param call the first attempt; further attempts are clones of it.
+     * @param retrofit the {@link Retrofit} instance whose callback executor delivers results.
+     * @param deadlineMs time allowed for the whole call, 0 for none.
+     * @param metricsListener told about retries and hedges, may be null.
+     * @param profile the requested profile, to tag metrics.
+     * @param geometry the requested geometry type, to tag metrics.
+     * @return a {@link Call} applying the policy.
+     */
+    public Call<DirectionsResponse> wrap(Call<DirectionsResponse> call, Retrofit retrofit, long deadlineMs,
+                                         MetricsListener metricsListener, String profile, String geometry) {
+        return new RetryingCall(call, retrofit, deadlineMs, metricsListener, profile, geometry);
+    }
+
+    /*
+     * Counters
+     */
+
+    public long getAttemptCount() {
+        return _attemptCount.get();
+    }
+
+    public long getRetryCount() {
+        return _retryCount.get();
+    }
+
+    public long getHedgeCount() {
+        return _hedgeCount.get();
+    }
+
+    /*
+     * Hedges that answered before the attempt they duplicated
+     */
+
+    public long getHedgeWinCount() {
+        return _hedgeWinCount.get();
+    }
+
+    public long getDeadlineExceededCount() {
+        return _deadlineExceededCount.get();
+    }
+
+    /**
+     * How long an asynchronous call waits before sending a hedge: the observed p95 latency once
+     * enough calls completed, the configured delay until then.
+     * @return long delay in milliseconds.
+     */
+    public long getHedgeDelayMs() {
+        if (_latencies.getCount() < MIN_HEDGE_SAMPLES) {
+            return _hedgeDelayMs;
+        }
+        return Math.max(1, TimeUnit.NANOSECONDS.toMillis(_latencies.getPercentile(95)));
+    }
+
+    /*
+     * Helpers
+     */
+
+    private static boolean isRetryable(Response<DirectionsResponse> response) {
+        int code = response.code();
+        return code == 429 || code >= 500;
+    }
+
+    private long backoffMs(int retry, Response<DirectionsResponse> response) {
+        // Full jitter: uniformly random up to the exponential cap
+        long cap = _initialBackoffMs << Math.min(retry - 1, 30);
+        if (cap <= 0 || cap > _maxBackoffMs) {
+            cap = _maxBackoffMs;
+        }
+        long backoff;
+        synchronized (_random) {
+            backoff = (long) (_random.nextDouble() * cap);
+        }
+
+        if (response != null) {
+            String retryAfter = response.headers().get("Retry-After");
+            if (retryAfter != null) {
+                try {
+                    backoff = Math.max(backoff, TimeUnit.SECONDS.toMillis(Long.parseLong(retryAfter.trim())));
+                } catch (NumberFormatException e) {
+                    // HTTP dates aren't worth parsing here, fall back to our own backoff
+                }
+            }
+        }
+        return backoff;
+    }
+
+    private synchronized ScheduledFuture<?> schedule(Runnable task, long delayMs) {
+        if (_scheduler == null) {
+            _scheduler = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+                @Override
+                public Thread newThread(Runnable runnable) {
+                    Thread thread = new Thread(runnable, "DirectionsRetry");
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+        }
+        return _scheduler.schedule(task, delayMs, TimeUnit.MILLISECONDS);
+    }
+
+    /*
+     * The wrapped call. Asynchronous calls are a small state machine driven by attempt
+     * completions and timers (backoff, hedge, deadline), all transitions happen under its lock.
+     * Synchronous calls retry in a loop on the calling thread and don't hedge.
+     */
+
+    private class RetryingCall implements Call<DirectionsResponse> {
+
+        private final Call<DirectionsResponse> delegate;
+        private final Retrofit retrofit;
+        private final long deadlineMs;
+        private final MetricsListener metricsListener;
+        private final String profile;
+        private final String geometry;
+
+        private final List<Call<DirectionsResponse>> inFlight = new ArrayList<>();
+        private final List<ScheduledFuture<?>> timers = new ArrayList<>();
+        private Callback<DirectionsResponse> callback;
+        private long deadlineAt;
+        private int attempts;
+        private boolean hedged;
+        private boolean canceled;
+        private boolean done;
+
+        RetryingCall(Call<DirectionsResponse> delegate, Retrofit retrofit, long deadlineMs,
+                     MetricsListener metricsListener, String profile, String geometry) {
+            this.delegate = delegate;
+            this.retrofit = retrofit;
+            this.deadlineMs = deadlineMs;
+            this.metricsListener = metricsListener;
+            this.profile = profile;
+            this.geometry = geometry;
+        }
+
+        /*
+         * Synchronous
+         */
+
+        @Override
+        public Response<DirectionsResponse> execute() throws IOException {
+            long deadlineAt = deadlineMs > 0 ? System.currentTimeMillis() + deadlineMs : Long.MAX_VALUE;
+
+            for (int attempt = 1; ; attempt++) {
+                final Call<DirectionsResponse> call;
+                synchronized (this) {
+                    if (canceled) {
+                        throw new IOException("Canceled");
+                    }
+                    call = attempt == 1 ? delegate : delegate.clone();
+                    inFlight.add(call);
+                }
+
+                ScheduledFuture<?> deadline = null;
+                if (deadlineAt != Long.MAX_VALUE) {
+                    deadline = schedule(new Runnable() {
+                        @Override
+                        public void run() {
+                            call.cancel();
+                        }
+                    }, Math.max(deadlineAt - System.currentTimeMillis(), 0));
+                }
+
+                Response<DirectionsResponse> response = null;
+                IOException failure = null;
+                long start = System.nanoTime();
+                _attemptCount.incrementAndGet();
+                try {
+                    response = call.execute();
+                    _latencies.record(System.nanoTime() - start);
+                } catch (IOException e) {
+                    failure = e;
+                } finally {
+                    if (deadline != null) {
+                        deadline.cancel(false);
+                    }
+                    synchronized (this) {
+                        inFlight.remove(call);
+                    }
+                }
+
+                long remaining = deadlineAt - System.currentTimeMillis();
+                if (failure != null && remaining <= 0) {
+                    _deadlineExceededCount.incrementAndGet();
+                    throw new InterruptedIOException("Deadline exceeded.");
+                }
+
+                boolean retryable = failure != null ? !isCanceled() : isRetryable(response);
+                if (!retryable || attempt >= _maxAttempts) {
+                    if (failure != null) {
+                        throw failure;
+                    }
+                    return response;
+                }
+
+                long backoff = backoffMs(attempt, response);
+                if (backoff >= remaining) {
+                    // Not enough time left for another attempt, return what we have
+                    if (failure != null) {
+                        _deadlineExceededCount.incrementAndGet();
+                        throw new InterruptedIOException("Deadline exceeded.");
+                    }
+                    return response;
+                }
+
+                _retryCount.incrementAndGet();
+                if (metricsListener != null) {
+                    metricsListener.onRetry(profile, geometry, false);
+                }
+                try {
+                    Thread.sleep(backoff);
+                } catch (InterruptedException e) {
+                    throw new InterruptedIOException("Interrupted while backing off.");
+                }
+            }
+        }
+
+        private synchronized boolean isCanceled() {
+            return canceled;
+        }
+
+        /*
+         * Asynchronous
+         */
+
+        @Override
+        public void enqueue(Callback<DirectionsResponse> callback) {
+            synchronized (this) {
+                if (this.callback != null) {
+                    throw new IllegalStateException("Already executed.");
+                }
+                this.callback = callback;
+
+                if (deadlineMs > 0) {
+                    deadlineAt = System.currentTimeMillis() + deadlineMs;
+                    timers.add(schedule(new Runnable() {
+                        @Override
+                        public void run() {
+                            onDeadline();
+                        }
+                    }, deadlineMs));
+                }
+                if (_hedging && _maxAttempts > 1) {
+                    timers.add(schedule(new Runnable() {
+                        @Override
+                        public void run() {
+                            onHedge();
+                        }
+                    }, getHedgeDelayMs()));
+                }
+            }
+            startAttempt(false);
+        }
+
+        private void startAttempt(final boolean hedge) {
+            final Call<DirectionsResponse> call;
+            synchronized (this) {
+                if (done) {
+                    return;
+                }
+                call = attempts == 0 ? delegate : delegate.clone();
+                attempts++;
+                inFlight.add(call);
+            }
+
+            _attemptCount.incrementAndGet();
+            final long start = System.nanoTime();
+            call.enqueue(new Callback<DirectionsResponse>() {
+                @Override
+                public void onResponse(Response<DirectionsResponse> response, Retrofit retrofit) {
+                    _latencies.record(System.nanoTime() - start);
+                    onAttempt(call, hedge, response, null);
+                }
+
+                @Override
+                public void onFailure(Throwable t) {
+                    onAttempt(call, hedge, null, t);
+                }
+            });
+        }
+
+        private void onAttempt(Call<DirectionsResponse> call, boolean hedge,
+                               Response<DirectionsResponse> response, Throwable failure) {
+            long backoff = -1;
+            boolean deadlineExceeded = false;
+            synchronized (this) {
+                inFlight.remove(call);
+                if (done) {
+                    return;
+                }
+
+                boolean retryable = !canceled
+                        && (failure != null ? failure instanceof IOException : isRetryable(response));
+                if (retryable && !inFlight.isEmpty()) {
+                    // A hedge (or the attempt it duplicated) is still going, let it answer
+                    return;
+                }
+
+                if (retryable && attempts < _maxAttempts) {
+                    backoff = backoffMs(attempts, response);
+                    if (deadlineAt != 0 && System.currentTimeMillis() + backoff >= deadlineAt) {
+                        // Not enough time left for another attempt, like execute() a failure
+                        // then ends the call as past its deadline
+                        backoff = -1;
+                        deadlineExceeded = failure != null;
+                    }
+                }
+
+                if (backoff < 0) {
+                    if (hedge && failure == null && !retryable) {
+                        _hedgeWinCount.incrementAndGet();
+                    }
+                    finish();
+                }
+            }
+
+            if (backoff >= 0) {
+                _retryCount.incrementAndGet();
+                if (metricsListener != null) {
+                    metricsListener.onRetry(profile, geometry, false);
+                }
+                ScheduledFuture<?> timer = schedule(new Runnable() {
+                    @Override
+                    public void run() {
+                        startAttempt(false);
+                    }
+                }, backoff);
+                synchronized (this) {
+                    timers.add(timer);
+                }
+                return;
+            }
+
+            if (deadlineExceeded) {
+                _deadlineExceededCount.incrementAndGet();
+                failure = new InterruptedIOException("Deadline exceeded.");
+            }
+
+            // Already on the callback executor, the attempt's callback was delivered there
+            if (failure != null) {
+                callback.onFailure(failure);
+            } else {
+                callback.onResponse(response, retrofit);
+            }
+        }
+
+        private void onHedge() {
+            synchronized (this) {
+                if (done || hedged || inFlight.isEmpty() || attempts >= _maxAttempts) {
+                    return;
+                }
+                hedged = true;
+            }
+
+            _hedgeCount.incrementAndGet();
+            if (metricsListener != null) {
+                metricsListener.onRetry(profile, geometry, true);
+            }
+            startAttempt(true);
+        }
+
+        private void onDeadline() {
+            synchronized (this) {
+                if (done) {
+                    return;
+                }
+                finish();
+            }
+
+            _deadlineExceededCount.incrementAndGet();
+            deliverFailure(new InterruptedIOException("Deadline exceeded."));
+        }
+
+        @Override
+        public void cancel() {
+            boolean deliver;
+            synchronized (this) {
+                if (canceled || done) {
+                    return;
+                }
+                canceled = true;
+                // With nothing in flight (e.g. backing off) nobody else will report the cancellation
+                deliver = callback != null && inFlight.isEmpty();
+                if (deliver) {
+                    finish();
+                } else {
+                    for (Call<DirectionsResponse> call : inFlight) {
+                        call.cancel();
+                    }
+                }
+            }
+
+            if (deliver) {
+                deliverFailure(new IOException("Canceled"));
+            }
+        }
+
+        // Must hold the lock
+        private void finish() {
+            done = true;
+            for (ScheduledFuture<?> timer : timers) {
+                timer.cancel(false);
+            }
+            timers.clear();
+            for (Call<DirectionsResponse> call : inFlight) {
+                call.cancel();
+            }
+        }
+
+        private void deliverFailure(final Throwable failure) {
+            Runnable delivery = new Runnable() {
+                @Override
+                public void run() {
+                    callback.onFailure(failure);
+                }
+            };
+            Executor executor = retrofit.callbackExecutor();
+            if (executor != null) {
+                executor.execute(delivery);
+            } else {
+                delivery.run();
+            }
+        }
+
+        @Override
+        @SuppressWarnings("CloneDoesntCallSuperClone")
+        public Call<DirectionsResponse> clone() {
+            return new RetryingCall(delegate.clone(), retrofit, deadlineMs, metricsListener, profile, geometry);
+        }
+    }
+
+    /*
+     * Builder
+     */
+
+    public static class Builder {
+
+        private int _maxAttempts = DEFAULT_MAX_ATTEMPTS;
+        private long _initialBackoffMs = DEFAULT_INITIAL_BACKOFF_MS;
+        private long _maxBackoffMs = DEFAULT_MAX_BACKOFF_MS;
+        private boolean _hedging;
+        private long _hedgeDelayMs = DEFAULT_HEDGE_DELAY_MS;
+        private Random _random;
+
+        /*
+         * Attempts in total, the first one included. Hedges count as attempts.
+         */
+
+        public Builder setMaxAttempts(int maxAttempts) {
+            _maxAttempts = maxAttempts;
+            return this;
+        }
+
+        public Builder setInitialBackoff(long backoff, TimeUnit unit) {
+            _initialBackoffMs = unit.toMillis(backoff);
+            return this;
+        }
+
+        public Builder setMaxBackoff(long backoff, TimeUnit unit) {
+            _maxBackoffMs = unit.toMillis(backoff);
+            return this;
+        }
+
+        /*
+         * Hedging is off by default as it adds load upstream. The delay set here is used until
+         * enough calls completed to know their 95th percentile latency.
+         */
+
+        public Builder setHedging(boolean hedging) {
+            _hedging = hedging;
+            return this;
+        }
+
+        public Builder setHedgeDelay(long delay, TimeUnit unit) {
+            _hedgeDelayMs = unit.toMillis(delay);
+            return this;
+        }
+
+        // Lets tests pick where backoffs fall within their jitter
+        Builder setRandom(Random random) {
+            _random = random;
+            return this;
+        }
+
+        public RetryPolicy build() {
+            if (_maxAttempts < 1) {
+                throw new RuntimeException("A RetryPolicy needs at least one attempt.");
+            }
+            return new RetryPolicy(this);
+        }
+
+    }
+}
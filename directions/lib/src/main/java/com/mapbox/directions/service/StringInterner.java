@@ -0,0 +1,78 @@
+package com.mapbox.directions.service;
+
+/**
+ * A fixed-size table handing out one shared instance per distinct string, for values repeated
+ * across many responses: maneuver types, directions, modes and common way names. Unlike
+ * {@link String#intern()} it holds at most its capacity and never grows: each string hashes to a
+ * few slots, and when all of them are taken by other strings the first one is replaced, so
+ * strings that stop coming back eventually drop out.
+ * <p>
+ * Lookups take no lock. Concurrent callers may both insert the same string and end up with two
+ * instances, which costs a little memory but is otherwise harmless; strings are immutable, so
+ * sharing them through the table without synchronisation is safe.
+ */
+public class StringInterner {
+
+    public final static int DEFAULT_CAPACITY = 1024;
+
+    // Longer strings are rarely repeated and not worth comparing
+    public final static int MAX_LENGTH = 64;
+
+    private final static int PROBES = 4;
+
+    private final String[] table;
+    private final int mask;
+
+    /**
+     * Creates a table.
+     * @param capacity the most strings kept, rounded up to a power of two.
+     */
+    public StringInterner(int capacity) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("Capacity must be positive.");
+        }
+        int size = Integer.highestOneBit(capacity);
+        if (size < capacity) {
+            size <<= 1;
+        }
+        table = new String[size];
+        mask = size - 1;
+    }
+
+    /**
+     * The shared instance equal to a string, adding it if there is none.
+     * @param value the string, may be null.
+     * @return a string equal to value, the same instance for every equal string while it stays
+     * in the table. Null for null, and value itself if longer than {@link #MAX_LENGTH}.
+     */
+    public String intern(String value) {
+        if (value == null || value.length() > MAX_LENGTH) {
+            return value;
+        }
+
+        int hash = value.hashCode();
+        int first = (hash ^ (hash >>> 16)) & mask;
+        for (int i = 0; i < PROBES; i++) {
+            int slot = (first + i) & mask;
+            String existing = table[slot];
+            if (existing == null) {
+                table[slot] = value;
+                return value;
+            }
+            if (existing.hashCode() == hash && existing.equals(value)) {
+                return existing;
+            }
+        }
+
+        table[first] = value;
+        return value;
+    }
+
+    /**
+     * Number of slots in the table.
+     * @return integer capacity.
+     */
+    public int getCapacity() {
+        return table.length;
+    }
+}
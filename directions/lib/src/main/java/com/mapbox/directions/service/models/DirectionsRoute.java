@@ -1,6 +1,7 @@
 package com.mapbox.directions.service.models;
 
 import com.mapbox.directions.MapboxDirections;
+import com.mapbox.directions.geometry.GeoMath;
 
 import java.util.ArrayList;
 import java.util.List;
@@ -10,12 +11,20 @@ import java.util.List;
  */
 public class DirectionsRoute {
 
+    // Where isOffRoute() may skip segments using a flat projection, see distanceToPolyline()
+    private final static double SKIP_MAX_LATITUDE = 80;
+    private final static double SKIP_MAX_DISTANCE = 100000;
+
     private int distance;
     private int duration;
     private String summary;
     private RouteGeometry geometry;
     private List<RouteStep> steps;
 
+    // Set while the geometry/steps haven't been decoded yet, see setLazyLoader()
+    private transient volatile LazyLoader geometryLoader;
+    private transient volatile LazyLoader stepsLoader;
+
     public DirectionsRoute() {
         steps = new ArrayList<>();
     }
@@ -61,11 +70,15 @@ public class DirectionsRoute {
      * @return {@link RouteGeometry} object.
      */
     public RouteGeometry getGeometry() {
+        if (geometryLoader != null) {
+            loadGeometry();
+        }
         return geometry;
     }
 
-    public void setGeometry(RouteGeometry geometry) {
+    public synchronized void setGeometry(RouteGeometry geometry) {
         this.geometry = geometry;
+        this.geometryLoader = null;
     }
 
     /**
@@ -73,11 +86,66 @@ public class DirectionsRoute {
      * @return List of {@link RouteStep} objects.
      */
     public List<RouteStep> getSteps() {
+        if (stepsLoader != null) {
+            loadSteps();
+        }
         return steps;
     }
 
-    public void setSteps(List<RouteStep> steps) {
+    public synchronized void setSteps(List<RouteStep> steps) {
         this.steps = steps;
+        this.stepsLoader = null;
+    }
+
+    /**
+     * Defers decoding of the geometry and steps until {@link #getGeometry()} or {@link #getSteps()}
+     * are first called. The result is kept, so the loader is used at most once for each. Parsers
+     * use this to avoid materialising routes (typically alternatives) that are never looked at.
+     * <p>
+     * Until then the fields are empty, so serialize a lazy route only after calling both getters.
+     * @param loader the {@link LazyLoader} decoding this route's data.
+     */
+    public synchronized void setLazyLoader(LazyLoader loader) {
+        this.geometryLoader = loader;
+        this.stepsLoader = loader;
+    }
+
+    /**
+     * Whether the geometry or steps are still waiting to be decoded.
+     * @return true if some data hasn't been materialised yet.
+     */
+    public boolean isLazy() {
+        return geometryLoader != null || stepsLoader != null;
+    }
+
+    private synchronized void loadGeometry() {
+        if (geometryLoader != null) {
+            geometry = geometryLoader.loadGeometry();
+            geometryLoader = null;
+        }
+    }
+
+    private synchronized void loadSteps() {
+        if (stepsLoader != null) {
+            steps = stepsLoader.loadSteps();
+            stepsLoader = null;
+        }
+    }
+
+    /**
+     * Decodes a route's geometry and steps on demand, see {@link #setLazyLoader(LazyLoader)}.
+     */
+    public interface LazyLoader {
+
+        /**
+         * @return the route's {@link RouteGeometry}, or null if it has none.
+         */
+        RouteGeometry loadGeometry();
+
+        /**
+         * @return List of the route's {@link RouteStep}s, never null.
+         */
+        List<RouteStep> loadSteps();
     }
 
     /**
@@ -86,63 +154,20 @@ public class DirectionsRoute {
      * still following the route.
      * @param point the {@link Waypoint} in which we are trying to determine whether near polyline.
      *              Often the devices current location.
-     * @param polyline List of {@link Waypoint} making up the polyline. It's advised to pass a List
-     *                 of size greater then 2 {@link Waypoint} to get accurate results.
+     * @param polyline List of {@link Waypoint} making up the polyline. The distance is measured
+     *                 to the closest point of any of its segments along the great circle, not
+     *                 just to its vertices.
      * @param tolerance double with unit miles.
      * @return true if distance between point and polyline is greater then tolerance.
      */
     public static Boolean isOffRoute(Waypoint point, List<Waypoint> polyline, double tolerance){
 
-        double distance;
-        double shortestDistance = 0.0;
-        int closest = 0;
-
         if(polyline.size() == 0){
             return false;
         }
 
-        // Find closest polyline Waypoint to point
-        for(int i=0; i<polyline.size(); i++){
-            distance = computeDistance(point, polyline.get(i));
-            if(i == 0) shortestDistance = distance;
-            if(distance < shortestDistance){
-                shortestDistance = distance;
-                closest = i;
-            }
-        }
-
-        // If closest Waypoints an endpoint on the polyline just measure the distance as it's always
-        // going to be the closest
-        if(closest == 0 || closest == polyline.size()-1){
-            shortestDistance = computeDistance(point, polyline.get(closest));
-        }else {
-            // Inorder to increase accuracy in determining closest polyline waypoint to point we must
-            // increase the waypoint samples avaliable along the polyline section. We do this by
-            // adding a waypoint every x amount of length along the polyline section. This makes our
-            // sample evenly distributed across the polyline section even when a paticular polyline
-            // segment is long.
-
-            // After so much length along polyline create another waypoint. The larger the accuracy,
-            // the shorter the distance between waypoints
-            // TODO formula needs tweaking as it doesn't include user defined tolerance in anyway
-            double dis = computeDistance(polyline.get(closest - 1), polyline.get(closest + 1));
-            double accuracy = (dis * 5280) / 20;
-
-            List<Waypoint> Sample = pointsBetween(polyline.get(closest - 1), polyline.get(closest + 1), accuracy);
-
-            // Using the sample Waypoints, we now find the shortest distance between point and polyline
-            for (int i = 0; i < Sample.size(); i++) {
-                distance = computeDistance(point, Sample.get(i));
-                if (i == 0) shortestDistance = distance;
-                if (distance < shortestDistance) {
-                    shortestDistance = distance;
-                }
-            }
-        }
-
-        // Once the shortestDistance between point and polyline is found, we compare value to
-        // tolerance and return true if shortestDistance is larger
-        return shortestDistance > tolerance;
+        // Compare the exact distance between point and polyline to tolerance, true if larger
+        return distanceToPolyline(point, polyline) > tolerance * GeoMath.METERS_PER_MILE;
     }
 
     /**
@@ -153,69 +178,135 @@ public class DirectionsRoute {
     }
 
     /**
-     * gives a list of intermediate points between two given Waypoints
-     * More info at: http://williams.best.vwh.net/avform.htm#Intermediate
+     * Computes whether the given point lies further than tolerance from this route's geometry.
+     * Unlike {@link #isOffRoute(Waypoint, List, double)} this measures the distance to the closest
+     * segment (not just the ones around the closest vertex) and uses the geometry's
+     * {@link RouteGeometry#getSegmentIndex()}, so after the first call it doesn't need to look at
+     * every coordinate. Prefer it when checking many locations against the same route.
+     * @param point the {@link Waypoint} in which we are trying to determine whether near the route.
+     *              Often the devices current location.
+     * @param tolerance double with unit miles.
+     * @return true if distance between point and route is greater then tolerance.
      */
-    private static List<Waypoint> pointsBetween(Waypoint start, Waypoint finish, double smoothness){
-
-        List<Waypoint> pointsBetween = new ArrayList<>();
-
-        // Check if start and finish Waypoints are the same
-        if(start == finish) {
-            pointsBetween.add(start);
-        } else {
-            for(int i = 0; i<smoothness; i++) {
-
-                double lat1 = start.getLatitude();
-                double lon1 = start.getLongitude();
-                double lat2 = finish.getLatitude();
-                double lon2 = finish.getLongitude();
-                double f = i * (1 / smoothness);
-
-                lat1 = Math.toRadians(lat1);
-                lat2 = Math.toRadians(lat2);
-                lon1 = Math.toRadians(lon1);
-                lon2 = Math.toRadians(lon2);
-
-                double deltaLat = (lat2 - lat1);
-                double deltaLon = (lon2 - lon1);
-
-                double m = Math.sin(deltaLat / 2) * Math.sin(deltaLat / 2) + Math.cos(lat1) * Math.cos(lat2)
-                        * Math.sin(deltaLon / 2) * Math.sin(deltaLon / 2);
-                double distance = 2 * Math.atan2(Math.sqrt(m), Math.sqrt(1 - m));
-
-                double a = Math.sin((1 - f) * distance) / Math.sin(distance);
-                double b = Math.sin(f * distance) / Math.sin(distance);
-                double x = a * Math.cos(lat1) * Math.cos(lon1) + b * Math.cos(lat2) * Math.cos(lon2);
-                double y = a * Math.cos(lat1) * Math.sin(lon1) + b * Math.cos(lat2) * Math.sin(lon2);
-                double z = a * Math.sin(lat1) + b * Math.sin(lat2);
-                double lat3 = Math.atan2(z, Math.sqrt((x * x) + (y * y)));
-                double lon3 = Math.atan2(y, x);
-
-                pointsBetween.add(new Waypoint(Math.toDegrees(lon3), Math.toDegrees(lat3)));
-            }
+    public boolean isOffRoute(Waypoint point, double tolerance) {
+        RouteGeometry geometry = getGeometry();
+        if (geometry == null || geometry.getSegmentIndex().size() == 0) {
+            return false;
         }
-        return pointsBetween;
+
+        return !geometry.getSegmentIndex().isWithin(
+                point.getLongitude(), point.getLatitude(), tolerance * GeoMath.METERS_PER_MILE);
     }
 
     /**
-     * Compute distance between two different {@link Waypoint}
-     * @param from first {@link Waypoint}
-     * @param to second {@link Waypoint}
-     * @return distance between two {@link Waypoint}s in miles
+     * Same as {@link #isOffRoute(Waypoint, double)} with a default tolerance of 0.1 miles.
      */
-    private static double computeDistance(Waypoint from, Waypoint to) {
-        double dLat = Math.toRadians(to.getLatitude() - from.getLatitude());
-        double dLon = Math.toRadians(to.getLongitude() - from.getLongitude());
-        double lat1 = Math.toRadians(from.getLatitude());
-        double lat2 = Math.toRadians(to.getLatitude());
+    public boolean isOffRoute(Waypoint point) {
+        return isOffRoute(point, MapboxDirections.OFF_ROUTE_THRESHOLD);
+    }
 
-        double a = Math.pow(Math.sin(dLat/2), 2) + Math.pow(Math.sin(dLon/2), 2) * Math.cos(lat1) * Math.cos(lat2);
-        double c = 2 * Math.atan2(Math.sqrt(a), Math.sqrt(1-a));
+    /**
+     * Distance from a point to the closest great circle segment of a polyline, measured
+     * analytically so nothing is allocated per segment however long it is. Segments that are
+     * clearly further than the one that looks closest are skipped using a flat projection, which
+     * needs no trigonometry; the others are measured exactly. A long segment bows away from its flat
+     * projection, towards the pole, so that bow is taken off its flat distance before skipping it.
+     * @param point the {@link Waypoint} to measure from.
+     * @param polyline List of {@link Waypoint} making up the polyline, not empty.
+     * @return distance in meters.
+     */
+    private static double distanceToPolyline(Waypoint point, List<Waypoint> polyline) {
+        double longitude = point.getLongitude();
+        double latitude = point.getLatitude();
+        double[] target = new double[3];
+        GeoMath.toVector(longitude, latitude, target, 0);
+
+        double[] segment = new double[6];
+        if (polyline.size() == 1) {
+            GeoMath.toVector(polyline.get(0).getLongitude(), polyline.get(0).getLatitude(), segment, 0);
+            return GeoMath.distance(target, 0, segment, 0);
+        }
 
-        double R = 3960;
+        // Within these bounds the projection is off by far less than the factor of 2 allowed
+        boolean canSkip = Math.abs(latitude) < SKIP_MAX_LATITUDE;
+        double cosLat = Math.cos(Math.toRadians(latitude));
+
+        // Start from the segment that looks closest so the others can be skipped
+        int closest = 1;
+        if (canSkip) {
+            double closestFlatDistance = Double.POSITIVE_INFINITY;
+            for (int i = 1; i < polyline.size(); i++) {
+                double flatDistance = flatDistanceToSegment(longitude, latitude, cosLat, polyline.get(i - 1), polyline.get(i));
+                if (flatDistance < closestFlatDistance) {
+                    closestFlatDistance = flatDistance;
+                    closest = i;
+                }
+            }
+        }
+        double shortestDistance = exactDistanceToSegment(target, segment, polyline.get(closest - 1), polyline.get(closest));
+        canSkip = canSkip && shortestDistance < SKIP_MAX_DISTANCE;
+
+        for (int i = 1; i < polyline.size(); i++) {
+            Waypoint from = polyline.get(i - 1);
+            Waypoint to = polyline.get(i);
+            if (i == closest) {
+                continue;
+            }
+            if (canSkip) {
+                // The bow needs a tangent, only worth it for segments that could be skipped at all
+                double flatDistance = flatDistanceToSegment(longitude, latitude, cosLat, from, to);
+                if (2 * shortestDistance < flatDistance && 2 * shortestDistance < flatDistance - maxBow(from, to)) {
+                    continue;
+                }
+            }
+            shortestDistance = Math.min(shortestDistance, exactDistanceToSegment(target, segment, from, to));
+        }
+        return shortestDistance;
+    }
 
-        double distance = R * c;
-        return distance;
+    private static double exactDistanceToSegment(double[] target, double[] segment, Waypoint from, Waypoint to) {
+        GeoMath.toVector(from.getLongitude(), from.getLatitude(), segment, 0);
+        GeoMath.toVector(to.getLongitude(), to.getLatitude(), segment, 3);
+        return GeoMath.distanceToSegment(target, 0, segment, 0);
+    }
+
+    // Meters on an equirectangular projection centred on the point
+    private static double flatDistanceToSegment(double longitude, double latitude, double cosLat,
+                                                Waypoint from, Waypoint to) {
+        double ax = wrapLongitude(from.getLongitude() - longitude) * cosLat;
+        double ay = from.getLatitude() - latitude;
+        double bx = wrapLongitude(to.getLongitude() - longitude) * cosLat;
+        double by = to.getLatitude() - latitude;
+
+        double dx = bx - ax;
+        double dy = by - ay;
+        double lengthSquared = dx * dx + dy * dy;
+        double t = lengthSquared > 0 ? Math.max(0, Math.min(1, -(ax * dx + ay * dy) / lengthSquared)) : 0;
+        double x = ax + t * dx;
+        double y = ay + t * dy;
+        return Math.sqrt(x * x + y * y) * GeoMath.METERS_PER_DEGREE;
+    }
+
+    /*
+     * Upper bound in meters of how far a great circle segment strays from the straight line between
+     * its ends on the flat projection. The bow is about length^2 tan(latitude) / 8R; the extra
+     * length^2 / 8R covers the projection's own curvature. Lengths use the cosine of the segment's
+     * lowest latitude, so they're never underestimated.
+     */
+    private static double maxBow(Waypoint from, Waypoint to) {
+        double minLatitude = Math.min(Math.abs(from.getLatitude()), Math.abs(to.getLatitude()));
+        double maxLatitude = Math.max(Math.abs(from.getLatitude()), Math.abs(to.getLatitude()));
+        if (maxLatitude >= SKIP_MAX_LATITUDE) {
+            return Double.POSITIVE_INFINITY;
+        }
+
+        double dx = wrapLongitude(to.getLongitude() - from.getLongitude()) * Math.cos(Math.toRadians(minLatitude));
+        double dy = to.getLatitude() - from.getLatitude();
+        double lengthSquared = (dx * dx + dy * dy) * GeoMath.METERS_PER_DEGREE * GeoMath.METERS_PER_DEGREE;
+        return lengthSquared * (1 + Math.tan(Math.toRadians(maxLatitude))) / (8 * GeoMath.EARTH_RADIUS_METERS);
+    }
+
+    private static double wrapLongitude(double delta) {
+        return delta > 180 ? delta - 360 : (delta < -180 ? delta + 360 : delta);
     }
 }
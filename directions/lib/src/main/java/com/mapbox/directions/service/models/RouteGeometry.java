@@ -1,19 +1,66 @@
 package com.mapbox.directions.service.models;
 
-import java.util.ArrayList;
+import com.google.gson.annotations.JsonAdapter;
+import com.mapbox.directions.geometry.LineSimplifier;
+import com.mapbox.directions.geometry.PolylineCodec;
+import com.mapbox.directions.geometry.SegmentIndex;
+
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
 
 /**
  * A Route will contain geometry which is described in the form of coordinates. Typically used to
  * draw the route on a mapView.
+ * <p>
+ * Coordinates are stored packed in a single {@code double[]} of interleaved longitude/latitude
+ * pairs, filled straight from the response by {@link RouteGeometryTypeAdapter}. Prefer
+ * {@link #size()}, {@link #getLongitude(int)} and {@link #getLatitude(int)} on hot paths as they
+ * don't allocate; the List based getters are kept for convenience and are views over the same
+ * array.
  */
+@JsonAdapter(RouteGeometryTypeAdapter.class)
 public class RouteGeometry {
 
+    private final static double[] EMPTY = new double[0];
+
     private String type;
-    private List<List<Double>> coordinates;
+    private double[] coordinates;
+    private SegmentIndex segmentIndex;
+    private LineSimplifier simplifier;
 
     public RouteGeometry() {
-        coordinates = new ArrayList<>();
+        coordinates = EMPTY;
+    }
+
+    /**
+     * Creates a geometry from already packed coordinates.
+     * @param type GeoJSON geometry type, typically "LineString".
+     * @param coordinates interleaved longitude/latitude pairs. The array is not copied.
+     */
+    public RouteGeometry(String type, double[] coordinates) {
+        this.type = type;
+        setPackedCoordinates(coordinates);
+    }
+
+    /**
+     * Creates a geometry from an encoded polyline.
+     * @param encoded the encoded polyline.
+     * @param precision {@link PolylineCodec#PRECISION_5} or {@link PolylineCodec#PRECISION_6}.
+     * @return a LineString {@link RouteGeometry}.
+     */
+    public static RouteGeometry fromPolyline(String encoded, int precision) {
+        return new RouteGeometry(RouteGeometryTypeAdapter.TYPE_LINE_STRING, PolylineCodec.decode(encoded, precision));
+    }
+
+    /**
+     * Encodes the coordinates as a polyline, a compact way to store or transmit the route.
+     * @param precision {@link PolylineCodec#PRECISION_5} or {@link PolylineCodec#PRECISION_6}.
+     * @return the encoded polyline.
+     */
+    public String toPolyline(int precision) {
+        return PolylineCodec.encode(coordinates, precision);
     }
 
     /**
@@ -30,6 +77,50 @@ public class RouteGeometry {
         this.type = type;
     }
 
+    /**
+     * Number of coordinates making up the route.
+     * @return integer number of coordinates.
+     */
+    public int size() {
+        return coordinates.length / 2;
+    }
+
+    /**
+     * The Longitude of a coordinate, without allocating.
+     * @param index position of the coordinate, from 0 (origin) to {@code size() - 1} (destination).
+     * @return double value ranging from -180.0 to 180.0
+     */
+    public double getLongitude(int index) {
+        return coordinates[2 * index];
+    }
+
+    /**
+     * The Latitude of a coordinate, without allocating.
+     * @param index position of the coordinate, from 0 (origin) to {@code size() - 1} (destination).
+     * @return double value ranging from -90.0 to 90.0.
+     */
+    public double getLatitude(int index) {
+        return coordinates[2 * index + 1];
+    }
+
+    /**
+     * The coordinates as they are stored: {@code [lon0, lat0, lon1, lat1, ...]}. The array is
+     * shared, not copied, and must not be modified.
+     * @return array of interleaved longitude/latitude pairs.
+     */
+    public double[] getPackedCoordinates() {
+        return coordinates;
+    }
+
+    public synchronized void setPackedCoordinates(double[] coordinates) {
+        if (coordinates.length % 2 != 0) {
+            throw new IllegalArgumentException("Coordinates must be given as longitude/latitude pairs.");
+        }
+        this.coordinates = coordinates;
+        this.segmentIndex = null;
+        this.simplifier = null;
+    }
+
     /**
      * Here is where the coordinates making up the route are given.
      * The inner List is just a coordinate. It will always be a size of 2 with the first object
@@ -40,14 +131,33 @@ public class RouteGeometry {
      * while the destination or finishing point of the route will be the last object in List
      * (index {@code List.Size()-1}). When given to opportunity, always use {@link #getWaypoints()}
      * instead as it puts Latitude and Longitude into a {@link Waypoint}.
+     * <p>
+     * The List is a read-only view over the packed coordinates; inner Lists are created as they
+     * are accessed and are read-only too.
      * @return List of coordinates making up the route.
      */
     public List<List<Double>> getCoordinates() {
-        return coordinates;
+        final double[] coordinates = this.coordinates;
+        return new AbstractList<List<Double>>() {
+            @Override
+            public List<Double> get(int index) {
+                return Collections.unmodifiableList(Arrays.asList(coordinates[2 * index], coordinates[2 * index + 1]));
+            }
+
+            @Override
+            public int size() {
+                return coordinates.length / 2;
+            }
+        };
     }
 
     public void setCoordinates(List<List<Double>> coordinates) {
-        this.coordinates = coordinates;
+        double[] packed = new double[coordinates.size() * 2];
+        for (int i = 0; i < coordinates.size(); i++) {
+            packed[2 * i] = coordinates.get(i).get(0);
+            packed[2 * i + 1] = coordinates.get(i).get(1);
+        }
+        setPackedCoordinates(packed);
     }
 
     /**
@@ -55,18 +165,71 @@ public class RouteGeometry {
      * This makes it magnitudes easier to navigate as now there is only one List still inorder. The
      * origin or starting point of the route will be the first object (index 0) while the
      * destination or finishing point of the route will be the last object in List (index {@code List.Size()-1}).
+     * <p>
+     * The List is a read-only view over the packed coordinates; each {@link Waypoint} is created
+     * when it's accessed.
      * @return List of waypoints making up a route.
      */
     public List<Waypoint> getWaypoints() {
-        List<Waypoint> waypoints = new ArrayList<>();
+        final double[] coordinates = this.coordinates;
+        return new AbstractList<Waypoint>() {
+            @Override
+            public Waypoint get(int index) {
+                return new Waypoint(coordinates[2 * index], coordinates[2 * index + 1]);
+            }
+
+            @Override
+            public int size() {
+                return coordinates.length / 2;
+            }
+        };
+    }
 
-        // Parse raw pairs
-        List<List<Double>> coordinates = this.getCoordinates();
-        for (List<Double> coordinate: coordinates) {
-            waypoints.add(new Waypoint(coordinate.get(0), coordinate.get(1)));
+    /**
+     * A spatial index over the segments of this geometry, built the first time it's requested and
+     * reused afterwards. Use it to find the distance from a point to the route without scanning
+     * every coordinate, see {@link DirectionsRoute#isOffRoute(Waypoint, double)}.
+     * @return {@link SegmentIndex} object.
+     */
+    public synchronized SegmentIndex getSegmentIndex() {
+        if (segmentIndex == null) {
+            segmentIndex = new SegmentIndex(coordinates);
+        }
+        return segmentIndex;
+    }
+
+    /**
+     * Ranks the vertices of this geometry for simplification, done the first time it's requested
+     * and reused afterwards, see {@link #simplify(double)}.
+     * @return {@link LineSimplifier} object.
+     */
+    public synchronized LineSimplifier getSimplifier() {
+        if (simplifier == null) {
+            simplifier = new LineSimplifier(coordinates);
         }
+        return simplifier;
+    }
 
-        return waypoints;
+    /**
+     * A copy of this geometry with fewer vertices, none of the original ones being further than
+     * the tolerance from it. Use it to draw long routes, or to track against with a tolerance
+     * well below the off-route threshold.
+     * @param toleranceMeters double with unit meters.
+     * @return a new {@link RouteGeometry}.
+     */
+    public RouteGeometry simplify(double toleranceMeters) {
+        return new RouteGeometry(type, getSimplifier().simplify(toleranceMeters));
+    }
+
+    /**
+     * A copy of this geometry simplified to one pixel at a map zoom level, computed once per zoom
+     * level.
+     * @param zoom map zoom level, from 0 to {@link LineSimplifier#MAX_ZOOM}.
+     * @return a new {@link RouteGeometry}, sharing its coordinates with later calls for the same
+     * zoom level.
+     */
+    public RouteGeometry simplifyForZoom(int zoom) {
+        return new RouteGeometry(type, getSimplifier().simplifyForZoom(zoom));
     }
 
 }
@@ -0,0 +1,120 @@
+package com.mapbox.directions.service.models;
+
+import com.google.gson.TypeAdapter;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.JsonWriter;
+import com.mapbox.directions.geometry.PolylineCodec;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * Reads and writes {@link RouteGeometry} as a GeoJSON LineString. Coordinates go straight into the
+ * packed array without creating a List or boxed Double per coordinate.
+ * <p>
+ * Routes requested with {@code DirectionsCriteria.GEOMETRY_POLYLINE} carry their geometry as an
+ * encoded polyline string instead; those are recognised and decoded with {@link PolylineCodec}.
+ * Routes requested with {@code DirectionsCriteria.GEOMETRY_FALSE} have no geometry and read as
+ * null.
+ */
+public class RouteGeometryTypeAdapter extends TypeAdapter<RouteGeometry> {
+
+    public final static String TYPE_LINE_STRING = "LineString";
+
+    private final int polylinePrecision;
+
+    /**
+     * Creates an adapter decoding polylines with the precision used by the Directions API.
+     */
+    public RouteGeometryTypeAdapter() {
+        this(PolylineCodec.PRECISION_6);
+    }
+
+    /**
+     * Creates an adapter decoding polylines with a specific precision.
+     * @param polylinePrecision {@link PolylineCodec#PRECISION_5} or {@link PolylineCodec#PRECISION_6}.
+     */
+    public RouteGeometryTypeAdapter(int polylinePrecision) {
+        this.polylinePrecision = polylinePrecision;
+    }
+
+    @Override
+    public void write(JsonWriter out, RouteGeometry geometry) throws IOException {
+        if (geometry == null) {
+            out.nullValue();
+            return;
+        }
+
+        out.beginObject();
+        out.name("type").value(geometry.getType());
+        out.name("coordinates").beginArray();
+        for (int i = 0; i < geometry.size(); i++) {
+            out.beginArray();
+            out.value(geometry.getLongitude(i));
+            out.value(geometry.getLatitude(i));
+            out.endArray();
+        }
+        out.endArray();
+        out.endObject();
+    }
+
+    @Override
+    public RouteGeometry read(JsonReader in) throws IOException {
+        JsonToken token = in.peek();
+        if (token == JsonToken.NULL) {
+            in.nextNull();
+            return null;
+        } else if (token == JsonToken.BOOLEAN) {
+            in.nextBoolean();
+            return null;
+        } else if (token == JsonToken.STRING) {
+            return new RouteGeometry(TYPE_LINE_STRING, PolylineCodec.decode(in.nextString(), polylinePrecision));
+        }
+
+        RouteGeometry geometry = new RouteGeometry();
+        in.beginObject();
+        while (in.hasNext()) {
+            String name = in.nextName();
+            if ("type".equals(name)) {
+                geometry.setType(in.nextString());
+            } else if ("coordinates".equals(name)) {
+                geometry.setPackedCoordinates(readCoordinates(in));
+            } else {
+                in.skipValue();
+            }
+        }
+        in.endObject();
+        return geometry;
+    }
+
+    /**
+     * Reads a GeoJSON array of positions into interleaved longitude/latitude pairs. Anything past
+     * the latitude (e.g. an altitude) is skipped.
+     * @param in reader positioned at the start of the array.
+     * @return packed coordinates.
+     * @throws IOException if the JSON isn't an array of positions.
+     */
+    public static double[] readCoordinates(JsonReader in) throws IOException {
+        double[] buffer = new double[256];
+        int length = 0;
+
+        in.beginArray();
+        while (in.hasNext()) {
+            if (length + 2 > buffer.length) {
+                buffer = Arrays.copyOf(buffer, buffer.length * 2);
+            }
+
+            in.beginArray();
+            buffer[length++] = in.nextDouble();
+            buffer[length++] = in.nextDouble();
+            while (in.hasNext()) {
+                in.skipValue();
+            }
+            in.endArray();
+        }
+        in.endArray();
+
+        return length == buffer.length ? buffer : Arrays.copyOf(buffer, length);
+    }
+}
@@ -1,6 +1,10 @@
 package com.mapbox.directions.service.models;
 
 import com.google.gson.annotations.SerializedName;
+import com.mapbox.directions.DirectionsCriteria;
+
+import java.util.HashMap;
+import java.util.Map;
 
 /**
  * The instructions for a route are broken down into steps with each step containing details like
@@ -8,6 +12,19 @@ import com.google.gson.annotations.SerializedName;
  */
 public class RouteStep {
 
+    private final static Map<String, Integer> DIRECTION_CODES = new HashMap<>();
+
+    static {
+        DIRECTION_CODES.put("N", DirectionsCriteria.DIRECTION_N);
+        DIRECTION_CODES.put("NE", DirectionsCriteria.DIRECTION_NE);
+        DIRECTION_CODES.put("E", DirectionsCriteria.DIRECTION_E);
+        DIRECTION_CODES.put("SE", DirectionsCriteria.DIRECTION_SE);
+        DIRECTION_CODES.put("S", DirectionsCriteria.DIRECTION_S);
+        DIRECTION_CODES.put("SW", DirectionsCriteria.DIRECTION_SW);
+        DIRECTION_CODES.put("W", DirectionsCriteria.DIRECTION_W);
+        DIRECTION_CODES.put("NW", DirectionsCriteria.DIRECTION_NW);
+    }
+
     private int distance;
     private int duration;
     @SerializedName("wayName") private String wayName;
@@ -15,6 +32,9 @@ public class RouteStep {
     private double heading;
     private StepManeuver maneuver;
 
+    // Code for direction, looked up on first use. Transient so Gson leaves it alone
+    private transient int directionCode = -1;
+
     /**
      * The distance of travel from the maneuver to the subsequent step.
      * @return integer distance given in meters.
@@ -62,6 +82,20 @@ public class RouteStep {
 
     public void setDirection(String direction) {
         this.direction = direction;
+        directionCode = -1;
+    }
+
+    /**
+     * {@link #getDirection()} as a code, to switch on without comparing strings.
+     * @return one of the {@link DirectionsCriteria.StepDirection} constants,
+     * {@link DirectionsCriteria#DIRECTION_UNKNOWN} if missing or not a cardinal direction.
+     */
+    @DirectionsCriteria.StepDirection
+    public int getDirectionCode() {
+        if (directionCode < 0) {
+            directionCode = StepManeuver.codeOf(DIRECTION_CODES, direction);
+        }
+        return directionCode;
     }
 
     /**
@@ -1,15 +1,50 @@
 package com.mapbox.directions.service.models;
 
+import com.mapbox.directions.DirectionsCriteria;
+
+import java.util.HashMap;
+import java.util.Map;
+
 /**
  * Used to describe a instruction step maneuver.
  */
 public class StepManeuver {
 
+    private final static Map<String, Integer> TYPE_CODES = new HashMap<>();
+    private final static Map<String, Integer> MODE_CODES = new HashMap<>();
+
+    static {
+        TYPE_CODES.put("continue", DirectionsCriteria.MANEUVER_CONTINUE);
+        TYPE_CODES.put("bear right", DirectionsCriteria.MANEUVER_BEAR_RIGHT);
+        TYPE_CODES.put("turn right", DirectionsCriteria.MANEUVER_TURN_RIGHT);
+        TYPE_CODES.put("sharp right", DirectionsCriteria.MANEUVER_SHARP_RIGHT);
+        TYPE_CODES.put("u-turn", DirectionsCriteria.MANEUVER_U_TURN);
+        TYPE_CODES.put("sharp left", DirectionsCriteria.MANEUVER_SHARP_LEFT);
+        TYPE_CODES.put("turn left", DirectionsCriteria.MANEUVER_TURN_LEFT);
+        TYPE_CODES.put("bear left", DirectionsCriteria.MANEUVER_BEAR_LEFT);
+        TYPE_CODES.put("waypoint", DirectionsCriteria.MANEUVER_WAYPOINT);
+        TYPE_CODES.put("depart", DirectionsCriteria.MANEUVER_DEPART);
+        TYPE_CODES.put("enter roundabout", DirectionsCriteria.MANEUVER_ENTER_ROUNDABOUT);
+        TYPE_CODES.put("arrive", DirectionsCriteria.MANEUVER_ARRIVE);
+
+        MODE_CODES.put("driving", DirectionsCriteria.MODE_DRIVING);
+        MODE_CODES.put("walking", DirectionsCriteria.MODE_WALKING);
+        MODE_CODES.put("cycling", DirectionsCriteria.MODE_CYCLING);
+        MODE_CODES.put("ferry", DirectionsCriteria.MODE_FERRY);
+        MODE_CODES.put("movable bridge", DirectionsCriteria.MODE_MOVABLE_BRIDGE);
+        MODE_CODES.put("train", DirectionsCriteria.MODE_TRAIN);
+        MODE_CODES.put("unaccessible", DirectionsCriteria.MODE_UNACCESSIBLE);
+    }
+
     private String type;
     private ManeuverPoint location;
     private String instruction;
     private String mode;
 
+    // Codes for type and mode, looked up on first use. Transient so Gson leaves them alone
+    private transient int typeCode = -1;
+    private transient int modeCode = -1;
+
     /**
      * A specific string describing the type of maneuver. The following types are currently used:
      * continue, bear right, turn right, sharp right, u-turn, sharp left, turn left, bear left,
@@ -24,6 +59,20 @@ public class StepManeuver {
 
     public void setType(String type) {
         this.type = type;
+        typeCode = -1;
+    }
+
+    /**
+     * {@link #getType()} as a code, to switch on without comparing strings.
+     * @return one of the {@link DirectionsCriteria.ManeuverType} constants,
+     * {@link DirectionsCriteria#MANEUVER_UNKNOWN} for types this version doesn't know.
+     */
+    @DirectionsCriteria.ManeuverType
+    public int getTypeCode() {
+        if (typeCode < 0) {
+            typeCode = codeOf(TYPE_CODES, type);
+        }
+        return typeCode;
     }
 
     /**
@@ -68,5 +117,24 @@ public class StepManeuver {
 
     public void setMode(String mode) {
         this.mode = mode;
+        modeCode = -1;
+    }
+
+    /**
+     * {@link #getMode()} as a code, to switch on without comparing strings.
+     * @return one of the {@link DirectionsCriteria.ManeuverMode} constants,
+     * {@link DirectionsCriteria#MODE_UNKNOWN} for modes this version doesn't know.
+     */
+    @DirectionsCriteria.ManeuverMode
+    public int getModeCode() {
+        if (modeCode < 0) {
+            modeCode = codeOf(MODE_CODES, mode);
+        }
+        return modeCode;
+    }
+
+    static int codeOf(Map<String, Integer> codes, String value) {
+        Integer code = value == null ? null : codes.get(value);
+        return code == null ? 0 : code;
     }
 }
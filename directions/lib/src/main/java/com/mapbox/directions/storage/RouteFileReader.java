@@ -0,0 +1,353 @@
+package com.mapbox.directions.storage;
+
+import com.mapbox.directions.service.models.DirectionsFeature;
+import com.mapbox.directions.service.models.DirectionsResponse;
+import com.mapbox.directions.service.models.DirectionsRoute;
+import com.mapbox.directions.service.models.FeatureGeometry;
+import com.mapbox.directions.service.models.FeatureProperties;
+import com.mapbox.directions.service.models.ManeuverPoint;
+import com.mapbox.directions.service.models.RouteGeometry;
+import com.mapbox.directions.service.models.RouteGeometryTypeAdapter;
+import com.mapbox.directions.service.models.RouteStep;
+import com.mapbox.directions.service.models.StepManeuver;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Reads files written by {@link RouteFileWriter}. Opening a file only maps it and checks its
+ * header; each route's geometry and steps are decoded straight from the mapped buffer when asked
+ * for, so looking at one route of a large archive doesn't load the others into the heap.
+ * <p>
+ * Readers are immutable and can be shared between threads.
+ */
+public class RouteFileReader {
+
+    private final static Charset UTF_8 = Charset.forName("UTF-8");
+
+    private final ByteBuffer _buffer;
+    private final int _precision;
+    private final double _factor;
+    private final int _routeCount;
+    private final int _featuresOffset;
+    private final int _stringsOffset;
+    private final int _stringCount;
+
+    // Decoded on first use; racing threads decode the same value, which is harmless
+    private final String[] _strings;
+
+    private RouteFileReader(ByteBuffer buffer) throws IOException {
+        buffer.order(ByteOrder.BIG_ENDIAN);
+        if (buffer.limit() < RouteFormat.HEADER_SIZE || buffer.getInt(0) != RouteFormat.MAGIC) {
+            throw new IOException("Not a route file.");
+        }
+        int version = buffer.getShort(RouteFormat.VERSION_OFFSET);
+        if (version != RouteFormat.VERSION) {
+            throw new IOException("Unsupported route file version " + version + ".");
+        }
+
+        _buffer = buffer;
+        _precision = buffer.get(RouteFormat.PRECISION_OFFSET);
+        _factor = Math.pow(10, _precision);
+        _routeCount = buffer.getInt(RouteFormat.ROUTE_COUNT_OFFSET);
+        _featuresOffset = buffer.getInt(RouteFormat.FEATURES_OFFSET);
+        _stringsOffset = buffer.getInt(RouteFormat.STRINGS_OFFSET);
+        _stringCount = buffer.getInt(RouteFormat.STRING_COUNT_OFFSET);
+        _strings = new String[_stringCount];
+
+        if (_routeCount < 0 || _stringCount < 0
+                || RouteFormat.HEADER_SIZE + (long) _routeCount * RouteFormat.DIRECTORY_ENTRY_SIZE > buffer.limit()
+                || _stringsOffset + (long) _stringCount * 4 > buffer.limit()) {
+            throw new IOException("Truncated route file.");
+        }
+    }
+
+    /**
+     * Memory-maps a route file. The mapping stays valid after the file is closed, and is released
+     * when the reader is garbage collected.
+     * @param file a file written by {@link RouteFileWriter}.
+     * @return {@link RouteFileReader} object.
+     * @throws IOException if the file can't be read or isn't a supported route file.
+     */
+    public static RouteFileReader open(File file) throws IOException {
+        RandomAccessFile input = new RandomAccessFile(file, "r");
+        try {
+            FileChannel channel = input.getChannel();
+            return new RouteFileReader(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+        } finally {
+            input.close();
+        }
+    }
+
+    /**
+     * Reads routes from a buffer, e.g. bytes returned by {@link RouteFileWriter#write}.
+     * @param buffer the encoded data, from position 0 up to its limit. Not copied, so it must not
+     *               change while the reader is in use.
+     * @return {@link RouteFileReader} object.
+     * @throws IOException if the data isn't a supported route file.
+     */
+    public static RouteFileReader wrap(ByteBuffer buffer) throws IOException {
+        // Own view so the caller's position and limit don't matter
+        return new RouteFileReader(buffer.duplicate());
+    }
+
+    /**
+     * @return number of decimal places the coordinates were stored with.
+     */
+    public int getPrecision() {
+        return _precision;
+    }
+
+    public int getRouteCount() {
+        return _routeCount;
+    }
+
+    public int getDistance(int route) {
+        return directory(route, RouteFormat.ROUTE_DISTANCE);
+    }
+
+    public int getDuration(int route) {
+        return directory(route, RouteFormat.ROUTE_DURATION);
+    }
+
+    public String getSummary(int route) {
+        return string(directory(route, RouteFormat.ROUTE_SUMMARY) + 1);
+    }
+
+    /**
+     * @param route index of the route.
+     * @return number of vertices in its geometry, 0 if it has none.
+     */
+    public int getVertexCount(int route) {
+        return directory(route, RouteFormat.ROUTE_VERTEX_COUNT);
+    }
+
+    public int getStepCount(int route) {
+        return directory(route, RouteFormat.ROUTE_STEP_COUNT);
+    }
+
+    /**
+     * Decodes a route's coordinates without creating any other object.
+     * @param route index of the route.
+     * @return interleaved longitude/latitude pairs, or null if the route has no geometry.
+     */
+    public double[] readCoordinates(int route) {
+        int offset = directory(route, RouteFormat.ROUTE_GEOMETRY_OFFSET);
+        if (offset < 0) {
+            return null;
+        }
+
+        int vertexCount = getVertexCount(route);
+        double[] coordinates = new double[vertexCount * 2];
+        Cursor cursor = new Cursor(_buffer, offset);
+        long longitude = 0;
+        long latitude = 0;
+        for (int i = 0; i < coordinates.length; i += 2) {
+            longitude += RouteFormat.unzigzag(cursor.readVarint());
+            latitude += RouteFormat.unzigzag(cursor.readVarint());
+            coordinates[i] = longitude / _factor;
+            coordinates[i + 1] = latitude / _factor;
+        }
+        return coordinates;
+    }
+
+    /**
+     * @param route index of the route.
+     * @return {@link RouteGeometry} object, or null if the route has no geometry.
+     */
+    public RouteGeometry readGeometry(int route) {
+        double[] coordinates = readCoordinates(route);
+        return coordinates != null ? new RouteGeometry(RouteGeometryTypeAdapter.TYPE_LINE_STRING, coordinates) : null;
+    }
+
+    /**
+     * @param route index of the route.
+     * @return List of {@link RouteStep} objects.
+     */
+    public List<RouteStep> readSteps(int route) {
+        int stepCount = getStepCount(route);
+        List<RouteStep> steps = new ArrayList<>(stepCount);
+        Cursor cursor = new Cursor(_buffer, directory(route, RouteFormat.ROUTE_STEPS_OFFSET));
+        for (int i = 0; i < stepCount; i++) {
+            steps.add(readStep(cursor));
+        }
+        return steps;
+    }
+
+    /**
+     * A route whose geometry and steps are decoded from the buffer when first asked for, see
+     * {@link DirectionsRoute#setLazyLoader(DirectionsRoute.LazyLoader)}.
+     * @param route index of the route.
+     * @return {@link DirectionsRoute} object.
+     */
+    public DirectionsRoute readRoute(final int route) {
+        DirectionsRoute directionsRoute = new DirectionsRoute();
+        directionsRoute.setDistance(getDistance(route));
+        directionsRoute.setDuration(getDuration(route));
+        directionsRoute.setSummary(getSummary(route));
+        directionsRoute.setLazyLoader(new DirectionsRoute.LazyLoader() {
+            @Override
+            public RouteGeometry loadGeometry() {
+                return readGeometry(route);
+            }
+
+            @Override
+            public List<RouteStep> loadSteps() {
+                return readSteps(route);
+            }
+        });
+        return directionsRoute;
+    }
+
+    /**
+     * The whole response, with every route lazy, see {@link #readRoute(int)}.
+     * @return {@link DirectionsResponse} object.
+     */
+    public DirectionsResponse readResponse() {
+        DirectionsResponse response = new DirectionsResponse();
+        Cursor cursor = new Cursor(_buffer, _featuresOffset);
+        response.setOrigin(readFeature(cursor));
+        response.setDestination(readFeature(cursor));
+
+        int waypointCount = (int) cursor.readVarint();
+        List<DirectionsFeature> waypoints = new ArrayList<>(waypointCount);
+        for (int i = 0; i < waypointCount; i++) {
+            waypoints.add(readFeature(cursor));
+        }
+        response.setWaypoints(waypoints);
+
+        List<DirectionsRoute> routes = new ArrayList<>(_routeCount);
+        for (int i = 0; i < _routeCount; i++) {
+            routes.add(readRoute(i));
+        }
+        response.setRoutes(routes);
+        return response;
+    }
+
+    private RouteStep readStep(Cursor cursor) {
+        RouteStep step = new RouteStep();
+        step.setDistance((int) RouteFormat.unzigzag(cursor.readVarint()));
+        step.setDuration((int) RouteFormat.unzigzag(cursor.readVarint()));
+        step.setWayName(readString(cursor));
+        step.setDirection(readString(cursor));
+        step.setHeading(Double.longBitsToDouble(cursor.readLong()));
+
+        if (cursor.readByte() != 0) {
+            StepManeuver maneuver = new StepManeuver();
+            maneuver.setType(readString(cursor));
+            maneuver.setInstruction(readString(cursor));
+            maneuver.setMode(readString(cursor));
+            if (cursor.readByte() != 0) {
+                ManeuverPoint location = new ManeuverPoint();
+                location.setType(readString(cursor));
+                location.setCoordinates(readPoint(cursor));
+                maneuver.setLocation(location);
+            }
+            step.setManeuver(maneuver);
+        }
+        return step;
+    }
+
+    private DirectionsFeature readFeature(Cursor cursor) {
+        if (cursor.readByte() == 0) {
+            return null;
+        }
+
+        DirectionsFeature feature = new DirectionsFeature();
+        feature.setType(readString(cursor));
+        if (cursor.readByte() != 0) {
+            FeatureGeometry geometry = new FeatureGeometry();
+            geometry.setType(readString(cursor));
+            geometry.setCoordinates(readPoint(cursor));
+            feature.setGeometry(geometry);
+        }
+        FeatureProperties properties = new FeatureProperties();
+        properties.setName(readString(cursor));
+        feature.setProperties(properties);
+        return feature;
+    }
+
+    private List<Double> readPoint(Cursor cursor) {
+        int count = (int) cursor.readVarint();
+        List<Double> coordinates = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            coordinates.add(RouteFormat.unzigzag(cursor.readVarint()) / _factor);
+        }
+        return coordinates;
+    }
+
+    private String readString(Cursor cursor) {
+        return string((int) cursor.readVarint());
+    }
+
+    // Index + 1 in the string table, 0 for null
+    private String string(int id) {
+        if (id == 0) {
+            return null;
+        }
+
+        String string = _strings[id - 1];
+        if (string == null) {
+            Cursor cursor = new Cursor(_buffer, _buffer.getInt(_stringsOffset + (id - 1) * 4));
+            int length = (int) cursor.readVarint();
+            byte[] bytes = new byte[length];
+            for (int i = 0; i < length; i++) {
+                bytes[i] = cursor.readByte();
+            }
+            string = new String(bytes, UTF_8);
+            _strings[id - 1] = string;
+        }
+        return string;
+    }
+
+    private int directory(int route, int field) {
+        if (route < 0 || route >= _routeCount) {
+            throw new IndexOutOfBoundsException("Route " + route + " of " + _routeCount + ".");
+        }
+        return _buffer.getInt(RouteFormat.HEADER_SIZE + route * RouteFormat.DIRECTORY_ENTRY_SIZE + field);
+    }
+
+    /*
+     * Reads with absolute gets only, so any number of cursors can share the buffer.
+     */
+
+    private static class Cursor {
+
+        private final ByteBuffer buffer;
+        private int position;
+
+        Cursor(ByteBuffer buffer, int position) {
+            this.buffer = buffer;
+            this.position = position;
+        }
+
+        byte readByte() {
+            return buffer.get(position++);
+        }
+
+        long readLong() {
+            long value = buffer.getLong(position);
+            position += 8;
+            return value;
+        }
+
+        long readVarint() {
+            long value = 0;
+            int shift = 0;
+            byte b;
+            do {
+                b = buffer.get(position++);
+                value |= (long) (b & 0x7f) << shift;
+                shift += 7;
+            } while ((b & 0x80) != 0);
+            return value;
+        }
+    }
+}
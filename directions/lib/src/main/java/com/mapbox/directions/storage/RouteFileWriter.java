@@ -0,0 +1,252 @@
+package com.mapbox.directions.storage;
+
+import com.mapbox.directions.geometry.PolylineCodec;
+import com.mapbox.directions.service.models.DirectionsFeature;
+import com.mapbox.directions.service.models.DirectionsResponse;
+import com.mapbox.directions.service.models.DirectionsRoute;
+import com.mapbox.directions.service.models.RouteGeometry;
+import com.mapbox.directions.service.models.RouteStep;
+import com.mapbox.directions.service.models.StepManeuver;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Writes a {@link DirectionsResponse} in the compact binary route format read by
+ * {@link RouteFileReader}, see {@link RouteFormat} for the layout.
+ * <p>
+ * Coordinates are rounded to the given number of decimal places ({@link PolylineCodec#PRECISION_6}
+ * keeps everything the Directions API sends); everything else round-trips exactly. Lazy routes
+ * are materialised while writing.
+ */
+public class RouteFileWriter {
+
+    private final static Charset UTF_8 = Charset.forName("UTF-8");
+
+    // Keeps |coordinate| * 10^precision within an int
+    public final static int MAX_PRECISION = 7;
+
+    private RouteFileWriter() {
+    }
+
+    /**
+     * Encodes a response.
+     * @param response the {@link DirectionsResponse} to write.
+     * @param precision number of decimal places coordinates are kept with, at most
+     *                  {@link #MAX_PRECISION}.
+     * @return the encoded bytes.
+     */
+    public static byte[] write(DirectionsResponse response, int precision) {
+        if (precision < 0 || precision > MAX_PRECISION) {
+            throw new IllegalArgumentException("Precision must be between 0 and " + MAX_PRECISION + ".");
+        }
+        return new Encoder(precision).encode(response);
+    }
+
+    /**
+     * Encodes a response into a stream.
+     * @param response the {@link DirectionsResponse} to write.
+     * @param precision number of decimal places coordinates are kept with.
+     * @param out where to write, not closed.
+     * @throws IOException if writing fails.
+     */
+    public static void write(DirectionsResponse response, int precision, OutputStream out) throws IOException {
+        out.write(write(response, precision));
+    }
+
+    private static class Encoder {
+
+        private final double factor;
+        private final int precision;
+        private final Sink body = new Sink();
+        private final Map<String, Integer> stringIds = new HashMap<>();
+        private final List<String> strings = new ArrayList<>();
+
+        Encoder(int precision) {
+            this.precision = precision;
+            this.factor = Math.pow(10, precision);
+        }
+
+        byte[] encode(DirectionsResponse response) {
+            List<DirectionsRoute> routes = response.getRoutes();
+            int routeCount = routes != null ? routes.size() : 0;
+            int bodyStart = RouteFormat.HEADER_SIZE + routeCount * RouteFormat.DIRECTORY_ENTRY_SIZE;
+
+            // Variable length sections first, their offsets go in the directory
+            int[] directory = new int[routeCount * 7];
+            for (int i = 0; i < routeCount; i++) {
+                DirectionsRoute route = routes.get(i);
+                int entry = i * 7;
+                directory[entry] = route.getDistance();
+                directory[entry + 1] = route.getDuration();
+                directory[entry + 2] = stringId(route.getSummary()) - 1;
+
+                RouteGeometry geometry = route.getGeometry();
+                if (geometry == null) {
+                    directory[entry + 3] = -1;
+                    directory[entry + 4] = 0;
+                } else {
+                    directory[entry + 3] = bodyStart + body.size();
+                    directory[entry + 4] = geometry.size();
+                    writeGeometry(geometry);
+                }
+
+                List<RouteStep> steps = route.getSteps();
+                directory[entry + 5] = bodyStart + body.size();
+                directory[entry + 6] = steps != null ? steps.size() : 0;
+                if (steps != null) {
+                    for (RouteStep step : steps) {
+                        writeStep(step);
+                    }
+                }
+            }
+
+            int featuresOffset = bodyStart + body.size();
+            writeFeature(response.getOrigin());
+            writeFeature(response.getDestination());
+            List<DirectionsFeature> waypoints = response.getWaypoints();
+            int waypointCount = waypoints != null ? waypoints.size() : 0;
+            body.writeVarint(waypointCount);
+            for (int i = 0; i < waypointCount; i++) {
+                writeFeature(waypoints.get(i));
+            }
+
+            // String table: offsets, then the strings themselves
+            int stringsOffset = bodyStart + body.size();
+            Sink table = new Sink();
+            int dataStart = stringsOffset + strings.size() * 4;
+            Sink data = new Sink();
+            for (String string : strings) {
+                table.writeInt(dataStart + data.size());
+                byte[] bytes = string.getBytes(UTF_8);
+                data.writeVarint(bytes.length);
+                data.write(bytes, 0, bytes.length);
+            }
+
+            Sink out = new Sink();
+            out.writeInt(RouteFormat.MAGIC);
+            out.write(RouteFormat.VERSION >>> 8);
+            out.write(RouteFormat.VERSION);
+            out.write(precision);
+            out.write(0);
+            out.writeInt(routeCount);
+            out.writeInt(featuresOffset);
+            out.writeInt(stringsOffset);
+            out.writeInt(strings.size());
+            out.writeInt(0);
+            out.writeInt(0);
+            for (int value : directory) {
+                out.writeInt(value);
+            }
+            body.writeTo(out);
+            table.writeTo(out);
+            data.writeTo(out);
+            return out.toByteArray();
+        }
+
+        private void writeGeometry(RouteGeometry geometry) {
+            double[] coordinates = geometry.getPackedCoordinates();
+            long previousLongitude = 0;
+            long previousLatitude = 0;
+            for (int i = 0; i < coordinates.length; i += 2) {
+                long longitude = Math.round(coordinates[i] * factor);
+                long latitude = Math.round(coordinates[i + 1] * factor);
+                body.writeVarint(RouteFormat.zigzag(longitude - previousLongitude));
+                body.writeVarint(RouteFormat.zigzag(latitude - previousLatitude));
+                previousLongitude = longitude;
+                previousLatitude = latitude;
+            }
+        }
+
+        private void writeStep(RouteStep step) {
+            body.writeVarint(RouteFormat.zigzag(step.getDistance()));
+            body.writeVarint(RouteFormat.zigzag(step.getDuration()));
+            body.writeVarint(stringId(step.getWayName()));
+            body.writeVarint(stringId(step.getDirection()));
+            body.writeLong(Double.doubleToLongBits(step.getHeading()));
+
+            StepManeuver maneuver = step.getManeuver();
+            body.write(maneuver != null ? 1 : 0);
+            if (maneuver != null) {
+                body.writeVarint(stringId(maneuver.getType()));
+                body.writeVarint(stringId(maneuver.getInstruction()));
+                body.writeVarint(stringId(maneuver.getMode()));
+                body.write(maneuver.getLocation() != null ? 1 : 0);
+                if (maneuver.getLocation() != null) {
+                    body.writeVarint(stringId(maneuver.getLocation().getType()));
+                    writePoint(maneuver.getLocation().getCoordinates());
+                }
+            }
+        }
+
+        private void writeFeature(DirectionsFeature feature) {
+            body.write(feature != null ? 1 : 0);
+            if (feature == null) {
+                return;
+            }
+
+            body.writeVarint(stringId(feature.getType()));
+            body.write(feature.getGeometry() != null ? 1 : 0);
+            if (feature.getGeometry() != null) {
+                body.writeVarint(stringId(feature.getGeometry().getType()));
+                writePoint(feature.getGeometry().getCoordinates());
+            }
+            body.writeVarint(stringId(feature.getProperties() != null ? feature.getProperties().getName() : null));
+        }
+
+        private void writePoint(List<Double> coordinates) {
+            int count = coordinates != null ? coordinates.size() : 0;
+            body.writeVarint(count);
+            for (int i = 0; i < count; i++) {
+                body.writeVarint(RouteFormat.zigzag(Math.round(coordinates.get(i) * factor)));
+            }
+        }
+
+        // Index + 1 in the string table, 0 for null
+        private int stringId(String string) {
+            if (string == null) {
+                return 0;
+            }
+            Integer id = stringIds.get(string);
+            if (id == null) {
+                strings.add(string);
+                id = strings.size();
+                stringIds.put(string, id);
+            }
+            return id;
+        }
+    }
+
+    private static class Sink extends ByteArrayOutputStream {
+
+        void writeVarint(long value) {
+            while ((value & ~0x7fL) != 0) {
+                write((int) ((value & 0x7f) | 0x80));
+                value >>>= 7;
+            }
+            write((int) value);
+        }
+
+        void writeInt(int value) {
+            write(value >>> 24);
+            write(value >>> 16);
+            write(value >>> 8);
+            write(value);
+        }
+
+        void writeLong(long value) {
+            writeInt((int) (value >>> 32));
+            writeInt((int) value);
+        }
+
+        void writeTo(Sink other) {
+            other.write(buf, 0, count);
+        }
+    }
+}
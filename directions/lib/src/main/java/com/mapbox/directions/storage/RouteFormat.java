@@ -0,0 +1,59 @@
+package com.mapbox.directions.storage;
+
+/**
+ * Layout of the binary route format shared by {@link RouteFileWriter} and
+ * {@link RouteFileReader}. All fixed-size integers are big-endian.
+ * <pre>
+ * header       magic "MBDR" (int), version (short), coordinate precision (byte), reserved (byte),
+ *              route count (int), features offset (int), string table offset (int),
+ *              string count (int), reserved (8 bytes)
+ * directory    one fixed-size entry per route: distance, duration, summary string, geometry
+ *              offset, vertex count, steps offset, step count (7 ints, -1 for a missing geometry)
+ * geometries   per route, zigzag varint deltas of the scaled longitude then latitude of each
+ *              vertex, the first one relative to 0,0 (always read back as a LineString)
+ * steps        per step: varint distance, duration, way name, direction, heading (double bits),
+ *              maneuver present flag, then maneuver type, instruction, mode, location
+ * features     origin, destination, then a varint count of waypoints, each as type, geometry
+ *              type, coordinates, name
+ * strings      an offset (int) per string, then each as a varint UTF-8 length and its bytes
+ * </pre>
+ * Strings are referenced by varint index + 1, 0 standing for null, so repeated way names, modes,
+ * maneuver types etc. are stored once. Coordinate lists (points) are a varint count followed by
+ * zigzag varint scaled values.
+ */
+final class RouteFormat {
+
+    final static int MAGIC = 0x4d424452;
+    final static int VERSION = 1;
+
+    final static int HEADER_SIZE = 32;
+    final static int DIRECTORY_ENTRY_SIZE = 7 * 4;
+
+    // Header field offsets
+    final static int VERSION_OFFSET = 4;
+    final static int PRECISION_OFFSET = 6;
+    final static int ROUTE_COUNT_OFFSET = 8;
+    final static int FEATURES_OFFSET = 12;
+    final static int STRINGS_OFFSET = 16;
+    final static int STRING_COUNT_OFFSET = 20;
+
+    // Directory entry field offsets
+    final static int ROUTE_DISTANCE = 0;
+    final static int ROUTE_DURATION = 4;
+    final static int ROUTE_SUMMARY = 8;
+    final static int ROUTE_GEOMETRY_OFFSET = 12;
+    final static int ROUTE_VERTEX_COUNT = 16;
+    final static int ROUTE_STEPS_OFFSET = 20;
+    final static int ROUTE_STEP_COUNT = 24;
+
+    private RouteFormat() {
+    }
+
+    static long zigzag(long value) {
+        return (value << 1) ^ (value >> 63);
+    }
+
+    static long unzigzag(long value) {
+        return (value >>> 1) ^ -(value & 1);
+    }
+}
@@ -0,0 +1,545 @@
+package com.mapbox.directions.storage;
+
+import android.util.Log;
+
+import com.mapbox.directions.geometry.GeoMath;
+import com.mapbox.directions.service.models.DirectionsFeature;
+import com.mapbox.directions.service.models.DirectionsResponse;
+import com.mapbox.directions.service.models.Waypoint;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * A persistent store of {@link DirectionsResponse}s answering new requests whose waypoints fall
+ * within a tolerance of a stored response's origin, waypoints and destination, without going to
+ * the network. Unlike {@code DirectionsCache}, which needs the exact same request, this lets
+ * nearby starting points (a user who moved a few meters, a slightly different tap on the map)
+ * reuse a route, and survives restarts for offline use.
+ * <p>
+ * Responses are kept in the {@link RouteFileWriter} format, one file per response, and read
+ * back lazily from memory-mapped files. An in-memory grid over origins makes lookups independent
+ * of the number of stored routes. Disk usage is bounded; the least recently used responses are
+ * evicted first. Lookups run concurrently, writes are serialised.
+ */
+public class RouteStore {
+
+    private final static String LOG_TAG = "RouteStore";
+
+    private final static Charset UTF_8 = Charset.forName("UTF-8");
+    private final static String FILE_SUFFIX = ".route";
+
+    public final static long DEFAULT_MAX_BYTES = 50 * 1024 * 1024;
+    public final static double DEFAULT_TOLERANCE_METERS = 50;
+
+    // Grid cells are this many degrees on each side, about 1.1 km of latitude
+    private final static double CELL_DEGREES = 0.01;
+
+    private final File _directory;
+    private final long _maxBytes;
+    private final double _toleranceMeters;
+
+    private final ReadWriteLock _lock = new ReentrantReadWriteLock();
+    private final Map<Long, Entry> _entries = new HashMap<>();
+    private final Map<Long, List<Entry>> _cells = new HashMap<>();
+    private long _totalBytes;
+    private long _nextId;
+
+    private final AtomicLong _hitCount = new AtomicLong();
+    private final AtomicLong _missCount = new AtomicLong();
+    private final AtomicLong _evictionCount = new AtomicLong();
+
+    private RouteStore(Builder builder) {
+        _directory = builder._directory;
+        _maxBytes = builder._maxBytes;
+        _toleranceMeters = builder._toleranceMeters;
+
+        if (!_directory.isDirectory() && !_directory.mkdirs()) {
+            throw new RuntimeException("Unable to create the route store directory " + _directory + ".");
+        }
+        load();
+    }
+
+    /**
+     * Looks for a stored response to the same kind of request whose waypoints are all within the
+     * tolerance of the given ones. When several match, the closest one wins.
+     * @param key identifies everything about the request but its waypoints; MapboxDirections uses
+     *            the profile and options it sends.
+     * @param waypoints origin, intermediate waypoints and destination, in order.
+     * @return the stored {@link DirectionsResponse}, its routes decoded lazily, or null.
+     */
+    public DirectionsResponse find(String key, List<Waypoint> waypoints) {
+        Entry match = null;
+        if (waypoints != null && waypoints.size() >= 2) {
+            _lock.readLock().lock();
+            try {
+                match = findClosest(key, waypoints);
+                if (match != null) {
+                    match.lastUsed = System.currentTimeMillis();
+                }
+            } finally {
+                _lock.readLock().unlock();
+            }
+        }
+
+        if (match == null) {
+            _missCount.incrementAndGet();
+            return null;
+        }
+        _hitCount.incrementAndGet();
+        return match.reader.readResponse();
+    }
+
+    /**
+     * Stored responses with at least one route crossing the given box, e.g. the visible map
+     * region. Boxes crossing the antimeridian aren't supported.
+     * @return List of {@link DirectionsResponse} objects, their routes decoded lazily.
+     */
+    public List<DirectionsResponse> findIntersecting(double minLongitude, double minLatitude,
+                                                     double maxLongitude, double maxLatitude) {
+        List<Entry> matches = new ArrayList<>();
+        _lock.readLock().lock();
+        try {
+            for (Entry entry : _entries.values()) {
+                if (entry.minLongitude <= maxLongitude && entry.maxLongitude >= minLongitude
+                        && entry.minLatitude <= maxLatitude && entry.maxLatitude >= minLatitude) {
+                    matches.add(entry);
+                }
+            }
+        } finally {
+            _lock.readLock().unlock();
+        }
+
+        List<DirectionsResponse> responses = new ArrayList<>(matches.size());
+        for (Entry entry : matches) {
+            responses.add(entry.reader.readResponse());
+        }
+        return responses;
+    }
+
+    /**
+     * Stores a response, replacing one for the same key and (within the tolerance) waypoints.
+     * Does disk I/O, so don't call it from the main thread.
+     * @param key identifies everything about the request but its waypoints.
+     * @param response the {@link DirectionsResponse} to keep. Responses without an origin and a
+     *                 destination can't be looked up and are ignored.
+     * @return true if the response was stored.
+     */
+    public boolean put(String key, DirectionsResponse response) {
+        double[] points = pointsOf(response);
+        if (points == null) {
+            return false;
+        }
+
+        // Encoding doesn't need the lock
+        byte[] keyBytes = key.getBytes(UTF_8);
+        byte[] body = RouteFileWriter.write(response, RouteFileWriter.MAX_PRECISION);
+
+        _lock.writeLock().lock();
+        try {
+            File file = new File(_directory, _nextId + FILE_SUFFIX);
+            File temp = new File(_directory, _nextId + FILE_SUFFIX + ".tmp");
+            long id = _nextId++;
+            try {
+                OutputStream out = new FileOutputStream(temp);
+                try {
+                    out.write(keyBytes.length >>> 8);
+                    out.write(keyBytes.length);
+                    out.write(keyBytes);
+                    out.write(body);
+                } finally {
+                    out.close();
+                }
+                if (!temp.renameTo(file)) {
+                    throw new IOException("Unable to rename " + temp + ".");
+                }
+            } catch (IOException e) {
+                Log.w(LOG_TAG, "Unable to store response.", e);
+                temp.delete();
+                return false;
+            }
+
+            Entry entry;
+            try {
+                entry = open(id, file);
+            } catch (IOException e) {
+                Log.w(LOG_TAG, "Unable to read back " + file + ".", e);
+                file.delete();
+                return false;
+            }
+
+            Entry replaced = findMatching(key, points);
+            if (replaced != null) {
+                remove(replaced);
+            }
+            add(entry);
+            trim();
+            return true;
+        } finally {
+            _lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Drops every stored response. Counters are left as they are.
+     */
+    public void clear() {
+        _lock.writeLock().lock();
+        try {
+            for (Entry entry : new ArrayList<>(_entries.values())) {
+                remove(entry);
+            }
+        } finally {
+            _lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Number of stored responses.
+     * @return integer count.
+     */
+    public int size() {
+        _lock.readLock().lock();
+        try {
+            return _entries.size();
+        } finally {
+            _lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Disk space used by the stored responses.
+     * @return long number of bytes.
+     */
+    public long getTotalBytes() {
+        _lock.readLock().lock();
+        try {
+            return _totalBytes;
+        } finally {
+            _lock.readLock().unlock();
+        }
+    }
+
+    public double getToleranceMeters() {
+        return _toleranceMeters;
+    }
+
+    public long getHitCount() {
+        return _hitCount.get();
+    }
+
+    public long getMissCount() {
+        return _missCount.get();
+    }
+
+    public long getEvictionCount() {
+        return _evictionCount.get();
+    }
+
+    /*
+     * Lookups. Must hold the lock, read or write.
+     */
+
+    private Entry findClosest(String key, List<Waypoint> waypoints) {
+        double[] points = new double[waypoints.size() * 2];
+        for (int i = 0; i < waypoints.size(); i++) {
+            points[i * 2] = waypoints.get(i).getLongitude();
+            points[i * 2 + 1] = waypoints.get(i).getLatitude();
+        }
+        return findMatching(key, points);
+    }
+
+    private Entry findMatching(String key, double[] points) {
+        // Visit every cell the tolerance circle around the origin may reach
+        double latitudeDelta = _toleranceMeters / GeoMath.METERS_PER_DEGREE;
+        double longitudeDelta = latitudeDelta / Math.max(Math.cos(Math.toRadians(points[1])), 0.01);
+        int minRow = cell(points[1] - latitudeDelta);
+        int maxRow = cell(points[1] + latitudeDelta);
+        int minColumn = cell(points[0] - longitudeDelta);
+        int maxColumn = cell(points[0] + longitudeDelta);
+
+        Entry closest = null;
+        double closestError = Double.MAX_VALUE;
+        for (int row = minRow; row <= maxRow; row++) {
+            for (int column = minColumn; column <= maxColumn; column++) {
+                List<Entry> entries = _cells.get(cellKey(row, column));
+                if (entries == null) {
+                    continue;
+                }
+                for (Entry entry : entries) {
+                    double error = matchError(entry, key, points);
+                    if (error < closestError) {
+                        closest = entry;
+                        closestError = error;
+                    }
+                }
+            }
+        }
+        return closest;
+    }
+
+    // Largest waypoint distance in meters, or MAX_VALUE if the entry doesn't match
+    private double matchError(Entry entry, String key, double[] points) {
+        if (entry.points.length != points.length || !entry.key.equals(key)) {
+            return Double.MAX_VALUE;
+        }
+
+        double error = 0;
+        for (int i = 0; i < points.length; i += 2) {
+            double distance = GeoMath.distance(points[i], points[i + 1], entry.points[i], entry.points[i + 1]);
+            if (distance > _toleranceMeters) {
+                return Double.MAX_VALUE;
+            }
+            error = Math.max(error, distance);
+        }
+        return error;
+    }
+
+    /*
+     * Index maintenance. Must hold the write lock.
+     */
+
+    private void add(Entry entry) {
+        _entries.put(entry.id, entry);
+        long cell = cellKey(cell(entry.points[1]), cell(entry.points[0]));
+        List<Entry> entries = _cells.get(cell);
+        if (entries == null) {
+            entries = new ArrayList<>(2);
+            _cells.put(cell, entries);
+        }
+        entries.add(entry);
+        _totalBytes += entry.size;
+    }
+
+    private void remove(Entry entry) {
+        _entries.remove(entry.id);
+        long cell = cellKey(cell(entry.points[1]), cell(entry.points[0]));
+        List<Entry> entries = _cells.get(cell);
+        if (entries != null) {
+            entries.remove(entry);
+            if (entries.isEmpty()) {
+                _cells.remove(cell);
+            }
+        }
+        _totalBytes -= entry.size;
+
+        // Readers still holding the mapping keep working after the file is gone
+        if (!entry.file.delete()) {
+            Log.w(LOG_TAG, "Unable to delete " + entry.file + ".");
+        }
+    }
+
+    private void trim() {
+        while (_totalBytes > _maxBytes && !_entries.isEmpty()) {
+            Entry oldest = null;
+            for (Entry entry : _entries.values()) {
+                if (oldest == null || entry.lastUsed < oldest.lastUsed) {
+                    oldest = entry;
+                }
+            }
+            remove(oldest);
+            _evictionCount.incrementAndGet();
+        }
+    }
+
+    private void load() {
+        File[] files = _directory.listFiles();
+        if (files == null) {
+            return;
+        }
+
+        for (File file : files) {
+            String name = file.getName();
+            if (!name.endsWith(FILE_SUFFIX)) {
+                // Leftovers from an interrupted put()
+                if (name.endsWith(FILE_SUFFIX + ".tmp")) {
+                    file.delete();
+                }
+                continue;
+            }
+
+            try {
+                long id = Long.parseLong(name.substring(0, name.length() - FILE_SUFFIX.length()));
+                add(open(id, file));
+                _nextId = Math.max(_nextId, id + 1);
+            } catch (IOException | RuntimeException e) {
+                Log.w(LOG_TAG, "Dropping unreadable stored response " + file + ".", e);
+                file.delete();
+            }
+        }
+        trim();
+    }
+
+    /*
+     * Each file holds the key (a 2 byte length followed by UTF-8) and then the response in the
+     * RouteFileWriter format. The bounding box and waypoints are derived from the response.
+     */
+
+    private static Entry open(long id, File file) throws IOException {
+        ByteBuffer buffer;
+        RandomAccessFile input = new RandomAccessFile(file, "r");
+        try {
+            FileChannel channel = input.getChannel();
+            buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        } finally {
+            input.close();
+        }
+
+        int keyLength = ((buffer.get(0) & 0xff) << 8) | (buffer.get(1) & 0xff);
+        byte[] keyBytes = new byte[keyLength];
+        buffer.position(2);
+        buffer.get(keyBytes);
+        buffer.position(2 + keyLength);
+        RouteFileReader reader = RouteFileReader.wrap(buffer.slice());
+
+        double[] points = pointsOf(reader.readResponse());
+        if (points == null) {
+            throw new IOException("Stored response without origin or destination.");
+        }
+
+        Entry entry = new Entry(id, file, new String(keyBytes, UTF_8), buffer.limit(), points, reader);
+        entry.lastUsed = file.lastModified();
+        for (int i = 0; i < reader.getRouteCount(); i++) {
+            double[] coordinates = reader.readCoordinates(i);
+            if (coordinates != null) {
+                entry.extend(coordinates);
+            }
+        }
+        entry.extend(points);
+        return entry;
+    }
+
+    // Origin, waypoints and destination as longitude/latitude pairs
+    private static double[] pointsOf(DirectionsResponse response) {
+        List<DirectionsFeature> waypoints = response.getWaypoints();
+        int waypointCount = waypoints != null ? waypoints.size() : 0;
+        double[] points = new double[(waypointCount + 2) * 2];
+        if (!pointOf(response.getOrigin(), points, 0)
+                || !pointOf(response.getDestination(), points, points.length - 2)) {
+            return null;
+        }
+        for (int i = 0; i < waypointCount; i++) {
+            if (!pointOf(waypoints.get(i), points, (i + 1) * 2)) {
+                return null;
+            }
+        }
+        return points;
+    }
+
+    private static boolean pointOf(DirectionsFeature feature, double[] points, int offset) {
+        if (feature == null || feature.getGeometry() == null) {
+            return false;
+        }
+        List<Double> coordinates = feature.getGeometry().getCoordinates();
+        if (coordinates == null || coordinates.size() < 2) {
+            return false;
+        }
+        points[offset] = coordinates.get(0);
+        points[offset + 1] = coordinates.get(1);
+        return true;
+    }
+
+    private static int cell(double degrees) {
+        return (int) Math.floor(degrees / CELL_DEGREES);
+    }
+
+    private static long cellKey(int row, int column) {
+        return ((long) row << 32) | (column & 0xffffffffL);
+    }
+
+    private static class Entry {
+
+        final long id;
+        final File file;
+        final String key;
+        final long size;
+        final double[] points;
+        final RouteFileReader reader;
+
+        double minLongitude = Double.MAX_VALUE;
+        double minLatitude = Double.MAX_VALUE;
+        double maxLongitude = -Double.MAX_VALUE;
+        double maxLatitude = -Double.MAX_VALUE;
+
+        // Updated under the read lock, so concurrently; an approximate order is all eviction needs
+        volatile long lastUsed;
+
+        Entry(long id, File file, String key, long size, double[] points, RouteFileReader reader) {
+            this.id = id;
+            this.file = file;
+            this.key = key;
+            this.size = size;
+            this.points = points;
+            this.reader = reader;
+        }
+
+        void extend(double[] coordinates) {
+            for (int i = 0; i < coordinates.length; i += 2) {
+                minLongitude = Math.min(minLongitude, coordinates[i]);
+                maxLongitude = Math.max(maxLongitude, coordinates[i]);
+                minLatitude = Math.min(minLatitude, coordinates[i + 1]);
+                maxLatitude = Math.max(maxLatitude, coordinates[i + 1]);
+            }
+        }
+    }
+
+    /*
+     * Builder
+     */
+
+    public static class Builder {
+
+        private File _directory;
+        private long _maxBytes = DEFAULT_MAX_BYTES;
+        private double _toleranceMeters = DEFAULT_TOLERANCE_METERS;
+
+        /*
+         * Use a directory dedicated to the store, e.g. new File(context.getFilesDir(), "routes"),
+         * as stored files it can't read are deleted. Opening the store reads every stored file.
+         */
+
+        public Builder setDirectory(File directory) {
+            _directory = directory;
+            return this;
+        }
+
+        public Builder setMaxBytes(long maxBytes) {
+            _maxBytes = maxBytes;
+            return this;
+        }
+
+        /*
+         * How far, in meters, each requested waypoint may be from the stored one. Stored origins
+         * and destinations are the points the API snapped to the road network, so keep this at
+         * least as large as the typical snapping distance.
+         */
+
+        public Builder setTolerance(double toleranceMeters) {
+            _toleranceMeters = toleranceMeters;
+            return this;
+        }
+
+        public RouteStore build() {
+            if (_directory == null) {
+                throw new RuntimeException("A route store needs a directory.");
+            }
+            if (_maxBytes <= 0 || _toleranceMeters < 0) {
+                throw new RuntimeException("Route store size must be positive and tolerance not negative.");
+            }
+            return new RouteStore(this);
+        }
+    }
+}
@@ -0,0 +1,193 @@
+package com.mapbox.directions.storage;
+
+import com.mapbox.directions.metrics.CallMetrics;
+import com.mapbox.directions.metrics.MetricsListener;
+import com.mapbox.directions.service.models.DirectionsResponse;
+import com.mapbox.directions.service.models.Waypoint;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.Executor;
+
+import retrofit.Call;
+import retrofit.Callback;
+import retrofit.Response;
+import retrofit.Retrofit;
+
+/**
+ * A {@link Call} answered from a {@link RouteStore} when a stored response is close enough.
+ * Otherwise the wrapped call goes to the network and successful responses are stored.
+ */
+public class RouteStoreCall implements Call<DirectionsResponse> {
+
+    private final Call<DirectionsResponse> delegate;
+    private final RouteStore store;
+    private final String key;
+    private final List<Waypoint> waypoints;
+    private final Retrofit retrofit;
+    private final Executor backgroundExecutor;
+    private final MetricsListener metricsListener;
+    private final String profile;
+    private final String geometry;
+
+    private volatile boolean canceled;
+    private Callback<DirectionsResponse> callback;
+    private boolean delivered;
+
+    /**
+     * @param delegate the network call.
+     * @param store the {@link RouteStore} to read and fill.
+     * @param key the request without its waypoints, see {@link RouteStore#find(String, List)}.
+     * @param waypoints the requested waypoints, origin first and destination last.
+     * @param retrofit the {@link Retrofit} instance handed to callbacks; its callback executor is
+     *                 used to deliver stored responses.
+     * @param backgroundExecutor where lookups and writes run for asynchronous calls.
+     * @param metricsListener where hits are reported as cache hits, may be null.
+     * @param profile the requested profile, used to tag hits.
+     * @param geometry the requested geometry type, used to tag hits.
+     */
+    public RouteStoreCall(Call<DirectionsResponse> delegate, RouteStore store, String key,
+                          List<Waypoint> waypoints, Retrofit retrofit, Executor backgroundExecutor,
+                          MetricsListener metricsListener, String profile, String geometry) {
+        this.delegate = delegate;
+        this.store = store;
+        this.key = key;
+        this.waypoints = waypoints;
+        this.retrofit = retrofit;
+        this.backgroundExecutor = backgroundExecutor;
+        this.metricsListener = metricsListener;
+        this.profile = profile;
+        this.geometry = geometry;
+    }
+
+    @Override
+    public Response<DirectionsResponse> execute() throws IOException {
+        DirectionsResponse stored = lookUp();
+        if (stored != null) {
+            return Response.success(stored);
+        }
+
+        Response<DirectionsResponse> response = delegate.execute();
+        store(response);
+        return response;
+    }
+
+    @Override
+    public void enqueue(final Callback<DirectionsResponse> callback) {
+        synchronized (this) {
+            if (this.callback != null) {
+                throw new IllegalStateException("Already executed.");
+            }
+            this.callback = callback;
+        }
+
+        // Lookups may fault pages in from disk, keep them off the caller's thread
+        backgroundExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                lookUpAndEnqueue(callback);
+            }
+        });
+    }
+
+    private void lookUpAndEnqueue(final Callback<DirectionsResponse> callback) {
+        final DirectionsResponse stored = lookUp();
+        if (stored == null) {
+            // Canceled during the lookup, cancel() already reported it
+            if (!canceled) {
+                delegate.enqueue(new Callback<DirectionsResponse>() {
+                    @Override
+                    public void onResponse(final Response<DirectionsResponse> response, Retrofit retrofit) {
+                        if (claimDelivery()) {
+                            callback.onResponse(response, retrofit);
+                        }
+                        backgroundExecutor.execute(new Runnable() {
+                            @Override
+                            public void run() {
+                                store(response);
+                            }
+                        });
+                    }
+
+                    @Override
+                    public void onFailure(Throwable t) {
+                        if (claimDelivery()) {
+                            callback.onFailure(t);
+                        }
+                    }
+                });
+            }
+            return;
+        }
+
+        deliver(new Runnable() {
+            @Override
+            public void run() {
+                if (claimDelivery()) {
+                    callback.onResponse(Response.success(stored), retrofit);
+                }
+            }
+        });
+    }
+
+    // Only one of the response and the cancellation is reported
+    private synchronized boolean claimDelivery() {
+        if (delivered) {
+            return false;
+        }
+        delivered = true;
+        return true;
+    }
+
+    private DirectionsResponse lookUp() {
+        long start = System.nanoTime();
+        DirectionsResponse stored = store.find(key, waypoints);
+        if (stored != null && metricsListener != null) {
+            metricsListener.onCall(CallMetrics.cacheHit(profile, geometry, System.nanoTime() - start));
+        }
+        return stored;
+    }
+
+    private void deliver(Runnable runnable) {
+        Executor callbackExecutor = retrofit.callbackExecutor();
+        if (callbackExecutor != null) {
+            callbackExecutor.execute(runnable);
+        } else {
+            runnable.run();
+        }
+    }
+
+    private void store(Response<DirectionsResponse> response) {
+        if (response.isSuccess() && response.body() != null) {
+            store.put(key, response.body());
+        }
+    }
+
+    @Override
+    public void cancel() {
+        canceled = true;
+        delegate.cancel();
+
+        // The lookup may still be pending or a stored response queued for delivery, the caller
+        // hears of the cancellation whatever stage the call was at
+        boolean deliver;
+        synchronized (this) {
+            deliver = callback != null && claimDelivery();
+        }
+        if (deliver) {
+            deliver(new Runnable() {
+                @Override
+                public void run() {
+                    callback.onFailure(new IOException("Canceled"));
+                }
+            });
+        }
+    }
+
+    @Override
+    @SuppressWarnings("CloneDoesntCallSuperClone")
+    public Call<DirectionsResponse> clone() {
+        return new RouteStoreCall(delegate.clone(), store, key, waypoints, retrofit, backgroundExecutor,
+                metricsListener, profile, geometry);
+    }
+}
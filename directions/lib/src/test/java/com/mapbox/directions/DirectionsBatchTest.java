@@ -0,0 +1,184 @@
+package com.mapbox.directions;
+
+import com.mapbox.directions.service.DirectionsTransport;
+import com.mapbox.directions.service.models.DirectionsResponse;
+import com.squareup.okhttp.mockwebserver.Dispatcher;
+import com.squareup.okhttp.mockwebserver.MockResponse;
+import com.squareup.okhttp.mockwebserver.MockWebServer;
+import com.squareup.okhttp.mockwebserver.RecordedRequest;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import retrofit.Response;
+
+import static org.junit.Assert.*;
+
+public class DirectionsBatchTest {
+
+    private final AtomicInteger active = new AtomicInteger();
+    private final AtomicInteger maxActive = new AtomicInteger();
+    private final List<Long> arrivalsNs = Collections.synchronizedList(new ArrayList<Long>());
+    private final CountDownLatch release = new CountDownLatch(1);
+    private volatile boolean hold;
+
+    private MockWebServer server;
+    private DirectionsTransport transport;
+
+    @Before
+    public void setUp() throws Exception {
+        server = new MockWebServer();
+        server.setDispatcher(new Dispatcher() {
+            @Override
+            public MockResponse dispatch(RecordedRequest request) throws InterruptedException {
+                arrivalsNs.add(System.nanoTime());
+                int now = active.incrementAndGet();
+                while (true) {
+                    int max = maxActive.get();
+                    if (now <= max || maxActive.compareAndSet(max, now)) {
+                        break;
+                    }
+                }
+                try {
+                    if (hold) {
+                        release.await();
+                    } else {
+                        Thread.sleep(50);
+                    }
+                } finally {
+                    active.decrementAndGet();
+                }
+                return new MockResponse().setBody(TestRoutes.json("Main Street"));
+            }
+        });
+        server.start();
+        transport = TestTransports.forServer(server).setMaxRequestsPerHost(64).build();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        release.countDown();
+        server.shutdown();
+    }
+
+    @Test
+    public void start_keepsConcurrencyWithinTheLimit() throws Exception {
+        DirectionsBatch.Builder builder = new DirectionsBatch.Builder().setMaxConcurrency(3);
+        for (int i = 0; i < 12; i++) {
+            builder.addRequest(TestTransports.request(transport));
+        }
+        DirectionsBatch batch = builder.build();
+
+        RecordingListener listener = new RecordingListener();
+        batch.start(listener);
+        DirectionsBatch.Summary summary = listener.await();
+
+        assertEquals(12, summary.getSucceededCount());
+        assertEquals(0, summary.getSkippedCount());
+        assertEquals(12, listener.results.get());
+        assertEquals(3, maxActive.get());
+        assertEquals(12, server.getRequestCount());
+    }
+
+    @Test
+    public void start_spacesRequestsAtTheRateLimit() throws Exception {
+        DirectionsBatch.Builder builder = new DirectionsBatch.Builder()
+                .setMaxConcurrency(8)
+                .setMaxRequestsPerSecond(20);
+        for (int i = 0; i < 6; i++) {
+            builder.addRequest(TestTransports.request(transport));
+        }
+
+        RecordingListener listener = new RecordingListener();
+        builder.build().start(listener);
+        assertEquals(6, listener.await().getSucceededCount());
+
+        // One token every 50 ms, never bursting
+        assertEquals(6, arrivalsNs.size());
+        long spanNs = arrivalsNs.get(5) - arrivalsNs.get(0);
+        assertTrue(spanNs >= TimeUnit.MILLISECONDS.toNanos(5 * 45));
+        assertTrue(maxActive.get() <= 2);
+    }
+
+    @Test
+    public void cancel_reportsInFlightRequestsAndCompletes() throws Exception {
+        hold = true;
+        DirectionsBatch.Builder builder = new DirectionsBatch.Builder().setMaxConcurrency(2);
+        for (int i = 0; i < 10; i++) {
+            builder.addRequest(TestTransports.request(transport));
+        }
+        DirectionsBatch batch = builder.build();
+
+        RecordingListener listener = new RecordingListener();
+        batch.start(listener);
+        while (active.get() < 2) {
+            Thread.sleep(5);
+        }
+        batch.cancel();
+
+        DirectionsBatch.Summary summary = listener.await();
+        assertEquals(0, summary.getSucceededCount());
+        assertEquals(2, summary.getFailedCount());
+        assertEquals(8, summary.getSkippedCount());
+        assertEquals(2, listener.failures.get());
+        assertSame(summary, batch.await());
+    }
+
+    @Test
+    public void start_countsRequestsThatCannotBeEnqueuedAsFailed() throws Exception {
+        // Enqueuing the same request twice throws
+        MapboxDirections request = TestTransports.request(transport).build();
+        DirectionsBatch batch = new DirectionsBatch.Builder()
+                .setMaxConcurrency(2)
+                .addRequest(request)
+                .addRequest(request)
+                .addRequest(TestTransports.request(transport))
+                .build();
+
+        RecordingListener listener = new RecordingListener();
+        batch.start(listener);
+        DirectionsBatch.Summary summary = listener.await();
+
+        assertEquals(2, summary.getSucceededCount());
+        assertEquals(1, summary.getFailedCount());
+        assertEquals(1, listener.failures.get());
+        assertEquals(2, server.getRequestCount());
+    }
+
+    private static class RecordingListener implements DirectionsBatch.Listener {
+
+        final AtomicInteger results = new AtomicInteger();
+        final AtomicInteger failures = new AtomicInteger();
+        final CountDownLatch complete = new CountDownLatch(1);
+        volatile DirectionsBatch.Summary summary;
+
+        @Override
+        public void onResponse(int index, Response<DirectionsResponse> response, long elapsedMs) {
+            results.incrementAndGet();
+        }
+
+        @Override
+        public void onFailure(int index, Throwable t, long elapsedMs) {
+            failures.incrementAndGet();
+        }
+
+        @Override
+        public void onComplete(DirectionsBatch.Summary summary) {
+            this.summary = summary;
+            complete.countDown();
+        }
+
+        DirectionsBatch.Summary await() throws InterruptedException {
+            assertTrue("The batch never completed.", complete.await(10, TimeUnit.SECONDS));
+            return summary;
+        }
+    }
+}
@@ -0,0 +1,96 @@
+package com.mapbox.directions;
+
+import com.mapbox.directions.service.DirectionsTransport;
+import com.squareup.okhttp.mockwebserver.MockResponse;
+import com.squareup.okhttp.mockwebserver.MockWebServer;
+import com.squareup.okhttp.mockwebserver.SocketPolicy;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import static org.junit.Assert.*;
+
+public class DirectionsFutureTest {
+
+    private MockWebServer server;
+    private DirectionsTransport transport;
+
+    @Before
+    public void setUp() throws Exception {
+        server = new MockWebServer();
+        server.start();
+        transport = TestTransports.forServer(server).build();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        server.shutdown();
+    }
+
+    @Test
+    public void get_returnsTheResponse() throws Exception {
+        server.enqueue(new MockResponse().setBody(TestRoutes.json("Main Street")));
+        DirectionsFuture future = TestTransports.request(transport).build().calculateAsync();
+
+        assertEquals("Main Street", future.get(10, TimeUnit.SECONDS).body().getRoutes().get(0).getSummary());
+        assertTrue(future.isDone());
+        assertFalse(future.isCancelled());
+    }
+
+    @Test
+    public void get_wrapsFailures() throws Exception {
+        server.enqueue(new MockResponse().setSocketPolicy(SocketPolicy.DISCONNECT_AT_START));
+        DirectionsFuture future = TestTransports.request(transport).build().calculateAsync();
+
+        try {
+            future.get(10, TimeUnit.SECONDS);
+            fail();
+        } catch (ExecutionException e) {
+            assertNotNull(e.getCause());
+        }
+    }
+
+    @Test
+    public void cancel_throwsCancellationAndCancelsTheCall() throws Exception {
+        server.enqueue(new MockResponse().setSocketPolicy(SocketPolicy.NO_RESPONSE));
+        DirectionsFuture future = TestTransports.request(transport).build().calculateAsync();
+        try {
+            future.get(100, TimeUnit.MILLISECONDS);
+            fail();
+        } catch (TimeoutException expected) {
+        }
+
+        final CountDownLatch listened = new CountDownLatch(1);
+        future.addListener(new Runnable() {
+            @Override
+            public void run() {
+                listened.countDown();
+            }
+        }, TestTransports.DIRECT);
+
+        assertTrue(future.cancel(true));
+        assertTrue(future.isCancelled());
+        assertTrue(future.isDone());
+        assertTrue(listened.await(10, TimeUnit.SECONDS));
+        try {
+            future.get();
+            fail();
+        } catch (CancellationException expected) {
+        }
+        assertFalse(future.cancel(true));
+
+        // The network call was canceled too, not left waiting on the server until the read times out
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (transport.getClient().getDispatcher().getRunningCallCount() > 0 && System.nanoTime() < deadline) {
+            Thread.sleep(5);
+        }
+        assertEquals(0, transport.getClient().getDispatcher().getRunningCallCount());
+    }
+}
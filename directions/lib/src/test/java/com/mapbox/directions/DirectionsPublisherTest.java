@@ -0,0 +1,257 @@
+package com.mapbox.directions;
+
+import com.mapbox.directions.service.DirectionsTransport;
+import com.mapbox.directions.service.models.DirectionsResponse;
+import com.squareup.okhttp.mockwebserver.Dispatcher;
+import com.squareup.okhttp.mockwebserver.MockResponse;
+import com.squareup.okhttp.mockwebserver.MockWebServer;
+import com.squareup.okhttp.mockwebserver.RecordedRequest;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import retrofit.Response;
+
+import static org.junit.Assert.*;
+
+public class DirectionsPublisherTest {
+
+    private final AtomicInteger active = new AtomicInteger();
+    private final AtomicInteger maxActive = new AtomicInteger();
+    private final AtomicInteger received = new AtomicInteger();
+    private final CountDownLatch release = new CountDownLatch(1);
+    private volatile boolean hold;
+    // Requests answered right away even when holding
+    private volatile int answered;
+
+    private MockWebServer server;
+    private DirectionsTransport transport;
+
+    @Before
+    public void setUp() throws Exception {
+        server = new MockWebServer();
+        server.setDispatcher(new Dispatcher() {
+            @Override
+            public MockResponse dispatch(RecordedRequest request) throws InterruptedException {
+                int index = received.getAndIncrement();
+                int now = active.incrementAndGet();
+                while (true) {
+                    int max = maxActive.get();
+                    if (now <= max || maxActive.compareAndSet(max, now)) {
+                        break;
+                    }
+                }
+                try {
+                    if (hold && index >= answered) {
+                        release.await();
+                    }
+                } finally {
+                    active.decrementAndGet();
+                }
+                return new MockResponse().setBody(TestRoutes.json("Main Street"));
+            }
+        });
+        server.start();
+        transport = TestTransports.forServer(server).setMaxRequestsPerHost(64).build();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        release.countDown();
+        server.shutdown();
+    }
+
+    @Test
+    public void request_startsOnlyWhatWasAskedFor() throws Exception {
+        DirectionsPublisher publisher = publisher(6, 4);
+        RecordingSubscriber subscriber = new RecordingSubscriber();
+        publisher.subscribe(subscriber);
+
+        subscriber.subscription.request(2);
+        subscriber.awaitResponses(2);
+        Thread.sleep(100);
+        assertEquals(2, server.getRequestCount());
+        assertEquals(2, subscriber.responses.get());
+        assertFalse(subscriber.isTerminated());
+
+        subscriber.subscription.request(Long.MAX_VALUE);
+        subscriber.awaitTermination();
+        assertEquals(6, subscriber.responses.get());
+        assertTrue(subscriber.completed);
+        assertEquals(6, server.getRequestCount());
+    }
+
+    @Test
+    public void request_keepsConcurrencyWithinTheLimit() throws Exception {
+        hold = true;
+        DirectionsPublisher publisher = publisher(8, 2);
+        RecordingSubscriber subscriber = new RecordingSubscriber();
+        publisher.subscribe(subscriber);
+        subscriber.subscription.request(Long.MAX_VALUE);
+
+        awaitActive(2);
+        Thread.sleep(100);
+        assertEquals(2, server.getRequestCount());
+
+        release.countDown();
+        subscriber.awaitTermination();
+        assertTrue(subscriber.completed);
+        assertEquals(8, subscriber.responses.get());
+        assertEquals(2, maxActive.get());
+    }
+
+    @Test
+    public void cancel_cancelsRequestsInFlight() throws Exception {
+        hold = true;
+        DirectionsPublisher publisher = publisher(6, 3);
+        RecordingSubscriber subscriber = new RecordingSubscriber();
+        publisher.subscribe(subscriber);
+        subscriber.subscription.request(Long.MAX_VALUE);
+        awaitActive(3);
+
+        subscriber.subscription.cancel();
+
+        // The calls end while the server is still holding them
+        awaitNoRunningCalls();
+        release.countDown();
+        Thread.sleep(100);
+        assertEquals(0, subscriber.responses.get());
+        assertFalse(subscriber.isTerminated());
+        assertEquals(3, server.getRequestCount());
+    }
+
+    @Test
+    public void subscribe_failsTheStreamWhenARequestCannotBeEnqueued() throws Exception {
+        MapboxDirections executed = TestTransports.request(transport).build();
+        assertTrue(executed.execute().isSuccess());
+        DirectionsPublisher publisher = new DirectionsPublisher.Builder()
+                .addRequest(executed)
+                .addRequest(TestTransports.request(transport))
+                .build();
+
+        RecordingSubscriber subscriber = new RecordingSubscriber();
+        publisher.subscribe(subscriber);
+        subscriber.subscription.request(Long.MAX_VALUE);
+
+        subscriber.awaitTermination();
+        assertTrue(subscriber.error instanceof IllegalStateException);
+        assertEquals(0, subscriber.responses.get());
+
+        // Later requests are ignored without throwing
+        subscriber.subscription.request(1);
+        assertEquals(1, server.getRequestCount());
+    }
+
+    @Test
+    public void onNext_throwingCancelsTheSubscription() throws Exception {
+        hold = true;
+        answered = 1;
+        DirectionsPublisher publisher = publisher(4, 2);
+        RecordingSubscriber subscriber = new RecordingSubscriber() {
+            @Override
+            public void onNext(Response<DirectionsResponse> response) {
+                super.onNext(response);
+                throw new RuntimeException("Subscriber bug");
+            }
+        };
+        publisher.subscribe(subscriber);
+        subscriber.subscription.request(Long.MAX_VALUE);
+
+        subscriber.awaitResponses(1);
+        awaitNoRunningCalls();
+        subscriber.subscription.request(1);
+        release.countDown();
+        Thread.sleep(100);
+        assertEquals(1, subscriber.responses.get());
+        assertFalse(subscriber.isTerminated());
+        assertEquals(2, server.getRequestCount());
+    }
+
+    @Test
+    public void subscribe_onlyOnce() throws Exception {
+        DirectionsPublisher publisher = publisher(1, 1);
+        publisher.subscribe(new RecordingSubscriber());
+
+        RecordingSubscriber second = new RecordingSubscriber();
+        publisher.subscribe(second);
+        assertTrue(second.error instanceof IllegalStateException);
+    }
+
+    private DirectionsPublisher publisher(int requests, int maxConcurrency) {
+        DirectionsPublisher.Builder builder = new DirectionsPublisher.Builder().setMaxConcurrency(maxConcurrency);
+        for (int i = 0; i < requests; i++) {
+            builder.addRequest(TestTransports.request(transport));
+        }
+        return builder.build();
+    }
+
+    private void awaitActive(int count) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+        while (active.get() < count && System.nanoTime() < deadline) {
+            Thread.sleep(5);
+        }
+        assertEquals(count, active.get());
+    }
+
+    // Well within OkHttp's 10 second read timeout, so only a canceled call ends in time
+    private void awaitNoRunningCalls() throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (transport.getClient().getDispatcher().getRunningCallCount() > 0 && System.nanoTime() < deadline) {
+            Thread.sleep(5);
+        }
+        assertEquals(0, transport.getClient().getDispatcher().getRunningCallCount());
+    }
+
+    private static class RecordingSubscriber implements DirectionsPublisher.Subscriber {
+
+        final AtomicInteger responses = new AtomicInteger();
+        final CountDownLatch terminated = new CountDownLatch(1);
+        volatile DirectionsPublisher.Subscription subscription;
+        volatile boolean completed;
+        volatile Throwable error;
+
+        @Override
+        public void onSubscribe(DirectionsPublisher.Subscription subscription) {
+            this.subscription = subscription;
+        }
+
+        @Override
+        public void onNext(Response<DirectionsResponse> response) {
+            assertTrue(response.isSuccess());
+            responses.incrementAndGet();
+        }
+
+        @Override
+        public void onError(Throwable t) {
+            error = t;
+            terminated.countDown();
+        }
+
+        @Override
+        public void onComplete() {
+            completed = true;
+            terminated.countDown();
+        }
+
+        boolean isTerminated() {
+            return terminated.getCount() == 0;
+        }
+
+        void awaitResponses(int count) throws InterruptedException {
+            long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+            while (responses.get() < count && System.nanoTime() < deadline) {
+                Thread.sleep(5);
+            }
+            assertEquals(count, responses.get());
+        }
+
+        void awaitTermination() throws InterruptedException {
+            assertTrue("The stream never ended.", terminated.await(10, TimeUnit.SECONDS));
+        }
+    }
+}
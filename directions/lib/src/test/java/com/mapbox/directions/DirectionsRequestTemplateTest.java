@@ -0,0 +1,85 @@
+package com.mapbox.directions;
+
+import com.mapbox.directions.service.DirectionsTransport;
+import com.mapbox.directions.service.models.Waypoint;
+import com.squareup.okhttp.mockwebserver.MockResponse;
+import com.squareup.okhttp.mockwebserver.MockWebServer;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+public class DirectionsRequestTemplateTest {
+
+    private MockWebServer server;
+    private DirectionsTransport transport;
+
+    @Before
+    public void setUp() throws Exception {
+        server = new MockWebServer();
+        server.start();
+        transport = TestTransports.forServer(server).build();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        server.shutdown();
+    }
+
+    @Test
+    public void newRequest_sendsWhatTheBuilderSends() throws Exception {
+        Waypoint origin = new Waypoint(-77.0365, 38.8977);
+        Waypoint destination = new Waypoint(-77.0320, 38.8895);
+        assertSameRequest(TestTransports.request(transport), Arrays.asList(origin, destination));
+    }
+
+    @Test
+    public void newRequest_sendsEveryOptionLikeTheBuilder() throws Exception {
+        MapboxDirections.Builder builder = TestTransports.request(transport)
+                .setProfile(DirectionsCriteria.PROFILE_CYCLING)
+                .setAlternatives(true)
+                .setInstructions(DirectionsCriteria.INSTRUCTIONS_HTML)
+                .setGeometry(DirectionsCriteria.GEOMETRY_POLYLINE)
+                .setSteps(false)
+                .setCoordinatePrecision(4)
+                .setDeadline(30, TimeUnit.SECONDS);
+        assertSameRequest(builder, Arrays.asList(new Waypoint(-77.03655, 38.89771),
+                new Waypoint(-77.034, 38.894), new Waypoint(-77.0320, 38.8895)));
+    }
+
+    @Test
+    public void buildTemplate_ignoresLaterChangesToTheBuilder() throws Exception {
+        MapboxDirections.Builder builder = TestTransports.request(transport);
+        DirectionsRequestTemplate template = builder.buildTemplate();
+        String key = template.newRequest(new Waypoint(-77.0365, 38.8977), new Waypoint(-77.0320, 38.8895))
+                .getRequestKey();
+
+        builder.setProfile(DirectionsCriteria.PROFILE_WALKING).setAlternatives(true);
+        assertEquals(key, template.newRequest(new Waypoint(-77.0365, 38.8977), new Waypoint(-77.0320, 38.8895))
+                .getRequestKey());
+    }
+
+    // Sends the same waypoints once through each, then compares what reached the server
+    private void assertSameRequest(MapboxDirections.Builder builder, List<Waypoint> waypoints) throws Exception {
+        server.enqueue(new MockResponse().setBody(TestRoutes.json("Main Street")));
+        server.enqueue(new MockResponse().setBody(TestRoutes.json("Main Street")));
+        DirectionsRequestTemplate template = builder.buildTemplate();
+
+        MapboxDirections built = builder.setWaypoints(waypoints).setOrigin(null).setDestination(null).build();
+        MapboxDirections fromTemplate = template.newRequest(waypoints);
+        assertEquals(built.getRequestKey(), fromTemplate.getRequestKey());
+
+        assertEquals("Main Street", built.execute().body().getRoutes().get(0).getSummary());
+        assertEquals("Main Street", fromTemplate.execute().body().getRoutes().get(0).getSummary());
+        String builtPath = server.takeRequest().getPath();
+        String templatePath = server.takeRequest().getPath();
+        assertEquals(builtPath, templatePath);
+        assertTrue(templatePath, templatePath.contains("access_token=" + TestTransports.ACCESS_TOKEN));
+    }
+}
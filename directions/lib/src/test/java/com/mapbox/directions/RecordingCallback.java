@@ -0,0 +1,64 @@
+package com.mapbox.directions;
+
+import com.mapbox.directions.service.models.DirectionsResponse;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import retrofit.Callback;
+import retrofit.Response;
+import retrofit.Retrofit;
+
+/**
+ * Keeps what a call reported, and how many times it did.
+ */
+public class RecordingCallback implements Callback<DirectionsResponse> {
+
+    private final CountDownLatch latch = new CountDownLatch(1);
+    private final AtomicInteger deliveries = new AtomicInteger();
+    private volatile Response<DirectionsResponse> response;
+    private volatile Throwable failure;
+
+    @Override
+    public void onResponse(Response<DirectionsResponse> response, Retrofit retrofit) {
+        this.response = response;
+        deliveries.incrementAndGet();
+        latch.countDown();
+    }
+
+    @Override
+    public void onFailure(Throwable t) {
+        this.failure = t;
+        deliveries.incrementAndGet();
+        latch.countDown();
+    }
+
+    /**
+     * Waits for the first delivery.
+     * @return this callback.
+     * @throws AssertionError if nothing was delivered within 10 seconds.
+     */
+    public RecordingCallback await() throws InterruptedException {
+        if (!latch.await(10, TimeUnit.SECONDS)) {
+            throw new AssertionError("Nothing was delivered.");
+        }
+        return this;
+    }
+
+    public boolean isDone() {
+        return latch.getCount() == 0;
+    }
+
+    public Response<DirectionsResponse> getResponse() {
+        return response;
+    }
+
+    public Throwable getFailure() {
+        return failure;
+    }
+
+    public int getDeliveryCount() {
+        return deliveries.get();
+    }
+}
@@ -0,0 +1,103 @@
+package com.mapbox.directions;
+
+import com.mapbox.directions.geometry.GeoMath;
+import com.mapbox.directions.service.DirectionsResponseParser;
+import com.mapbox.directions.service.models.DirectionsResponse;
+
+import java.io.IOException;
+import java.io.StringReader;
+
+/**
+ * Directions API responses for tests, built around a given route line. Each vertex but the last
+ * starts a step whose maneuver is located on it.
+ */
+public class TestRoutes {
+
+    private TestRoutes() {
+    }
+
+    /**
+     * A straight line heading east.
+     * @param longitude where it starts.
+     * @param latitude where it starts.
+     * @param points number of vertices.
+     * @param spacing degrees of longitude between vertices.
+     * @return packed coordinates.
+     */
+    public static double[] line(double longitude, double latitude, int points, double spacing) {
+        double[] coordinates = new double[2 * points];
+        for (int i = 0; i < points; i++) {
+            coordinates[2 * i] = longitude + i * spacing;
+            coordinates[2 * i + 1] = latitude;
+        }
+        return coordinates;
+    }
+
+    public static DirectionsResponse response(String summary) throws IOException {
+        return response(summary, line(-77.0365, 38.8977, 5, 0.001));
+    }
+
+    public static DirectionsResponse response(String summary, double[] coordinates) throws IOException {
+        return new DirectionsResponseParser.Builder().build().parse(new StringReader(json(summary, coordinates)));
+    }
+
+    public static String json(String summary) {
+        return json(summary, line(-77.0365, 38.8977, 5, 0.001));
+    }
+
+    /**
+     * The JSON body the API would answer with for a single route.
+     * @param summary the route summary, also used as the name of every way.
+     * @param coordinates packed coordinates of the route.
+     * @return JSON string.
+     */
+    public static String json(String summary, double[] coordinates) {
+        int points = coordinates.length / 2;
+        double distance = 0;
+
+        StringBuilder steps = new StringBuilder();
+        for (int i = 0; i < points - 1; i++) {
+            double length = GeoMath.distance(coordinates[2 * i], coordinates[2 * i + 1],
+                    coordinates[2 * i + 2], coordinates[2 * i + 3]);
+            distance += length;
+            if (i > 0) {
+                steps.append(',');
+            }
+            steps.append("{\"distance\":").append(Math.round(length))
+                    .append(",\"duration\":").append(Math.round(length / 10))
+                    .append(",\"wayName\":\"").append(summary).append('"')
+                    .append(",\"direction\":\"E\",\"heading\":90")
+                    .append(",\"maneuver\":{\"type\":\"").append(i == 0 ? "depart" : "continue")
+                    .append("\",\"location\":").append(point(coordinates, i))
+                    .append(",\"instruction\":\"Step ").append(i).append('"')
+                    .append(",\"mode\":\"driving\"}}");
+        }
+
+        StringBuilder line = new StringBuilder();
+        for (int i = 0; i < points; i++) {
+            if (i > 0) {
+                line.append(',');
+            }
+            line.append('[').append(coordinates[2 * i]).append(',').append(coordinates[2 * i + 1]).append(']');
+        }
+
+        return "{\"origin\":" + feature(coordinates, 0)
+                + ",\"destination\":" + feature(coordinates, points - 1)
+                + ",\"waypoints\":[]"
+                + ",\"routes\":[{\"distance\":" + Math.round(distance)
+                + ",\"duration\":" + Math.round(distance / 10)
+                + ",\"summary\":\"" + summary + '"'
+                + ",\"geometry\":{\"type\":\"LineString\",\"coordinates\":[" + line + "]}"
+                + ",\"steps\":[" + steps + "]}]}";
+    }
+
+    private static String point(double[] coordinates, int index) {
+        return "{\"type\":\"Point\",\"coordinates\":[" + coordinates[2 * index] + ","
+                + coordinates[2 * index + 1] + "]}";
+    }
+
+    private static String feature(double[] coordinates, int index) {
+        return "{\"type\":\"Feature\",\"geometry\":" + point(coordinates, index)
+                + ",\"properties\":{\"name\":\"\"}}";
+    }
+}
@@ -0,0 +1,46 @@
+package com.mapbox.directions;
+
+import com.mapbox.directions.service.DirectionsTransport;
+import com.mapbox.directions.service.models.Waypoint;
+import com.squareup.okhttp.mockwebserver.MockWebServer;
+
+import java.util.concurrent.Executor;
+
+/**
+ * Transports talking to a local {@link MockWebServer}.
+ */
+public class TestTransports {
+
+    public final static String ACCESS_TOKEN = "pk.test";
+
+    // Callbacks run on the thread that completed the call, there's no main looper in unit tests
+    public final static Executor DIRECT = new Executor() {
+        @Override
+        public void execute(Runnable command) {
+            command.run();
+        }
+    };
+
+    private TestTransports() {
+    }
+
+    public static DirectionsTransport.Builder forServer(MockWebServer server) {
+        return new DirectionsTransport.Builder()
+                .setBaseUrl(server.url("/").toString())
+                .setCallbackExecutor(DIRECT);
+    }
+
+    /**
+     * A driving request between two fixed points.
+     * @param transport where to send it.
+     * @return {@link MapboxDirections.Builder} object, ready to build.
+     */
+    public static MapboxDirections.Builder request(DirectionsTransport transport) {
+        return new MapboxDirections.Builder()
+                .setAccessToken(ACCESS_TOKEN)
+                .setProfile(DirectionsCriteria.PROFILE_DRIVING)
+                .setOrigin(new Waypoint(-77.0365, 38.8977))
+                .setDestination(new Waypoint(-77.0320, 38.8895))
+                .setTransport(transport);
+    }
+}
@@ -0,0 +1,91 @@
+package com.mapbox.directions.benchmark;
+
+import com.mapbox.directions.DirectionsBatch;
+import com.mapbox.directions.TestRoutes;
+import com.mapbox.directions.TestTransports;
+import com.mapbox.directions.service.DirectionsTransport;
+import com.mapbox.directions.service.models.DirectionsResponse;
+import com.mapbox.directions.service.models.Waypoint;
+import com.squareup.okhttp.mockwebserver.Dispatcher;
+import com.squareup.okhttp.mockwebserver.MockResponse;
+import com.squareup.okhttp.mockwebserver.MockWebServer;
+import com.squareup.okhttp.mockwebserver.RecordedRequest;
+
+import org.junit.Test;
+
+import retrofit.Response;
+
+import static org.junit.Assert.*;
+
+/**
+ * {@link DirectionsBatch} throughput and latency as its concurrency grows, against a local stub
+ * answering after a fixed delay. Each level runs twenty requests per slot, so it takes about as
+ * long as the others.
+ */
+public class BatchBenchmark {
+
+    private final static long DELAY_MS = 50;
+    private final static int REQUESTS_PER_SLOT = 20;
+
+    @Test
+    public void concurrencyLevels() throws Exception {
+        Benchmarks.assumeEnabled();
+        final String body = TestRoutes.json("Main Street");
+        MockWebServer server = Benchmarks.newServer();
+        server.setDispatcher(new Dispatcher() {
+            @Override
+            public MockResponse dispatch(RecordedRequest request) throws InterruptedException {
+                Thread.sleep(DELAY_MS);
+                return new MockResponse().setBody(body);
+            }
+        });
+        server.start();
+
+        try {
+            // Only the batch limits concurrency here
+            DirectionsTransport transport = TestTransports.forServer(server)
+                    .setMaxRequests(256)
+                    .setMaxRequestsPerHost(256)
+                    .setMaxIdleConnections(256)
+                    .build();
+            for (int concurrency : new int[]{1, 4, 16, 64}) {
+                DirectionsBatch.Summary summary = run(transport, concurrency, concurrency * REQUESTS_PER_SLOT);
+                assertEquals(summary.getRequestCount(), summary.getSucceededCount());
+                Benchmarks.report("DirectionsBatch", "concurrency %d, %d requests, %d ms stub delay: %.1f req/s, "
+                                + "p50 %.1f ms, p95 %.1f ms", concurrency, summary.getRequestCount(), DELAY_MS,
+                        summary.getThroughput(), summary.getLatencyPercentileMs(50),
+                        summary.getLatencyPercentileMs(95));
+            }
+        } finally {
+            server.shutdown();
+        }
+    }
+
+    private static DirectionsBatch.Summary run(DirectionsTransport transport, int concurrency, int requests)
+            throws InterruptedException {
+        double[] coordinates = Benchmarks.randomRoute(requests + 1, concurrency);
+        DirectionsBatch.Builder builder = new DirectionsBatch.Builder()
+                .setTemplate(TestTransports.request(transport))
+                .setMaxConcurrency(concurrency);
+        for (int i = 0; i < requests; i++) {
+            builder.addPair(new Waypoint(coordinates[2 * i], coordinates[2 * i + 1]),
+                    new Waypoint(coordinates[2 * i + 2], coordinates[2 * i + 3]));
+        }
+
+        DirectionsBatch batch = builder.build();
+        batch.start(new DirectionsBatch.Listener() {
+            @Override
+            public void onResponse(int index, Response<DirectionsResponse> response, long elapsedMs) {
+            }
+
+            @Override
+            public void onFailure(int index, Throwable t, long elapsedMs) {
+            }
+
+            @Override
+            public void onComplete(DirectionsBatch.Summary summary) {
+            }
+        });
+        return batch.await();
+    }
+}
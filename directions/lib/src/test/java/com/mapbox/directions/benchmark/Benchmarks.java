@@ -0,0 +1,209 @@
+package com.mapbox.directions.benchmark;
+
+import com.squareup.okhttp.mockwebserver.MockWebServer;
+
+import org.junit.Assume;
+
+import java.io.IOException;
+import java.lang.reflect.Method;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.Random;
+
+import javax.net.ServerSocketFactory;
+
+/**
+ * A minimal harness for the benchmarks in this package. They are JUnit tests skipped unless the
+ * build runs with {@code -Pbenchmarks}, e.g. {@code ./gradlew :lib:testDebug -Pbenchmarks}, and
+ * print their results to standard output. Timings come from repeated rounds after a warm-up, and
+ * the median round is reported. They're meant to compare approaches on the same machine, not as
+ * absolute figures.
+ */
+public class Benchmarks {
+
+    public final static String PROPERTY = "directions.benchmarks";
+
+    private final static int WARMUP_ROUNDS = 5;
+    private final static int ROUNDS = 10;
+
+    // Results are folded in here so the JIT can't drop the work producing them
+    private static volatile int sink;
+
+    /**
+     * Work measured by {@link #nsPerOp(int, Task)}.
+     */
+    public interface Task {
+
+        /**
+         * @return the result of the work, kept alive until measured.
+         */
+        Object run() throws Exception;
+    }
+
+    private Benchmarks() {
+    }
+
+    public static void assumeEnabled() {
+        Assume.assumeTrue("Benchmarks only run with -Pbenchmarks", Boolean.getBoolean(PROPERTY));
+    }
+
+    /**
+     * Median time per operation over several rounds, after warming up.
+     * @param operations operations per round.
+     * @param task runs one operation.
+     * @return double nanoseconds per operation.
+     */
+    public static double nsPerOp(int operations, Task task) throws Exception {
+        for (int round = 0; round < WARMUP_ROUNDS; round++) {
+            runRound(operations, task);
+        }
+
+        long[] rounds = new long[ROUNDS];
+        for (int round = 0; round < ROUNDS; round++) {
+            rounds[round] = runRound(operations, task);
+        }
+        Arrays.sort(rounds);
+        return rounds[ROUNDS / 2] / (double) operations;
+    }
+
+    private static long runRound(int operations, Task task) throws Exception {
+        int hash = 0;
+        long start = System.nanoTime();
+        for (int i = 0; i < operations; i++) {
+            Object result = task.run();
+            hash += result == null ? 0 : System.identityHashCode(result);
+        }
+        long elapsed = System.nanoTime() - start;
+        sink += hash;
+        return elapsed;
+    }
+
+    /**
+     * Bytes allocated per operation by the current thread, after warming up. Relies on HotSpot's
+     * com.sun.management.ThreadMXBean, looked up reflectively as the library targets Android.
+     * @param operations operations to measure.
+     * @param task runs one operation.
+     * @return double bytes per operation, or -1 if the JVM can't tell.
+     */
+    public static double bytesPerOp(int operations, Task task) throws Exception {
+        Object threadBean;
+        Method allocatedBytes;
+        try {
+            threadBean = Class.forName("java.lang.management.ManagementFactory")
+                    .getMethod("getThreadMXBean").invoke(null);
+            allocatedBytes = Class.forName("com.sun.management.ThreadMXBean")
+                    .getMethod("getThreadAllocatedBytes", long.class);
+        } catch (ReflectiveOperationException e) {
+            return -1;
+        }
+        if (!allocatedBytes.getDeclaringClass().isInstance(threadBean)) {
+            return -1;
+        }
+
+        runRound(operations, task);
+        long threadId = Thread.currentThread().getId();
+        long before = (Long) allocatedBytes.invoke(threadBean, threadId);
+        runRound(operations, task);
+        long after = (Long) allocatedBytes.invoke(threadBean, threadId);
+        return (after - before) / (double) operations;
+    }
+
+    /**
+     * Heap in use once the garbage collector has had a few chances to run, to compare what a set
+     * of objects kept reachable retains. Only as precise as the collector is willing to be, so
+     * measure something large.
+     * @return long bytes.
+     */
+    public static long usedHeapBytes() throws InterruptedException {
+        Runtime runtime = Runtime.getRuntime();
+        long used = Long.MAX_VALUE;
+        for (int i = 0; i < 5; i++) {
+            System.gc();
+            Thread.sleep(50);
+            used = Math.min(used, runtime.totalMemory() - runtime.freeMemory());
+        }
+        return used;
+    }
+
+    /**
+     * A random walk standing in for a real route: vertices about 10 m apart along a heading that
+     * drifts a few degrees at a time, around Washington DC.
+     * @param points number of vertices.
+     * @param seed the same seed gives the same route.
+     * @return packed coordinates.
+     */
+    public static double[] randomRoute(int points, long seed) {
+        Random random = new Random(seed);
+        double[] coordinates = new double[2 * points];
+        double longitude = -77.0365;
+        double latitude = 38.8977;
+        double heading = random.nextDouble() * 2 * Math.PI;
+        for (int i = 0; i < points; i++) {
+            coordinates[2 * i] = longitude;
+            coordinates[2 * i + 1] = latitude;
+            heading += random.nextGaussian() * 0.1;
+            latitude += 0.00009 * Math.cos(heading);
+            longitude += 0.00009 * Math.sin(heading) / Math.cos(Math.toRadians(latitude));
+        }
+        return coordinates;
+    }
+
+    /**
+     * A {@link MockWebServer} that writes responses without waiting on Nagle's algorithm. The
+     * headers and body go out in separate writes, and on a reused loopback connection the body
+     * would otherwise wait for a delayed ACK, adding about 40 ms to every request but the first.
+     * @return {@link MockWebServer} object, not started.
+     */
+    public static MockWebServer newServer() {
+        MockWebServer server = new MockWebServer();
+        server.setServerSocketFactory(new ServerSocketFactory() {
+            @Override
+            public ServerSocket createServerSocket() throws IOException {
+                return new NoDelayServerSocket();
+            }
+
+            @Override
+            public ServerSocket createServerSocket(int port) throws IOException {
+                ServerSocket socket = createServerSocket();
+                socket.bind(new InetSocketAddress(port));
+                return socket;
+            }
+
+            @Override
+            public ServerSocket createServerSocket(int port, int backlog) throws IOException {
+                ServerSocket socket = createServerSocket();
+                socket.bind(new InetSocketAddress(port), backlog);
+                return socket;
+            }
+
+            @Override
+            public ServerSocket createServerSocket(int port, int backlog, InetAddress address) throws IOException {
+                ServerSocket socket = createServerSocket();
+                socket.bind(new InetSocketAddress(address, port), backlog);
+                return socket;
+            }
+        });
+        return server;
+    }
+
+    public static void report(String benchmark, String format, Object... args) {
+        System.out.println(benchmark + ": " + String.format(Locale.US, format, args));
+    }
+
+    private static class NoDelayServerSocket extends ServerSocket {
+
+        NoDelayServerSocket() throws IOException {
+        }
+
+        @Override
+        public Socket accept() throws IOException {
+            Socket socket = super.accept();
+            socket.setTcpNoDelay(true);
+            return socket;
+        }
+    }
+}
@@ -0,0 +1,77 @@
+package com.mapbox.directions.benchmark;
+
+import com.mapbox.directions.geometry.CoordinateFormatter;
+import com.mapbox.directions.service.models.Waypoint;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+import static org.junit.Assert.*;
+
+/**
+ * Waypoints written with {@link CoordinateFormatter} into a reused buffer, against the
+ * String.format() and join they replaced, at 6 decimals.
+ */
+public class CoordinateFormatterBenchmark {
+
+    private final static int PRECISION = 6;
+
+    @Test
+    public void formatterAgainstStringFormat() throws Exception {
+        Benchmarks.assumeEnabled();
+        for (int count : new int[]{2, 25, 100}) {
+            final List<Waypoint> waypoints = waypoints(count);
+            final StringBuilder buffer = new StringBuilder(CoordinateFormatter.capacityFor(count, PRECISION));
+            assertEquals(legacyFormat(waypoints), CoordinateFormatter.append(buffer, waypoints, PRECISION).toString());
+
+            Benchmarks.Task formatter = new Benchmarks.Task() {
+                @Override
+                public Object run() throws Exception {
+                    buffer.setLength(0);
+                    return CoordinateFormatter.append(buffer, waypoints, PRECISION);
+                }
+            };
+            Benchmarks.Task stringFormat = new Benchmarks.Task() {
+                @Override
+                public Object run() throws Exception {
+                    return legacyFormat(waypoints);
+                }
+            };
+            double formatterNs = Benchmarks.nsPerOp(10000 / count, formatter);
+            double stringFormatNs = Benchmarks.nsPerOp(10000 / count, stringFormat);
+
+            Benchmarks.report("CoordinateFormatter", "%d waypoints: formatter %.2f us, %.0f B allocated; "
+                            + "String.format %.2f us, %.0f B allocated", count, formatterNs / 1000,
+                    Benchmarks.bytesPerOp(10000 / count, formatter), stringFormatNs / 1000,
+                    Benchmarks.bytesPerOp(10000 / count, stringFormat));
+        }
+    }
+
+    // Builder.getWaypointsFormatted() before CoordinateFormatter, with the locale pinned
+    private static String legacyFormat(List<Waypoint> waypoints) {
+        List<String> formatted = new ArrayList<>();
+        for (Waypoint waypoint : waypoints) {
+            formatted.add(String.format(Locale.US, "%.6f,%.6f", waypoint.getLongitude(), waypoint.getLatitude()));
+        }
+        StringBuilder joined = new StringBuilder();
+        for (int i = 0; i < formatted.size(); i++) {
+            if (i > 0) {
+                joined.append(';');
+            }
+            joined.append(formatted.get(i));
+        }
+        return joined.toString();
+    }
+
+    private static List<Waypoint> waypoints(int count) {
+        double[] coordinates = Benchmarks.randomRoute(count * 100, count);
+        List<Waypoint> waypoints = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            waypoints.add(new Waypoint(coordinates[200 * i], coordinates[200 * i + 1]));
+        }
+        return waypoints;
+    }
+}
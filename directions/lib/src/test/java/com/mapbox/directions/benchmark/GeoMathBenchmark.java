@@ -0,0 +1,116 @@
+package com.mapbox.directions.benchmark;
+
+import com.mapbox.directions.geometry.GeoMath;
+
+import org.junit.Test;
+
+/**
+ * {@link GeoMath} kernels against the per-call haversine the library used before it, over the
+ * consecutive vertex pairs of a long route. Each operation covers every pair, so per-call costs
+ * aren't lost in the harness overhead.
+ */
+public class GeoMathBenchmark {
+
+    private final static int VERTICES = 10000;
+
+    @Test
+    public void kernels() throws Exception {
+        Benchmarks.assumeEnabled();
+        final double[] coordinates = Benchmarks.randomRoute(VERTICES, 1);
+        final double[] vectors = GeoMath.toVectors(coordinates);
+        final int pairs = VERTICES - 1;
+
+        double legacyNs = Benchmarks.nsPerOp(50, new Benchmarks.Task() {
+            @Override
+            public Object run() throws Exception {
+                double total = 0;
+                for (int i = 0; i + 3 < coordinates.length; i += 2) {
+                    total += legacyDistance(coordinates[i], coordinates[i + 1], coordinates[i + 2], coordinates[i + 3]);
+                }
+                return total;
+            }
+        });
+        double distanceNs = Benchmarks.nsPerOp(50, new Benchmarks.Task() {
+            @Override
+            public Object run() throws Exception {
+                double total = 0;
+                for (int i = 0; i + 3 < coordinates.length; i += 2) {
+                    total += GeoMath.distance(coordinates[i], coordinates[i + 1], coordinates[i + 2], coordinates[i + 3]);
+                }
+                return total;
+            }
+        });
+        double fastNs = Benchmarks.nsPerOp(50, new Benchmarks.Task() {
+            @Override
+            public Object run() throws Exception {
+                double total = 0;
+                for (int i = 0; i + 3 < coordinates.length; i += 2) {
+                    total += GeoMath.fastDistance(coordinates[i], coordinates[i + 1],
+                            coordinates[i + 2], coordinates[i + 3]);
+                }
+                return total;
+            }
+        });
+        double vectorNs = Benchmarks.nsPerOp(50, new Benchmarks.Task() {
+            @Override
+            public Object run() throws Exception {
+                double total = 0;
+                for (int offset = 0; offset + 5 < vectors.length; offset += 3) {
+                    total += GeoMath.distance(vectors, offset, vectors, offset + 3);
+                }
+                return total;
+            }
+        });
+        double bearingNs = Benchmarks.nsPerOp(50, new Benchmarks.Task() {
+            @Override
+            public Object run() throws Exception {
+                double total = 0;
+                for (int i = 0; i + 3 < coordinates.length; i += 2) {
+                    total += GeoMath.bearing(coordinates[i], coordinates[i + 1], coordinates[i + 2], coordinates[i + 3]);
+                }
+                return total;
+            }
+        });
+
+        // Every vertex against the segment two ahead of it
+        final double[] point = new double[3];
+        double segmentNs = Benchmarks.nsPerOp(50, new Benchmarks.Task() {
+            @Override
+            public Object run() throws Exception {
+                double total = 0;
+                for (int offset = 0; offset + 11 < vectors.length; offset += 3) {
+                    point[0] = vectors[offset];
+                    point[1] = vectors[offset + 1];
+                    point[2] = vectors[offset + 2];
+                    total += GeoMath.distanceToSegment(point, 0, vectors, offset + 6);
+                }
+                return total;
+            }
+        });
+
+        double worstError = 0;
+        for (int i = 0; i + 3 < coordinates.length; i += 2) {
+            double exact = GeoMath.distance(coordinates[i], coordinates[i + 1], coordinates[i + 2], coordinates[i + 3]);
+            double fast = GeoMath.fastDistance(coordinates[i], coordinates[i + 1], coordinates[i + 2], coordinates[i + 3]);
+            worstError = Math.max(worstError, Math.abs(fast - exact) / exact);
+        }
+
+        Benchmarks.report("GeoMath", "distance per pair: legacy %.1f ns, haversine %.1f ns, equirectangular %.1f ns "
+                        + "(worst relative error %.1e), unit vectors %.1f ns", legacyNs / pairs, distanceNs / pairs,
+                fastNs / pairs, worstError, vectorNs / pairs);
+        Benchmarks.report("GeoMath", "bearing %.1f ns, point to segment on unit vectors %.1f ns",
+                bearingNs / pairs, segmentNs / (pairs - 2));
+    }
+
+    // DirectionsRoute.computeDistance before GeoMath, in meters instead of miles
+    private static double legacyDistance(double lon1, double lat1, double lon2, double lat2) {
+        double dLat = Math.toRadians(lat2 - lat1);
+        double dLon = Math.toRadians(lon2 - lon1);
+        double radLat1 = Math.toRadians(lat1);
+        double radLat2 = Math.toRadians(lat2);
+
+        double a = Math.pow(Math.sin(dLat / 2), 2) + Math.pow(Math.sin(dLon / 2), 2) * Math.cos(radLat1) * Math.cos(radLat2);
+        double c = 2 * Math.atan2(Math.sqrt(a), Math.sqrt(1 - a));
+        return GeoMath.EARTH_RADIUS_METERS * c;
+    }
+}
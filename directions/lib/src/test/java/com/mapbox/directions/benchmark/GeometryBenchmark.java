@@ -0,0 +1,179 @@
+package com.mapbox.directions.benchmark;
+
+import com.google.gson.stream.JsonReader;
+import com.mapbox.directions.geometry.CoordinateFormatter;
+import com.mapbox.directions.geometry.GeoMath;
+import com.mapbox.directions.geometry.LineSimplifier;
+import com.mapbox.directions.geometry.PolylineCodec;
+import com.mapbox.directions.geometry.SegmentIndex;
+import com.mapbox.directions.service.models.RouteGeometryTypeAdapter;
+
+import org.junit.Test;
+
+import java.io.StringReader;
+import java.nio.charset.Charset;
+import java.util.Locale;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * Route geometry work on random walks of real route sizes: nearest segment lookups through a
+ * {@link SegmentIndex} against a scan of every segment, encoded polyline decoding against GeoJSON
+ * parsing of the same line, and {@link LineSimplifier}.
+ */
+public class GeometryBenchmark {
+
+    private final static int QUERIES = 1000;
+
+    @Test
+    public void segmentIndexAgainstLinearScan() throws Exception {
+        Benchmarks.assumeEnabled();
+        for (int vertices : new int[]{1000, 10000, 100000}) {
+            final double[] coordinates = Benchmarks.randomRoute(vertices, vertices);
+            final double[] vectors = GeoMath.toVectors(coordinates);
+            final double[] queries = queriesNear(coordinates, QUERIES);
+
+            long start = System.nanoTime();
+            final SegmentIndex index = new SegmentIndex(coordinates);
+            long buildNs = System.nanoTime() - start;
+
+            // Both measure the same great circle distance
+            for (int i = 0; i < 20; i++) {
+                assertEquals(nearestLinear(vectors, queries[2 * i], queries[2 * i + 1]),
+                        index.nearestDistance(queries[2 * i], queries[2 * i + 1]), 1e-3);
+            }
+
+            double indexNs = Benchmarks.nsPerOp(QUERIES, new QueryTask(queries) {
+                @Override
+                Object query(double longitude, double latitude) {
+                    return index.nearestDistance(longitude, latitude);
+                }
+            });
+            double linearNs = Benchmarks.nsPerOp(Math.max(10, 1000000 / vertices), new QueryTask(queries) {
+                @Override
+                Object query(double longitude, double latitude) {
+                    return nearestLinear(vectors, longitude, latitude);
+                }
+            });
+
+            Benchmarks.report("SegmentIndex", "%d vertices: build %.2f ms, nearest %.2f us, linear %.2f us (%.0fx)",
+                    vertices, buildNs / 1e6, indexNs / 1000, linearNs / 1000, linearNs / indexNs);
+        }
+    }
+
+    @Test
+    public void polylineDecodingAgainstGeoJson() throws Exception {
+        Benchmarks.assumeEnabled();
+        double[] coordinates = Benchmarks.randomRoute(10000, 1);
+        final String polyline = PolylineCodec.encode(coordinates, PolylineCodec.PRECISION_6);
+        final String geoJson = geoJson(coordinates);
+        final RouteGeometryTypeAdapter adapter = new RouteGeometryTypeAdapter(PolylineCodec.PRECISION_6);
+
+        double polylineNs = Benchmarks.nsPerOp(100, new Benchmarks.Task() {
+            @Override
+            public Object run() throws Exception {
+                return PolylineCodec.decode(polyline, PolylineCodec.PRECISION_6);
+            }
+        });
+        double geoJsonNs = Benchmarks.nsPerOp(100, new Benchmarks.Task() {
+            @Override
+            public Object run() throws Exception {
+                return adapter.read(new JsonReader(new StringReader(geoJson)));
+            }
+        });
+
+        int polylineBytes = polyline.getBytes(Charset.forName("UTF-8")).length;
+        int geoJsonBytes = geoJson.getBytes(Charset.forName("UTF-8")).length;
+        Benchmarks.report("PolylineCodec", "10000 vertices: polyline %d bytes in %.0f us (%.0f MB/s), "
+                        + "GeoJSON %d bytes in %.0f us (%.0f MB/s), %.1fx faster per route",
+                polylineBytes, polylineNs / 1000, polylineBytes * 1000 / polylineNs,
+                geoJsonBytes, geoJsonNs / 1000, geoJsonBytes * 1000 / geoJsonNs, geoJsonNs / polylineNs);
+    }
+
+    @Test
+    public void simplification() throws Exception {
+        Benchmarks.assumeEnabled();
+        for (final int vertices : new int[]{10000, 100000}) {
+            final double[] coordinates = Benchmarks.randomRoute(vertices, vertices);
+            double rankNs = Benchmarks.nsPerOp(5, new Benchmarks.Task() {
+                @Override
+                public Object run() throws Exception {
+                    return new LineSimplifier(coordinates);
+                }
+            });
+
+            final LineSimplifier simplifier = new LineSimplifier(coordinates);
+            StringBuilder kept = new StringBuilder();
+            for (double tolerance : new double[]{1, 5, 20}) {
+                kept.append(String.format(Locale.US, ", %.0f m keeps %.1f%%", tolerance,
+                        100.0 * simplifier.count(tolerance) / vertices));
+            }
+            double simplifyNs = Benchmarks.nsPerOp(20, new Benchmarks.Task() {
+                @Override
+                public Object run() throws Exception {
+                    return simplifier.simplify(5);
+                }
+            });
+
+            Benchmarks.report("LineSimplifier", "%d vertices: ranking %.1f ms, simplify %.2f ms%s", vertices,
+                    rankNs / 1e6, simplifyNs / 1e6, kept);
+        }
+    }
+
+    private static double nearestLinear(double[] vectors, double longitude, double latitude) {
+        double[] point = new double[3];
+        GeoMath.toVector(longitude, latitude, point, 0);
+        double nearest = Double.POSITIVE_INFINITY;
+        for (int offset = 0; offset + 5 < vectors.length; offset += 3) {
+            nearest = Math.min(nearest, GeoMath.distanceToSegment(point, 0, vectors, offset));
+        }
+        return nearest;
+    }
+
+    // Points up to about 200 m from a random vertex
+    private static double[] queriesNear(double[] coordinates, int count) {
+        Random random = new Random(count);
+        double[] queries = new double[2 * count];
+        for (int i = 0; i < count; i++) {
+            int vertex = random.nextInt(coordinates.length / 2);
+            queries[2 * i] = coordinates[2 * vertex] + (random.nextDouble() - 0.5) * 0.004;
+            queries[2 * i + 1] = coordinates[2 * vertex + 1] + (random.nextDouble() - 0.5) * 0.004;
+        }
+        return queries;
+    }
+
+    // With the 6 decimals the API sends
+    private static String geoJson(double[] coordinates) {
+        StringBuilder json = new StringBuilder("{\"type\":\"LineString\",\"coordinates\":[");
+        for (int i = 0; i < coordinates.length; i += 2) {
+            if (i > 0) {
+                json.append(',');
+            }
+            json.append('[');
+            CoordinateFormatter.append(json, coordinates[i], PolylineCodec.PRECISION_6).append(',');
+            CoordinateFormatter.append(json, coordinates[i + 1], PolylineCodec.PRECISION_6).append(']');
+        }
+        return json.append("]}").toString();
+    }
+
+    // Cycles through the query points, one per operation
+    private abstract static class QueryTask implements Benchmarks.Task {
+
+        private final double[] queries;
+        private int next;
+
+        QueryTask(double[] queries) {
+            this.queries = queries;
+        }
+
+        abstract Object query(double longitude, double latitude);
+
+        @Override
+        public Object run() {
+            int i = next;
+            next = (next + 1) % (queries.length / 2);
+            return query(queries[2 * i], queries[2 * i + 1]);
+        }
+    }
+}
@@ -0,0 +1,54 @@
+package com.mapbox.directions.benchmark;
+
+import com.mapbox.directions.TestRoutes;
+import com.mapbox.directions.cache.DirectionsCache;
+import com.mapbox.directions.service.DirectionsResponseParser;
+import com.mapbox.directions.service.StringInterner;
+
+import org.junit.Test;
+
+import java.nio.charset.Charset;
+
+import static org.junit.Assert.*;
+
+/**
+ * Heap retained by a {@link DirectionsCache} full of responses parsed with and without a
+ * {@link StringInterner}. Each response is a different 20 step route named after one of a few
+ * hundred streets, so way names, directions, maneuver types and modes repeat across responses
+ * the way they do for requests around one area.
+ */
+public class InternerHeapBenchmark {
+
+    private final static int RESPONSES = 10000;
+    private final static int STREETS = 300;
+    private final static Charset UTF_8 = Charset.forName("UTF-8");
+
+    @Test
+    public void cachedResponses() throws Exception {
+        Benchmarks.assumeEnabled();
+        DirectionsResponseParser plain = new DirectionsResponseParser.Builder().setStringInterner(null).build();
+        DirectionsResponseParser interned = new DirectionsResponseParser.Builder()
+                .setStringInterner(new StringInterner(StringInterner.DEFAULT_CAPACITY))
+                .build();
+
+        long plainBytes = retained(plain);
+        long internedBytes = retained(interned);
+        Benchmarks.report("StringInterner", "%d cached responses: %.1f MB without interning, %.1f MB interned, "
+                        + "%.0f bytes saved per response", RESPONSES, plainBytes / 1e6, internedBytes / 1e6,
+                (plainBytes - internedBytes) / (double) RESPONSES);
+    }
+
+    // Heap held by a cache of RESPONSES parsed responses
+    private static long retained(DirectionsResponseParser parser) throws Exception {
+        DirectionsCache cache = new DirectionsCache.Builder().setMaxEntries(RESPONSES).build();
+        long before = Benchmarks.usedHeapBytes();
+        for (int i = 0; i < RESPONSES; i++) {
+            String street = "Street " + (i % STREETS);
+            byte[] json = TestRoutes.json(street, Benchmarks.randomRoute(21, i)).getBytes(UTF_8);
+            cache.put(Integer.toString(i), parser.parse(json));
+        }
+        long after = Benchmarks.usedHeapBytes();
+        assertEquals(RESPONSES, cache.size());
+        return after - before;
+    }
+}
@@ -0,0 +1,106 @@
+package com.mapbox.directions.benchmark;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.mapbox.directions.TestRoutes;
+import com.mapbox.directions.service.DirectionsResponseParser;
+import com.mapbox.directions.service.models.DirectionsResponse;
+import com.mapbox.directions.service.models.DirectionsRoute;
+import com.mapbox.directions.service.models.RouteGeometry;
+import com.mapbox.directions.service.models.RouteGeometryTypeAdapter;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.Charset;
+
+import static org.junit.Assert.*;
+
+/**
+ * {@link DirectionsResponseParser} against Gson's reflective adapters, and lazy against eager
+ * parsing, on a response with three routes of 1000 vertices each. The test responses
+ * have a step at every vertex, so they are heavier on steps than real ones.
+ */
+public class ParserBenchmark {
+
+    private final static int VERTICES = 1000;
+    private final static Charset UTF_8 = Charset.forName("UTF-8");
+
+    @Test
+    public void streamingAgainstGson() throws Exception {
+        Benchmarks.assumeEnabled();
+        final byte[] json = threeRoutes();
+        final DirectionsResponseParser parser = new DirectionsResponseParser.Builder().build();
+        // The reflective path, with only the geometry adapter Gson can't do without
+        final Gson gson = new GsonBuilder()
+                .registerTypeAdapter(RouteGeometry.class, new RouteGeometryTypeAdapter())
+                .create();
+        assertEquals(3, gson.fromJson(reader(json), DirectionsResponse.class).getRoutes().size());
+
+        Benchmarks.Task streaming = new Benchmarks.Task() {
+            @Override
+            public Object run() throws Exception {
+                return parser.parse(json);
+            }
+        };
+        Benchmarks.Task reflective = new Benchmarks.Task() {
+            @Override
+            public Object run() throws Exception {
+                return gson.fromJson(reader(json), DirectionsResponse.class);
+            }
+        };
+        double streamingNs = Benchmarks.nsPerOp(20, streaming);
+        double reflectiveNs = Benchmarks.nsPerOp(20, reflective);
+
+        Benchmarks.report("Parser", "%d KB: streaming %.2f ms, %.0f KB allocated; Gson %.2f ms, %.0f KB allocated",
+                json.length / 1024, streamingNs / 1e6, Benchmarks.bytesPerOp(20, streaming) / 1024,
+                reflectiveNs / 1e6, Benchmarks.bytesPerOp(20, reflective) / 1024);
+    }
+
+    @Test
+    public void lazyAgainstEager() throws Exception {
+        Benchmarks.assumeEnabled();
+        final byte[] json = threeRoutes();
+        final DirectionsResponseParser eager = new DirectionsResponseParser.Builder().build();
+        final DirectionsResponseParser lazy = new DirectionsResponseParser.Builder().setLazyRoutes(true).build();
+
+        Benchmarks.Task eagerFirstRoute = new Benchmarks.Task() {
+            @Override
+            public Object run() throws Exception {
+                return firstRoute(eager.parse(json));
+            }
+        };
+        Benchmarks.Task lazyFirstRoute = new Benchmarks.Task() {
+            @Override
+            public Object run() throws Exception {
+                return firstRoute(lazy.parse(json));
+            }
+        };
+        double eagerNs = Benchmarks.nsPerOp(20, eagerFirstRoute);
+        double lazyNs = Benchmarks.nsPerOp(20, lazyFirstRoute);
+
+        Benchmarks.report("Parser", "first route's geometry and steps: eager %.2f ms, %.0f KB allocated; "
+                        + "lazy %.2f ms, %.0f KB allocated", eagerNs / 1e6,
+                Benchmarks.bytesPerOp(20, eagerFirstRoute) / 1024, lazyNs / 1e6,
+                Benchmarks.bytesPerOp(20, lazyFirstRoute) / 1024);
+    }
+
+    private static Object firstRoute(DirectionsResponse response) {
+        DirectionsRoute route = response.getRoutes().get(0);
+        return route.getGeometry().size() + route.getSteps().size();
+    }
+
+    private static InputStreamReader reader(byte[] json) {
+        return new InputStreamReader(new ByteArrayInputStream(json), UTF_8);
+    }
+
+    // The recommended route and two alternatives
+    private static byte[] threeRoutes() {
+        String json = TestRoutes.json("Main Street", Benchmarks.randomRoute(VERTICES, 1));
+        String routes = "\"routes\":[";
+        int start = json.indexOf(routes) + routes.length();
+        String route = json.substring(start, json.length() - 2);
+        return (json.substring(0, start) + route + "," + route + "," + route + "]}").getBytes(UTF_8);
+    }
+}
@@ -0,0 +1,138 @@
+package com.mapbox.directions.benchmark;
+
+import com.mapbox.directions.DirectionsRequestTemplate;
+import com.mapbox.directions.TestRoutes;
+import com.mapbox.directions.TestTransports;
+import com.mapbox.directions.service.DirectionsTransport;
+import com.mapbox.directions.service.models.Waypoint;
+import com.squareup.okhttp.Interceptor;
+import com.squareup.okhttp.MediaType;
+import com.squareup.okhttp.OkHttpClient;
+import com.squareup.okhttp.Protocol;
+import com.squareup.okhttp.Response;
+import com.squareup.okhttp.ResponseBody;
+import com.squareup.okhttp.mockwebserver.Dispatcher;
+import com.squareup.okhttp.mockwebserver.MockResponse;
+import com.squareup.okhttp.mockwebserver.MockWebServer;
+import com.squareup.okhttp.mockwebserver.RecordedRequest;
+
+import org.junit.Test;
+
+import java.io.IOException;
+
+import static org.junit.Assert.*;
+
+/**
+ * Requests made from a {@link DirectionsRequestTemplate} against requests built from scratch,
+ * executed one after the other, first through an interceptor answering without the network, then
+ * against a local stub. Each request gets its own origin and destination, as a batch of pairs
+ * would. Creation alone isn't compared: the template builds its OkHttp request up front, where
+ * Retrofit only does so when the call is executed.
+ */
+public class RequestTemplateBenchmark {
+
+    private final static int PAIRS = 1000;
+
+    @Test
+    public void templateAgainstBuilder() throws Exception {
+        Benchmarks.assumeEnabled();
+        final String body = TestRoutes.json("Main Street");
+        MockWebServer server = Benchmarks.newServer();
+        server.setDispatcher(new Dispatcher() {
+            @Override
+            public MockResponse dispatch(RecordedRequest request) {
+                return new MockResponse().setBody(body);
+            }
+        });
+        server.start();
+
+        try {
+            DirectionsTransport transport = TestTransports.forServer(server).build();
+            DirectionsRequestTemplate template = TestTransports.request(transport).buildTemplate();
+            Waypoint[] waypoints = waypoints();
+            assertEquals(TestTransports.request(transport).setOrigin(waypoints[0]).setDestination(waypoints[1])
+                            .build().getRequestKey(),
+                    template.newRequest(waypoints[0], waypoints[1]).getRequestKey());
+
+            // Same requests answered in memory, so only the client side is measured
+            DirectionsTransport offline = TestTransports.forServer(server).setClient(inMemory(body)).build();
+            double builderNs = Benchmarks.nsPerOp(PAIRS, builderTask(offline, waypoints));
+            double templateNs = Benchmarks.nsPerOp(PAIRS, templateTask(
+                    TestTransports.request(offline).buildTemplate(), waypoints));
+            double builderSentNs = Benchmarks.nsPerOp(PAIRS / 10, builderTask(transport, waypoints));
+            double templateSentNs = Benchmarks.nsPerOp(PAIRS / 10, templateTask(template, waypoints));
+
+            Benchmarks.report("RequestTemplate", "without the network: builder %.0f req/s, template %.0f req/s",
+                    1e9 / builderNs, 1e9 / templateNs);
+            Benchmarks.report("RequestTemplate", "local stub: builder %.0f req/s, template %.0f req/s",
+                    1e9 / builderSentNs, 1e9 / templateSentNs);
+        } finally {
+            server.shutdown();
+        }
+    }
+
+    private static Benchmarks.Task builderTask(final DirectionsTransport transport, Waypoint[] waypoints) {
+        return new PairTask(waypoints) {
+            @Override
+            Object create(Waypoint origin, Waypoint destination) throws Exception {
+                return TestTransports.request(transport).setOrigin(origin).setDestination(destination).build()
+                        .execute();
+            }
+        };
+    }
+
+    private static Benchmarks.Task templateTask(final DirectionsRequestTemplate template, Waypoint[] waypoints) {
+        return new PairTask(waypoints) {
+            @Override
+            Object create(Waypoint origin, Waypoint destination) throws Exception {
+                return template.newRequest(origin, destination).execute();
+            }
+        };
+    }
+
+    private static OkHttpClient inMemory(final String body) {
+        OkHttpClient client = new OkHttpClient();
+        client.interceptors().add(new Interceptor() {
+            @Override
+            public Response intercept(Chain chain) throws IOException {
+                return new Response.Builder()
+                        .request(chain.request())
+                        .protocol(Protocol.HTTP_1_1)
+                        .code(200)
+                        .body(ResponseBody.create(MediaType.parse("application/json"), body))
+                        .build();
+            }
+        });
+        return client;
+    }
+
+    // Consecutive vertices of a long walk, so every pair is a different request
+    private static Waypoint[] waypoints() {
+        double[] coordinates = Benchmarks.randomRoute(PAIRS + 1, 1);
+        Waypoint[] waypoints = new Waypoint[PAIRS + 1];
+        for (int i = 0; i < waypoints.length; i++) {
+            waypoints[i] = new Waypoint(coordinates[2 * i], coordinates[2 * i + 1]);
+        }
+        return waypoints;
+    }
+
+    // Cycles through the pairs, one per operation
+    private abstract static class PairTask implements Benchmarks.Task {
+
+        private final Waypoint[] waypoints;
+        private int next;
+
+        PairTask(Waypoint[] waypoints) {
+            this.waypoints = waypoints;
+        }
+
+        abstract Object create(Waypoint origin, Waypoint destination) throws Exception;
+
+        @Override
+        public Object run() throws Exception {
+            int i = next;
+            next = (next + 1) % (waypoints.length - 1);
+            return create(waypoints[i], waypoints[i + 1]);
+        }
+    }
+}
@@ -0,0 +1,64 @@
+package com.mapbox.directions.benchmark;
+
+import com.mapbox.directions.TestRoutes;
+import com.mapbox.directions.service.DirectionsResponseParser;
+import com.mapbox.directions.service.models.DirectionsResponse;
+import com.mapbox.directions.service.models.DirectionsRoute;
+import com.mapbox.directions.storage.RouteFileReader;
+import com.mapbox.directions.storage.RouteFileWriter;
+
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+
+/**
+ * Size and load time of a long route stored as the binary route format against the JSON body the
+ * API sent. Loading means getting every route's geometry and steps into the heap; the first
+ * route is also timed on its own, which is all the binary reader decodes for a summary.
+ */
+public class RouteFileBenchmark {
+
+    private final static int VERTICES = 5000;
+
+    @Test
+    public void binaryAgainstJson() throws Exception {
+        Benchmarks.assumeEnabled();
+        String json = TestRoutes.json("Main Street", TestRoutes.line(-77.0365, 38.8977, VERTICES, 0.0001));
+        final byte[] jsonBytes = json.getBytes(Charset.forName("UTF-8"));
+        final DirectionsResponseParser parser = new DirectionsResponseParser.Builder().build();
+        final byte[] binary = RouteFileWriter.write(parser.parse(jsonBytes), 6);
+
+        double jsonNs = Benchmarks.nsPerOp(20, new Benchmarks.Task() {
+            @Override
+            public Object run() throws Exception {
+                return materialise(parser.parse(jsonBytes));
+            }
+        });
+        double binaryNs = Benchmarks.nsPerOp(20, new Benchmarks.Task() {
+            @Override
+            public Object run() throws Exception {
+                return materialise(RouteFileReader.wrap(ByteBuffer.wrap(binary)).readResponse());
+            }
+        });
+        double coordinatesNs = Benchmarks.nsPerOp(20, new Benchmarks.Task() {
+            @Override
+            public Object run() throws Exception {
+                return RouteFileReader.wrap(ByteBuffer.wrap(binary)).readCoordinates(0);
+            }
+        });
+
+        Benchmarks.report("RouteFile", "%d vertices: JSON %d bytes, binary %d bytes (%.1fx smaller)",
+                VERTICES, jsonBytes.length, binary.length, jsonBytes.length / (double) binary.length);
+        Benchmarks.report("RouteFile", "load: JSON %.0f us, binary %.0f us (%.1fx), coordinates only %.0f us",
+                jsonNs / 1000, binaryNs / 1000, jsonNs / binaryNs, coordinatesNs / 1000);
+    }
+
+    private static Object materialise(DirectionsResponse response) {
+        int size = 0;
+        for (DirectionsRoute route : response.getRoutes()) {
+            size += route.getGeometry().size() + route.getSteps().size();
+        }
+        return size;
+    }
+}
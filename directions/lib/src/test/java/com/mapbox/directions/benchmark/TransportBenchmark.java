@@ -0,0 +1,167 @@
+package com.mapbox.directions.benchmark;
+
+import com.mapbox.directions.MapboxDirections;
+import com.mapbox.directions.TestRoutes;
+import com.mapbox.directions.TestTransports;
+import com.mapbox.directions.cache.DirectionsCache;
+import com.mapbox.directions.service.DirectionsTransport;
+import com.squareup.okhttp.mockwebserver.Dispatcher;
+import com.squareup.okhttp.mockwebserver.MockResponse;
+import com.squareup.okhttp.mockwebserver.MockWebServer;
+import com.squareup.okhttp.mockwebserver.RecordedRequest;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import okio.Buffer;
+import okio.BufferedSink;
+import okio.GzipSink;
+import okio.Okio;
+
+import static org.junit.Assert.*;
+
+/**
+ * Sequential round trips against a local {@link MockWebServer}: a {@link DirectionsTransport}
+ * built per request, as every MapboxDirections used to build its own client, against one shared
+ * transport, then identity against gzip bodies and 304 revalidation of a cached response.
+ */
+public class TransportBenchmark {
+
+    private final static int ROUND_TRIPS = 200;
+
+    private MockWebServer server;
+    private volatile boolean gzip;
+
+    @Before
+    public void setUp() throws Exception {
+        server = Benchmarks.newServer();
+        server.start();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        server.shutdown();
+    }
+
+    @Test
+    public void perRequestAgainstSharedTransport() throws Exception {
+        Benchmarks.assumeEnabled();
+        final String body = TestRoutes.json("Main Street");
+        server.setDispatcher(new Dispatcher() {
+            @Override
+            public MockResponse dispatch(RecordedRequest request) {
+                return new MockResponse().setBody(body);
+            }
+        });
+        final DirectionsTransport shared = TestTransports.forServer(server).build();
+
+        double perRequestSetupNs = Benchmarks.nsPerOp(100, new Benchmarks.Task() {
+            @Override
+            public Object run() throws Exception {
+                return TestTransports.request(TestTransports.forServer(server).build()).build();
+            }
+        });
+        double sharedSetupNs = Benchmarks.nsPerOp(100, new Benchmarks.Task() {
+            @Override
+            public Object run() throws Exception {
+                return TestTransports.request(shared).build();
+            }
+        });
+
+        // Warm both paths up before timing round trips
+        roundTrips(null, ROUND_TRIPS / 4);
+        roundTrips(shared, ROUND_TRIPS / 4);
+        long[] perRequest = roundTrips(null, ROUND_TRIPS);
+        long[] sharedTrips = roundTrips(shared, ROUND_TRIPS);
+
+        Benchmarks.report("Transport", "setup per request %.1f us, shared %.1f us", perRequestSetupNs / 1000,
+                sharedSetupNs / 1000);
+        Benchmarks.report("Transport", "%d round trips: per request p50 %.2f ms, p99 %.2f ms; "
+                        + "shared p50 %.2f ms, p99 %.2f ms", ROUND_TRIPS, percentileMs(perRequest, 50),
+                percentileMs(perRequest, 99), percentileMs(sharedTrips, 50), percentileMs(sharedTrips, 99));
+    }
+
+    @Test
+    public void compressionAndRevalidation() throws Exception {
+        Benchmarks.assumeEnabled();
+        final byte[] json = TestRoutes.json("Main Street", Benchmarks.randomRoute(2000, 1)).getBytes("UTF-8");
+        final Buffer gzipped = new Buffer();
+        BufferedSink sink = Okio.buffer(new GzipSink(gzipped));
+        sink.write(json);
+        sink.close();
+
+        final AtomicInteger notModified = new AtomicInteger();
+        server.setDispatcher(new Dispatcher() {
+            @Override
+            public MockResponse dispatch(RecordedRequest request) {
+                if (request.getHeader("If-None-Match") != null) {
+                    notModified.incrementAndGet();
+                    return new MockResponse().setResponseCode(304).addHeader("Cache-Control", "max-age=0");
+                }
+                MockResponse response = new MockResponse().addHeader("ETag", "\"v1\"")
+                        .addHeader("Cache-Control", "max-age=0");
+                if (gzip) {
+                    return response.setBody(gzipped.clone()).addHeader("Content-Encoding", "gzip");
+                }
+                return response.setBody(new Buffer().write(json));
+            }
+        });
+
+        final DirectionsTransport plain = TestTransports.forServer(server).build();
+        Benchmarks.Task fetch = new Benchmarks.Task() {
+            @Override
+            public Object run() throws Exception {
+                MapboxDirections request = TestTransports.request(plain).build();
+                assertTrue(request.execute().isSuccess());
+                return request;
+            }
+        };
+        double identityNs = Benchmarks.nsPerOp(20, fetch);
+        gzip = true;
+        double gzipNs = Benchmarks.nsPerOp(20, fetch);
+
+        // Cached expired right away, so every request after the first one revalidates
+        final DirectionsTransport caching = TestTransports.forServer(server)
+                .setCache(new DirectionsCache.Builder().build())
+                .build();
+        assertTrue(TestTransports.request(caching).build().execute().isSuccess());
+        int before = server.getRequestCount();
+        double revalidationNs = Benchmarks.nsPerOp(20, new Benchmarks.Task() {
+            @Override
+            public Object run() throws Exception {
+                MapboxDirections request = TestTransports.request(caching).build();
+                assertTrue(request.execute().isSuccess());
+                return request;
+            }
+        });
+        assertTrue(notModified.get() > 0);
+        assertEquals("Every request revalidates", server.getRequestCount() - before, notModified.get());
+
+        Benchmarks.report("Transport", "response body on the wire: identity %d B in %.2f ms, gzip %d B in %.2f ms, "
+                        + "304 revalidation 0 B in %.2f ms", json.length, identityNs / 1e6, gzipped.size(),
+                gzipNs / 1e6, revalidationNs / 1e6);
+    }
+
+    // A null transport builds one per request
+    private long[] roundTrips(DirectionsTransport transport, int count) throws Exception {
+        long[] latencies = new long[count];
+        for (int i = 0; i < count; i++) {
+            long start = System.nanoTime();
+            DirectionsTransport used = transport != null ? transport : TestTransports.forServer(server).build();
+            assertTrue(TestTransports.request(used).build().execute().isSuccess());
+            latencies[i] = System.nanoTime() - start;
+        }
+        Arrays.sort(latencies);
+        return latencies;
+    }
+
+    private static double percentileMs(long[] sorted, double percentile) {
+        int rank = (int) Math.ceil(percentile / 100 * sorted.length);
+        return sorted[Math.max(rank - 1, 0)] / (double) TimeUnit.MILLISECONDS.toNanos(1);
+    }
+}
@@ -0,0 +1,114 @@
+package com.mapbox.directions.benchmark;
+
+import com.mapbox.directions.RecordingCallback;
+import com.mapbox.directions.TestRoutes;
+import com.mapbox.directions.TestTransports;
+import com.mapbox.directions.service.DirectionsTransport;
+import com.squareup.okhttp.mockwebserver.Dispatcher;
+import com.squareup.okhttp.mockwebserver.MockResponse;
+import com.squareup.okhttp.mockwebserver.MockWebServer;
+import com.squareup.okhttp.mockwebserver.RecordedRequest;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+/**
+ * How many concurrent requests one process sustains through a transport whose dispatcher allows
+ * them all, against a local stub answering after a fixed delay. Runs with a virtual thread per
+ * task executor when the JDK has one (21+), OkHttp's cached thread pool otherwise.
+ * <p>
+ * Size it with -Ddirections.load.requests (default 1000) and -Ddirections.load.delayMs (default
+ * 200). Every request holds a socket on both ends, so large runs may need a higher open files
+ * limit.
+ */
+public class TransportLoadBenchmark {
+
+    @Test
+    public void concurrentRequests() throws Exception {
+        Benchmarks.assumeEnabled();
+        final int requests = Integer.getInteger("directions.load.requests", 1000);
+        final long delayMs = Long.getLong("directions.load.delayMs", 200);
+
+        final AtomicInteger active = new AtomicInteger();
+        final AtomicInteger peak = new AtomicInteger();
+        final String body = TestRoutes.json("Main Street");
+        MockWebServer server = Benchmarks.newServer();
+        server.setDispatcher(new Dispatcher() {
+            @Override
+            public MockResponse dispatch(RecordedRequest request) throws InterruptedException {
+                int now = active.incrementAndGet();
+                while (true) {
+                    int max = peak.get();
+                    if (now <= max || peak.compareAndSet(max, now)) {
+                        break;
+                    }
+                }
+                try {
+                    Thread.sleep(delayMs);
+                } finally {
+                    active.decrementAndGet();
+                }
+                return new MockResponse().setBody(body);
+            }
+        });
+        server.start();
+
+        ExecutorService executor = virtualThreadExecutor();
+        String executorName = executor != null ? "virtual threads" : "cached thread pool";
+        DirectionsTransport.Builder builder = TestTransports.forServer(server)
+                .setMaxRequests(requests)
+                .setMaxRequestsPerHost(requests)
+                .setMaxIdleConnections(requests);
+        if (executor != null) {
+            builder.setExecutor(executor);
+        }
+        DirectionsTransport transport = builder.build();
+
+        try {
+            List<RecordingCallback> callbacks = new ArrayList<>(requests);
+            long start = System.nanoTime();
+            for (int i = 0; i < requests; i++) {
+                RecordingCallback callback = new RecordingCallback();
+                callbacks.add(callback);
+                TestTransports.request(transport).build().enqueue(callback);
+            }
+
+            int succeeded = 0;
+            for (RecordingCallback callback : callbacks) {
+                callback.await();
+                if (callback.getResponse() != null && callback.getResponse().isSuccess()) {
+                    succeeded++;
+                }
+            }
+            long elapsedNs = System.nanoTime() - start;
+
+            double seconds = elapsedNs / (double) TimeUnit.SECONDS.toNanos(1);
+            Benchmarks.report("TransportLoad", "%s, %d requests, %d ms stub delay: %d ok, peak %d concurrent, "
+                            + "%.0f ms wall, %.0f req/s", executorName, requests, delayMs, succeeded,
+                    peak.get(), seconds * 1000, succeeded / seconds);
+            assertEquals(requests, succeeded);
+        } finally {
+            server.shutdown();
+            if (executor != null) {
+                executor.shutdown();
+            }
+        }
+    }
+
+    // Looked up reflectively, the library targets Java 7
+    private static ExecutorService virtualThreadExecutor() {
+        try {
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (ReflectiveOperationException e) {
+            return null;
+        }
+    }
+}
@@ -0,0 +1,149 @@
+package com.mapbox.directions.cache;
+
+import com.mapbox.directions.MapboxDirections;
+import com.mapbox.directions.RecordingCallback;
+import com.mapbox.directions.TestRoutes;
+import com.mapbox.directions.TestTransports;
+import com.mapbox.directions.service.DirectionsTransport;
+import com.mapbox.directions.service.models.DirectionsResponse;
+import com.squareup.okhttp.mockwebserver.MockResponse;
+import com.squareup.okhttp.mockwebserver.MockWebServer;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import retrofit.Response;
+
+import static org.junit.Assert.*;
+
+public class CachingCallTest {
+
+    private MockWebServer server;
+    private DirectionsCache cache;
+    private DirectionsTransport transport;
+
+    @Before
+    public void setUp() throws Exception {
+        server = new MockWebServer();
+        server.start();
+        cache = new DirectionsCache.Builder().build();
+        transport = TestTransports.forServer(server).setCache(cache).build();
+
+        // Stored already expired, so the next request revalidates
+        server.enqueue(new MockResponse()
+                .setBody(TestRoutes.json("Main Street"))
+                .addHeader("ETag", "\"v1\"")
+                .addHeader("Cache-Control", "max-age=0"));
+        assertTrue(TestTransports.request(transport).build().execute().isSuccess());
+        server.takeRequest();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        server.shutdown();
+    }
+
+    @Test
+    public void enqueue_servesTheCachedResponseOnNotModified() throws Exception {
+        server.enqueue(new MockResponse().setResponseCode(304).addHeader("Cache-Control", "max-age=60"));
+        MapboxDirections request = TestTransports.request(transport).build();
+
+        RecordingCallback callback = new RecordingCallback();
+        request.enqueue(callback);
+
+        Response<DirectionsResponse> response = callback.await().getResponse();
+        assertTrue(response.isSuccess());
+        assertEquals("Main Street", response.body().getRoutes().get(0).getSummary());
+        assertEquals("\"v1\"", server.takeRequest().getHeader("If-None-Match"));
+
+        // The entry is refreshed in the background after the response was delivered
+        awaitFresh(request.getRequestKey());
+        assertTrue(TestTransports.request(transport).build().execute().isSuccess());
+        assertEquals(2, server.getRequestCount());
+    }
+
+    @Test
+    public void enqueue_storesANewResponse() throws Exception {
+        server.enqueue(new MockResponse()
+                .setBody(TestRoutes.json("Second Street"))
+                .addHeader("ETag", "\"v2\"")
+                .addHeader("Cache-Control", "max-age=60"));
+        MapboxDirections request = TestTransports.request(transport).build();
+
+        RecordingCallback callback = new RecordingCallback();
+        request.enqueue(callback);
+
+        assertEquals("Second Street", callback.await().getResponse().body().getRoutes().get(0).getSummary());
+        awaitFresh(request.getRequestKey());
+        DirectionsCache.Entry entry = cache.getForRevalidation(request.getRequestKey());
+        assertEquals("\"v2\"", entry.getETag());
+        assertEquals("Second Street", entry.getResponse().getRoutes().get(0).getSummary());
+    }
+
+    @Test
+    public void execute_onlyOnce() throws Exception {
+        server.enqueue(new MockResponse().setResponseCode(304).addHeader("Cache-Control", "max-age=60"));
+        MapboxDirections request = TestTransports.request(transport).build();
+        assertTrue(request.execute().isSuccess());
+
+        try {
+            request.execute();
+            fail();
+        } catch (IllegalStateException expected) {
+        }
+        try {
+            request.enqueue(new RecordingCallback());
+            fail();
+        } catch (IllegalStateException expected) {
+        }
+    }
+
+    @Test
+    public void execute_afterCancelMakesNoNetworkCall() throws Exception {
+        cache.clear();
+        MapboxDirections request = TestTransports.request(transport).build();
+        request.cancel();
+
+        try {
+            request.execute();
+            fail();
+        } catch (IOException e) {
+            assertEquals("Canceled", e.getMessage());
+        }
+        assertEquals(1, server.getRequestCount());
+    }
+
+    @Test
+    public void requestKey_keepsEntriesToTheirAccessToken() throws Exception {
+        cache.clear();
+        server.enqueue(new MockResponse()
+                .setBody(TestRoutes.json("Main Street"))
+                .addHeader("Cache-Control", "max-age=60"));
+        server.enqueue(new MockResponse().setResponseCode(401).setBody("{\"message\":\"Not Authorized\"}"));
+        MapboxDirections allowed = TestTransports.request(transport).build();
+        assertTrue(allowed.execute().isSuccess());
+
+        MapboxDirections other = TestTransports.request(transport).setAccessToken("pk.other").build();
+        assertNotEquals(allowed.getRequestKey(), other.getRequestKey());
+        assertFalse(other.getRequestKey().contains("pk.other"));
+
+        // Answered by the server, not from the other token's entry
+        assertEquals(401, other.execute().code());
+        assertEquals(3, server.getRequestCount());
+        assertEquals(allowed.getRequestKey(), TestTransports.request(transport).build().getRequestKey());
+        assertTrue(TestTransports.request(transport).build().execute().isSuccess());
+        assertEquals(3, server.getRequestCount());
+    }
+
+    private void awaitFresh(String key) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (cache.peek(key) == null && System.nanoTime() < deadline) {
+            Thread.sleep(10);
+        }
+        assertNotNull("The entry was never refreshed.", cache.peek(key));
+    }
+}
@@ -0,0 +1,202 @@
+package com.mapbox.directions.cache;
+
+import com.mapbox.directions.TestRoutes;
+import com.mapbox.directions.service.models.DirectionsResponse;
+import com.mapbox.directions.service.models.DirectionsRoute;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.Assert.*;
+
+public class DirectionsCacheTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void memory_evictsLeastRecentlyUsed() throws Exception {
+        DirectionsCache cache = new DirectionsCache.Builder().setMaxEntries(2).build();
+        cache.put("a", TestRoutes.response("a"));
+        cache.put("b", TestRoutes.response("b"));
+        assertNotNull(cache.get("a"));
+
+        cache.put("c", TestRoutes.response("c"));
+        assertEquals(2, cache.size());
+        assertNull(cache.get("b"));
+        assertNotNull(cache.get("a"));
+        assertNotNull(cache.get("c"));
+        assertEquals(1, cache.getEvictionCount());
+    }
+
+    @Test
+    public void get_dropsExpiredEntries() throws Exception {
+        DirectionsCache cache = new DirectionsCache.Builder().setTtl(50, TimeUnit.MILLISECONDS).build();
+        DirectionsResponse response = TestRoutes.response("a");
+        cache.put("a", response);
+        assertSame(response, cache.get("a"));
+
+        Thread.sleep(100);
+        assertNull(cache.get("a"));
+        assertEquals(0, cache.size());
+
+        // A max-age of zero is never served, however long the configured time-to-live
+        cache = new DirectionsCache.Builder().build();
+        cache.put("a", response, null, 0);
+        assertNull(cache.get("a"));
+        assertEquals(1, cache.getMissCount());
+    }
+
+    @Test
+    public void getForRevalidation_keepsExpiredEntriesWithAnETag() throws Exception {
+        DirectionsCache cache = new DirectionsCache.Builder().build();
+        DirectionsResponse response = TestRoutes.response("a");
+        cache.put("a", response, "\"v1\"", 0);
+        cache.put("b", response, null, 0);
+
+        assertNull(cache.get("a"));
+        DirectionsCache.Entry entry = cache.getForRevalidation("a");
+        assertNotNull(entry);
+        assertSame(response, entry.getResponse());
+        assertEquals("\"v1\"", entry.getETag());
+        assertNull(cache.getForRevalidation("b"));
+    }
+
+    @Test
+    public void diskTier_survivesANewInstance() throws Exception {
+        File directory = folder.newFolder("cache");
+        DirectionsResponse response = TestRoutes.response("Main Street");
+        new DirectionsCache.Builder().setDiskCache(directory, DirectionsCache.DEFAULT_MAX_DISK_BYTES).build()
+                .put("a", response, "\"v1\"", TimeUnit.MINUTES.toMillis(1));
+
+        DirectionsCache cache = new DirectionsCache.Builder()
+                .setDiskCache(directory, DirectionsCache.DEFAULT_MAX_DISK_BYTES)
+                .build();
+        DirectionsResponse read = cache.get("a");
+        assertNotNull(read);
+        assertEquals(1, cache.getHitCount());
+
+        DirectionsRoute expected = response.getRoutes().get(0);
+        DirectionsRoute actual = read.getRoutes().get(0);
+        assertEquals(expected.getSummary(), actual.getSummary());
+        assertEquals(expected.getDistance(), actual.getDistance());
+        assertArrayEquals(expected.getGeometry().getPackedCoordinates(),
+                actual.getGeometry().getPackedCoordinates(), 0);
+        assertEquals(expected.getSteps().size(), actual.getSteps().size());
+        assertEquals("depart", actual.getSteps().get(0).getManeuver().getType());
+        assertEquals("\"v1\"", cache.getForRevalidation("a").getETag());
+    }
+
+    @Test
+    public void diskTier_dropsUnreadableEntries() throws Exception {
+        File directory = folder.newFolder("cache");
+        DirectionsCache cache = new DirectionsCache.Builder()
+                .setDiskCache(directory, DirectionsCache.DEFAULT_MAX_DISK_BYTES)
+                .build();
+        cache.put("a", TestRoutes.response("a"), "\"v1\"", TimeUnit.MINUTES.toMillis(1));
+        File[] files = directory.listFiles();
+        assertNotNull(files);
+        assertEquals(1, files.length);
+
+        // A valid header followed by a truncated response
+        Writer writer = new OutputStreamWriter(new FileOutputStream(files[0]), "UTF-8");
+        try {
+            writer.write(System.currentTimeMillis() + 60000 + " \"v1\"\n{\"routes\":[");
+        } finally {
+            writer.close();
+        }
+
+        cache = new DirectionsCache.Builder().setDiskCache(directory, DirectionsCache.DEFAULT_MAX_DISK_BYTES).build();
+        assertNull(cache.get("a"));
+        assertFalse(files[0].exists());
+        assertNull(cache.getForRevalidation("a"));
+    }
+
+    @Test
+    public void diskTier_staysWithinItsBound() throws Exception {
+        File directory = folder.newFolder("cache");
+        DirectionsCache cache = new DirectionsCache.Builder().setDiskCache(directory, 1).build();
+        cache.put("a", TestRoutes.response("a"));
+        cache.put("b", TestRoutes.response("b"));
+
+        File[] files = directory.listFiles();
+        assertNotNull(files);
+        assertEquals(0, files.length);
+        assertTrue(cache.getEvictionCount() >= 2);
+    }
+
+    @Test
+    public void concurrentPutAndGet_onlyReturnsResponsesForTheirKey() throws Exception {
+        final DirectionsCache cache = new DirectionsCache.Builder().setMaxEntries(8).build();
+        final List<DirectionsResponse> responses = new ArrayList<>();
+        for (int i = 0; i < 16; i++) {
+            responses.add(TestRoutes.response(Integer.toString(i)));
+        }
+
+        final int threads = 8;
+        final CountDownLatch start = new CountDownLatch(1);
+        final CountDownLatch done = new CountDownLatch(threads);
+        final AtomicReference<Throwable> failure = new AtomicReference<>();
+        for (int t = 0; t < threads; t++) {
+            final long seed = t;
+            new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    Random random = new Random(seed);
+                    try {
+                        start.await();
+                        for (int i = 0; i < 5000; i++) {
+                            int key = random.nextInt(responses.size());
+                            if (random.nextBoolean()) {
+                                cache.put(Integer.toString(key), responses.get(key));
+                            } else {
+                                DirectionsResponse response = cache.get(Integer.toString(key));
+                                if (response != null && response != responses.get(key)) {
+                                    throw new AssertionError("Wrong response for key " + key + ".");
+                                }
+                            }
+                        }
+                    } catch (Throwable e) {
+                        failure.compareAndSet(null, e);
+                    } finally {
+                        done.countDown();
+                    }
+                }
+            }).start();
+        }
+
+        start.countDown();
+        assertTrue(done.await(30, TimeUnit.SECONDS));
+        assertNull(failure.get());
+        assertTrue(cache.size() <= 8);
+        assertEquals(threads * 5000, cache.getHitCount() + cache.getMissCount()
+                + countPuts(threads, responses.size()));
+    }
+
+    // Replays the threads' random choices to count their puts
+    private static long countPuts(int threads, int keys) {
+        long puts = 0;
+        for (int t = 0; t < threads; t++) {
+            Random random = new Random(t);
+            for (int i = 0; i < 5000; i++) {
+                random.nextInt(keys);
+                if (random.nextBoolean()) {
+                    puts++;
+                }
+            }
+        }
+        return puts;
+    }
+}
@@ -0,0 +1,89 @@
+package com.mapbox.directions.geometry;
+
+import com.mapbox.directions.service.models.Waypoint;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+
+import static org.junit.Assert.*;
+
+public class CoordinateFormatterTest {
+
+    @Test
+    public void append_ignoresTheDefaultLocale() throws Exception {
+        Locale locale = Locale.getDefault();
+        Locale.setDefault(Locale.GERMANY);
+        try {
+            List<Waypoint> waypoints = Arrays.asList(new Waypoint(-77.0365, 38.8977), new Waypoint(-77.032, 38.8895));
+            assertEquals("-77.036500,38.897700;-77.032000,38.889500",
+                    CoordinateFormatter.append(new StringBuilder(), waypoints, 6).toString());
+        } finally {
+            Locale.setDefault(locale);
+        }
+    }
+
+    @Test
+    public void append_roundsHalfAwayFromZero() throws Exception {
+        // Halves exactly representable in binary, so only the rounding mode decides
+        assertEquals("3", format(2.5, 0));
+        assertEquals("-3", format(-2.5, 0));
+        assertEquals("0.13", format(0.125, 2));
+        assertEquals("-0.13", format(-0.125, 2));
+        assertEquals("1", format(0.5, 0));
+        assertEquals("38.90", format(38.899, 2));
+    }
+
+    @Test
+    public void append_writesZeroWithoutASign() throws Exception {
+        assertEquals("0.000000", format(-0.0000001, 6));
+        assertEquals("0.000000", format(-0.0, 6));
+        assertEquals("0", format(-0.4, 0));
+        assertEquals("-0.000001", format(-0.0000006, 6));
+    }
+
+    @Test
+    public void append_keepsLeadingZerosOfTheFraction() throws Exception {
+        assertEquals("1.000001", format(1.000001, 6));
+        assertEquals("-1.050000", format(-1.05, 6));
+        assertEquals("0.000000010", format(0.00000001, 9));
+        assertEquals("-180.000000000", format(-180, 9));
+    }
+
+    @Test
+    public void append_supportsEveryPrecision() throws Exception {
+        assertEquals("-77", format(-77.0365, 0));
+        assertEquals("-77.036500000", format(-77.0365, CoordinateFormatter.MAX_PRECISION));
+        assertEquals("179.999999999", format(179.999999999, CoordinateFormatter.MAX_PRECISION));
+        for (int precision = 0; precision <= CoordinateFormatter.MAX_PRECISION; precision++) {
+            assertEquals(String.format(Locale.US, "%." + precision + "f", -77.0365),
+                    format(-77.0365, precision));
+            assertTrue(format(-179.987654321, precision).length() * 2 + 2
+                    <= CoordinateFormatter.capacityFor(1, precision));
+        }
+    }
+
+    @Test
+    public void append_rejectsInvalidInput() throws Exception {
+        for (double value : new double[]{Double.NaN, Double.POSITIVE_INFINITY, Double.NEGATIVE_INFINITY}) {
+            try {
+                format(value, 6);
+                fail(Double.toString(value));
+            } catch (IllegalArgumentException expected) {
+            }
+        }
+        for (int precision : new int[]{-1, CoordinateFormatter.MAX_PRECISION + 1}) {
+            try {
+                format(1, precision);
+                fail(Integer.toString(precision));
+            } catch (IllegalArgumentException expected) {
+            }
+        }
+    }
+
+    private static String format(double value, int precision) {
+        return CoordinateFormatter.append(new StringBuilder(), value, precision).toString();
+    }
+}
@@ -0,0 +1,136 @@
+package com.mapbox.directions.geometry;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * Reference values are from Chris Veness' "Calculate distance, bearing and more between
+ * Latitude/Longitude points" (movable-type.co.uk), computed there with a 6371 km radius and
+ * scaled to ours where it matters.
+ */
+public class GeoMathTest {
+
+    private final static double SCALE = GeoMath.EARTH_RADIUS_METERS / 6371000;
+
+    // Cambridge, UK and Paris
+    private final static double CAMBRIDGE_LON = 0.119, CAMBRIDGE_LAT = 52.205;
+    private final static double PARIS_LON = 2.351, PARIS_LAT = 48.857;
+
+    @Test
+    public void distance_matchesReferenceValues() throws Exception {
+        assertEquals(404300 * SCALE, GeoMath.distance(CAMBRIDGE_LON, CAMBRIDGE_LAT, PARIS_LON, PARIS_LAT), 100);
+        assertEquals(GeoMath.METERS_PER_DEGREE, GeoMath.distance(10, 20, 10, 21), 1e-6);
+        assertEquals(GeoMath.EARTH_RADIUS_METERS * Math.PI / 2, GeoMath.distance(45, 0, 45, 90), 1e-6);
+        assertEquals(GeoMath.EARTH_RADIUS_METERS * Math.PI, GeoMath.distance(0, 0, 180, 0), 1e-6);
+        assertEquals(0, GeoMath.distance(-77.04341, 38.90962, -77.04341, 38.90962), 0);
+    }
+
+    @Test
+    public void bearing_matchesReferenceValues() throws Exception {
+        assertEquals(156.2, GeoMath.bearing(CAMBRIDGE_LON, CAMBRIDGE_LAT, PARIS_LON, PARIS_LAT), 0.05);
+        assertEquals(0, GeoMath.bearing(0, 0, 0, 1), 1e-9);
+        assertEquals(90, GeoMath.bearing(0, 0, 1, 0), 1e-9);
+        assertEquals(180, GeoMath.bearing(0, 1, 0, 0), 1e-9);
+        assertEquals(270, GeoMath.bearing(1, 0, 0, 0), 1e-9);
+    }
+
+    @Test
+    public void interpolate_matchesReferenceValues() throws Exception {
+        double[] point = new double[2];
+        GeoMath.interpolate(CAMBRIDGE_LON, CAMBRIDGE_LAT, PARIS_LON, PARIS_LAT, 0.25, point);
+        assertEquals(0.7073, point[0], 1e-4);
+        assertEquals(51.3721, point[1], 1e-4);
+
+        GeoMath.interpolate(CAMBRIDGE_LON, CAMBRIDGE_LAT, PARIS_LON, PARIS_LAT, 0.5, point);
+        assertEquals(1.2746, point[0], 1e-4);
+        assertEquals(50.5363, point[1], 1e-4);
+
+        GeoMath.interpolate(CAMBRIDGE_LON, CAMBRIDGE_LAT, PARIS_LON, PARIS_LAT, 1, point);
+        assertEquals(PARIS_LON, point[0], 1e-9);
+        assertEquals(PARIS_LAT, point[1], 1e-9);
+
+        // Identical ends don't divide by zero
+        GeoMath.interpolate(PARIS_LON, PARIS_LAT, PARIS_LON, PARIS_LAT, 0.5, point);
+        assertEquals(PARIS_LON, point[0], 1e-9);
+        assertEquals(PARIS_LAT, point[1], 1e-9);
+    }
+
+    @Test
+    public void crossTrackDistance_matchesReferenceValue() throws Exception {
+        // Reported as -307.5 m there, where negative means left of the path
+        double distance = GeoMath.crossTrackDistance(-0.7972, 53.2611, -1.7297, 53.3206, 0.1334, 53.1887);
+        assertEquals(307.5 * SCALE, distance, 0.1);
+        assertEquals(-distance, GeoMath.crossTrackDistance(-0.7972, 53.2611, 0.1334, 53.1887, -1.7297, 53.3206), 1e-6);
+    }
+
+    @Test
+    public void distanceToSegment_usesEndsBeyondTheSegment() throws Exception {
+        // Abreast of the segment: the cross-track distance
+        assertEquals(GeoMath.METERS_PER_DEGREE * 0.01, GeoMath.distanceToSegment(0.5, 0.01, 0, 0, 1, 0), 1e-3);
+
+        // Past either end: the distance to that end
+        assertEquals(GeoMath.distance(2, 0.01, 1, 0), GeoMath.distanceToSegment(2, 0.01, 0, 0, 1, 0), 1e-6);
+        assertEquals(GeoMath.distance(-1, -0.5, 0, 0), GeoMath.distanceToSegment(-1, -0.5, 0, 0, 1, 0), 1e-6);
+
+        // Zero length segments are points
+        assertEquals(GeoMath.distance(3, 4, 1, 1), GeoMath.distanceToSegment(3, 4, 1, 1, 1, 1), 1e-6);
+    }
+
+    @Test
+    public void vectorDistance_matchesHaversine() throws Exception {
+        Random random = new Random(1);
+        double[] vectors = new double[6];
+        for (int i = 0; i < 10000; i++) {
+            double lon1 = random.nextDouble() * 360 - 180, lat1 = random.nextDouble() * 180 - 90;
+            double lon2 = random.nextDouble() * 360 - 180, lat2 = random.nextDouble() * 180 - 90;
+            GeoMath.toVector(lon1, lat1, vectors, 0);
+            GeoMath.toVector(lon2, lat2, vectors, 3);
+            assertEquals(GeoMath.distance(lon1, lat1, lon2, lat2), GeoMath.distance(vectors, 0, vectors, 3), 1e-3);
+        }
+    }
+
+    @Test
+    public void fastDistance_staysWithinItsBound() throws Exception {
+        Random random = new Random(2);
+        double worst = 0;
+        for (int i = 0; i < 100000; i++) {
+            double lon1 = random.nextDouble() * 360 - 180;
+            double lat1 = random.nextDouble() * 140 - 70;
+            double meters = random.nextDouble() * 100000;
+            double heading = Math.toRadians(random.nextDouble() * 360);
+            double lat2 = lat1 + meters * Math.cos(heading) / GeoMath.METERS_PER_DEGREE;
+            double lon2 = lon1 + meters * Math.sin(heading) / GeoMath.METERS_PER_DEGREE / Math.cos(Math.toRadians(lat1));
+            if (Math.abs(lat2) > 70) {
+                continue;
+            }
+
+            double exact = GeoMath.distance(lon1, lat1, lon2, lat2);
+            if (exact > 100000 || exact < 1) {
+                continue;
+            }
+            worst = Math.max(worst, Math.abs(GeoMath.fastDistance(lon1, lat1, lon2, lat2) - exact) / exact);
+        }
+        assertTrue("Relative error " + worst, worst < 1e-3);
+
+        // Across the antimeridian
+        assertEquals(GeoMath.distance(179.9, 10, -179.9, 10), GeoMath.fastDistance(179.9, 10, -179.9, 10), 1);
+    }
+
+    @Test
+    public void cumulativeDistances_addUpSegments() throws Exception {
+        double[] coordinates = {-77.04341, 38.90962, -77.0400, 38.9050, -77.0365, 38.8977, -77.0365, 38.8977};
+        double[] distances = GeoMath.cumulativeDistances(coordinates);
+        assertEquals(4, distances.length);
+        assertEquals(0, distances[0], 0);
+
+        double total = 0;
+        for (int i = 1; i < 4; i++) {
+            total += GeoMath.distance(coordinates[2 * i - 2], coordinates[2 * i - 1], coordinates[2 * i], coordinates[2 * i + 1]);
+            assertEquals(total, distances[i], 1e-6);
+        }
+        assertEquals(0, GeoMath.cumulativeDistances(new double[0]).length);
+    }
+}
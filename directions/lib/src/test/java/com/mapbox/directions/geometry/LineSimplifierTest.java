@@ -0,0 +1,131 @@
+package com.mapbox.directions.geometry;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class LineSimplifierTest {
+
+    @Test
+    public void simplify_matchesRecursiveDouglasPeucker() throws Exception {
+        Random random = new Random(13);
+        for (int line = 0; line < 100; line++) {
+            double[] coordinates = randomLine(random, 2 + random.nextInt(300));
+            LineSimplifier simplifier = new LineSimplifier(coordinates);
+
+            for (double tolerance : new double[]{0, 1, 5, 20, 100, 1000, random.nextDouble() * 50}) {
+                double[] expected = douglasPeucker(coordinates, tolerance);
+                assertArrayEquals("Line " + line + ", " + tolerance + " m", expected,
+                        simplifier.simplify(tolerance), 0);
+                assertEquals(expected.length / 2, simplifier.count(tolerance));
+            }
+        }
+    }
+
+    @Test
+    public void simplify_alwaysKeepsBothEnds() throws Exception {
+        double[] coordinates = randomLine(new Random(17), 500);
+        LineSimplifier simplifier = new LineSimplifier(coordinates);
+
+        double[] simplified = simplifier.simplify(1e9);
+        assertArrayEquals(new double[]{coordinates[0], coordinates[1],
+                coordinates[coordinates.length - 2], coordinates[coordinates.length - 1]}, simplified, 0);
+        assertEquals(Double.POSITIVE_INFINITY, simplifier.getImportance(0), 0);
+        assertEquals(Double.POSITIVE_INFINITY, simplifier.getImportance(499), 0);
+
+        // Lines too short to simplify come back whole
+        assertArrayEquals(new double[]{1, 2}, new LineSimplifier(new double[]{1, 2}).simplify(1e9), 0);
+        assertArrayEquals(new double[]{1, 2, 3, 4}, new LineSimplifier(new double[]{1, 2, 3, 4}).simplify(1e9), 0);
+        assertEquals(0, new LineSimplifier(new double[0]).simplify(1).length);
+    }
+
+    @Test
+    public void simplifyForZoom_keepsMoreVerticesAsZoomGrows() throws Exception {
+        LineSimplifier simplifier = new LineSimplifier(randomLine(new Random(19), 2000));
+        int previous = 0;
+        for (int zoom = 0; zoom <= LineSimplifier.MAX_ZOOM; zoom++) {
+            double[] simplified = simplifier.simplifyForZoom(zoom);
+            assertTrue(simplified.length >= previous);
+            assertSame(simplified, simplifier.simplifyForZoom(zoom));
+            previous = simplified.length;
+        }
+        assertTrue(previous > 4 * simplifier.simplifyForZoom(0).length);
+    }
+
+    // The textbook recursion, measuring distances the same way
+    private static double[] douglasPeucker(double[] coordinates, double tolerance) {
+        int numVertices = coordinates.length / 2;
+        boolean[] keep = new boolean[numVertices];
+        if (numVertices > 0) {
+            keep[0] = true;
+            keep[numVertices - 1] = true;
+        }
+        split(coordinates, 0, numVertices - 1, tolerance, keep);
+
+        double[] kept = new double[coordinates.length];
+        int length = 0;
+        for (int i = 0; i < numVertices; i++) {
+            if (keep[i]) {
+                kept[length++] = coordinates[2 * i];
+                kept[length++] = coordinates[2 * i + 1];
+            }
+        }
+        return Arrays.copyOf(kept, length);
+    }
+
+    private static void split(double[] coordinates, int first, int last, double tolerance, boolean[] keep) {
+        int farthest = -1;
+        double farthestDistance = -1;
+        for (int i = first + 1; i < last; i++) {
+            double distance = distanceToChord(coordinates, i, first, last);
+            if (distance > farthestDistance) {
+                farthest = i;
+                farthestDistance = distance;
+            }
+        }
+        if (farthest < 0 || farthestDistance <= tolerance) {
+            return;
+        }
+        keep[farthest] = true;
+        split(coordinates, first, farthest, tolerance, keep);
+        split(coordinates, farthest, last, tolerance, keep);
+    }
+
+    private static double distanceToChord(double[] coordinates, int vertex, int first, int last) {
+        double longitude = coordinates[2 * vertex];
+        double latitude = coordinates[2 * vertex + 1];
+        double scale = Math.cos(Math.toRadians(latitude));
+
+        double ax = (coordinates[2 * first] - longitude) * scale;
+        double ay = coordinates[2 * first + 1] - latitude;
+        double bx = (coordinates[2 * last] - longitude) * scale;
+        double by = coordinates[2 * last + 1] - latitude;
+        double dx = bx - ax;
+        double dy = by - ay;
+        double lengthSquared = dx * dx + dy * dy;
+        double t = lengthSquared > 0 ? -(ax * dx + ay * dy) / lengthSquared : 0;
+        t = Math.max(0, Math.min(1, t));
+        double x = ax + t * dx;
+        double y = ay + t * dy;
+        return Math.sqrt(x * x + y * y) * GeoMath.METERS_PER_DEGREE;
+    }
+
+    // Vertices about 10 m apart with a wandering heading, around Washington DC
+    private static double[] randomLine(Random random, int points) {
+        double[] coordinates = new double[2 * points];
+        double longitude = -77.0365;
+        double latitude = 38.8977;
+        double heading = random.nextDouble() * 2 * Math.PI;
+        for (int i = 0; i < points; i++) {
+            coordinates[2 * i] = longitude;
+            coordinates[2 * i + 1] = latitude;
+            heading += random.nextGaussian() * 0.4;
+            latitude += 0.00009 * Math.cos(heading);
+            longitude += 0.00009 * Math.sin(heading) / Math.cos(Math.toRadians(latitude));
+        }
+        return coordinates;
+    }
+}
@@ -0,0 +1,68 @@
+package com.mapbox.directions.geometry;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class PolylineCodecTest {
+
+    // The example from Google's description of the format
+    private final static String REFERENCE = "_p~iF~ps|U_ulLnnqC_mqNvxq`@";
+    private final static double[] REFERENCE_COORDINATES = {-120.2, 38.5, -120.95, 40.7, -126.453, 43.252};
+
+    @Test
+    public void decode_matchesTheReference() throws Exception {
+        assertArrayEquals(REFERENCE_COORDINATES, PolylineCodec.decode(REFERENCE, PolylineCodec.PRECISION_5), 1e-9);
+        assertEquals(REFERENCE, PolylineCodec.encode(REFERENCE_COORDINATES, PolylineCodec.PRECISION_5));
+        assertEquals(0, PolylineCodec.decode("", PolylineCodec.PRECISION_6).length);
+    }
+
+    @Test
+    public void encodeThenDecode_keepsEveryCoordinate() throws Exception {
+        Random random = new Random(7);
+        for (int precision : new int[]{PolylineCodec.PRECISION_5, PolylineCodec.PRECISION_6}) {
+            double factor = Math.pow(10, precision);
+            for (int line = 0; line < 50; line++) {
+                double[] coordinates = new double[2 * (1 + random.nextInt(200))];
+                for (int i = 0; i < coordinates.length; i += 2) {
+                    // Rounded to the precision, so decoding gives back the same values
+                    coordinates[i] = Math.round((random.nextDouble() * 360 - 180) * factor) / factor;
+                    coordinates[i + 1] = Math.round((random.nextDouble() * 180 - 90) * factor) / factor;
+                }
+
+                String encoded = PolylineCodec.encode(coordinates, precision);
+                assertArrayEquals(coordinates, PolylineCodec.decode(encoded, precision), 0.5 / factor);
+            }
+        }
+    }
+
+    @Test
+    public void decode_rejectsTruncatedPolylines() throws Exception {
+        // Cut within a value, then between latitude and longitude
+        for (String truncated : new String[]{REFERENCE.substring(0, REFERENCE.length() - 1), "_p~iF"}) {
+            try {
+                PolylineCodec.decode(truncated, PolylineCodec.PRECISION_5);
+                fail(truncated);
+            } catch (IllegalArgumentException expected) {
+            }
+        }
+    }
+
+    @Test
+    public void decode_rejectsInvalidCharacters() throws Exception {
+        for (String invalid : new String[]{"_p~iF ~ps|U", "_p~iF~ps|U\u007f?"}) {
+            try {
+                PolylineCodec.decode(invalid, PolylineCodec.PRECISION_5);
+                fail(invalid);
+            } catch (IllegalArgumentException expected) {
+            }
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void encode_rejectsAnOddNumberOfValues() throws Exception {
+        PolylineCodec.encode(new double[]{-120.2, 38.5, -120.95}, PolylineCodec.PRECISION_5);
+    }
+}
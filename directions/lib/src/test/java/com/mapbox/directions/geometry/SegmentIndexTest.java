@@ -0,0 +1,145 @@
+package com.mapbox.directions.geometry;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class SegmentIndexTest {
+
+    @Test
+    public void nearestSegment_matchesALinearScan() throws Exception {
+        Random random = new Random(3);
+        for (int route = 0; route < 20; route++) {
+            // From a handful of segments to many levels of nodes
+            double[] coordinates = randomWalk(random, 2 + random.nextInt(route < 10 ? 40 : 3000),
+                    random.nextDouble() * 300 - 150, random.nextDouble() * 120 - 60);
+            SegmentIndex index = new SegmentIndex(coordinates);
+            assertEquals(coordinates.length / 2 - 1, index.size());
+
+            for (int query = 0; query < 200; query++) {
+                int vertex = random.nextInt(coordinates.length / 2);
+                double longitude = coordinates[2 * vertex] + (random.nextDouble() - 0.5) * 0.05;
+                double latitude = coordinates[2 * vertex + 1] + (random.nextDouble() - 0.5) * 0.05;
+                assertNearest(index, coordinates, longitude, latitude);
+            }
+        }
+    }
+
+    @Test
+    public void emptyRoute_hasNoNearestSegment() throws Exception {
+        SegmentIndex index = new SegmentIndex(new double[0]);
+
+        assertEquals(0, index.size());
+        assertEquals(-1, index.nearestSegment(-77.0365, 38.8977));
+        assertEquals(Double.POSITIVE_INFINITY, index.nearestDistance(-77.0365, 38.8977), 0);
+        assertFalse(index.isWithin(-77.0365, 38.8977, 1e7));
+    }
+
+    @Test
+    public void singleVertex_isAZeroLengthSegment() throws Exception {
+        SegmentIndex index = new SegmentIndex(new double[]{-77.0365, 38.8977});
+
+        assertEquals(1, index.size());
+        assertEquals(0, index.nearestSegment(-77.0365, 38.9077));
+        double distance = GeoMath.distance(-77.0365, 38.8977, -77.0365, 38.9077);
+        assertEquals(distance, index.nearestDistance(-77.0365, 38.9077), distance * 1e-3);
+        assertEquals(0, index.fractionAlongSegment(0, -77.0365, 38.9077), 0);
+    }
+
+    @Test
+    public void antimeridianCrossing_isMeasuredTheShortWay() throws Exception {
+        // Fiji, west to east across 180
+        double[] coordinates = {179.98, -16.8, 179.99, -16.8, -179.99, -16.8, -179.98, -16.8};
+        SegmentIndex index = new SegmentIndex(coordinates);
+
+        // Just north of the crossing, from either side
+        double expected = 100;
+        double latitude = -16.8 + expected / GeoMath.METERS_PER_DEGREE;
+        assertEquals(1, index.nearestSegment(179.999, latitude));
+        assertEquals(1, index.nearestSegment(-179.999, latitude));
+        assertEquals(expected, index.nearestDistance(179.999, latitude), 0.5);
+        assertEquals(expected, index.nearestDistance(-179.999, latitude), 0.5);
+        assertTrue(index.isWithin(-180, latitude, 101));
+        assertEquals(0.5, index.fractionAlongSegment(1, 180, latitude), 1e-6);
+        assertEquals(0.5, index.fractionAlongSegment(1, -180, latitude), 1e-6);
+
+        // The input is left untouched
+        assertEquals(-179.99, coordinates[4], 0);
+
+        // A long random walk back and forth across it
+        Random random = new Random(11);
+        double[] walk = randomWalk(random, 500, 179.9, 10);
+        for (int i = 0; i < walk.length; i += 2) {
+            walk[i] = walk[i] > 180 ? walk[i] - 360 : walk[i];
+        }
+        index = new SegmentIndex(walk);
+        for (int query = 0; query < 200; query++) {
+            int vertex = random.nextInt(walk.length / 2);
+            assertNearest(index, walk, walk[2 * vertex] + (random.nextDouble() - 0.5) * 0.01,
+                    walk[2 * vertex + 1] + (random.nextDouble() - 0.5) * 0.01);
+        }
+    }
+
+    @Test
+    public void fromSegments_measuresEachGroup() throws Exception {
+        // Two parallel segments 1 km apart, one per group, and one shared by both further east
+        double offset = 1000 / GeoMath.METERS_PER_DEGREE;
+        double[] segments = {
+                0, 0, 0.01, 0,
+                0, offset, 0.01, offset,
+                0.02, 0, 0.03, 0
+        };
+        SegmentIndex index = SegmentIndex.fromSegments(segments, new long[]{1, 2, 3});
+
+        double[] distances = new double[2];
+        index.nearestDistances(0.005, 0, 5000, distances);
+        assertEquals(0, distances[0], 1e-6);
+        assertEquals(1000, distances[1], 1);
+
+        index.nearestDistances(0.005, offset, 5000, distances);
+        assertEquals(1000, distances[0], 1);
+        assertEquals(0, distances[1], 1e-6);
+
+        // The shared segment counts for both
+        index.nearestDistances(0.025, 0, 5000, distances);
+        assertEquals(0, distances[0], 1e-6);
+        assertEquals(0, distances[1], 1e-6);
+
+        index.nearestDistances(0.005, 0, 500, distances);
+        assertEquals(Double.POSITIVE_INFINITY, distances[1], 0);
+    }
+
+    // The index measures on a flat projection around the point, so compare with the same metric
+    private static void assertNearest(SegmentIndex index, double[] coordinates, double longitude, double latitude) {
+        double nearest = Double.POSITIVE_INFINITY;
+        for (int segment = 0; segment < index.size(); segment++) {
+            nearest = Math.min(nearest, index.distanceToSegment(segment, longitude, latitude));
+        }
+        int found = index.nearestSegment(longitude, latitude);
+        assertEquals(nearest, index.distanceToSegment(found, longitude, latitude), 1e-6);
+        assertEquals(nearest, index.nearestDistance(longitude, latitude), 1e-6);
+
+        // And within a fraction of the great circle distance
+        int a = 2 * found;
+        int b = Math.min(a + 2, coordinates.length - 2);
+        double exact = GeoMath.distanceToSegment(longitude, latitude,
+                coordinates[a], coordinates[a + 1], coordinates[b], coordinates[b + 1]);
+        assertEquals(exact, nearest, 1 + exact * 0.01);
+    }
+
+    // Vertices about 100 m apart along a drifting heading
+    private static double[] randomWalk(Random random, int points, double longitude, double latitude) {
+        double[] coordinates = new double[2 * points];
+        double heading = random.nextDouble() * 2 * Math.PI;
+        for (int i = 0; i < points; i++) {
+            coordinates[2 * i] = longitude;
+            coordinates[2 * i + 1] = latitude;
+            heading += random.nextGaussian() * 0.3;
+            latitude += 0.0009 * Math.cos(heading);
+            longitude += 0.0009 * Math.sin(heading) / Math.cos(Math.toRadians(latitude));
+        }
+        return coordinates;
+    }
+}
@@ -0,0 +1,84 @@
+package com.mapbox.directions.metrics;
+
+import com.mapbox.directions.TestRoutes;
+import com.mapbox.directions.TestTransports;
+import com.mapbox.directions.service.DirectionsTransport;
+import com.squareup.okhttp.Request;
+import com.squareup.okhttp.mockwebserver.MockResponse;
+import com.squareup.okhttp.mockwebserver.MockWebServer;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import static org.junit.Assert.*;
+
+public class MetricsInterceptorTest {
+
+    private final List<CallMetrics> calls = new CopyOnWriteArrayList<>();
+    private MockWebServer server;
+    private DirectionsTransport transport;
+
+    @Before
+    public void setUp() throws Exception {
+        server = new MockWebServer();
+        server.start();
+        transport = TestTransports.forServer(server)
+                .setMetricsListener(new MetricsListener() {
+                    @Override
+                    public void onCall(CallMetrics metrics) {
+                        calls.add(metrics);
+                    }
+
+                    @Override
+                    public void onRetry(String profile, String geometry, boolean hedge) {
+                    }
+                })
+                .build();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        server.shutdown();
+    }
+
+    @Test
+    public void parsedResponse_isReportedOnce() throws Exception {
+        server.enqueue(new MockResponse().setBody(TestRoutes.json("Main Street")));
+        assertTrue(TestTransports.request(transport).build().execute().isSuccess());
+
+        assertEquals(1, calls.size());
+        CallMetrics metrics = calls.get(0);
+        assertEquals(200, metrics.getCode());
+        assertNull(metrics.getError());
+        assertTrue(metrics.getResponseBytes() > 0);
+        assertEquals("mapbox.driving", metrics.getProfile());
+    }
+
+    @Test
+    public void noContent_isReported() throws Exception {
+        server.enqueue(new MockResponse().setResponseCode(204));
+        assertNull(TestTransports.request(transport).build().execute().body());
+
+        assertEquals(1, calls.size());
+        assertEquals(204, calls.get(0).getCode());
+        assertNull(calls.get(0).getError());
+    }
+
+    @Test
+    public void bodyClosedWithoutParsing_isReportedAsAnError() throws Exception {
+        server.enqueue(new MockResponse().setBody(TestRoutes.json("Main Street")));
+        Request request = new Request.Builder()
+                .url(server.url("/v4/directions/mapbox.driving/0,0;1,1.json"))
+                .build();
+        transport.getClient().newCall(request).execute().body().close();
+
+        assertEquals(1, calls.size());
+        assertEquals(200, calls.get(0).getCode());
+        assertNotNull(calls.get(0).getError());
+        assertEquals(0, calls.get(0).getParseNs());
+    }
+}
@@ -0,0 +1,154 @@
+package com.mapbox.directions.navigation;
+
+import com.mapbox.directions.geometry.GeoMath;
+import com.mapbox.directions.geometry.SegmentIndex;
+import com.mapbox.directions.service.models.DirectionsRoute;
+import com.mapbox.directions.service.models.RouteGeometry;
+import com.mapbox.directions.service.models.Waypoint;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class AlternativeRoutesIndexTest {
+
+    // Share the first four segments, then part ways north and south
+    private final static double[] PRIMARY = {0, 0, 0.001, 0, 0.002, 0, 0.003, 0, 0.004, 0, 0.005, 0.001, 0.006, 0.002};
+    private final static double[] ALTERNATIVE = {0, 0, 0.001, 0, 0.002, 0, 0.003, 0, 0.004, 0, 0.005, -0.001};
+
+    @Test
+    public void sharedSegments_areIndexedOnce() throws Exception {
+        // The second alternative drives the shared stretch the other way
+        double[] reversed = {0.004, 0, 0.003, 0, 0.002, 0, 0.001, 0, 0.001, 0.001};
+        AlternativeRoutesIndex index = new AlternativeRoutesIndex(routes(PRIMARY, ALTERNATIVE, reversed));
+
+        assertEquals(3, index.size());
+        assertEquals(4 + 2 + 1 + 1, index.getSegmentCount());
+        assertEquals(4, index.getSharedSegmentCount());
+    }
+
+    @Test
+    public void nearestRoute_prefersTheFirstRouteOnATie() throws Exception {
+        AlternativeRoutesIndex index = new AlternativeRoutesIndex(routes(ALTERNATIVE, PRIMARY, ALTERNATIVE));
+        double[] distances = new double[3];
+
+        assertEquals(0, index.nearestRoute(new Waypoint(0.0015, 0.0001), distances));
+        assertEquals(distances[0], distances[1], 0);
+        assertEquals(distances[0], distances[2], 0);
+        assertEquals(GeoMath.distance(0.0015, 0, 0.0015, 0.0001), distances[0], 0.1);
+
+        // Past the fork, north of it
+        assertEquals(1, index.nearestRoute(new Waypoint(0.0055, 0.0015), distances));
+        assertTrue(distances[1] < distances[0]);
+        assertEquals(distances[0], distances[2], 0);
+    }
+
+    @Test
+    public void nearestRoute_matchesEachRoutesOwnIndex() throws Exception {
+        Random random = new Random(23);
+        for (int trial = 0; trial < 20; trial++) {
+            List<DirectionsRoute> routes = new ArrayList<>();
+            double[] trunk = randomLine(random, 50, 0, 0);
+            for (int route = 0; route < 1 + random.nextInt(6); route++) {
+                // Same start, then a branch of its own
+                int fork = random.nextInt(50);
+                double[] branch = randomLine(random, 50, trunk[2 * fork], trunk[2 * fork + 1]);
+                double[] coordinates = Arrays.copyOf(trunk, 2 * fork + branch.length);
+                System.arraycopy(branch, 0, coordinates, 2 * fork, branch.length);
+                routes.add(route(coordinates));
+            }
+            AlternativeRoutesIndex index = new AlternativeRoutesIndex(routes);
+            double[] distances = new double[routes.size()];
+
+            for (int query = 0; query < 50; query++) {
+                double longitude = (random.nextDouble() - 0.5) * 0.02;
+                double latitude = (random.nextDouble() - 0.5) * 0.02;
+                int nearest = index.nearestRoute(new Waypoint(longitude, latitude), distances);
+
+                int expected = -1;
+                for (int i = 0; i < routes.size(); i++) {
+                    SegmentIndex own = new SegmentIndex(routes.get(i).getGeometry().getPackedCoordinates());
+                    double distance = own.nearestDistance(longitude, latitude);
+                    assertEquals(distance, distances[i], 1e-6);
+                    if (expected < 0 || distance < distances[expected]) {
+                        expected = i;
+                    }
+                }
+                assertEquals(expected, nearest);
+            }
+        }
+    }
+
+    @Test
+    public void nearestRoute_leavesOutRoutesBeyondTheMaximum() throws Exception {
+        AlternativeRoutesIndex index = new AlternativeRoutesIndex(routes(PRIMARY, ALTERNATIVE));
+        double[] distances = new double[2];
+
+        assertEquals(0, index.nearestRoute(0.006, 0.002, 10, distances));
+        assertEquals(Double.POSITIVE_INFINITY, distances[1], 0);
+        assertEquals(-1, index.nearestRoute(1, 1, 10, distances));
+    }
+
+    @Test
+    public void routesWithoutGeometry_areNeverMatched() throws Exception {
+        List<DirectionsRoute> routes = routes(PRIMARY, ALTERNATIVE);
+        routes.add(0, new DirectionsRoute());
+        routes.get(0).setGeometry(null);
+        AlternativeRoutesIndex index = new AlternativeRoutesIndex(routes);
+        double[] distances = new double[3];
+
+        assertEquals(1, index.nearestRoute(new Waypoint(0.0015, 0), distances));
+        assertEquals(Double.POSITIVE_INFINITY, distances[0], 0);
+    }
+
+    @Test
+    public void constructor_supportsUpToMaxRoutes() throws Exception {
+        List<DirectionsRoute> routes = new ArrayList<>();
+        for (int i = 0; i < AlternativeRoutesIndex.MAX_ROUTES; i++) {
+            routes.add(route(new double[]{0, 0.001 * i, 0.001, 0.001 * i}));
+        }
+        AlternativeRoutesIndex index = new AlternativeRoutesIndex(routes);
+        double[] distances = new double[AlternativeRoutesIndex.MAX_ROUTES];
+        assertEquals(AlternativeRoutesIndex.MAX_ROUTES - 1,
+                index.nearestRoute(new Waypoint(0.0005, 0.001 * (AlternativeRoutesIndex.MAX_ROUTES - 1)), distances));
+
+        routes.add(route(PRIMARY));
+        try {
+            new AlternativeRoutesIndex(routes);
+            fail();
+        } catch (IllegalArgumentException expected) {
+        }
+    }
+
+    private static List<DirectionsRoute> routes(double[]... geometries) {
+        List<DirectionsRoute> routes = new ArrayList<>();
+        for (double[] coordinates : geometries) {
+            routes.add(route(coordinates));
+        }
+        return routes;
+    }
+
+    private static DirectionsRoute route(double[] coordinates) {
+        DirectionsRoute route = new DirectionsRoute();
+        route.setGeometry(new RouteGeometry("LineString", coordinates));
+        return route;
+    }
+
+    private static double[] randomLine(Random random, int points, double longitude, double latitude) {
+        double[] coordinates = new double[2 * points];
+        double heading = random.nextDouble() * 2 * Math.PI;
+        for (int i = 0; i < points; i++) {
+            coordinates[2 * i] = longitude;
+            coordinates[2 * i + 1] = latitude;
+            heading += random.nextGaussian() * 0.3;
+            latitude += 0.0001 * Math.cos(heading);
+            longitude += 0.0001 * Math.sin(heading);
+        }
+        return coordinates;
+    }
+}
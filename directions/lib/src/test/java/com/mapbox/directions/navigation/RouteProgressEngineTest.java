@@ -0,0 +1,69 @@
+package com.mapbox.directions.navigation;
+
+import com.mapbox.directions.TestRoutes;
+import com.mapbox.directions.geometry.GeoMath;
+import com.mapbox.directions.service.models.DirectionsRoute;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+
+import static org.junit.Assert.*;
+
+public class RouteProgressEngineTest {
+
+    @Test
+    public void steps_matchTheirVertices() throws Exception {
+        DirectionsRoute route = TestRoutes.response("Main Street").getRoutes().get(0);
+        RouteProgressEngine engine = new RouteProgressEngine(route);
+
+        for (int i = 0; i < route.getSteps().size(); i++) {
+            assertEquals(i, engine.getStepStartVertex(i));
+        }
+        engine.setPosition(2, 0.5);
+        assertEquals(2, engine.getStepIndex());
+        assertEquals(3, engine.getNextStepIndex());
+        assertEquals(engine.getTotalDistance() / 8, engine.getDistanceToNextManeuver(), 1e-6);
+    }
+
+    @Test
+    public void loopRoute_matchesEachManeuverToItsOwnPass() throws Exception {
+        // Around a block, back past the start a meter to the north, then on east
+        double[] coordinates = {
+                0, 0,
+                0.002, 0,
+                0.002, 0.002,
+                0, 0.002,
+                0, 0.00001,
+                0.002, 0.00001,
+                0.004, 0.00001
+        };
+        DirectionsRoute route = TestRoutes.response("Main Street", coordinates).getRoutes().get(0);
+        // A maneuver reported slightly off the first pass, closer to the second one
+        route.getSteps().get(1).getManeuver().getLocation().setCoordinates(Arrays.asList(0.002, 0.000006));
+
+        RouteProgressEngine engine = new RouteProgressEngine(route);
+
+        for (int i = 0; i < route.getSteps().size(); i++) {
+            assertEquals("Step " + i, i, engine.getStepStartVertex(i));
+        }
+        engine.setPosition(1, 0.5);
+        assertEquals(1, engine.getStepIndex());
+        double sideLength = GeoMath.distance(0.002, 0, 0.002, 0.002);
+        assertEquals(sideLength / 2, engine.getDistanceToNextManeuver(), 1);
+        engine.setPosition(4, 0.5);
+        assertEquals(4, engine.getStepIndex());
+    }
+
+    @Test
+    public void stepsWithoutLocation_keepTheirPlace() throws Exception {
+        DirectionsRoute route = TestRoutes.response("Main Street").getRoutes().get(0);
+        route.getSteps().get(1).getManeuver().setLocation(null);
+
+        RouteProgressEngine engine = new RouteProgressEngine(route);
+
+        assertEquals(0, engine.getStepStartVertex(1));
+        assertEquals(2, engine.getStepStartVertex(2));
+        assertEquals(3, engine.getStepStartVertex(3));
+    }
+}
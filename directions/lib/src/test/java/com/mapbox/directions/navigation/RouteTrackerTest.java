@@ -0,0 +1,121 @@
+package com.mapbox.directions.navigation;
+
+import com.mapbox.directions.TestRoutes;
+import com.mapbox.directions.geometry.GeoMath;
+import com.mapbox.directions.service.models.DirectionsRoute;
+import com.mapbox.directions.service.models.RouteGeometry;
+import com.mapbox.directions.service.models.Waypoint;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class RouteTrackerTest {
+
+    private final static double TOLERANCE = 20;
+
+    @Test
+    public void update_followsTheRouteWithinTheWindow() throws Exception {
+        DirectionsRoute route = TestRoutes.response("Main Street", TestRoutes.line(0, 0, 101, 0.001))
+                .getRoutes().get(0);
+        RouteTracker tracker = new RouteTracker(route, TOLERANCE);
+        double offset = 5 / GeoMath.METERS_PER_DEGREE;
+
+        for (int segment = 0; segment < 20; segment++) {
+            RouteProgress progress = tracker.update(new Waypoint(0.001 * segment + 0.0004, offset));
+            assertFalse(progress.isOffRoute());
+            assertEquals(segment, progress.getSegmentIndex());
+            assertEquals(5, progress.getDistanceFromRoute(), 0.01);
+            assertEquals(0.001 * segment + 0.0004, progress.getSnappedLocation().getLongitude(), 1e-9);
+            assertEquals(0, progress.getSnappedLocation().getLatitude(), 1e-9);
+            assertEquals(GeoMath.distance(0, 0, 0.001 * segment + 0.0004, 0), progress.getDistanceTraveled(), 1);
+            assertEquals(segment, progress.getStepIndex());
+        }
+        assertEquals(19, tracker.getProgressEngine().getStepIndex());
+    }
+
+    @Test
+    public void update_searchesTheWholeRouteWhenTheWindowMisses() throws Exception {
+        DirectionsRoute route = TestRoutes.response("Main Street", TestRoutes.line(0, 0, 101, 0.001))
+                .getRoutes().get(0);
+        RouteTracker tracker = new RouteTracker(route, TOLERANCE);
+        assertEquals(0, tracker.update(new Waypoint(0.0005, 0)).getSegmentIndex());
+
+        // Far beyond the window ahead, after a tunnel say
+        RouteProgress progress = tracker.update(new Waypoint(0.0805, 0));
+        assertFalse(progress.isOffRoute());
+        assertEquals(80, progress.getSegmentIndex());
+        assertEquals(0, progress.getDistanceFromRoute(), 0.01);
+
+        // And back behind it
+        assertEquals(10, tracker.update(new Waypoint(0.0105, 0)).getSegmentIndex());
+
+        // Nowhere near: the nearest segment still, flagged off-route
+        progress = tracker.update(new Waypoint(0.0505, 0.01));
+        assertTrue(progress.isOffRoute());
+        assertEquals(50, progress.getSegmentIndex());
+        assertEquals(GeoMath.distance(0.0505, 0, 0.0505, 0.01), progress.getDistanceFromRoute(), 2);
+    }
+
+    @Test
+    public void update_staysOnTheMatchedPassWhereTheRouteCrossesItself() throws Exception {
+        // East, around and back down across the first segment at 0.001, 0
+        double[] coordinates = {
+                0, 0,
+                0.002, 0,
+                0.002, 0.002,
+                0.001, 0.002,
+                0.001, -0.002,
+                0.003, -0.002
+        };
+        DirectionsRoute route = TestRoutes.response("Main Street", coordinates).getRoutes().get(0);
+        RouteTracker tracker = new RouteTracker(route, TOLERANCE, 1, 0);
+        assertEquals(0, tracker.update(new Waypoint(0.0005, 0)).getSegmentIndex());
+
+        // Closer to the second pass, but still well within tolerance of the first
+        Waypoint crossing = new Waypoint(0.00101, 0.00005);
+        RouteProgress progress = tracker.update(crossing);
+        assertEquals(0, progress.getSegmentIndex());
+        assertEquals(GeoMath.distance(0.00101, 0, 0.00101, 0.00005), progress.getDistanceFromRoute(), 0.1);
+
+        // Coming back around, the crossing belongs to the second pass
+        assertEquals(2, tracker.update(new Waypoint(0.0015, 0.002)).getSegmentIndex());
+        assertEquals(3, tracker.update(crossing).getSegmentIndex());
+    }
+
+    @Test
+    public void reset_searchesTheWholeRouteAgain() throws Exception {
+        double[] coordinates = {
+                0, 0,
+                0.002, 0,
+                0.002, 0.002,
+                0.001, 0.002,
+                0.001, -0.002,
+                0.003, -0.002
+        };
+        DirectionsRoute route = TestRoutes.response("Main Street", coordinates).getRoutes().get(0);
+        RouteTracker tracker = new RouteTracker(route, TOLERANCE, 1, 0);
+        Waypoint crossing = new Waypoint(0.00101, 0.00005);
+        tracker.update(new Waypoint(0.0005, 0));
+        assertEquals(0, tracker.update(crossing).getSegmentIndex());
+
+        tracker.reset();
+        assertEquals(3, tracker.update(crossing).getSegmentIndex());
+    }
+
+    @Test
+    public void update_returnsNullWithoutGeometry() throws Exception {
+        DirectionsRoute route = TestRoutes.response("Main Street").getRoutes().get(0);
+        route.setGeometry(new RouteGeometry("LineString", new double[0]));
+        RouteTracker tracker = new RouteTracker(route);
+
+        assertNull(tracker.update(new Waypoint(-77.0365, 38.8977)));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void constructor_requiresAGeometry() throws Exception {
+        DirectionsRoute route = TestRoutes.response("Main Street").getRoutes().get(0);
+        route.setGeometry(null);
+        new RouteTracker(route);
+    }
+}
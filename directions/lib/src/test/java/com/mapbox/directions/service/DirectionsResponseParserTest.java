@@ -0,0 +1,210 @@
+package com.mapbox.directions.service;
+
+import com.google.gson.Gson;
+import com.mapbox.directions.TestRoutes;
+import com.mapbox.directions.geometry.PolylineCodec;
+import com.mapbox.directions.service.models.DirectionsFeature;
+import com.mapbox.directions.service.models.DirectionsResponse;
+import com.mapbox.directions.service.models.DirectionsRoute;
+import com.mapbox.directions.service.models.RouteGeometry;
+import com.mapbox.directions.service.models.RouteStep;
+import com.mapbox.directions.service.models.StepManeuver;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.nio.charset.Charset;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class DirectionsResponseParserTest {
+
+    private final static Charset UTF_8 = Charset.forName("UTF-8");
+
+    // The recommended route as GeoJSON, then alternatives as a polyline and without geometry
+    private final static String RESPONSE = "{"
+            + "\"origin\":" + feature(-77.0365, 38.8977, "Pennsylvania Avenue")
+            + ",\"destination\":" + feature(-77.0320, 38.8895, "Caf\\u00e9 \\\"Central\\\"")
+            + ",\"waypoints\":[" + feature(-77.034, 38.894, "") + "]"
+            + ",\"unknown\":{\"nested\":[1,{\"brace\":\"}]\"}],\"flag\":true}"
+            + ",\"routes\":["
+            + "{\"distance\":1200,\"duration\":180,\"summary\":\"Main Street \\\\ {1}\""
+            + ",\"weight_name\":\"routability\""
+            + ",\"geometry\":{\"type\":\"LineString\",\"coordinates\":[[-77.0365,38.8977],[-77.034,38.894],"
+            + "[-77.032,38.8895]],\"bbox\":[0,0,1,1]}"
+            + ",\"steps\":[" + step("depart", "Head \\\"south\\\" on [Main]", -77.0365, 38.8977)
+            + "," + step("arrive", "You have arrived\\n\\u2713", -77.032, 38.8895) + "]}"
+            + ",{\"distance\":1350,\"duration\":200,\"summary\":\"Second Street\""
+            + ",\"geometry\":\"" + PolylineCodec.encode(new double[]{-77.0365, 38.8977, -77.036, 38.89,
+            -77.032, 38.8895}, PolylineCodec.PRECISION_6) + "\""
+            + ",\"steps\":[" + step("depart", "Head west", -77.0365, 38.8977) + "]}"
+            + ",{\"distance\":1500,\"duration\":260,\"summary\":\"Third Street\",\"geometry\":false"
+            + ",\"steps\":[" + step("continue", "Keep going", -77.036, 38.89) + "],\"extra\":null}"
+            + "]}";
+
+    @Test
+    public void parse_matchesReflectiveGson() throws Exception {
+        DirectionsResponse expected = new Gson().fromJson(RESPONSE, DirectionsResponse.class);
+
+        assertSameResponse(expected, streaming().parse(new StringReader(RESPONSE)));
+        assertSameResponse(expected, streaming().parse(RESPONSE.getBytes(UTF_8)));
+        assertSameResponse(expected, lazy().parse(RESPONSE.getBytes(UTF_8)));
+    }
+
+    @Test
+    public void parse_readsEscapedStringsAndSkipsUnknownFields() throws Exception {
+        for (DirectionsResponse response : new DirectionsResponse[]{
+                streaming().parse(new StringReader(RESPONSE)), lazy().parse(RESPONSE.getBytes(UTF_8))}) {
+            assertEquals("Caf\u00e9 \"Central\"", response.getDestination().getProperties().getName());
+            assertEquals(1, response.getWaypoints().size());
+            assertEquals(3, response.getRoutes().size());
+
+            DirectionsRoute route = response.getRoutes().get(0);
+            assertEquals("Main Street \\ {1}", route.getSummary());
+            assertEquals(3, route.getGeometry().size());
+            assertEquals("Head \"south\" on [Main]", route.getSteps().get(0).getManeuver().getInstruction());
+            assertEquals("You have arrived\n\u2713", route.getSteps().get(1).getManeuver().getInstruction());
+            assertEquals(1350, response.getRoutes().get(1).getDistance());
+            assertNull(response.getRoutes().get(2).getGeometry());
+        }
+    }
+
+    @Test
+    public void parse_skipsAlternativeSteps() throws Exception {
+        DirectionsResponseParser.Builder builder = new DirectionsResponseParser.Builder()
+                .setSkipAlternativeSteps(true);
+        for (DirectionsResponse response : new DirectionsResponse[]{
+                builder.build().parse(new StringReader(RESPONSE)),
+                builder.setLazyRoutes(true).build().parse(RESPONSE.getBytes(UTF_8))}) {
+            assertEquals(2, response.getRoutes().get(0).getSteps().size());
+            for (DirectionsRoute alternative : response.getRoutes().subList(1, 3)) {
+                assertTrue(alternative.getSteps().isEmpty());
+            }
+            assertEquals(3, response.getRoutes().get(1).getGeometry().size());
+            assertEquals("Third Street", response.getRoutes().get(2).getSummary());
+        }
+    }
+
+    @Test
+    public void parse_skipsAlternativeGeometry() throws Exception {
+        DirectionsResponseParser.Builder builder = new DirectionsResponseParser.Builder()
+                .setSkipAlternativeGeometry(true);
+        for (DirectionsResponse response : new DirectionsResponse[]{
+                builder.build().parse(new StringReader(RESPONSE)),
+                builder.setLazyRoutes(true).build().parse(RESPONSE.getBytes(UTF_8))}) {
+            assertEquals(3, response.getRoutes().get(0).getGeometry().size());
+            assertNull(response.getRoutes().get(1).getGeometry());
+            assertNull(response.getRoutes().get(2).getGeometry());
+            assertEquals(1, response.getRoutes().get(1).getSteps().size());
+            assertEquals(1350, response.getRoutes().get(1).getDistance());
+        }
+    }
+
+    @Test
+    public void parse_lazyRoutesDecodeOnFirstAccess() throws Exception {
+        byte[] json = TestRoutes.json("Main Street").getBytes(UTF_8);
+        DirectionsRoute route = lazy().parse(json).getRoutes().get(0);
+
+        assertTrue(route.isLazy());
+        assertEquals("Main Street", route.getSummary());
+        assertEquals(5, route.getGeometry().size());
+        assertEquals(4, route.getSteps().size());
+        assertSame(route.getGeometry(), route.getGeometry());
+    }
+
+    @Test
+    public void parse_rejectsMalformedJson() throws Exception {
+        String truncated = RESPONSE.substring(0, RESPONSE.length() / 2);
+        try {
+            streaming().parse(new StringReader(truncated));
+            fail();
+        } catch (IOException expected) {
+        }
+        try {
+            lazy().parse(truncated.getBytes(UTF_8));
+            fail();
+        } catch (IOException expected) {
+        }
+    }
+
+    private static DirectionsResponseParser streaming() {
+        return new DirectionsResponseParser.Builder().build();
+    }
+
+    private static DirectionsResponseParser lazy() {
+        return new DirectionsResponseParser.Builder().setLazyRoutes(true).build();
+    }
+
+    private static void assertSameResponse(DirectionsResponse expected, DirectionsResponse actual) {
+        assertSameFeature(expected.getOrigin(), actual.getOrigin());
+        assertSameFeature(expected.getDestination(), actual.getDestination());
+        assertEquals(expected.getWaypoints().size(), actual.getWaypoints().size());
+        for (int i = 0; i < expected.getWaypoints().size(); i++) {
+            assertSameFeature(expected.getWaypoints().get(i), actual.getWaypoints().get(i));
+        }
+
+        assertEquals(expected.getRoutes().size(), actual.getRoutes().size());
+        for (int i = 0; i < expected.getRoutes().size(); i++) {
+            DirectionsRoute expectedRoute = expected.getRoutes().get(i);
+            DirectionsRoute actualRoute = actual.getRoutes().get(i);
+            assertEquals(expectedRoute.getDistance(), actualRoute.getDistance());
+            assertEquals(expectedRoute.getDuration(), actualRoute.getDuration());
+            assertEquals(expectedRoute.getSummary(), actualRoute.getSummary());
+            assertSameGeometry(expectedRoute.getGeometry(), actualRoute.getGeometry());
+            assertSameSteps(expectedRoute.getSteps(), actualRoute.getSteps());
+        }
+    }
+
+    private static void assertSameFeature(DirectionsFeature expected, DirectionsFeature actual) {
+        assertEquals(expected.getType(), actual.getType());
+        assertEquals(expected.getGeometry().getType(), actual.getGeometry().getType());
+        assertEquals(expected.getGeometry().getCoordinates(), actual.getGeometry().getCoordinates());
+        assertEquals(expected.getProperties().getName(), actual.getProperties().getName());
+    }
+
+    private static void assertSameGeometry(RouteGeometry expected, RouteGeometry actual) {
+        if (expected == null) {
+            assertNull(actual);
+            return;
+        }
+        assertEquals(expected.getType(), actual.getType());
+        assertArrayEquals(expected.getPackedCoordinates(), actual.getPackedCoordinates(), 0);
+    }
+
+    private static void assertSameSteps(List<RouteStep> expected, List<RouteStep> actual) {
+        assertEquals(expected.size(), actual.size());
+        for (int i = 0; i < expected.size(); i++) {
+            RouteStep expectedStep = expected.get(i);
+            RouteStep actualStep = actual.get(i);
+            assertEquals(expectedStep.getDistance(), actualStep.getDistance());
+            assertEquals(expectedStep.getDuration(), actualStep.getDuration());
+            assertEquals(expectedStep.getWayName(), actualStep.getWayName());
+            assertEquals(expectedStep.getDirection(), actualStep.getDirection());
+            assertEquals(expectedStep.getHeading(), actualStep.getHeading(), 0);
+
+            StepManeuver expectedManeuver = expectedStep.getManeuver();
+            StepManeuver actualManeuver = actualStep.getManeuver();
+            assertEquals(expectedManeuver.getType(), actualManeuver.getType());
+            assertEquals(expectedManeuver.getInstruction(), actualManeuver.getInstruction());
+            assertEquals(expectedManeuver.getMode(), actualManeuver.getMode());
+            assertEquals(expectedManeuver.getLocation().getType(), actualManeuver.getLocation().getType());
+            assertEquals(expectedManeuver.getLocation().getCoordinates(),
+                    actualManeuver.getLocation().getCoordinates());
+        }
+    }
+
+    private static String feature(double longitude, double latitude, String name) {
+        return "{\"type\":\"Feature\",\"geometry\":{\"type\":\"Point\",\"coordinates\":[" + longitude + ","
+                + latitude + "]},\"properties\":{\"name\":\"" + name + "\"}}";
+    }
+
+    private static String step(String type, String instruction, double longitude, double latitude) {
+        return "{\"distance\":600,\"duration\":90,\"wayName\":\"Main \\\"Street\\\"\",\"direction\":\"S\""
+                + ",\"heading\":182.5,\"unknown\":[{\"x\":\"]\"}]"
+                + ",\"maneuver\":{\"type\":\"" + type + "\",\"location\":{\"type\":\"Point\",\"coordinates\":["
+                + longitude + "," + latitude + "]},\"instruction\":\"" + instruction + "\",\"mode\":\"driving\""
+                + ",\"modifier\":\"left\"}}";
+    }
+}
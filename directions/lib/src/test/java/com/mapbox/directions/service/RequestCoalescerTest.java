@@ -0,0 +1,190 @@
+package com.mapbox.directions.service;
+
+import com.mapbox.directions.DirectionsCriteria;
+import com.mapbox.directions.MapboxDirections;
+import com.mapbox.directions.RecordingCallback;
+import com.mapbox.directions.TestRoutes;
+import com.mapbox.directions.TestTransports;
+import com.mapbox.directions.service.models.DirectionsResponse;
+import com.squareup.okhttp.mockwebserver.Dispatcher;
+import com.squareup.okhttp.mockwebserver.MockResponse;
+import com.squareup.okhttp.mockwebserver.MockWebServer;
+import com.squareup.okhttp.mockwebserver.RecordedRequest;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import retrofit.Call;
+import retrofit.Callback;
+import retrofit.Response;
+
+import static org.junit.Assert.*;
+
+public class RequestCoalescerTest {
+
+    private final CountDownLatch release = new CountDownLatch(1);
+    private final CountDownLatch received = new CountDownLatch(1);
+    private MockWebServer server;
+    private DirectionsTransport transport;
+
+    @Before
+    public void setUp() throws Exception {
+        server = new MockWebServer();
+        // Holds every response until the test releases it, so callers pile up on one flight
+        server.setDispatcher(new Dispatcher() {
+            @Override
+            public MockResponse dispatch(RecordedRequest request) throws InterruptedException {
+                received.countDown();
+                release.await();
+                return new MockResponse().setBody(TestRoutes.json("Main Street"));
+            }
+        });
+        server.start();
+        transport = TestTransports.forServer(server).setCoalescing(true).build();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        release.countDown();
+        server.shutdown();
+    }
+
+    @Test
+    public void concurrentEnqueues_makeOneRequest() throws Exception {
+        final int callers = 32;
+        final CountDownLatch start = new CountDownLatch(1);
+        final CountDownLatch enqueued = new CountDownLatch(callers);
+        final List<RecordingCallback> callbacks = new ArrayList<>();
+        for (int i = 0; i < callers; i++) {
+            final RecordingCallback callback = new RecordingCallback();
+            callbacks.add(callback);
+            new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        MapboxDirections request = TestTransports.request(transport).build();
+                        start.await();
+                        request.enqueue(callback);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    } finally {
+                        enqueued.countDown();
+                    }
+                }
+            }).start();
+        }
+
+        start.countDown();
+        assertTrue(enqueued.await(10, TimeUnit.SECONDS));
+        assertTrue(received.await(10, TimeUnit.SECONDS));
+        assertEquals(1, transport.getCoalescer().getInFlightCount());
+        release.countDown();
+
+        for (RecordingCallback callback : callbacks) {
+            Response<DirectionsResponse> response = callback.await().getResponse();
+            assertNotNull(response);
+            assertEquals("Main Street", response.body().getRoutes().get(0).getSummary());
+            assertEquals(1, callback.getDeliveryCount());
+        }
+        assertEquals(1, server.getRequestCount());
+        assertEquals(0, transport.getCoalescer().getInFlightCount());
+    }
+
+    @Test
+    public void oneCallerCanceling_leavesTheOthersWaiting() throws Exception {
+        CancelCountingCall shared = new CancelCountingCall(newNetworkCall());
+        Call<DirectionsResponse> first = transport.getCoalescer().coalesce(shared, "key");
+        Call<DirectionsResponse> second = transport.getCoalescer().coalesce(shared, "key");
+        Call<DirectionsResponse> third = transport.getCoalescer().coalesce(shared, "key");
+
+        RecordingCallback firstCallback = new RecordingCallback();
+        RecordingCallback secondCallback = new RecordingCallback();
+        RecordingCallback thirdCallback = new RecordingCallback();
+        first.enqueue(firstCallback);
+        second.enqueue(secondCallback);
+        third.enqueue(thirdCallback);
+        assertTrue(received.await(10, TimeUnit.SECONDS));
+
+        second.cancel();
+        assertTrue(secondCallback.await().getFailure() instanceof IOException);
+        assertEquals(0, shared.cancels.get());
+        assertFalse(firstCallback.isDone());
+
+        release.countDown();
+        assertTrue(firstCallback.await().getResponse().isSuccess());
+        assertTrue(thirdCallback.await().getResponse().isSuccess());
+        assertEquals(1, secondCallback.getDeliveryCount());
+        assertEquals(1, server.getRequestCount());
+    }
+
+    @Test
+    public void everyCallerCanceling_cancelsTheSharedCall() throws Exception {
+        CancelCountingCall shared = new CancelCountingCall(newNetworkCall());
+        Call<DirectionsResponse> first = transport.getCoalescer().coalesce(shared, "key");
+        Call<DirectionsResponse> second = transport.getCoalescer().coalesce(shared, "key");
+
+        RecordingCallback firstCallback = new RecordingCallback();
+        RecordingCallback secondCallback = new RecordingCallback();
+        first.enqueue(firstCallback);
+        second.enqueue(secondCallback);
+        assertTrue(received.await(10, TimeUnit.SECONDS));
+
+        first.cancel();
+        second.cancel();
+        assertEquals(1, shared.cancels.get());
+        assertEquals(0, transport.getCoalescer().getInFlightCount());
+        assertTrue(firstCallback.await().getFailure() instanceof IOException);
+        assertTrue(secondCallback.await().getFailure() instanceof IOException);
+
+        // The shared call's own failure isn't reported a second time
+        release.countDown();
+        Thread.sleep(100);
+        assertEquals(1, firstCallback.getDeliveryCount());
+        assertEquals(1, secondCallback.getDeliveryCount());
+    }
+
+    private Call<DirectionsResponse> newNetworkCall() {
+        return transport.getService().calculate(DirectionsCriteria.PROFILE_DRIVING,
+                "-77.0365,38.8977;-77.032,38.8895", TestTransports.ACCESS_TOKEN, false, null, null, false);
+    }
+
+    private static class CancelCountingCall implements Call<DirectionsResponse> {
+
+        final Call<DirectionsResponse> delegate;
+        final AtomicInteger cancels = new AtomicInteger();
+
+        CancelCountingCall(Call<DirectionsResponse> delegate) {
+            this.delegate = delegate;
+        }
+
+        @Override
+        public Response<DirectionsResponse> execute() throws IOException {
+            return delegate.execute();
+        }
+
+        @Override
+        public void enqueue(Callback<DirectionsResponse> callback) {
+            delegate.enqueue(callback);
+        }
+
+        @Override
+        public void cancel() {
+            cancels.incrementAndGet();
+            delegate.cancel();
+        }
+
+        @Override
+        @SuppressWarnings("CloneDoesntCallSuperClone")
+        public Call<DirectionsResponse> clone() {
+            return new CancelCountingCall(delegate.clone());
+        }
+    }
+}
@@ -0,0 +1,228 @@
+package com.mapbox.directions.service;
+
+import com.mapbox.directions.MapboxDirections;
+import com.mapbox.directions.RecordingCallback;
+import com.mapbox.directions.TestRoutes;
+import com.mapbox.directions.TestTransports;
+import com.mapbox.directions.service.models.DirectionsResponse;
+import com.squareup.okhttp.mockwebserver.Dispatcher;
+import com.squareup.okhttp.mockwebserver.MockResponse;
+import com.squareup.okhttp.mockwebserver.MockWebServer;
+import com.squareup.okhttp.mockwebserver.RecordedRequest;
+import com.squareup.okhttp.mockwebserver.SocketPolicy;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.Random;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import retrofit.Response;
+
+import static org.junit.Assert.*;
+
+public class RetryPolicyTest {
+
+    // Answers requests in arrival order, each after its own delay
+    private final BlockingQueue<Step> steps = new LinkedBlockingQueue<>();
+    private MockWebServer server;
+
+    @Before
+    public void setUp() throws Exception {
+        server = new MockWebServer();
+        server.setDispatcher(new Dispatcher() {
+            @Override
+            public MockResponse dispatch(RecordedRequest request) throws InterruptedException {
+                Step step = steps.take();
+                if (step.delayMs > 0) {
+                    Thread.sleep(step.delayMs);
+                }
+                return step.response;
+            }
+        });
+        server.start();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        server.shutdown();
+    }
+
+    @Test
+    public void execute_retriesAfterA503() throws Exception {
+        enqueue(new MockResponse().setResponseCode(503), 0);
+        enqueue(ok("Main Street"), 0);
+        RetryPolicy policy = new RetryPolicy.Builder()
+                .setInitialBackoff(10, TimeUnit.MILLISECONDS)
+                .setRandom(fixedRandom(0))
+                .build();
+
+        Response<DirectionsResponse> response = TestTransports.request(transport(policy)).build().execute();
+
+        assertTrue(response.isSuccess());
+        assertEquals("Main Street", response.body().getRoutes().get(0).getSummary());
+        assertEquals(2, server.getRequestCount());
+        assertEquals(2, policy.getAttemptCount());
+        assertEquals(1, policy.getRetryCount());
+    }
+
+    @Test
+    public void enqueue_retriesAfterA503() throws Exception {
+        enqueue(new MockResponse().setResponseCode(503), 0);
+        enqueue(ok("Main Street"), 0);
+        RetryPolicy policy = new RetryPolicy.Builder()
+                .setInitialBackoff(10, TimeUnit.MILLISECONDS)
+                .setRandom(fixedRandom(0))
+                .build();
+
+        RecordingCallback callback = new RecordingCallback();
+        TestTransports.request(transport(policy)).build().enqueue(callback);
+
+        assertTrue(callback.await().getResponse().isSuccess());
+        assertEquals(2, server.getRequestCount());
+        assertEquals(1, policy.getRetryCount());
+    }
+
+    @Test
+    public void retryAfter_isHonoured() throws Exception {
+        enqueue(new MockResponse().setResponseCode(503).addHeader("Retry-After", "1"), 0);
+        enqueue(ok("Main Street"), 0);
+        // No jitter, the wait can only come from the header
+        RetryPolicy policy = new RetryPolicy.Builder().setRandom(fixedRandom(0)).build();
+
+        long start = System.nanoTime();
+        Response<DirectionsResponse> response = TestTransports.request(transport(policy)).build().execute();
+        long elapsedMs = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+
+        assertTrue(response.isSuccess());
+        assertTrue("Retried after " + elapsedMs + " ms", elapsedMs >= 1000);
+    }
+
+    @Test
+    public void deadlinePassingDuringBackoff_failsWithInterruptedIOException() throws Exception {
+        for (int i = 0; i < 8; i++) {
+            enqueue(new MockResponse().setSocketPolicy(SocketPolicy.DISCONNECT_AFTER_REQUEST), 0);
+        }
+        // A 990 ms backoff doesn't fit in a 500 ms deadline
+        RetryPolicy policy = new RetryPolicy.Builder()
+                .setInitialBackoff(1, TimeUnit.SECONDS)
+                .setMaxBackoff(1, TimeUnit.SECONDS)
+                .setRandom(fixedRandom(0.99))
+                .build();
+        DirectionsTransport transport = transport(policy);
+
+        RecordingCallback callback = new RecordingCallback();
+        TestTransports.request(transport).setDeadline(500, TimeUnit.MILLISECONDS).build().enqueue(callback);
+        assertTrue(callback.await().getFailure() instanceof InterruptedIOException);
+
+        try {
+            TestTransports.request(transport).setDeadline(500, TimeUnit.MILLISECONDS).build().execute();
+            fail();
+        } catch (InterruptedIOException e) {
+            // Expected
+        }
+        assertEquals(2, policy.getDeadlineExceededCount());
+        assertEquals(0, policy.getRetryCount());
+    }
+
+    @Test
+    public void deadlinePassingDuringAttempt_failsWithInterruptedIOException() throws Exception {
+        enqueue(new MockResponse().setResponseCode(503), 0);
+        enqueue(ok("Main Street"), 2000);
+        RetryPolicy policy = new RetryPolicy.Builder().setRandom(fixedRandom(0)).build();
+
+        RecordingCallback callback = new RecordingCallback();
+        TestTransports.request(transport(policy)).setDeadline(300, TimeUnit.MILLISECONDS).build().enqueue(callback);
+
+        assertTrue(callback.await().getFailure() instanceof InterruptedIOException);
+        assertEquals(1, policy.getRetryCount());
+        assertEquals(1, policy.getDeadlineExceededCount());
+    }
+
+    @Test
+    public void hedge_winsOverASlowFirstAttempt() throws Exception {
+        enqueue(ok("Slow"), 2000);
+        enqueue(ok("Fast"), 0);
+        RetryPolicy policy = new RetryPolicy.Builder()
+                .setMaxAttempts(2)
+                .setHedging(true)
+                .setHedgeDelay(100, TimeUnit.MILLISECONDS)
+                .build();
+
+        RecordingCallback callback = new RecordingCallback();
+        long start = System.nanoTime();
+        TestTransports.request(transport(policy)).build().enqueue(callback);
+
+        Response<DirectionsResponse> response = callback.await().getResponse();
+        assertEquals("Fast", response.body().getRoutes().get(0).getSummary());
+        assertTrue(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) < 2000);
+        assertEquals(1, policy.getHedgeCount());
+        assertEquals(1, policy.getHedgeWinCount());
+        assertEquals(2, server.getRequestCount());
+    }
+
+    @Test
+    public void cancelWhileBackingOff_deliversOneFailure() throws Exception {
+        enqueue(new MockResponse().setResponseCode(503), 0);
+        enqueue(ok("Main Street"), 0);
+        RetryPolicy policy = new RetryPolicy.Builder()
+                .setInitialBackoff(1, TimeUnit.SECONDS)
+                .setMaxBackoff(1, TimeUnit.SECONDS)
+                .setRandom(fixedRandom(0.99))
+                .build();
+
+        RecordingCallback callback = new RecordingCallback();
+        MapboxDirections request = TestTransports.request(transport(policy)).build();
+        request.enqueue(callback);
+        server.takeRequest();
+        // Let the 503 come back, the call is then waiting out its backoff
+        Thread.sleep(200);
+        request.cancel();
+
+        Throwable failure = callback.await().getFailure();
+        assertTrue(failure instanceof IOException);
+        assertFalse(failure instanceof InterruptedIOException);
+
+        // The retry that was scheduled never happens
+        Thread.sleep(1200);
+        assertEquals(1, callback.getDeliveryCount());
+        assertEquals(1, server.getRequestCount());
+    }
+
+    private DirectionsTransport transport(RetryPolicy policy) {
+        return TestTransports.forServer(server).setRetryPolicy(policy).build();
+    }
+
+    private void enqueue(MockResponse response, long delayMs) {
+        steps.add(new Step(response, delayMs));
+    }
+
+    private static MockResponse ok(String summary) {
+        return new MockResponse().setBody(TestRoutes.json(summary));
+    }
+
+    private static Random fixedRandom(final double value) {
+        return new Random() {
+            @Override
+            public double nextDouble() {
+                return value;
+            }
+        };
+    }
+
+    private static class Step {
+
+        final MockResponse response;
+        final long delayMs;
+
+        Step(MockResponse response, long delayMs) {
+            this.response = response;
+            this.delayMs = delayMs;
+        }
+    }
+}
@@ -0,0 +1,88 @@
+package com.mapbox.directions.service;
+
+import com.mapbox.directions.TestRoutes;
+import com.mapbox.directions.service.models.DirectionsResponse;
+import com.mapbox.directions.service.models.RouteStep;
+
+import org.junit.Test;
+
+import java.io.StringReader;
+
+import static org.junit.Assert.*;
+
+public class StringInternerTest {
+
+    @Test
+    public void intern_sharesEqualStrings() throws Exception {
+        StringInterner interner = new StringInterner(64);
+        String first = interner.intern(new String("turn left"));
+
+        assertSame(first, interner.intern(new String("turn left")));
+        assertEquals("bear right", interner.intern("bear right"));
+        assertSame(first, interner.intern(new String("turn left")));
+        assertNull(interner.intern(null));
+    }
+
+    @Test
+    public void intern_passesLongStringsThrough() throws Exception {
+        StringInterner interner = new StringInterner(64);
+        StringBuilder builder = new StringBuilder();
+        while (builder.length() <= StringInterner.MAX_LENGTH) {
+            builder.append('x');
+        }
+
+        String longest = builder.substring(0, StringInterner.MAX_LENGTH);
+        assertSame(interner.intern(longest), interner.intern(new String(longest)));
+        String tooLong = builder.toString();
+        String copy = new String(tooLong);
+        assertSame(copy, interner.intern(copy));
+        assertNotSame(tooLong, interner.intern(copy));
+    }
+
+    @Test
+    public void intern_staysWithinItsCapacity() throws Exception {
+        StringInterner interner = new StringInterner(100);
+        assertEquals(128, interner.getCapacity());
+        String first = interner.intern(new String("Main Street"));
+
+        // Every slot is eventually taken by others, the table doesn't grow to keep the first
+        for (int i = 0; i < 10000; i++) {
+            interner.intern("Street " + i);
+        }
+        assertNotSame(first, interner.intern(new String("Main Street")));
+
+        // Whatever was just added is shared again
+        String again = interner.intern(new String("Main Street"));
+        assertSame(again, interner.intern(new String("Main Street")));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void constructor_rejectsAnEmptyTable() throws Exception {
+        new StringInterner(0);
+    }
+
+    @Test
+    public void parser_sharesStepStringsAcrossResponses() throws Exception {
+        DirectionsResponseParser parser = new DirectionsResponseParser.Builder()
+                .setStringInterner(new StringInterner(StringInterner.DEFAULT_CAPACITY))
+                .build();
+        RouteStep first = parse(parser).getRoutes().get(0).getSteps().get(1);
+        RouteStep second = parse(parser).getRoutes().get(0).getSteps().get(1);
+
+        assertSame(first.getWayName(), second.getWayName());
+        assertSame(first.getDirection(), second.getDirection());
+        assertSame(first.getManeuver().getType(), second.getManeuver().getType());
+        assertSame(first.getManeuver().getMode(), second.getManeuver().getMode());
+        // Instructions are mostly unique and kept as parsed
+        assertNotSame(first.getManeuver().getInstruction(), second.getManeuver().getInstruction());
+
+        // Without a table every response has its own copies
+        parser = new DirectionsResponseParser.Builder().setStringInterner(null).build();
+        assertNotSame(parse(parser).getRoutes().get(0).getSteps().get(1).getWayName(),
+                parse(parser).getRoutes().get(0).getSteps().get(1).getWayName());
+    }
+
+    private static DirectionsResponse parse(DirectionsResponseParser parser) throws Exception {
+        return parser.parse(new StringReader(TestRoutes.json("Main Street")));
+    }
+}
@@ -0,0 +1,145 @@
+package com.mapbox.directions.service.models;
+
+import com.mapbox.directions.geometry.GeoMath;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class DirectionsRouteTest {
+
+    private final static int SAMPLES_PER_SEGMENT = 2000;
+
+    @Test
+    public void isOffRoute_agreesWithDenseSampling() throws Exception {
+        Random random = new Random(5);
+        for (int i = 0; i < 500; i++) {
+            List<Waypoint> polyline = randomPolyline(random);
+            Waypoint center = polyline.get(random.nextInt(polyline.size()));
+            Waypoint point = new Waypoint(
+                    center.getLongitude() + (random.nextDouble() - 0.5) * 0.02,
+                    center.getLatitude() + (random.nextDouble() - 0.5) * 0.02);
+
+            // Sampling can only overestimate the distance, by at most half a sampling step
+            double[] sampled = sampledDistance(point, polyline);
+            double upper = sampled[0];
+            double lower = sampled[0] - sampled[1] / 2;
+
+            assertFalse(DirectionsRoute.isOffRoute(point, polyline, (upper + 0.01) / GeoMath.METERS_PER_MILE));
+            if (lower > 0.02) {
+                assertTrue(DirectionsRoute.isOffRoute(point, polyline, (lower - 0.01) / GeoMath.METERS_PER_MILE));
+            }
+        }
+    }
+
+    @Test
+    public void isOffRoute_measuresLongSegmentsExactly() throws Exception {
+        // 50 km segment, the point 100 m north of its middle
+        List<Waypoint> polyline = Arrays.asList(new Waypoint(-77.3, 38.9), new Waypoint(-76.72, 38.9));
+        double[] middle = new double[2];
+        GeoMath.interpolate(-77.3, 38.9, -76.72, 38.9, 0.5, middle);
+        Waypoint point = new Waypoint(middle[0], middle[1] + 100 / GeoMath.METERS_PER_DEGREE);
+
+        assertTrue(DirectionsRoute.isOffRoute(point, polyline, 99.5 / GeoMath.METERS_PER_MILE));
+        assertFalse(DirectionsRoute.isOffRoute(point, polyline, 100.5 / GeoMath.METERS_PER_MILE));
+        assertFalse(DirectionsRoute.isOffRoute(point, polyline));
+    }
+
+    @Test
+    public void isOffRoute_measuresSegmentsBowingAwayFromTheirProjection() throws Exception {
+        // The point is on the last segment, at its great circle middle 42 km north of the flat line
+        List<Waypoint> polyline = Arrays.asList(new Waypoint(-90, 60.6), new Waypoint(-90, 60.55),
+                new Waypoint(-100, 60), new Waypoint(-80, 60));
+        double[] middle = new double[2];
+        GeoMath.interpolate(-100, 60, -80, 60, 0.5, middle);
+        Waypoint point = new Waypoint(middle[0], middle[1]);
+        assertEquals(60.378, point.getLatitude(), 0.001);
+
+        assertFalse(DirectionsRoute.isOffRoute(point, polyline, 0.1));
+        assertFalse(DirectionsRoute.isOffRoute(point, polyline, 1));
+        assertFalse(DirectionsRoute.isOffRoute(point, polyline, 5));
+        assertTrue(DirectionsRoute.isOffRoute(new Waypoint(-90, 60.2), polyline, 1));
+    }
+
+    @Test
+    public void isOffRoute_agreesWithDenseSamplingOnLongSegments() throws Exception {
+        Random random = new Random(7);
+        for (int i = 0; i < 200; i++) {
+            // Segments of up to a few hundred kilometers, up to 75 degrees north or south
+            List<Waypoint> polyline = new ArrayList<>();
+            double longitude = random.nextDouble() * 360 - 180;
+            double latitude = (random.nextDouble() * 2 - 1) * 72;
+            for (int j = 0; j < 2 + random.nextInt(6); j++) {
+                polyline.add(new Waypoint(longitude, Math.max(-75, Math.min(75, latitude))));
+                longitude += (random.nextDouble() - 0.5) * 10;
+                latitude += (random.nextDouble() - 0.5) * 2;
+            }
+            Waypoint from = polyline.get(random.nextInt(polyline.size() - 1));
+            Waypoint to = polyline.get(polyline.indexOf(from) + 1);
+            double[] along = new double[2];
+            GeoMath.interpolate(from.getLongitude(), from.getLatitude(), to.getLongitude(), to.getLatitude(),
+                    random.nextDouble(), along);
+            Waypoint point = new Waypoint(along[0], along[1] + (random.nextDouble() - 0.5) * 0.2);
+
+            double[] sampled = sampledDistance(point, polyline);
+            double upper = sampled[0];
+            double lower = sampled[0] - sampled[1] / 2;
+
+            assertFalse(DirectionsRoute.isOffRoute(point, polyline, (upper + 0.01) / GeoMath.METERS_PER_MILE));
+            if (lower > 0.02) {
+                assertTrue(DirectionsRoute.isOffRoute(point, polyline, (lower - 0.01) / GeoMath.METERS_PER_MILE));
+            }
+        }
+    }
+
+    @Test
+    public void isOffRoute_handlesDegeneratePolylines() throws Exception {
+        Waypoint point = new Waypoint(-77.0365, 38.8977);
+        assertFalse(DirectionsRoute.isOffRoute(point, Collections.<Waypoint>emptyList()));
+
+        Waypoint vertex = new Waypoint(-77.0365, 38.9077);
+        double distance = GeoMath.distance(-77.0365, 38.8977, -77.0365, 38.9077) / GeoMath.METERS_PER_MILE;
+        assertTrue(DirectionsRoute.isOffRoute(point, Collections.singletonList(vertex), distance - 0.001));
+        assertFalse(DirectionsRoute.isOffRoute(point, Collections.singletonList(vertex), distance + 0.001));
+        assertFalse(DirectionsRoute.isOffRoute(point, Arrays.asList(vertex, vertex), distance + 0.001));
+    }
+
+    private static List<Waypoint> randomPolyline(Random random) {
+        int size = 2 + random.nextInt(8);
+        double longitude = random.nextDouble() * 360 - 180;
+        double latitude = random.nextDouble() * 120 - 60;
+        List<Waypoint> polyline = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            polyline.add(new Waypoint(longitude, latitude));
+            longitude += (random.nextDouble() - 0.5) * 0.02;
+            latitude += (random.nextDouble() - 0.5) * 0.02;
+        }
+        return polyline;
+    }
+
+    // Shortest distance to points sampled along each segment, and the longest sampling step
+    private static double[] sampledDistance(Waypoint point, List<Waypoint> polyline) {
+        double shortest = Double.POSITIVE_INFINITY;
+        double step = 0;
+        double[] sample = new double[2];
+        for (int i = 0; i + 1 < polyline.size(); i++) {
+            Waypoint from = polyline.get(i);
+            Waypoint to = polyline.get(i + 1);
+            step = Math.max(step, GeoMath.distance(from.getLongitude(), from.getLatitude(),
+                    to.getLongitude(), to.getLatitude()) / SAMPLES_PER_SEGMENT);
+            for (int j = 0; j <= SAMPLES_PER_SEGMENT; j++) {
+                GeoMath.interpolate(from.getLongitude(), from.getLatitude(), to.getLongitude(), to.getLatitude(),
+                        j / (double) SAMPLES_PER_SEGMENT, sample);
+                shortest = Math.min(shortest, GeoMath.distance(point.getLongitude(), point.getLatitude(),
+                        sample[0], sample[1]));
+            }
+        }
+        return new double[]{shortest, step};
+    }
+}
@@ -0,0 +1,110 @@
+package com.mapbox.directions.service.models;
+
+import com.google.gson.Gson;
+import com.google.gson.stream.JsonReader;
+import com.mapbox.directions.geometry.PolylineCodec;
+
+import org.junit.Test;
+
+import java.io.StringReader;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class RouteGeometryTest {
+
+    @Test
+    public void adapter_readsGeoJson() throws Exception {
+        RouteGeometry geometry = read("{\"type\":\"LineString\",\"bbox\":[0,0,1,1],"
+                + "\"coordinates\":[[-77.0365,38.8977],[-77.032,38.8895,12.5]]}");
+
+        assertEquals("LineString", geometry.getType());
+        assertEquals(2, geometry.size());
+        assertArrayEquals(new double[]{-77.0365, 38.8977, -77.032, 38.8895}, geometry.getPackedCoordinates(), 0);
+        assertEquals(-77.032, geometry.getLongitude(1), 0);
+        assertEquals(38.8895, geometry.getLatitude(1), 0);
+        assertNull(read("null"));
+    }
+
+    @Test
+    public void adapter_readsPolylines() throws Exception {
+        double[] coordinates = {-77.0365, 38.8977, -77.032, 38.8895};
+        RouteGeometry geometry = read('"' + PolylineCodec.encode(coordinates, PolylineCodec.PRECISION_6) + '"');
+
+        assertEquals(RouteGeometryTypeAdapter.TYPE_LINE_STRING, geometry.getType());
+        assertArrayEquals(coordinates, geometry.getPackedCoordinates(), 1e-9);
+
+        // Same string with the precision of the original format
+        String encoded = PolylineCodec.encode(coordinates, PolylineCodec.PRECISION_5);
+        JsonReader in = new JsonReader(new StringReader('"' + encoded + '"'));
+        in.setLenient(true);
+        assertArrayEquals(coordinates, new RouteGeometryTypeAdapter(PolylineCodec.PRECISION_5).read(in)
+                .getPackedCoordinates(), 1e-9);
+        assertEquals(encoded, RouteGeometry.fromPolyline(encoded, PolylineCodec.PRECISION_5)
+                .toPolyline(PolylineCodec.PRECISION_5));
+    }
+
+    @Test
+    public void adapter_readsNoGeometryAsNull() throws Exception {
+        assertNull(read("false"));
+    }
+
+    @Test
+    public void adapter_writesWhatItReads() throws Exception {
+        RouteGeometry geometry = new RouteGeometry("LineString", new double[]{-77.0365, 38.8977, -77.032, 38.8895});
+        String json = new Gson().toJson(geometry);
+
+        assertEquals("{\"type\":\"LineString\",\"coordinates\":[[-77.0365,38.8977],[-77.032,38.8895]]}", json);
+        assertArrayEquals(geometry.getPackedCoordinates(), read(json).getPackedCoordinates(), 0);
+    }
+
+    @Test
+    public void views_readThePackedCoordinates() throws Exception {
+        RouteGeometry geometry = new RouteGeometry("LineString", new double[]{-77.0365, 38.8977, -77.032, 38.8895});
+
+        List<List<Double>> coordinates = geometry.getCoordinates();
+        assertEquals(2, coordinates.size());
+        assertEquals(Arrays.asList(-77.032, 38.8895), coordinates.get(1));
+        List<Waypoint> waypoints = geometry.getWaypoints();
+        assertEquals(2, waypoints.size());
+        assertEquals(-77.0365, waypoints.get(0).getLongitude(), 0);
+        assertEquals(38.8977, waypoints.get(0).getLatitude(), 0);
+
+        try {
+            coordinates.add(Arrays.asList(0.0, 0.0));
+            fail();
+        } catch (UnsupportedOperationException expected) {
+        }
+        try {
+            coordinates.get(0).set(0, 0.0);
+            fail();
+        } catch (UnsupportedOperationException expected) {
+        }
+        try {
+            waypoints.remove(0);
+            fail();
+        } catch (UnsupportedOperationException expected) {
+        }
+        assertEquals(-77.0365, geometry.getLongitude(0), 0);
+    }
+
+    @Test
+    public void setCoordinates_packsThem() throws Exception {
+        RouteGeometry geometry = new RouteGeometry();
+        geometry.setCoordinates(Arrays.asList(Arrays.asList(-77.0365, 38.8977), Arrays.asList(-77.032, 38.8895)));
+
+        assertArrayEquals(new double[]{-77.0365, 38.8977, -77.032, 38.8895}, geometry.getPackedCoordinates(), 0);
+        try {
+            geometry.setPackedCoordinates(new double[]{-77.0365});
+            fail();
+        } catch (IllegalArgumentException expected) {
+        }
+    }
+
+    private static RouteGeometry read(String json) throws Exception {
+        JsonReader in = new JsonReader(new StringReader(json));
+        in.setLenient(true);
+        return new RouteGeometryTypeAdapter().read(in);
+    }
+}
@@ -0,0 +1,58 @@
+package com.mapbox.directions.service.models;
+
+import com.mapbox.directions.DirectionsCriteria;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class StepManeuverTest {
+
+    @Test
+    public void codes_matchTheStrings() throws Exception {
+        StepManeuver maneuver = new StepManeuver();
+        maneuver.setType("enter roundabout");
+        maneuver.setMode("movable bridge");
+        RouteStep step = new RouteStep();
+        step.setDirection("SW");
+
+        assertEquals(DirectionsCriteria.MANEUVER_ENTER_ROUNDABOUT, maneuver.getTypeCode());
+        assertEquals(DirectionsCriteria.MODE_MOVABLE_BRIDGE, maneuver.getModeCode());
+        assertEquals(DirectionsCriteria.DIRECTION_SW, step.getDirectionCode());
+    }
+
+    @Test
+    public void codes_followChangesToTheStrings() throws Exception {
+        StepManeuver maneuver = new StepManeuver();
+        maneuver.setType("depart");
+        assertEquals(DirectionsCriteria.MANEUVER_DEPART, maneuver.getTypeCode());
+
+        maneuver.setType("arrive");
+        assertEquals(DirectionsCriteria.MANEUVER_ARRIVE, maneuver.getTypeCode());
+        RouteStep step = new RouteStep();
+        step.setDirection("N");
+        assertEquals(DirectionsCriteria.DIRECTION_N, step.getDirectionCode());
+        step.setDirection("NE");
+        assertEquals(DirectionsCriteria.DIRECTION_NE, step.getDirectionCode());
+    }
+
+    @Test
+    public void codes_areUnknownForUnknownOrMissingStrings() throws Exception {
+        StepManeuver maneuver = new StepManeuver();
+        RouteStep step = new RouteStep();
+        assertEquals(DirectionsCriteria.MANEUVER_UNKNOWN, maneuver.getTypeCode());
+        assertEquals(DirectionsCriteria.MODE_UNKNOWN, maneuver.getModeCode());
+        assertEquals(DirectionsCriteria.DIRECTION_UNKNOWN, step.getDirectionCode());
+
+        maneuver.setType("fork");
+        maneuver.setMode("hovercraft");
+        step.setDirection("north");
+        assertEquals(DirectionsCriteria.MANEUVER_UNKNOWN, maneuver.getTypeCode());
+        assertEquals(DirectionsCriteria.MODE_UNKNOWN, maneuver.getModeCode());
+        assertEquals(DirectionsCriteria.DIRECTION_UNKNOWN, step.getDirectionCode());
+
+        // Matched as sent, not case-insensitively
+        maneuver.setType("Turn Left");
+        assertEquals(DirectionsCriteria.MANEUVER_UNKNOWN, maneuver.getTypeCode());
+    }
+}
@@ -0,0 +1,244 @@
+package com.mapbox.directions.storage;
+
+import com.mapbox.directions.TestRoutes;
+import com.mapbox.directions.geometry.PolylineCodec;
+import com.mapbox.directions.service.models.DirectionsResponse;
+import com.mapbox.directions.service.models.DirectionsRoute;
+import com.mapbox.directions.service.models.RouteGeometry;
+import com.mapbox.directions.service.models.RouteGeometryTypeAdapter;
+import com.mapbox.directions.service.models.RouteStep;
+import com.mapbox.directions.service.models.StepManeuver;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class RouteFileTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void roundTrip_keepsEveryRoute() throws Exception {
+        DirectionsResponse response = TestRoutes.response("Main Street");
+        List<DirectionsRoute> routes = new ArrayList<>(response.getRoutes());
+        routes.add(TestRoutes.response("Second Street", TestRoutes.line(-77.04, 38.9, 8, 0.002)).getRoutes().get(0));
+        routes.add(TestRoutes.response("Third Street", TestRoutes.line(-77.05, 38.91, 3, 0.003)).getRoutes().get(0));
+        response.setRoutes(routes);
+
+        File file = folder.newFile("routes.bin");
+        FileOutputStream out = new FileOutputStream(file);
+        try {
+            RouteFileWriter.write(response, PolylineCodec.PRECISION_6, out);
+        } finally {
+            out.close();
+        }
+        RouteFileReader reader = RouteFileReader.open(file);
+
+        assertEquals(PolylineCodec.PRECISION_6, reader.getPrecision());
+        assertEquals(3, reader.getRouteCount());
+        DirectionsResponse read = reader.readResponse();
+        assertEquals(3, read.getRoutes().size());
+        for (int i = 0; i < routes.size(); i++) {
+            assertRoute(routes.get(i), read.getRoutes().get(i), 1e-6);
+            assertEquals(routes.get(i).getGeometry().size(), reader.getVertexCount(i));
+            assertEquals(routes.get(i).getSteps().size(), reader.getStepCount(i));
+        }
+
+        assertEquals(response.getOrigin().getType(), read.getOrigin().getType());
+        assertPoint(response.getOrigin().getGeometry().getCoordinates(),
+                read.getOrigin().getGeometry().getCoordinates(), 1e-6);
+        assertPoint(response.getDestination().getGeometry().getCoordinates(),
+                read.getDestination().getGeometry().getCoordinates(), 1e-6);
+        assertEquals(response.getOrigin().getProperties().getName(), read.getOrigin().getProperties().getName());
+        assertEquals(0, read.getWaypoints().size());
+    }
+
+    @Test
+    public void roundTrip_keepsMissingValues() throws Exception {
+        RouteStep noManeuver = new RouteStep();
+        noManeuver.setDistance(10);
+        noManeuver.setHeading(Double.NaN);
+
+        StepManeuver maneuver = new StepManeuver();
+        maneuver.setType("arrive");
+        RouteStep noLocation = new RouteStep();
+        noLocation.setManeuver(maneuver);
+
+        DirectionsRoute route = new DirectionsRoute();
+        route.setDistance(20);
+        route.setSteps(Arrays.asList(noManeuver, noLocation));
+        DirectionsResponse response = new DirectionsResponse();
+        response.setRoutes(Arrays.asList(route));
+
+        RouteFileReader reader = RouteFileReader.wrap(ByteBuffer.wrap(RouteFileWriter.write(response, 6)));
+
+        assertNull(reader.getSummary(0));
+        assertNull(reader.readCoordinates(0));
+        assertNull(reader.readGeometry(0));
+        assertEquals(0, reader.getVertexCount(0));
+
+        List<RouteStep> steps = reader.readSteps(0);
+        assertEquals(2, steps.size());
+        assertEquals(10, steps.get(0).getDistance());
+        assertTrue(Double.isNaN(steps.get(0).getHeading()));
+        assertNull(steps.get(0).getWayName());
+        assertNull(steps.get(0).getManeuver());
+        assertEquals("arrive", steps.get(1).getManeuver().getType());
+        assertNull(steps.get(1).getManeuver().getInstruction());
+        assertNull(steps.get(1).getManeuver().getLocation());
+
+        DirectionsResponse read = reader.readResponse();
+        assertNull(read.getOrigin());
+        assertNull(read.getDestination());
+        assertNull(read.getRoutes().get(0).getGeometry());
+    }
+
+    @Test
+    public void strings_areStoredOnce() throws Exception {
+        String name = "Pennsylvania Avenue Northwest";
+        DirectionsResponse response = TestRoutes.response(name, TestRoutes.line(-77.0365, 38.8977, 40, 0.001));
+
+        byte[] bytes = RouteFileWriter.write(response, 6);
+
+        // The summary and all 39 way names share one table entry
+        assertEquals(1, occurrences(bytes, name.getBytes(Charset.forName("UTF-8"))));
+        RouteFileReader reader = RouteFileReader.wrap(ByteBuffer.wrap(bytes));
+        List<RouteStep> steps = reader.readSteps(0);
+        assertEquals(name, reader.getSummary(0));
+        for (RouteStep step : steps) {
+            assertEquals(name, step.getWayName());
+        }
+        assertSame(steps.get(0).getWayName(), steps.get(38).getWayName());
+    }
+
+    @Test
+    public void maxPrecision_keepsTheExtremes() throws Exception {
+        double[] coordinates = {-180, -90, 180, 90, 0, 0, 179.9999999, -89.9999999, -179.9999999, 89.9999999};
+        DirectionsRoute route = new DirectionsRoute();
+        route.setGeometry(new RouteGeometry(RouteGeometryTypeAdapter.TYPE_LINE_STRING, coordinates));
+        DirectionsResponse response = new DirectionsResponse();
+        response.setRoutes(Arrays.asList(route));
+
+        RouteFileReader reader = RouteFileReader.wrap(
+                ByteBuffer.wrap(RouteFileWriter.write(response, RouteFileWriter.MAX_PRECISION)));
+
+        assertEquals(RouteFileWriter.MAX_PRECISION, reader.getPrecision());
+        double[] read = reader.readCoordinates(0);
+        assertEquals(coordinates.length, read.length);
+        for (int i = 0; i < coordinates.length; i++) {
+            assertEquals(coordinates[i], read[i], 0.5e-7);
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void write_rejectsPrecisionAboveTheMaximum() throws Exception {
+        RouteFileWriter.write(TestRoutes.response("Main Street"), RouteFileWriter.MAX_PRECISION + 1);
+    }
+
+    @Test
+    public void open_rejectsBadMagic() throws Exception {
+        byte[] bytes = RouteFileWriter.write(TestRoutes.response("Main Street"), 6);
+        bytes[0] = '{';
+        assertRejected(bytes);
+    }
+
+    @Test
+    public void open_rejectsOtherVersions() throws Exception {
+        byte[] bytes = RouteFileWriter.write(TestRoutes.response("Main Street"), 6);
+        bytes[RouteFormat.VERSION_OFFSET + 1] = RouteFormat.VERSION + 1;
+        assertRejected(bytes);
+    }
+
+    @Test
+    public void open_rejectsTruncatedFiles() throws Exception {
+        byte[] bytes = RouteFileWriter.write(TestRoutes.response("Main Street"), 6);
+        assertRejected(new byte[0]);
+        assertRejected(Arrays.copyOf(bytes, RouteFormat.HEADER_SIZE - 1));
+        // Header complete, directory cut short
+        assertRejected(Arrays.copyOf(bytes, RouteFormat.HEADER_SIZE + RouteFormat.DIRECTORY_ENTRY_SIZE - 1));
+        // String table offsets cut short
+        assertRejected(Arrays.copyOf(bytes, ByteBuffer.wrap(bytes).getInt(RouteFormat.STRINGS_OFFSET) + 1));
+    }
+
+    @Test
+    public void binary_isSmallerThanJson() throws Exception {
+        double[] line = TestRoutes.line(-77.0365, 38.8977, 500, 0.0001);
+        byte[] json = TestRoutes.json("Main Street", line).getBytes(Charset.forName("UTF-8"));
+
+        byte[] binary = RouteFileWriter.write(TestRoutes.response("Main Street", line), 6);
+
+        assertTrue(binary.length + " bytes, JSON " + json.length, binary.length * 4 < json.length);
+    }
+
+    private static void assertRoute(DirectionsRoute expected, DirectionsRoute actual, double delta) {
+        assertEquals(expected.getDistance(), actual.getDistance());
+        assertEquals(expected.getDuration(), actual.getDuration());
+        assertEquals(expected.getSummary(), actual.getSummary());
+        assertTrue(actual.isLazy());
+
+        double[] expectedCoordinates = expected.getGeometry().getPackedCoordinates();
+        double[] actualCoordinates = actual.getGeometry().getPackedCoordinates();
+        assertEquals(expectedCoordinates.length, actualCoordinates.length);
+        for (int i = 0; i < expectedCoordinates.length; i++) {
+            assertEquals(expectedCoordinates[i], actualCoordinates[i], delta);
+        }
+
+        assertEquals(expected.getSteps().size(), actual.getSteps().size());
+        for (int i = 0; i < expected.getSteps().size(); i++) {
+            RouteStep expectedStep = expected.getSteps().get(i);
+            RouteStep actualStep = actual.getSteps().get(i);
+            assertEquals(expectedStep.getDistance(), actualStep.getDistance());
+            assertEquals(expectedStep.getDuration(), actualStep.getDuration());
+            assertEquals(expectedStep.getWayName(), actualStep.getWayName());
+            assertEquals(expectedStep.getDirection(), actualStep.getDirection());
+            assertEquals(expectedStep.getHeading(), actualStep.getHeading(), 0);
+            assertEquals(expectedStep.getManeuver().getType(), actualStep.getManeuver().getType());
+            assertEquals(expectedStep.getManeuver().getInstruction(), actualStep.getManeuver().getInstruction());
+            assertEquals(expectedStep.getManeuver().getMode(), actualStep.getManeuver().getMode());
+            assertPoint(expectedStep.getManeuver().getLocation().getCoordinates(),
+                    actualStep.getManeuver().getLocation().getCoordinates(), delta);
+        }
+    }
+
+    private static void assertPoint(List<Double> expected, List<Double> actual, double delta) {
+        assertEquals(expected.size(), actual.size());
+        for (int i = 0; i < expected.size(); i++) {
+            assertEquals(expected.get(i), actual.get(i), delta);
+        }
+    }
+
+    private static void assertRejected(byte[] bytes) {
+        try {
+            RouteFileReader.wrap(ByteBuffer.wrap(bytes));
+            fail("Read " + bytes.length + " bytes without complaint.");
+        } catch (IOException e) {
+            // Expected
+        }
+    }
+
+    private static int occurrences(byte[] bytes, byte[] pattern) {
+        int count = 0;
+        for (int i = 0; i + pattern.length <= bytes.length; i++) {
+            int j = 0;
+            while (j < pattern.length && bytes[i + j] == pattern[j]) {
+                j++;
+            }
+            if (j == pattern.length) {
+                count++;
+            }
+        }
+        return count;
+    }
+}
@@ -0,0 +1,217 @@
+package com.mapbox.directions.storage;
+
+import com.mapbox.directions.MapboxDirections;
+import com.mapbox.directions.RecordingCallback;
+import com.mapbox.directions.TestRoutes;
+import com.mapbox.directions.TestTransports;
+import com.mapbox.directions.service.models.DirectionsResponse;
+import com.mapbox.directions.service.models.Waypoint;
+import com.squareup.okhttp.mockwebserver.Dispatcher;
+import com.squareup.okhttp.mockwebserver.MockResponse;
+import com.squareup.okhttp.mockwebserver.MockWebServer;
+import com.squareup.okhttp.mockwebserver.RecordedRequest;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+public class RouteStoreTest {
+
+    // About 22 and 111 meters of latitude
+    private final static double NEAR = 0.0002;
+    private final static double FAR = 0.001;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void find_matchesWaypointsWithinTheTolerance() throws Exception {
+        RouteStore store = newStore(RouteStore.DEFAULT_MAX_BYTES);
+        assertTrue(store.put("driving", response("Main Street", -77.0365, 38.8977)));
+
+        DirectionsResponse found = store.find("driving", waypoints(-77.0365, 38.8977 + NEAR));
+        assertNotNull(found);
+        assertEquals("Main Street", found.getRoutes().get(0).getSummary());
+        assertEquals(5, found.getRoutes().get(0).getGeometry().size());
+
+        assertNull(store.find("driving", waypoints(-77.0365, 38.8977 + FAR)));
+        assertEquals(1, store.getHitCount());
+        assertEquals(1, store.getMissCount());
+    }
+
+    @Test
+    public void find_needsTheSameKey() throws Exception {
+        RouteStore store = newStore(RouteStore.DEFAULT_MAX_BYTES);
+        store.put("driving", response("Main Street", -77.0365, 38.8977));
+
+        assertNull(store.find("walking", waypoints(-77.0365, 38.8977)));
+        assertNotNull(store.find("driving", waypoints(-77.0365, 38.8977)));
+    }
+
+    @Test
+    public void find_needsTheSameNumberOfWaypoints() throws Exception {
+        RouteStore store = newStore(RouteStore.DEFAULT_MAX_BYTES);
+        store.put("driving", response("Main Street", -77.0365, 38.8977));
+
+        List<Waypoint> waypoints = Arrays.asList(new Waypoint(-77.0365, 38.8977),
+                new Waypoint(-77.0345, 38.8977), new Waypoint(-77.0325, 38.8977));
+        assertNull(store.find("driving", waypoints));
+    }
+
+    @Test
+    public void put_replacesAMatchingResponse() throws Exception {
+        RouteStore store = newStore(RouteStore.DEFAULT_MAX_BYTES);
+        store.put("driving", response("Old Street", -77.0365, 38.8977));
+        store.put("driving", response("New Street", -77.0365, 38.8977 + NEAR));
+
+        assertEquals(1, store.size());
+        assertEquals(1, folder.getRoot().listFiles().length);
+        assertEquals("New Street", store.find("driving", waypoints(-77.0365, 38.8977)).getRoutes().get(0).getSummary());
+
+        // Another key is a separate entry
+        store.put("walking", response("Footpath", -77.0365, 38.8977));
+        assertEquals(2, store.size());
+    }
+
+    @Test
+    public void put_evictsLeastRecentlyUsed() throws Exception {
+        long entryBytes = entryBytes();
+        RouteStore store = newStore(entryBytes * 5 / 2);
+        store.put("driving", response("a", -77.0, 38.0));
+        store.put("driving", response("b", -78.0, 39.0));
+        Thread.sleep(20);
+        assertNotNull(store.find("driving", waypoints(-77.0, 38.0)));
+        // Entries start out as old as their file, which some file systems only keep in seconds
+        Thread.sleep(1100);
+
+        store.put("driving", response("c", -79.0, 40.0));
+
+        assertEquals(2, store.size());
+        assertEquals(1, store.getEvictionCount());
+        assertTrue(store.getTotalBytes() <= entryBytes * 5 / 2);
+        assertNotNull(store.find("driving", waypoints(-77.0, 38.0)));
+        assertNull(store.find("driving", waypoints(-78.0, 39.0)));
+        assertNotNull(store.find("driving", waypoints(-79.0, 40.0)));
+    }
+
+    @Test
+    public void reopening_reloadsStoredResponses() throws Exception {
+        RouteStore store = newStore(RouteStore.DEFAULT_MAX_BYTES);
+        store.put("driving", response("Main Street", -77.0365, 38.8977));
+        long totalBytes = store.getTotalBytes();
+
+        // An interrupted put and a file that isn't a stored response
+        File temp = folder.newFile("1.route.tmp");
+        File broken = folder.newFile("2.route");
+
+        RouteStore reopened = newStore(RouteStore.DEFAULT_MAX_BYTES);
+        assertEquals(1, reopened.size());
+        assertEquals(totalBytes, reopened.getTotalBytes());
+        assertFalse(temp.exists());
+        assertFalse(broken.exists());
+        DirectionsResponse found = reopened.find("driving", waypoints(-77.0365, 38.8977));
+        assertEquals("Main Street", found.getRoutes().get(0).getSummary());
+        assertEquals(4, found.getRoutes().get(0).getSteps().size());
+
+        // New files don't collide with the reloaded ones
+        reopened.put("driving", response("Second Street", -78.0, 39.0));
+        assertEquals(2, newStore(RouteStore.DEFAULT_MAX_BYTES).size());
+    }
+
+    @Test
+    public void findIntersecting_returnsRoutesCrossingTheBox() throws Exception {
+        RouteStore store = newStore(RouteStore.DEFAULT_MAX_BYTES);
+        store.put("driving", response("a", -77.0, 38.0));
+        store.put("driving", response("b", -78.0, 39.0));
+
+        // The route runs 0.004 degrees east of its origin
+        List<DirectionsResponse> found = store.findIntersecting(-76.998, 37.999, -76.99, 38.001);
+        assertEquals(1, found.size());
+        assertEquals("a", found.get(0).getRoutes().get(0).getSummary());
+
+        assertEquals(2, store.findIntersecting(-79, 37, -76, 40).size());
+        assertEquals(0, store.findIntersecting(-76.99, 37.999, -76.98, 38.001).size());
+        assertEquals(0, store.findIntersecting(10, 10, 11, 11).size());
+    }
+
+    @Test
+    public void clear_deletesEveryFile() throws Exception {
+        RouteStore store = newStore(RouteStore.DEFAULT_MAX_BYTES);
+        store.put("driving", response("a", -77.0, 38.0));
+        store.put("driving", response("b", -78.0, 39.0));
+
+        store.clear();
+
+        assertEquals(0, store.size());
+        assertEquals(0, store.getTotalBytes());
+        assertEquals(0, folder.getRoot().listFiles().length);
+    }
+
+    @Test
+    public void call_reportsCancellationOnce() throws Exception {
+        final CountDownLatch received = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        MockWebServer server = new MockWebServer();
+        server.setDispatcher(new Dispatcher() {
+            @Override
+            public MockResponse dispatch(RecordedRequest request) throws InterruptedException {
+                received.countDown();
+                release.await();
+                return new MockResponse().setBody(TestRoutes.json("Main Street"));
+            }
+        });
+        server.start();
+        try {
+            MapboxDirections request = TestTransports.request(TestTransports.forServer(server)
+                    .setRouteStore(newStore(RouteStore.DEFAULT_MAX_BYTES))
+                    .build()).build();
+            RecordingCallback callback = new RecordingCallback();
+            request.enqueue(callback);
+            assertTrue(received.await(10, TimeUnit.SECONDS));
+
+            request.cancel();
+            assertTrue(callback.await().getFailure() instanceof IOException);
+
+            // The network call failing in turn isn't reported again
+            release.countDown();
+            Thread.sleep(100);
+            assertEquals(1, callback.getDeliveryCount());
+        } finally {
+            release.countDown();
+            server.shutdown();
+        }
+    }
+
+    private RouteStore newStore(long maxBytes) {
+        return new RouteStore.Builder()
+                .setDirectory(folder.getRoot())
+                .setMaxBytes(maxBytes)
+                .build();
+    }
+
+    private long entryBytes() throws IOException {
+        File directory = folder.newFolder();
+        RouteStore store = new RouteStore.Builder().setDirectory(directory).build();
+        store.put("driving", response("x", -80.0, 41.0));
+        return store.getTotalBytes();
+    }
+
+    // A route heading east from the given origin, see TestRoutes
+    private static DirectionsResponse response(String summary, double longitude, double latitude)
+            throws IOException {
+        return TestRoutes.response(summary, TestRoutes.line(longitude, latitude, 5, 0.001));
+    }
+
+    private static List<Waypoint> waypoints(double longitude, double latitude) {
+        return Arrays.asList(new Waypoint(longitude, latitude), new Waypoint(longitude + 0.004, latitude));
+    }
+}